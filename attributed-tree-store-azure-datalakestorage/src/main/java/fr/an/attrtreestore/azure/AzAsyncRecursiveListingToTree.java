@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableSet;
 import fr.an.attrtreestore.api.IWriteTreeData;
 import fr.an.attrtreestore.api.NodeAttr;
 import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.val;
@@ -48,7 +49,7 @@ public class AzAsyncRecursiveListingToTree {
 	// ------------------------------------------------------------------------
 
 	public AzAsyncRecursiveListingToTree(NodeNameEncoder nameEncoder, IWriteTreeData destTree) {
-		this.nameEncoder = nameEncoder;
+		this.nameEncoder = InterningNodeNameEncoder.of(nameEncoder);
 		this.destTree = destTree;
 	}
 	
@@ -22,6 +22,7 @@ import fr.an.attrtreestore.api.readprefetch.PrefetchNodeDataContext;
 import fr.an.attrtreestore.api.readprefetch.PrefetchProposedPathItem;
 import fr.an.attrtreestore.cachedfsview.NodeFsDataProvider;
 import fr.an.attrtreestore.cachedfsview.PrefetchNodeFsDataContext;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import fr.an.attrtreestore.util.fsdata.NodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.DirNodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.FileNodeFsData;
@@ -85,7 +86,7 @@ public class AzureStorageNodeFsDataProvider extends NodeFsDataProvider {
         this.displayName = displayName;
         this.displayBaseUrl = displayBaseUrl;
         this.baseDirClient = baseDirClient;
-        this.nodeNameEncoder = nodeNameEncoder;
+        this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
     }
     
 	// --------------------------------------------------------------------------------------------
@@ -0,0 +1,23 @@
+package fr.an.attrtreestore.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * result of CachedImage_TreeData.getCacheWaitMaxWithFreshness(), with freshness of data
+ * (stale data may be returned when underlying get exceeds response time, cf stale-while-revalidate)
+ */
+@AllArgsConstructor
+@Getter
+public class CacheGetResult {
+
+	/** null when not found */
+	private final NodeData data;
+
+	/** true when data age < cacheExpirationMillis (or not found) */
+	private final boolean fresh;
+
+	/** millis since last refresh of data from underlying tree */
+	private final long ageMillis;
+
+}
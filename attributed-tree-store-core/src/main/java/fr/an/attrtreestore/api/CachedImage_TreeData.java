@@ -50,6 +50,12 @@ public abstract class CachedImage_TreeData<TCacheStorageTreeData extends TreeDat
 	@Getter
 	private LoggingCounter cacheGetMissCounter = new LoggingCounter("cache.get-miss");
 
+	// concurrent get waiting for same pending underlying get (single-flight), instead of calling underlying
+	@Getter
+	private LoggingCounter cacheGetCoalescedCounter = new LoggingCounter("cache.get-coalesced");
+	@Getter
+	private LoggingCounter cacheGetCoalescedTimeoutCounter = new LoggingCounter("cache.get-coalesced-timeout");
+
 	@Getter
 	private LoggingCounter underlyingGetCounter = new LoggingCounter("underlying.get");
 
@@ -83,6 +89,18 @@ public abstract class CachedImage_TreeData<TCacheStorageTreeData extends TreeDat
 			int cacheExpirationMillis,
 			long useCacheIfResponseExceedTimeMillis);
 
+	/** same as getCacheWaitMax(), with freshness flag and age of returned data */
+	public CacheGetResult getCacheWaitMaxWithFreshness(NodeNamesPath path, 
+			int cacheExpirationMillis,
+			long useCacheIfResponseExceedTimeMillis) {
+		NodeData data = getCacheWaitMax(path, cacheExpirationMillis, useCacheIfResponseExceedTimeMillis);
+		if (data == null) {
+			return new CacheGetResult(null, true, 0);
+		}
+		long ageMillis = Math.max(0, System.currentTimeMillis() - data.getLastExternalRefreshTimeMillis());
+		return new CacheGetResult(data, ageMillis < cacheExpirationMillis, ageMillis);
+	}
+
 
 	// ------------------------------------------------------------------------
 	
@@ -98,6 +116,14 @@ public abstract class CachedImage_TreeData<TCacheStorageTreeData extends TreeDat
 		cacheGetMissCounter.incr(millis, logCallback);
 	}
 
+	protected void incrCacheGetCoalesced(int millis, MsgPrefixLoggingCallback logCallback) {
+		cacheGetCoalescedCounter.incr(millis, logCallback);
+	}
+
+	protected void incrCacheGetCoalescedTimeout(int millis, MsgPrefixLoggingCallback logCallback) {
+		cacheGetCoalescedTimeoutCounter.incr(millis, logCallback);
+	}
+
 	protected void incrUnderlyingTreeGet(int millis, MsgPrefixLoggingCallback logCallback) {
 		underlyingGetCounter.incr(millis, logCallback);
 	}
@@ -112,6 +138,8 @@ public abstract class CachedImage_TreeData<TCacheStorageTreeData extends TreeDat
 		cacheGetHitCounter.setLogFreq(freq);
 		cacheGetHitButExpiredCounter.setLogFreq(freq);
 		cacheGetMissCounter.setLogFreq(freq);
+		cacheGetCoalescedCounter.setLogFreq(freq);
+		cacheGetCoalescedTimeoutCounter.setLogFreq(freq);
 		underlyingGetCounter.setLogFreq(freq);
 		underlyingGetFailedCounter.setLogFreq(freq);
 	}
@@ -121,6 +149,8 @@ public abstract class CachedImage_TreeData<TCacheStorageTreeData extends TreeDat
 		cacheGetHitCounter.setLogMaxDelayMillis(millis);
 		cacheGetHitButExpiredCounter.setLogMaxDelayMillis(millis);
 		cacheGetMissCounter.setLogMaxDelayMillis(millis);
+		cacheGetCoalescedCounter.setLogMaxDelayMillis(millis);
+		cacheGetCoalescedTimeoutCounter.setLogMaxDelayMillis(millis);
 		underlyingGetCounter.setLogMaxDelayMillis(millis);
 		underlyingGetFailedCounter.setLogMaxDelayMillis(millis);
 	}
@@ -134,6 +164,12 @@ public abstract class CachedImage_TreeData<TCacheStorageTreeData extends TreeDat
     public int getCacheGetMissCount() {
         return cacheGetMissCounter.getCount();
     }
+    public int getCacheGetCoalescedCount() {
+        return cacheGetCoalescedCounter.getCount();
+    }
+    public int getCacheGetCoalescedTimeoutCount() {
+        return cacheGetCoalescedTimeoutCounter.getCount();
+    }
     public int getUnderlyingGetCount() {
         return underlyingGetCounter.getCount();
     }
@@ -1,5 +1,6 @@
 package fr.an.attrtreestore.api;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -20,4 +21,21 @@ public interface IReadTreeData {
 		return TreeDataUtils.getWithChild(this, path, foundChildMap, notFoundChildLs);
 	}
 
+	/**
+	 * batched get of several child of a same parent .. 
+	 * @return found child data by name (not found child are absent)
+	 * may override for optims: resolve parent once, coalesce IO 
+	 */
+	public default Map<NodeName,NodeData> getAll(NodeNamesPath parentPath, Collection<NodeName> childNames) {
+		return TreeDataUtils.getAllByChildGet(this, parentPath, childNames);
+	}
+
+	/**
+	 * batched get of several paths, grouped by parent, cf getAll()
+	 * @return found data by path (not found paths are absent)
+	 */
+	public default Map<NodeNamesPath,NodeData> getMany(Collection<NodeNamesPath> paths) {
+		return TreeDataUtils.getManyByParentGetAll(this, paths);
+	}
+
 }
@@ -6,6 +6,11 @@ import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
 import fr.an.attrtreestore.api.attrinfo.AttrInfo;
 import lombok.Getter;
 
+/**
+ * attribute value of a node.
+ * primitive sub-classes LongNodeAttr / IntNodeAttr / DoubleNodeAttr hold value unboxed (data field is null),
+ * created by corresponding primitive AttrDataEncoder .. getData() still returns boxed value, for generic code 
+ */
 @Getter
 public class NodeAttr {
 
@@ -34,7 +39,7 @@ public class NodeAttr {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(attrInfo, data, evalStatus, lastEvalTimestamp);
+		return Objects.hash(attrInfo, getData(), evalStatus, lastEvalTimestamp);
 	}
 
 	@Override
@@ -43,15 +48,58 @@ public class NodeAttr {
 			return true;
 		if (obj == null)
 			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof NodeAttr)) // primitive sub-class equals to generic one with same boxed data
 			return false;
 		NodeAttr other = (NodeAttr) obj;
 		return Objects.equals(attrInfo, other.attrInfo) 
-				&& Objects.equals(data, other.data)
+				&& Objects.equals(getData(), other.getData())
 				&& evalStatus == other.evalStatus 
 				// && lastEvalTimestamp == other.lastEvalTimestamp .. ignore field
 				;
 	}
 	
-	
+	// ------------------------------------------------------------------------
+
+	public static class LongNodeAttr extends NodeAttr {
+		public final long longValue;
+
+		public LongNodeAttr(AttrInfo<Object> attrInfo, long longValue, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			super(attrInfo, null, lastEvalTimestamp, evalStatus);
+			this.longValue = longValue;
+		}
+
+		@Override
+		public Object getData() {
+			return longValue; // boxed on demand
+		}
+	}
+
+	public static class IntNodeAttr extends NodeAttr {
+		public final int intValue;
+
+		public IntNodeAttr(AttrInfo<Object> attrInfo, int intValue, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			super(attrInfo, null, lastEvalTimestamp, evalStatus);
+			this.intValue = intValue;
+		}
+
+		@Override
+		public Object getData() {
+			return intValue; // boxed on demand
+		}
+	}
+
+	public static class DoubleNodeAttr extends NodeAttr {
+		public final double doubleValue;
+
+		public DoubleNodeAttr(AttrInfo<Object> attrInfo, double doubleValue, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			super(attrInfo, null, lastEvalTimestamp, evalStatus);
+			this.doubleValue = doubleValue;
+		}
+
+		@Override
+		public Object getData() {
+			return doubleValue; // boxed on demand
+		}
+	}
+
 }
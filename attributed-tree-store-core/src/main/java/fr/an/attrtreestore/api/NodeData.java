@@ -1,6 +1,7 @@
 package fr.an.attrtreestore.api;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import javax.annotation.Nonnull;
 
@@ -81,17 +82,22 @@ public class NodeData {
 
 	
 	
-	/** internal counter of the jvm that queried this path NodeData 
+	/** internal counter of the jvm that queried this path NodeData, since last decay tick
 	 * can be modified without persisting... transient 
 	 */
 	@Getter
-	private transient int lruCount;
+	private transient volatile int lruCount;
 	
-	/** internal exponentially amortized counter  
+	/** internal exponentially amortized counter, cf decayLruCount(): halved on each clock tick
 	 * can be modified without persisting... transient 
 	 */
 	@Getter
-	private transient int lruAmortizedCount;
+	private transient volatile int lruAmortizedCount;
+
+	private static final AtomicIntegerFieldUpdater<NodeData> lruCountUpdater = 
+			AtomicIntegerFieldUpdater.newUpdater(NodeData.class, "lruCount");
+	private static final AtomicIntegerFieldUpdater<NodeData> lruAmortizedCountUpdater = 
+			AtomicIntegerFieldUpdater.newUpdater(NodeData.class, "lruAmortizedCount");
 	
 	/** internal System.currentTime() of the jvm that queried this path NodeData the last time 
 	 * can be modified without persisting... transient 
@@ -126,8 +132,9 @@ public class NodeData {
 			return; // already internalized
 		}
 		if (! name.equals(ref)) {
-			this.name = ref;
+			throw new IllegalArgumentException("internalized name ref '" + ref + "' differs from '" + name + "'");
 		}
+		this.name = ref;
 	}
 
 	public void _setChildNames_InternalizedRefs(ImmutableSet<NodeName> childNameRefs) {
@@ -148,10 +155,31 @@ public class NodeData {
 	}
 
 	public void incrUsed(long millis) {
-		this.lruCount++;  // might need atomic cas, but ok if count not exact
+		lruCountUpdater.incrementAndGet(this);
 		this.lastTreeDataQueryTimeMillis = millis;
 	}
 
+	/** 
+	 * clock tick for frequency decay: amortized = amortized/2 + lruCount (count since previous tick), then reset lruCount
+	 * => old usages are forgotten exponentially
+	 * @return new amortized count
+	 */
+	public int decayLruCount() {
+		val count = lruCountUpdater.getAndSet(this, 0);
+		for(;;) {
+			val prev = lruAmortizedCount;
+			val res = (int) Math.min(Integer.MAX_VALUE, (long) (prev >>> 1) + count);
+			if (lruAmortizedCountUpdater.compareAndSet(this, prev, res)) {
+				return res;
+			}
+		}
+	}
+
+	/** @return estimated usage frequency, for eviction: amortized count + count since last decay tick */
+	public long lruFrequency() {
+		return (long) lruAmortizedCount + lruCount;
+	}
+
 	// ------------------------------------------------------------------------
 	
 	@Override
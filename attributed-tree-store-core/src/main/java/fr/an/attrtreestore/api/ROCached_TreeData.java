@@ -1,8 +1,10 @@
 package fr.an.attrtreestore.api;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.path4j.NodeNamesPath;
 
-public abstract class ROCached_TreeData extends TreeData implements IReadTreeData {
+public abstract class ROCached_TreeData extends TreeData implements IReadTreeData, IAsyncReadTreeData {
 
 	public enum IndexedBlobStorageInitMode {
 		RELOAD_ROOT_ONLY,
@@ -17,7 +19,11 @@ public abstract class ROCached_TreeData extends TreeData implements IReadTreeDat
 	// may also use async Api?
 	public abstract NodeData get(NodeNamesPath path);
 	
-	// public abstract CompletableFuture<NodeData> asyncGet(NodeNamesPath path);
+	/** default to sync get(), overriden when cache miss may need (blocking) IO */
+	@Override
+	public CompletableFuture<NodeData> asyncGet(NodeNamesPath path) {
+		return CompletableFuture.completedFuture(get(path));
+	}
 
 
 	// force Read-Only final methods by throwing..
@@ -3,10 +3,26 @@ package fr.an.attrtreestore.api.attrinfo;
 import java.io.DataInput;
 import java.io.DataOutput;
 
+import fr.an.attrtreestore.api.NodeAttr;
+
 public abstract class AttrDataEncoder<T> {
 
 	public abstract void writeData(DataOutput out, T data);
 
 	public abstract T readData(DataInput in);
 
+	// ------------------------------------------------------------------------
+
+	/** write data of attr .. overriden in primitive encoders, to write unboxed value */
+	@SuppressWarnings("unchecked")
+	public void writeNodeAttrData(DataOutput out, NodeAttr attr) {
+		writeData(out, (T) attr.getData());
+	}
+
+	/** read data and create NodeAttr .. overriden in primitive encoders, to create unboxed NodeAttr */
+	public NodeAttr readNodeAttr(DataInput in, AttrInfo<Object> attrInfo, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+		Object data = readData(in);
+		return new NodeAttr(attrInfo, data, lastEvalTimestamp, evalStatus);
+	}
+
 }
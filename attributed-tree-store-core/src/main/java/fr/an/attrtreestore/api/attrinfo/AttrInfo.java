@@ -1,15 +1,23 @@
 package fr.an.attrtreestore.api.attrinfo;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AttrInfo<T> {
 
+	private static final AtomicInteger ordinalGenerator = new AtomicInteger();
+	
+	/** process-wide unique (per instance), assigned once at construction.. NOT persisted (cf AttrInfoRegistry ids)
+	 * used as array index for fast AttrInfo -> int lookup, cf AttrInfoIndexes */
+	public final int ordinal = ordinalGenerator.getAndIncrement();
+
 	public final String name;
 	public final Class<T> dataClass;
 
 	public final AttrDataEncoder<T> attrDataEncoder;
-	
+
 	private List<AttrInfo<Object>> inv_propagateToParentAttrs = new ArrayList<>();
 	private List<AttrInfo<Object>> inv_propagateToChildAttrs = new ArrayList<>();
 	private List<AttrInfo<Object>> inv_propagateToNodeAttrs = new ArrayList<>();
@@ -26,6 +34,21 @@ public abstract class AttrInfo<T> {
 	
 	public abstract void accept(AttrInfoVisitor visitor);
 
+	/** inverse dependencies: parent attrs (synthesized) to re-evaluate when this attr changes */
+	public List<AttrInfo<Object>> getInv_propagateToParentAttrs() {
+		return Collections.unmodifiableList(inv_propagateToParentAttrs);
+	}
+
+	/** inverse dependencies: child attrs (inherited) to re-evaluate when this attr changes */
+	public List<AttrInfo<Object>> getInv_propagateToChildAttrs() {
+		return Collections.unmodifiableList(inv_propagateToChildAttrs);
+	}
+
+	/** inverse dependencies: same node attrs (dependent) to re-evaluate when this attr changes */
+	public List<AttrInfo<Object>> getInv_propagateToNodeAttrs() {
+		return Collections.unmodifiableList(inv_propagateToNodeAttrs);
+	}
+
 	/*pp*/ void _inv_addPropagateToParentAttr(AttrInfo<?> attr) {
 		@SuppressWarnings("unchecked")
 		AttrInfo<Object> attrObj = (AttrInfo<Object>) attr;
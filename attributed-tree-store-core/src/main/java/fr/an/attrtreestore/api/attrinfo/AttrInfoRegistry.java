@@ -1,28 +1,80 @@
 package fr.an.attrtreestore.api.attrinfo;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import lombok.val;
 
+/**
+ * registry of AttrInfo, by name and by stable int id
+ * 
+ * id = registration order in this registry, assigned once: new attrs can only be appended (schema evolution),
+ * so ids already written in index files remain valid (id -> name table also written in files, checked on open)
+ * ids are per registry: a same AttrInfo may be registered in several registries, with different ids
+ */
 public class AttrInfoRegistry {
 
 	private Map<String,AttrInfo<Object>> attrs = new HashMap<>();
 	
+	/** indexed by id */
+	private final List<AttrInfo<Object>> attrById = new ArrayList<>();
+
+	private final Map<AttrInfo<Object>,Integer> attrIds = new IdentityHashMap<>();
+	
 	// ------------------------------------------------------------------------
 	
 	// empty, for test only
 	public AttrInfoRegistry() {
 	}
 	
+	/** ids assigned in name order (deterministic, whatever the map iteration order)
+	 * .. prefer the Collection ctor with attrs in definition order: appending a new attr then keeps previous ids 
+	 */
 	public AttrInfoRegistry(Map<String, AttrInfo<Object>> attrs) {
-		this.attrs = new HashMap<>(attrs);
+		val sorted = new ArrayList<AttrInfo<Object>>(attrs.values());
+		sorted.sort(Comparator.comparing(a -> a.name));
+		registerAll(sorted);
+	}
+
+	/** ids assigned in list order */
+	public AttrInfoRegistry(Collection<AttrInfo<Object>> attrs) {
+		registerAll(attrs);
 	}
 
 	// ------------------------------------------------------------------------
 	
+	/** append attr (if not already registered), @return its id */
+	public int register(AttrInfo<?> attr) {
+		@SuppressWarnings("unchecked")
+		val attrObj = (AttrInfo<Object>) attr;
+		val found = attrs.get(attr.name);
+		if (found != null) {
+			if (found != attrObj) {
+				throw new IllegalArgumentException("another attr already registered with name '" + attr.name + "'");
+			}
+			return attrIds.get(found);
+		}
+		val id = attrById.size();
+		attrIds.put(attrObj, id);
+		attrById.add(attrObj);
+		attrs.put(attr.name, attrObj);
+		return id;
+	}
+
+	public void registerAll(Collection<AttrInfo<Object>> attrs) {
+		for(val attr: attrs) {
+			register(attr);
+		}
+	}
+
 	public AttrInfo<Object> getByName(String name) {
 		val res = attrs.get(name);
 		if (res == null) {
@@ -31,8 +83,30 @@ public class AttrInfoRegistry {
 		return res;
 	}
 
+	/** @return id of attr in this registry, or -1 if not registered */
+	public int getId(AttrInfo<?> attr) {
+		val res = attrIds.get(attr);
+		return (res != null)? res : -1;
+	}
+
+	public AttrInfo<Object> getById(int id) {
+		if (id < 0 || id >= attrById.size()) {
+			throw new IllegalArgumentException("attr not found by id " + id + " (registered: " + attrById.size() + ")");
+		}
+		return attrById.get(id);
+	}
+
+	public int size() {
+		return attrById.size();
+	}
+
 	public ImmutableMap<String,AttrInfo<Object>> getAttrs() {
 		return ImmutableMap.copyOf(attrs);
 	}
 
+	/** @return attrs in id order */
+	public ImmutableList<AttrInfo<Object>> getAttrsById() {
+		return ImmutableList.copyOf(attrById);
+	}
+
 }
@@ -0,0 +1,59 @@
+package fr.an.attrtreestore.api.attrinfo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.DoubleNodeAttr;
+
+/**
+ * encoder for double attribute (average, ratio..): fixed 8 bytes (no varint gain for doubles), NodeAttr value unboxed
+ */
+public class DoubleAttrDataEncoder extends AttrDataEncoder<Double> {
+
+	public static final DoubleAttrDataEncoder INSTANCE = new DoubleAttrDataEncoder();
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void writeData(DataOutput out, Double data) {
+		try {
+			out.writeDouble((data != null)? data : 0.0);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to write double attr", ex);
+		}
+	}
+
+	@Override
+	public Double readData(DataInput in) {
+		try {
+			return in.readDouble();
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read double attr", ex);
+		}
+	}
+
+	@Override
+	public void writeNodeAttrData(DataOutput out, NodeAttr attr) {
+		if (attr instanceof DoubleNodeAttr) {
+			try {
+				out.writeDouble(((DoubleNodeAttr) attr).doubleValue);
+			} catch(IOException ex) {
+				throw new RuntimeException("Failed to write double attr", ex);
+			}
+		} else {
+			super.writeNodeAttrData(out, attr);
+		}
+	}
+
+	@Override
+	public NodeAttr readNodeAttr(DataInput in, AttrInfo<Object> attrInfo, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+		try {
+			return new DoubleNodeAttr(attrInfo, in.readDouble(), lastEvalTimestamp, evalStatus);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read double attr", ex);
+		}
+	}
+
+}
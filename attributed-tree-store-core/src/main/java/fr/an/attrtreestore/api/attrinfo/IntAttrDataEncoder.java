@@ -0,0 +1,70 @@
+package fr.an.attrtreestore.api.attrinfo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.IntNodeAttr;
+import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+
+/**
+ * encoder for int attribute (child count..): zigzag varint, NodeAttr value unboxed
+ */
+public class IntAttrDataEncoder extends AttrDataEncoder<Integer> {
+
+	public static final IntAttrDataEncoder INSTANCE = new IntAttrDataEncoder();
+
+	// ------------------------------------------------------------------------
+
+	public void writeInt(DataOutput out, int value) throws IOException {
+		AttrDataEncoderHelper.writeVarInt(out, AttrDataEncoderHelper.zigzag(value));
+	}
+
+	public int readInt(DataInput in) throws IOException {
+		return AttrDataEncoderHelper.unzigzag(AttrDataEncoderHelper.readVarInt(in));
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void writeData(DataOutput out, Integer data) {
+		try {
+			writeInt(out, (data != null)? data : 0);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to write int attr", ex);
+		}
+	}
+
+	@Override
+	public Integer readData(DataInput in) {
+		try {
+			return readInt(in);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read int attr", ex);
+		}
+	}
+
+	@Override
+	public void writeNodeAttrData(DataOutput out, NodeAttr attr) {
+		if (attr instanceof IntNodeAttr) {
+			try {
+				writeInt(out, ((IntNodeAttr) attr).intValue);
+			} catch(IOException ex) {
+				throw new RuntimeException("Failed to write int attr", ex);
+			}
+		} else {
+			super.writeNodeAttrData(out, attr);
+		}
+	}
+
+	@Override
+	public NodeAttr readNodeAttr(DataInput in, AttrInfo<Object> attrInfo, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+		try {
+			return new IntNodeAttr(attrInfo, readInt(in), lastEvalTimestamp, evalStatus);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read int attr", ex);
+		}
+	}
+
+}
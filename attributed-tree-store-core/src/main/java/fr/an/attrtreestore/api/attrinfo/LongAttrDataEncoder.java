@@ -0,0 +1,70 @@
+package fr.an.attrtreestore.api.attrinfo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.LongNodeAttr;
+import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+
+/**
+ * encoder for long attribute (recursive size, file count..): zigzag varint, NodeAttr value unboxed
+ */
+public class LongAttrDataEncoder extends AttrDataEncoder<Long> {
+
+	public static final LongAttrDataEncoder INSTANCE = new LongAttrDataEncoder();
+
+	// ------------------------------------------------------------------------
+
+	public void writeLong(DataOutput out, long value) throws IOException {
+		AttrDataEncoderHelper.writeVarLong(out, AttrDataEncoderHelper.zigzag(value));
+	}
+
+	public long readLong(DataInput in) throws IOException {
+		return AttrDataEncoderHelper.unzigzag(AttrDataEncoderHelper.readVarLong(in));
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void writeData(DataOutput out, Long data) {
+		try {
+			writeLong(out, (data != null)? data : 0L);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to write long attr", ex);
+		}
+	}
+
+	@Override
+	public Long readData(DataInput in) {
+		try {
+			return readLong(in);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read long attr", ex);
+		}
+	}
+
+	@Override
+	public void writeNodeAttrData(DataOutput out, NodeAttr attr) {
+		if (attr instanceof LongNodeAttr) {
+			try {
+				writeLong(out, ((LongNodeAttr) attr).longValue);
+			} catch(IOException ex) {
+				throw new RuntimeException("Failed to write long attr", ex);
+			}
+		} else {
+			super.writeNodeAttrData(out, attr);
+		}
+	}
+
+	@Override
+	public NodeAttr readNodeAttr(DataInput in, AttrInfo<Object> attrInfo, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+		try {
+			return new LongNodeAttr(attrInfo, readLong(in), lastEvalTimestamp, evalStatus);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read long attr", ex);
+		}
+	}
+
+}
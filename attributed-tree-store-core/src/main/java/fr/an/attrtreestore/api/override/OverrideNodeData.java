@@ -8,6 +8,9 @@ public class OverrideNodeData {
 
 	public static final OverrideNodeData NOT_OVERRIDEN = new OverrideNodeData(OverrideNodeStatus.NOT_OVERRIDEN, null);
 	public static final OverrideNodeData DELETED = new OverrideNodeData(OverrideNodeStatus.DELETED, null);
+	/** for IInMemCacheReadTreeData on override layers: overriden, but data not in memory (evicted).. 
+	 * must not fallback to underlying layer */
+	public static final OverrideNodeData UPDATED_NOT_IN_MEM = new OverrideNodeData(OverrideNodeStatus.UPDATED, null);
 	
 	public final OverrideNodeStatus status;
 	public final NodeData data;
@@ -0,0 +1,171 @@
+package fr.an.attrtreestore.impl.attreval;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.path4j.NodeNamesPath;
+
+import com.google.common.collect.ImmutableMap;
+
+import fr.an.attrtreestore.api.IReadTreeData;
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.impl.attreval.IncrementalAttrEvalTreeData.AttrEvalFunc;
+import lombok.Getter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * context for evaluating attrs of 1 node, cf IncrementalAttrEvalTreeData.AttrEvalFunc
+ * parent and child datas are fetched lazily, once per node (shared by all attrs evaluated in same batch)
+ */
+@Slf4j
+public class AttrEvalContext {
+
+	private final IReadTreeData tree;
+
+	@Getter
+	private final NodeNamesPath path;
+
+	@Getter
+	private final NodeData data;
+
+	private NodeData parentData;
+	private boolean parentDataFetched;
+
+	private List<NodeData> childDatas;
+
+	// ------------------------------------------------------------------------
+
+	public AttrEvalContext(IReadTreeData tree, NodeNamesPath path, NodeData data) {
+		this.tree = tree;
+		this.path = path;
+		this.data = data;
+	}
+
+	/** with already known (evaluated) parent and child datas, no fetch */
+	public AttrEvalContext(NodeNamesPath path, NodeData data, NodeData parentData, List<NodeData> childDatas) {
+		this.tree = null;
+		this.path = path;
+		this.data = data;
+		this.parentData = parentData;
+		this.parentDataFetched = true;
+		this.childDatas = childDatas;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** @return parent data, null for root */
+	public NodeData getParentData() {
+		if (! parentDataFetched) {
+			this.parentData = (path.size() > 0)? tree.get(path.toParent()) : null;
+			this.parentDataFetched = true;
+		}
+		return parentData;
+	}
+
+	/** @return child datas, in childNames order (not found child skipped) */
+	public List<NodeData> getChildDatas() {
+		if (childDatas == null) {
+			val res = new ArrayList<NodeData>(data.childNames.size());
+			if (! data.childNames.isEmpty()) {
+				val found = tree.getAll(path, data.childNames);
+				for(val childName: data.childNames) {
+					val childData = found.get(childName);
+					if (childData != null) {
+						res.add(childData);
+					}
+				}
+			}
+			this.childDatas = res;
+		}
+		return childDatas;
+	}
+
+	/** result of evalAttrs() on 1 node */
+	public static class EvalAttrsResult {
+		/** copy of node attrs with changes, or null when unchanged */
+		public Map<String,NodeAttr> newAttrs;
+		/** evaluated OK, with changed value */
+		public final List<AttrInfo<Object>> changedAttrs = new ArrayList<>();
+		/** evaluation failed (exception) */
+		public final List<AttrInfo<Object>> failedAttrs = new ArrayList<>();
+		/** evaluated OK, changed or not */
+		public final List<AttrInfo<Object>> evaluatedAttrs = new ArrayList<>();
+
+		private Map<String,NodeAttr> newAttrs(NodeData data) {
+			if (newAttrs == null) {
+				newAttrs = new LinkedHashMap<>(data.attrs); // copy on first change
+			}
+			return newAttrs;
+		}
+	}
+
+	/**
+	 * evaluate attrs on this node .. shared by IncrementalAttrEvalTreeData and ForkJoinAttrTreeEvaluator
+	 * changed values are set with status OK (null value = attr removed).
+	 * a failed evaluation is not stamped OK: previous value (if any) is kept with status DIRTY
+	 */
+	public EvalAttrsResult evalAttrs(Map<AttrInfo<Object>,AttrEvalFunc> evalFuncs, Collection<AttrInfo<Object>> attrs, long now) {
+		val res = new EvalAttrsResult();
+		for(val attr: attrs) {
+			val prev = data.attrs.get(attr.name);
+			Object value;
+			try {
+				value = evalFuncs.get(attr).eval(this);
+			} catch(RuntimeException ex) {
+				log.error("Failed to evaluate attr '" + attr.name + "' on '" + path + "'.. mark DIRTY", ex);
+				res.failedAttrs.add(attr);
+				if (prev != null && prev.getEvalStatus() != AttrEvalStatus.DIRTY) {
+					res.newAttrs(data).put(attr.name, new NodeAttr(attr, prev.getData(), prev.getLastEvalTimestamp(), AttrEvalStatus.DIRTY));
+				}
+				continue;
+			}
+			res.evaluatedAttrs.add(attr);
+			val unchanged = (value == null)? prev == null
+					: prev != null && prev.getEvalStatus() == AttrEvalStatus.OK && Objects.equals(prev.getData(), value);
+			if (unchanged) {
+				continue;
+			}
+			if (value != null) {
+				res.newAttrs(data).put(attr.name, new NodeAttr(attr, value, now, AttrEvalStatus.OK));
+			} else {
+				res.newAttrs(data).remove(attr.name);
+			}
+			res.changedAttrs.add(attr);
+		}
+		return res;
+	}
+
+	/** @return attr data of node, or null */
+	public Object attrData(AttrInfo<?> attr) {
+		return attrData(data, attr);
+	}
+
+	/** @return attr data of parent, or null */
+	public Object parentAttrData(AttrInfo<?> attr) {
+		val parent = getParentData();
+		return (parent != null)? attrData(parent, attr) : null;
+	}
+
+	public static Object attrData(NodeData data, AttrInfo<?> attr) {
+		val attrValue = data.attrs.get(attr.name);
+		return (attrValue != null)? attrValue.getData() : null;
+	}
+
+	/** @return copy of data with other attrs, same internal (transient) fields */
+	public static NodeData copyWithAttrs(NodeData data, Map<String,NodeAttr> attrs) {
+		val res = new NodeData(data.name, data.type, data.mask, data.childNames, ImmutableMap.copyOf(attrs),
+				data.externalCreationTime, data.externalLastModifiedTime, data.externalLength,
+				data.lastTreeDataUpdateTimeMillis, data.lastTreeDataUpdateCount);
+		res.setInternalFields(data.toInternalFields());
+		return res;
+	}
+
+}
@@ -0,0 +1,292 @@
+package fr.an.attrtreestore.impl.attreval;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.path4j.NodeNamesPath;
+
+import fr.an.attrtreestore.api.IReadTreeData;
+import fr.an.attrtreestore.api.IWriteTreeData;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.SynthethizedAttrInfo;
+import fr.an.attrtreestore.impl.attreval.IncrementalAttrEvalTreeData.AttrEvalFunc;
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * full-tree attribute evaluation, in parallel with fork-join: for initial load of a freshly scanned tree
+ * (cf IncrementalAttrEvalTreeData for incremental updates afterwards)
+ *
+ * 1 task per directory:
+ * <ul>
+ * <li>top-down: inherited / dependent / evaluable attrs of node, from already evaluated parent</li>
+ * <li>fork sub-directories tasks (split by sub-tree), evaluate small child (file / empty dir) inline</li>
+ * <li>bottom-up: synthesized attrs of node, from joined evaluated child</li>
+ * </ul>
+ * results are written to dest in batches: all child of a directory in 1 batch (child before parent),
+ * handed over to 1 dedicated writer thread => pool workers never contend on dest (which may not be thread-safe)
+ * failed attr evaluations are not stamped OK: previous value kept with status DIRTY, cf AttrEvalContext.evalAttrs()
+ */
+@Slf4j
+public class ForkJoinAttrTreeEvaluator {
+
+	private final IReadTreeData src;
+	private final IWriteTreeData dest;
+	private final ForkJoinPool pool;
+
+	/** registered attrs, split by evaluation order */
+	private final Map<AttrInfo<Object>,AttrEvalFunc> topDownEvalFuncs = new LinkedHashMap<>();
+	private final Map<AttrInfo<Object>,AttrEvalFunc> bottomUpEvalFuncs = new LinkedHashMap<>();
+
+	/** fork child task only when child has at least this number of child, else evaluate inline */
+	@Getter @Setter
+	private int forkMinChildCount = 1;
+
+	/** max pending batches for writer thread, before blocking evaluating tasks */
+	@Getter @Setter
+	private int writeQueueCapacity = 1024;
+
+	private final LongAdder evaluatedNodeCount = new LongAdder();
+	private final LongAdder writeBatchCount = new LongAdder();
+	private final LongAdder failedEvalCount = new LongAdder();
+
+	// ------------------------------------------------------------------------
+
+	public ForkJoinAttrTreeEvaluator(IReadTreeData src, IWriteTreeData dest, ForkJoinPool pool) {
+		this.src = src;
+		this.dest = dest;
+		this.pool = pool;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> void registerAttr(AttrInfo<T> attr, AttrEvalFunc evalFunc) {
+		val attrObj = (AttrInfo<Object>) attr;
+		if (attrObj instanceof SynthethizedAttrInfo) {
+			bottomUpEvalFuncs.put(attrObj, evalFunc);
+		} else {
+			topDownEvalFuncs.put(attrObj, evalFunc);
+		}
+	}
+
+	public long getEvaluatedNodeCount() {
+		return evaluatedNodeCount.sum();
+	}
+
+	public long getWriteBatchCount() {
+		return writeBatchCount.sum();
+	}
+
+	/** count of failed (node, attr) evaluations, marked DIRTY */
+	public long getFailedEvalCount() {
+		return failedEvalCount.sum();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** evaluate all registered attrs on all nodes under path (including), and write to dest
+	 * @return evaluated data of path, or null if not found
+	 */
+	public NodeData evaluateSubTree(NodeNamesPath path) {
+		val data = src.get(path);
+		if (data == null) {
+			return null;
+		}
+		val parentData = (path.size() > 0)? dest.get(path.toParent()) : null; // already evaluated, if any
+		val startTime = System.currentTimeMillis();
+		val writer = new DestWriter();
+		writer.start();
+		NodeData res;
+		try {
+			res = pool.invoke(new EvalDirTask(path, data, parentData, writer));
+			writer.enqueue(new NodeNamesPath[] { path }, new NodeData[] { res });
+		} finally {
+			writer.finish();
+		}
+		log.info("evaluated attrs on " + evaluatedNodeCount.sum() + " node(s), took " + (System.currentTimeMillis() - startTime) + " ms"
+				+ ((failedEvalCount.sum() != 0)? ", " + failedEvalCount.sum() + " failed attr evaluation(s) marked DIRTY" : ""));
+		return res;
+	}
+
+	// internal
+	// ------------------------------------------------------------------------
+
+	@SuppressWarnings("serial")
+	private class EvalDirTask extends RecursiveTask<NodeData> {
+		private final NodeNamesPath path;
+		private final NodeData data;
+		private final NodeData evaluatedParentData;
+		private final DestWriter writer;
+
+		EvalDirTask(NodeNamesPath path, NodeData data, NodeData evaluatedParentData, DestWriter writer) {
+			this.path = path;
+			this.data = data;
+			this.evaluatedParentData = evaluatedParentData;
+			this.writer = writer;
+		}
+
+		/** @return evaluated node data .. written by caller (batched with siblings) */
+		@Override
+		protected NodeData compute() {
+			// top-down
+			val topDownData = evalAttrs(topDownEvalFuncs, new AttrEvalContext(path, data, evaluatedParentData, null));
+
+			val childNames = data.childNames.asList();
+			val childCount = childNames.size();
+			val evaluatedChilds = new ArrayList<NodeData>(childCount);
+			if (childCount > 0) {
+				val childDatas = src.getAll(path, childNames);
+				val childPaths = new NodeNamesPath[childCount];
+				val childResults = new NodeData[childCount];
+				val childTasks = new EvalDirTask[childCount];
+				for(int i = 0; i < childCount; i++) {
+					val childName = childNames.get(i);
+					val childData = childDatas.get(childName);
+					if (childData == null) {
+						throw new IllegalStateException("child '" + childName + "' not found for '" + path + "'");
+					}
+					childPaths[i] = path.toChild(childName);
+					if (childData.childCount() >= forkMinChildCount && childData.childCount() > 0) {
+						childTasks[i] = new EvalDirTask(childPaths[i], childData, topDownData, writer);
+						childTasks[i].fork();
+					} else {
+						childResults[i] = evalLeaf(childPaths[i], childData, topDownData);
+					}
+				}
+				for(int i = childCount - 1; i >= 0; i--) { // join in reverse fork order
+					if (childTasks[i] != null) {
+						childResults[i] = childTasks[i].join();
+					}
+				}
+				for(int i = 0; i < childCount; i++) {
+					if (childResults[i] != null) {
+						evaluatedChilds.add(childResults[i]);
+					}
+				}
+				// write all child in 1 batch
+				writer.enqueue(childPaths, childResults);
+			}
+
+			// bottom-up
+			val res = evalAttrs(bottomUpEvalFuncs, new AttrEvalContext(path, topDownData, evaluatedParentData, evaluatedChilds));
+			evaluatedNodeCount.increment();
+			return res;
+		}
+
+		private NodeData evalLeaf(NodeNamesPath childPath, NodeData childData, NodeData parentData) {
+			val topDownData = evalAttrs(topDownEvalFuncs, new AttrEvalContext(childPath, childData, parentData, null));
+			val emptyChilds = new ArrayList<NodeData>(0);
+			val res = evalAttrs(bottomUpEvalFuncs, new AttrEvalContext(childPath, topDownData, parentData, emptyChilds));
+			evaluatedNodeCount.increment();
+			return res;
+		}
+	}
+
+	private NodeData evalAttrs(Map<AttrInfo<Object>,AttrEvalFunc> evalFuncs, AttrEvalContext ctx) {
+		val data = ctx.getData();
+		if (evalFuncs.isEmpty()) {
+			return data;
+		}
+		val evalRes = ctx.evalAttrs(evalFuncs, evalFuncs.keySet(), System.currentTimeMillis());
+		if (! evalRes.failedAttrs.isEmpty()) {
+			failedEvalCount.add(evalRes.failedAttrs.size());
+		}
+		return (evalRes.newAttrs != null)? AttrEvalContext.copyWithAttrs(data, evalRes.newAttrs) : data;
+	}
+
+	/** batch of evaluated datas, to write */
+	private static class WriteBatch {
+		final NodeNamesPath[] paths;
+		final NodeData[] datas;
+
+		WriteBatch(NodeNamesPath[] paths, NodeData[] datas) {
+			this.paths = paths;
+			this.datas = datas;
+		}
+	}
+
+	private static final WriteBatch END_BATCH = new WriteBatch(null, null);
+
+	private static final DefaultNamedThreadFactory writerThreadFactory = new DefaultNamedThreadFactory("AttrEval-Writer-", "", true);
+
+	/**
+	 * dedicated thread writing batches to dest, in enqueue order (child batch before parent batch)
+	 * after a write failure, remaining batches are discarded (never blocking tasks), failure rethrown by finish()
+	 */
+	private class DestWriter {
+		private final BlockingQueue<WriteBatch> queue = new ArrayBlockingQueue<>(writeQueueCapacity);
+		private final Thread thread;
+		private volatile RuntimeException writeFailure;
+
+		DestWriter() {
+			this.thread = writerThreadFactory.newThread(this::run);
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		void enqueue(NodeNamesPath[] paths, NodeData[] datas) {
+			try {
+				queue.put(new WriteBatch(paths, datas));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted", ex);
+			}
+		}
+
+		/** enqueue end, wait for all batches written */
+		void finish() {
+			try {
+				queue.put(END_BATCH);
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				thread.interrupt();
+				throw new RuntimeException("interrupted", ex);
+			}
+			val failure = writeFailure;
+			if (failure != null) {
+				throw new RuntimeException("Failed to write evaluated attrs", failure);
+			}
+		}
+
+		private void run() {
+			for(;;) {
+				WriteBatch batch;
+				try {
+					batch = queue.take();
+				} catch (InterruptedException ex) {
+					return;
+				}
+				if (batch == END_BATCH) {
+					return;
+				}
+				if (writeFailure != null) {
+					continue; // discard
+				}
+				try {
+					for(int i = 0; i < batch.paths.length; i++) {
+						if (batch.datas[i] != null) {
+							dest.put(batch.paths[i], batch.datas[i]);
+						}
+					}
+					writeBatchCount.increment();
+				} catch(RuntimeException ex) {
+					log.error("Failed to write evaluated attrs.. discard remaining batches", ex);
+					this.writeFailure = ex;
+				}
+			}
+		}
+	}
+
+}
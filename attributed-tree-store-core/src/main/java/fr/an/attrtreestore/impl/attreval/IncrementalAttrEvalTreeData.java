@@ -0,0 +1,499 @@
+package fr.an.attrtreestore.impl.attreval;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.path4j.NodeName;
+import org.path4j.NodeNamesPath;
+
+import fr.an.attrtreestore.api.IWriteTreeData;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.InheritedAttrInfo;
+import fr.an.attrtreestore.api.attrinfo.SynthethizedAttrInfo;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * incremental attribute evaluation, as a write-through decorator of an underlying tree (ex: PersistedTreeData => results saved in WAL)
+ *
+ * put/remove mark dirty (path, attr), then evaluateDirty() recomputes only the dirty frontier, in passes:
+ * <ul>
+ * <li>top-down pass: inherited / dependent / evaluable attrs, shallowest paths first</li>
+ * <li>bottom-up pass: synthesized attrs, deepest paths first</li>
+ * </ul>
+ * when a recomputed value changes, dependents are marked dirty following inverse dependencies of AttrInfo
+ * (propagateToParentAttrs / propagateToChildAttrs / propagateToNodeAttrs) .. and processed in same pass when possible.
+ * synthesized (resp. inherited) attrs also implicitly depend on same attr of children (resp. parent), for recursive aggregates
+ * => a file change deep in the tree updates ancestor aggregates in O(depth)
+ *
+ * dirty attrs are also flagged in treeDataRecomputationMask of nodes (bit = registration order, first 32 attrs),
+ * persisted before the write that clears them => after restart, recoverDirtyFromMasks() rebuilds the in-memory dirty set
+ *
+ * thread-safety: the dirty set is guarded by an in-memory only lock, never held during delegate I/O.
+ * read-modify-write of 1 node (put vs evaluation) are serialized per path stripe,
+ * remove is exclusive with in-flight evaluations (a removed sub-tree must not be re-written by a concurrent evaluation)
+ */
+@Slf4j
+public class IncrementalAttrEvalTreeData implements IWriteTreeData {
+
+	/** evaluation function of 1 attr on 1 node */
+	@FunctionalInterface
+	public static interface AttrEvalFunc {
+		/** @return new attr data, or null for no attr */
+		Object eval(AttrEvalContext ctx);
+	}
+
+	private final IWriteTreeData delegate;
+
+	/** guards dirty, currPass .. in-memory only, never held during delegate I/O */
+	private final Object lock = new Object();
+
+	private static final int PATH_LOCK_STRIPES = 64;
+	/** serialize read-modify-write of same node (by path hash) */
+	private final Object[] pathLocks = new Object[PATH_LOCK_STRIPES];
+
+	/** read: put / node evaluation, write: remove */
+	private final ReentrantReadWriteLock removeLock = new ReentrantReadWriteLock();
+
+	/** single evaluateDirty() at a time */
+	private final Object evalRunLock = new Object();
+
+	/** registered attrs, in registration order (= bit in treeDataRecomputationMask) .. copy-on-write */
+	private volatile Map<AttrInfo<Object>,AttrEvalFunc> evalFuncs = new LinkedHashMap<>();
+	private volatile Map<AttrInfo<Object>,Integer> attrMaskBits = new HashMap<>();
+
+	private final Map<NodeNamesPath,Set<AttrInfo<Object>>> dirty = new LinkedHashMap<>();
+
+	/** current pass, to enqueue paths marked dirty while evaluating */
+	private EvalPass currPass;
+
+	@Getter @Setter
+	private int maxRounds = 100;
+
+	@Getter
+	private long evalCount;
+	@Getter
+	private long updatedNodeCount;
+
+	// ------------------------------------------------------------------------
+
+	public IncrementalAttrEvalTreeData(IWriteTreeData delegate) {
+		this.delegate = delegate;
+		for(int i = 0; i < PATH_LOCK_STRIPES; i++) {
+			pathLocks[i] = new Object();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> void registerAttr(AttrInfo<T> attr, AttrEvalFunc evalFunc) {
+		synchronized(lock) {
+			val attrObj = (AttrInfo<Object>) attr;
+			val newEvalFuncs = new LinkedHashMap<AttrInfo<Object>,AttrEvalFunc>(evalFuncs);
+			if (! newEvalFuncs.containsKey(attrObj)) {
+				val bit = newEvalFuncs.size();
+				if (bit < 32) {
+					val newAttrMaskBits = new HashMap<AttrInfo<Object>,Integer>(attrMaskBits);
+					newAttrMaskBits.put(attrObj, bit);
+					this.attrMaskBits = newAttrMaskBits;
+				}
+			}
+			newEvalFuncs.put(attrObj, evalFunc);
+			this.evalFuncs = newEvalFuncs;
+		}
+	}
+
+	// implements IReadTreeData, IWriteTreeData
+	// ------------------------------------------------------------------------
+
+	@Override
+	public NodeData get(NodeNamesPath path) {
+		return delegate.get(path);
+	}
+
+	@Override
+	public Map<NodeName,NodeData> getAll(NodeNamesPath parentPath, Collection<NodeName> childNames) {
+		return delegate.getAll(parentPath, childNames);
+	}
+
+	@Override
+	public void put(NodeNamesPath path, NodeData data) {
+		val attrs = evalFuncs.keySet();
+		// flag own attrs before write, so mask is saved with data .. on a copy, caller data not modified
+		int mask = data.getTreeDataRecomputationMask();
+		for(val attr: attrs) {
+			mask |= maskBit(attr);
+		}
+		val dataCopy = AttrEvalContext.copyWithAttrs(data, data.attrs);
+		dataCopy.setTreeDataRecomputationMask(mask);
+
+		removeLock.readLock().lock();
+		try {
+			synchronized(pathLock(path)) {
+				delegate.put(path, dataCopy);
+			}
+			if (path.size() > 0) {
+				persistDirtyMask(path.toParent(), bottomUpAttrs(attrs));
+			}
+		} finally {
+			removeLock.readLock().unlock();
+		}
+
+		synchronized(lock) {
+			for(val attr: attrs) {
+				markDirty(path, attr);
+			}
+			markParentSynthetizedDirty(path);
+		}
+	}
+
+	@Override
+	public void remove(NodeNamesPath path) {
+		removeLock.writeLock().lock();
+		try {
+			delegate.remove(path);
+			if (path.size() > 0) {
+				persistDirtyMask(path.toParent(), bottomUpAttrs(evalFuncs.keySet()));
+			}
+		} finally {
+			removeLock.writeLock().unlock();
+		}
+
+		synchronized(lock) {
+			dirty.keySet().removeIf(p -> p.startsWith(path));
+			markParentSynthetizedDirty(path);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** mark all registered attrs dirty, for path and all its descendants .. for initial full evaluation */
+	public void markSubTreeDirty(NodeNamesPath path) {
+		val data = delegate.get(path);
+		if (data == null) {
+			return;
+		}
+		synchronized(lock) {
+			for(val attr: evalFuncs.keySet()) {
+				markDirty(path, attr);
+			}
+		}
+		for(val childName: data.childNames) {
+			// *** recurse ***
+			markSubTreeDirty(path.toChild(childName));
+		}
+	}
+
+	/**
+	 * rebuild in-memory dirty set from persisted non-zero treeDataRecomputationMask of path and its descendants,
+	 * ex: after restart, when previous evaluation was not completed.
+	 * to call after registerAttr() in same order as before (= same mask bits), then evaluateDirty()
+	 * (attrs registered after the first 32 have no mask bit, can not be recovered)
+	 * @return count of recovered dirty paths
+	 */
+	public int recoverDirtyFromMasks(NodeNamesPath path) {
+		val data = delegate.get(path);
+		if (data == null) {
+			return 0;
+		}
+		return recursiveRecoverDirty(path, data);
+	}
+
+	private int recursiveRecoverDirty(NodeNamesPath path, NodeData data) {
+		int res = 0;
+		val mask = data.getTreeDataRecomputationMask();
+		if (mask != 0) {
+			synchronized(lock) {
+				for(val attr: evalFuncs.keySet()) {
+					if ((mask & maskBit(attr)) != 0) {
+						markDirty(path, attr);
+					}
+				}
+			}
+			res++;
+		}
+		if (! data.childNames.isEmpty()) {
+			val childDatas = delegate.getAll(path, data.childNames);
+			for(val childName: data.childNames) {
+				val childData = childDatas.get(childName);
+				if (childData != null) {
+					// *** recurse ***
+					res += recursiveRecoverDirty(path.toChild(childName), childData);
+				}
+			}
+		}
+		return res;
+	}
+
+	public int getDirtyPathCount() {
+		synchronized(lock) {
+			return dirty.size();
+		}
+	}
+
+	/**
+	 * recompute dirty frontier, until no more dirty (or maxRounds)
+	 * @return count of evaluated (node, attr)
+	 */
+	public int evaluateDirty() {
+		synchronized(evalRunLock) {
+			int res = 0;
+			for(int round = 0; getDirtyPathCount() != 0; round++) {
+				if (round >= maxRounds) {
+					log.warn("attr evaluation not stable after " + round + " rounds, " + getDirtyPathCount() + " dirty path(s) remaining.. cyclic dependencies?");
+					break;
+				}
+				res += evalPass(false);
+				res += evalPass(true);
+			}
+			return res;
+		}
+	}
+
+	// internal
+	// ------------------------------------------------------------------------
+
+	private Object pathLock(NodeNamesPath path) {
+		return pathLocks[(path.hashCode() & 0x7FFFFFFF) % PATH_LOCK_STRIPES];
+	}
+
+	private int maskBit(AttrInfo<Object> attr) {
+		val bit = attrMaskBits.get(attr);
+		return (bit != null)? (1 << bit) : 0;
+	}
+
+	private static boolean isBottomUp(AttrInfo<Object> attr) {
+		return attr instanceof SynthethizedAttrInfo;
+	}
+
+	private void markDirty(NodeNamesPath path, AttrInfo<Object> attr) {
+		if (! evalFuncs.containsKey(attr)) {
+			return; // not evaluated here
+		}
+		dirty.computeIfAbsent(path, k -> new LinkedHashSet<>()).add(attr);
+		val pass = currPass;
+		if (pass != null && pass.bottomUp == isBottomUp(attr)) {
+			pass.enqueue(path);
+		}
+	}
+
+	private static Set<AttrInfo<Object>> bottomUpAttrs(Collection<AttrInfo<Object>> attrs) {
+		val res = new LinkedHashSet<AttrInfo<Object>>();
+		for(val attr: attrs) {
+			if (isBottomUp(attr)) {
+				res.add(attr);
+			}
+		}
+		return res;
+	}
+
+	private void markParentSynthetizedDirty(NodeNamesPath path) {
+		if (path.size() == 0) {
+			return;
+		}
+		val parentPath = path.toParent();
+		for(val attr: evalFuncs.keySet()) {
+			if (isBottomUp(attr)) {
+				markDirty(parentPath, attr);
+			}
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class EvalPass {
+		final boolean bottomUp;
+		final PriorityQueue<NodeNamesPath> queue;
+		final Set<NodeNamesPath> queued = new HashSet<>();
+
+		void enqueue(NodeNamesPath path) {
+			if (queued.add(path)) {
+				queue.add(path);
+			}
+		}
+	}
+
+	private int evalPass(boolean bottomUp) {
+		Comparator<NodeNamesPath> byDepth = Comparator.comparingInt(NodeNamesPath::size);
+		val pass = new EvalPass(bottomUp, new PriorityQueue<>(bottomUp? byDepth.reversed() : byDepth));
+		synchronized(lock) {
+			for(val e: dirty.entrySet()) {
+				if (e.getValue().stream().anyMatch(a -> isBottomUp(a) == bottomUp)) {
+					pass.enqueue(e.getKey());
+				}
+			}
+			this.currPass = pass;
+		}
+		int res = 0;
+		try {
+			for(;;) {
+				NodeNamesPath path;
+				val evalAttrs = new ArrayList<AttrInfo<Object>>();
+				synchronized(lock) {
+					if (pass.queue.isEmpty()) {
+						break;
+					}
+					path = pass.queue.poll();
+					pass.queued.remove(path);
+					val dirtyAttrs = dirty.get(path);
+					if (dirtyAttrs == null) {
+						continue;
+					}
+					for(val attr: dirtyAttrs) {
+						if (isBottomUp(attr) == bottomUp) {
+							evalAttrs.add(attr);
+						}
+					}
+					dirtyAttrs.removeAll(evalAttrs);
+					if (dirtyAttrs.isEmpty()) {
+						dirty.remove(path);
+					}
+				}
+				if (! evalAttrs.isEmpty()) {
+					res += evalNode(path, evalAttrs); // outside of lock
+				}
+			}
+		} finally {
+			synchronized(lock) {
+				this.currPass = null;
+			}
+		}
+		return res;
+	}
+
+	/** dependents of changed attrs of 1 node, to mark dirty */
+	private static class DirtyDependents {
+		final Map<NodeNamesPath,Set<AttrInfo<Object>>> attrsByPath = new LinkedHashMap<>();
+
+		void add(NodeNamesPath path, AttrInfo<Object> attr) {
+			attrsByPath.computeIfAbsent(path, k -> new LinkedHashSet<>()).add(attr);
+		}
+	}
+
+	private int evalNode(NodeNamesPath path, List<AttrInfo<Object>> attrs) {
+		val evalFuncs = this.evalFuncs;
+		DirtyDependents dependents = null;
+		removeLock.readLock().lock();
+		try {
+			synchronized(pathLock(path)) {
+				val data = delegate.get(path);
+				if (data == null) {
+					return 0; // removed meanwhile
+				}
+				val ctx = new AttrEvalContext(delegate, path, data);
+				// failed attrs: marked DIRTY, and kept flagged in mask (retry after recoverDirtyFromMasks())
+				val evalRes = ctx.evalAttrs(evalFuncs, attrs, System.currentTimeMillis());
+				int clearMask = 0;
+				for(val attr: evalRes.evaluatedAttrs) {
+					clearMask |= maskBit(attr);
+				}
+				evalCount += evalRes.evaluatedAttrs.size();
+				val newAttrs = evalRes.newAttrs;
+				int newMask = data.getTreeDataRecomputationMask() & ~clearMask;
+				if (newAttrs != null) {
+					dependents = dirtyDependents(path, data.childNames, evalRes.changedAttrs);
+					// persist dirty flags of dependents before the write clearing ours, for recoverDirtyFromMasks()
+					for(val e: dependents.attrsByPath.entrySet()) {
+						if (e.getKey().equals(path)) {
+							for(val attr: e.getValue()) {
+								newMask |= maskBit(attr);
+							}
+						} else {
+							persistDirtyMask(e.getKey(), e.getValue());
+						}
+					}
+					val newData = AttrEvalContext.copyWithAttrs(data, newAttrs);
+					newData.setTreeDataRecomputationMask(newMask);
+					delegate.put(path, newData);
+					updatedNodeCount++;
+				} else if (newMask != data.getTreeDataRecomputationMask()) {
+					val newData = AttrEvalContext.copyWithAttrs(data, data.attrs);
+					newData.setTreeDataRecomputationMask(newMask); // transient field
+					delegate.put_transientFieldsChanged(path, newData);
+				}
+			}
+		} finally {
+			removeLock.readLock().unlock();
+		}
+
+		if (dependents != null) {
+			synchronized(lock) {
+				for(val e: dependents.attrsByPath.entrySet()) {
+					for(val attr: e.getValue()) {
+						markDirty(e.getKey(), attr);
+					}
+				}
+			}
+		}
+		return attrs.size();
+	}
+
+	/** @return dependents of changed attrs, following inverse dependencies */
+	private DirtyDependents dirtyDependents(NodeNamesPath path, Collection<NodeName> childNames, List<AttrInfo<Object>> changedAttrs) {
+		val evalFuncs = this.evalFuncs;
+		val res = new DirtyDependents();
+		for(val attr: changedAttrs) {
+			if (path.size() > 0) {
+				val parentPath = path.toParent();
+				if (attr instanceof SynthethizedAttrInfo) {
+					res.add(parentPath, attr); // implicit recursive aggregate (can not be declared in own ctor)
+				}
+				for(val parentAttr: attr.getInv_propagateToParentAttrs()) {
+					res.add(parentPath, parentAttr);
+				}
+			}
+			val toChildAttrs = new ArrayList<AttrInfo<Object>>(attr.getInv_propagateToChildAttrs());
+			if (attr instanceof InheritedAttrInfo) {
+				toChildAttrs.add(attr); // implicit recursive inherited
+			}
+			for(val childAttr: toChildAttrs) {
+				for(val childName: childNames) {
+					res.add(path.toChild(childName), childAttr);
+				}
+			}
+			for(val nodeAttr: attr.getInv_propagateToNodeAttrs()) {
+				res.add(path, nodeAttr);
+			}
+		}
+		res.attrsByPath.values().forEach(attrs -> attrs.removeIf(a -> ! evalFuncs.containsKey(a))); // not evaluated here
+		res.attrsByPath.values().removeIf(Set::isEmpty);
+		return res;
+	}
+
+	/** set dirty bits in persisted mask of node (transient field write), when not already set */
+	private void persistDirtyMask(NodeNamesPath path, Set<AttrInfo<Object>> attrs) {
+		int bits = 0;
+		for(val attr: attrs) {
+			bits |= maskBit(attr);
+		}
+		if (bits == 0) {
+			return;
+		}
+		synchronized(pathLock(path)) { // may be nested in lock of evaluated node: only 1 evaluator, put/remove never nest
+			val data = delegate.get(path);
+			if (data == null) {
+				return;
+			}
+			val prevMask = data.getTreeDataRecomputationMask();
+			if ((prevMask & bits) == bits) {
+				return;
+			}
+			val newData = AttrEvalContext.copyWithAttrs(data, data.attrs);
+			newData.setTreeDataRecomputationMask(prevMask | bits);
+			delegate.put_transientFieldsChanged(path, newData);
+		}
+	}
+
+}
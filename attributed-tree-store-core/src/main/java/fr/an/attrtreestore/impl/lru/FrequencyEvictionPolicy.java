@@ -0,0 +1,75 @@
+package fr.an.attrtreestore.impl.lru;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+
+/**
+ * W-TinyLFU-like ordering of eviction candidates (sub-trees, or node datas), cf NodeData.lruFrequency():
+ * <ul>
+ * <li>"window": candidates queried within recentWindowMillis are protected, evicted only after all others
+ *   ... newly loaded entries need time to accumulate frequency, before competing with resident ones</li>
+ * <li>"main": other candidates evicted by increasing (decayed) frequency, then least recently queried first</li>
+ * </ul>
+ * frequencies are aged by periodic halving (cf LruDecayTicker), instead of the count-min sketch reset of TinyLFU
+ */
+public class FrequencyEvictionPolicy {
+
+	@AllArgsConstructor
+	public static class Candidate<T> {
+		public final T ref;
+		public final long frequency;
+		public final long lastQueryTimeMillis;
+		public final long estimatedMemSize;
+	}
+
+	/** candidates queried recently (=window) are evicted last */
+	@Getter @Setter
+	private long recentWindowMillis = 60_000;
+
+	// ------------------------------------------------------------------------
+
+	public FrequencyEvictionPolicy() {
+	}
+
+	public FrequencyEvictionPolicy(long recentWindowMillis) {
+		this.recentWindowMillis = recentWindowMillis;
+	}
+
+	// ------------------------------------------------------------------------
+
+	public boolean isInWindow(Candidate<?> c, long now) {
+		return now - c.lastQueryTimeMillis < recentWindowMillis;
+	}
+
+	/** @return candidates sorted in eviction order: coldest first, window last */
+	public <T> List<Candidate<T>> sortedVictims(List<Candidate<T>> candidates, long now) {
+		val res = new ArrayList<Candidate<T>>(candidates);
+		Comparator<Candidate<T>> cmp = Comparator.comparing((Candidate<T> c) -> isInWindow(c, now))
+				.thenComparingLong(c -> c.frequency)
+				.thenComparingLong(c -> c.lastQueryTimeMillis);
+		res.sort(cmp);
+		return res;
+	}
+
+	/** @return first candidates in eviction order, until cumulated estimatedMemSize reaches untilFreedMemSize */
+	public <T> List<Candidate<T>> selectVictims(List<Candidate<T>> candidates, long untilFreedMemSize, long now) {
+		val sorted = sortedVictims(candidates, now);
+		val res = new ArrayList<Candidate<T>>();
+		long freed = 0;
+		for(val c: sorted) {
+			if (freed >= untilFreedMemSize) {
+				break;
+			}
+			res.add(c);
+			freed += c.estimatedMemSize;
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,86 @@
+package fr.an.attrtreestore.impl.lru;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * clock for exponential decay of lru counters: periodically calls registered targets
+ * (ex: CachedROIndexedBlobStorage_TreeNodeData::decayLruCounts), each halving amortized counts of its in-memory NodeDatas
+ * cf NodeData.decayLruCount()
+ */
+@Slf4j
+public class LruDecayTicker {
+
+	private final String displayName;
+
+	private final CopyOnWriteArrayList<Runnable> targets = new CopyOnWriteArrayList<>();
+
+	/** half-life of usage counts */
+	@Getter @Setter
+	private long tickPeriodMillis = 5 * 60_000;
+
+	private ScheduledExecutorService tickExecutor;
+
+	@Getter
+	private volatile long tickCount;
+
+	// ------------------------------------------------------------------------
+
+	public LruDecayTicker(String displayName) {
+		this.displayName = displayName;
+	}
+
+	// ------------------------------------------------------------------------
+
+	public void addTarget(Runnable decayTarget) {
+		targets.add(decayTarget);
+	}
+
+	public void removeTarget(Runnable decayTarget) {
+		targets.remove(decayTarget);
+	}
+
+	public synchronized boolean isStarted() {
+		return tickExecutor != null;
+	}
+
+	public synchronized void start() {
+		if (tickExecutor != null) {
+			return;
+		}
+		log.info("start lru decay ticker (period:" + tickPeriodMillis + " ms) for " + displayName);
+		this.tickExecutor = Executors.newSingleThreadScheduledExecutor(
+				new DefaultNamedThreadFactory("Lru-Decay-", " " + displayName, true));
+		tickExecutor.scheduleWithFixedDelay(this::tick, tickPeriodMillis, tickPeriodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (tickExecutor == null) {
+			return;
+		}
+		log.info("stop lru decay ticker for " + displayName);
+		tickExecutor.shutdownNow();
+		this.tickExecutor = null;
+	}
+
+	/** 1 clock tick, on all targets .. called periodically when started, or explicitly */
+	public void tick() {
+		for(val target: targets) {
+			try {
+				target.run();
+			} catch(RuntimeException ex) {
+				log.error("Failed lru decay tick for " + displayName + ".. ignore, retry next period", ex);
+			}
+		}
+		tickCount++;
+	}
+
+}
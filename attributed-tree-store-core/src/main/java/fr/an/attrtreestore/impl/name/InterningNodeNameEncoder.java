@@ -0,0 +1,41 @@
+package fr.an.attrtreestore.impl.name;
+
+import org.path4j.NodeName;
+import org.path4j.NodeNameEncoder;
+
+import lombok.Getter;
+
+/**
+ * decorator for NodeNameEncoder, interning all encoded names
+ */
+public class InterningNodeNameEncoder extends NodeNameEncoder {
+
+	@Getter
+	private final NodeNameEncoder delegate;
+
+	@Getter
+	private final NodeNameInterner interner;
+
+	// ------------------------------------------------------------------------
+
+	public InterningNodeNameEncoder(NodeNameEncoder delegate, NodeNameInterner interner) {
+		this.delegate = delegate;
+		this.interner = interner;
+	}
+
+	/** @return encoder itself if already interning, else wrapped with default (global) interner */
+	public static NodeNameEncoder of(NodeNameEncoder encoder) {
+		if (encoder == null || encoder instanceof InterningNodeNameEncoder) {
+			return encoder;
+		}
+		return new InterningNodeNameEncoder(encoder, NodeNameInterner.getDefault());
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public NodeName encode(String name) {
+		return interner.intern(delegate.encode(name));
+	}
+
+}
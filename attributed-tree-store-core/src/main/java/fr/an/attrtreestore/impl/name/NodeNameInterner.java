@@ -0,0 +1,63 @@
+package fr.an.attrtreestore.impl.name;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.path4j.NodeName;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import lombok.val;
+
+/**
+ * online interner for NodeName: equal names share 1 instance, from the moment they are loaded (listing, index file, WAL replay)
+ * 
+ * concurrent, weak-valued: unused names are garbage collected, no explicit bound needed
+ * (cf NodeNameRefCounters + NodeNameRefInternalizer for offline passes on an already loaded tree)
+ */
+public class NodeNameInterner {
+
+	private static final NodeNameInterner DEFAULT = new NodeNameInterner();
+
+	private final Interner<NodeName> interner = Interners.newBuilder().weak().concurrencyLevel(16).build();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+
+	// ------------------------------------------------------------------------
+
+	/** global dictionary, shared by all InterningNodeNameEncoder by default */
+	public static NodeNameInterner getDefault() {
+		return DEFAULT;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** @return the shared instance equals to name (name itself when first seen) */
+	public NodeName intern(NodeName name) {
+		if (name == null) {
+			return null;
+		}
+		val res = interner.intern(name);
+		if (res == name) {
+			missCount.increment();
+		} else {
+			hitCount.increment();
+		}
+		return res;
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "NodeNameInterner[hit:" + getHitCount() + ", miss:" + getMissCount() + "]";
+	}
+
+}
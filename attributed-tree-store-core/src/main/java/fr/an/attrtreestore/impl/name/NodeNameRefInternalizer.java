@@ -41,7 +41,7 @@ public class NodeNameRefInternalizer {
 						NodeName childNameRef = childName;
 						val foundChildCounter = refCounter.getCounter(childName);
 						if (foundChildCounter != null) {
-							if (foundChildCounter.ref != data.name) {
+							if (foundChildCounter.ref != childName) {
 								childNameRefsChanged++;
 								childNameRef = foundChildCounter.ref;
 							}
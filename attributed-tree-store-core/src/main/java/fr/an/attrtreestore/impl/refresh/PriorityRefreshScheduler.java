@@ -0,0 +1,262 @@
+package fr.an.attrtreestore.impl.refresh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.path4j.NodeNamesPath;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * scheduler for background refreshes of paths: 
+ * <ul>
+ * <li>pending paths ordered by priority (cf priorityOf(): staleness x popularity), then FIFO.. hot paths first</li>
+ * <li>enqueue / dequeue / cancel / re-prioritize in O(log n): TreeSet + index by path, no scan</li>
+ * <li>bounded concurrency: at most maxConcurrency workers submitted to executor, each polling next task until empty</li>
+ * <li>optional RateLimiter, may be shared by several schedulers on same backend.. backend never overloaded.
+ * never blocking in acquire(): executor may be ForkJoinPool.commonPool(), when no permit the worker releases its thread
+ * and is resubmitted later by a timer</li>
+ * </ul>
+ * a path is pending at most once: re-enqueue only raises its priority
+ */
+@Slf4j
+public class PriorityRefreshScheduler {
+
+	@FunctionalInterface
+	public static interface RefreshFunc {
+		void refresh(NodeNamesPath path);
+	}
+
+	private static class PendingEntry implements Comparable<PendingEntry> {
+		final NodeNamesPath path;
+		final long seq;
+		double priority;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		PendingEntry(NodeNamesPath path, long seq, double priority) {
+			this.path = path;
+			this.seq = seq;
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(PendingEntry other) {
+			int res = Double.compare(other.priority, priority); // highest first
+			if (res == 0) {
+				res = Long.compare(seq, other.seq); // then FIFO
+			}
+			return res;
+		}
+	}
+
+	private final String displayName;
+	private final RefreshFunc refreshFunc;
+	private final Supplier<ExecutorService> executorSupplier;
+
+	/** shared by all schedulers, only resubmits rate-limited workers to their executor */
+	private static final ScheduledExecutorService rateLimitResubmitTimer = Executors.newSingleThreadScheduledExecutor(
+			new DefaultNamedThreadFactory("Refresh-RateLimit-Timer-", "", true));
+
+	private final Object lock = new Object();
+	// @GuardedBy("lock")
+	private final TreeSet<PendingEntry> queue = new TreeSet<>();
+	private final Map<NodeNamesPath,PendingEntry> pendingByPath = new HashMap<>();
+	private long seqGenerator;
+	private int workerCount;
+
+	@Getter @Setter
+	private volatile int maxConcurrency;
+
+	/** null for no rate limit */
+	@Getter @Setter
+	private volatile RateLimiter rateLimiter;
+
+	@Getter
+	private long processedCount;
+	@Getter
+	private long failedCount;
+	@Getter
+	private long cancelledCount;
+
+	// ------------------------------------------------------------------------
+
+	public PriorityRefreshScheduler(String displayName, RefreshFunc refreshFunc, 
+			Supplier<ExecutorService> executorSupplier, int maxConcurrency) {
+		this.displayName = displayName;
+		this.refreshFunc = refreshFunc;
+		this.executorSupplier = executorSupplier;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** priority of refreshing a cached node: staleness (seconds) x popularity (lru counts) */
+	public static double priorityOf(long stalenessMillis, int lruCount, int lruAmortizedCount) {
+		double staleness = 1.0 + Math.max(0, stalenessMillis) / 1000.0;
+		double popularity = 1.0 + Math.max(0, lruCount) + Math.max(0, lruAmortizedCount);
+		return staleness * popularity;
+	}
+
+	/** enqueue path, or raise its priority if already pending 
+	 * @return future completed when refreshed (or cancelled)
+	 */
+	public CompletableFuture<Void> enqueue(NodeNamesPath path, double priority) {
+		PendingEntry entry;
+		boolean startWorker = false;
+		synchronized(lock) {
+			entry = pendingByPath.get(path);
+			if (entry != null) {
+				if (priority > entry.priority) {
+					queue.remove(entry);
+					entry.priority = priority;
+					queue.add(entry);
+				}
+				return entry.future;
+			}
+			entry = new PendingEntry(path, seqGenerator++, priority);
+			queue.add(entry);
+			pendingByPath.put(path, entry);
+			if (workerCount < maxConcurrency) {
+				workerCount++;
+				startWorker = true;
+			}
+		}
+		if (startWorker) {
+			submitWorker();
+		}
+		return entry.future;
+	}
+
+	/** @return true if was pending (not yet in progress) */
+	public boolean cancel(NodeNamesPath path) {
+		PendingEntry entry;
+		synchronized(lock) {
+			entry = pendingByPath.remove(path);
+			if (entry == null) {
+				return false;
+			}
+			queue.remove(entry);
+			cancelledCount++;
+		}
+		entry.future.cancel(false);
+		return true;
+	}
+
+	public boolean isPending(NodeNamesPath path) {
+		synchronized(lock) {
+			return pendingByPath.containsKey(path);
+		}
+	}
+
+	public int getPendingCount() {
+		synchronized(lock) {
+			return queue.size();
+		}
+	}
+
+	public int getWorkerCount() {
+		synchronized(lock) {
+			return workerCount;
+		}
+	}
+
+	/** cancel all pending */
+	public void clear() {
+		Iterable<PendingEntry> entries;
+		synchronized(lock) {
+			entries = new TreeSet<>(queue);
+			cancelledCount += queue.size();
+			queue.clear();
+			pendingByPath.clear();
+		}
+		for(val entry: entries) {
+			entry.future.cancel(false);
+		}
+	}
+
+	// internal
+	// ------------------------------------------------------------------------
+
+	private void submitWorker() {
+		try {
+			executorSupplier.get().execute(this::workerLoop);
+		} catch(RejectedExecutionException ex) {
+			// remaining pending will be processed by running workers, or at next enqueue
+			log.warn("Failed to submit refresh worker for " + displayName + ".. " + ex.getMessage());
+			synchronized(lock) {
+				workerCount--;
+			}
+		}
+	}
+
+	private void scheduleResubmitWorker(RateLimiter limiter) {
+		val delayMillis = Math.max(1, (long) (1000.0 / limiter.getRate()));
+		try {
+			rateLimitResubmitTimer.schedule(this::submitWorker, delayMillis, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException ex) {
+			log.warn("Failed to schedule refresh worker for " + displayName + ".. " + ex.getMessage());
+			synchronized(lock) {
+				workerCount--;
+			}
+		}
+	}
+
+	private void workerLoop() {
+		for(;;) {
+			val limiter = rateLimiter;
+			if (limiter != null) {
+				synchronized(lock) {
+					if (queue.isEmpty() || workerCount > maxConcurrency) {
+						workerCount--; // do not consume a permit for nothing
+						return;
+					}
+				}
+				if (! limiter.tryAcquire()) {
+					// no permit yet.. release executor thread, worker resubmitted later (still counted in workerCount)
+					scheduleResubmitWorker(limiter);
+					return;
+				}
+			}
+			PendingEntry entry;
+			synchronized(lock) {
+				entry = queue.pollFirst();
+				if (entry == null || workerCount > maxConcurrency) {
+					if (entry != null) {
+						queue.add(entry); // maxConcurrency decreased.. leave to remaining workers
+					}
+					workerCount--;
+					return;
+				}
+				pendingByPath.remove(entry.path);
+			}
+			try {
+				refreshFunc.refresh(entry.path);
+				synchronized(lock) {
+					processedCount++;
+				}
+				entry.future.complete(null);
+			} catch(RuntimeException ex) {
+				log.error("Failed refresh '" + entry.path + "' for " + displayName + ".. ignore", ex);
+				synchronized(lock) {
+					failedCount++;
+				}
+				entry.future.completeExceptionally(ex);
+			}
+		}
+	}
+
+}
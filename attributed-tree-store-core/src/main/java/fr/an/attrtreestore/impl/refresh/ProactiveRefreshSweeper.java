@@ -0,0 +1,159 @@
+package fr.an.attrtreestore.impl.refresh;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.path4j.NodeNamesPath;
+
+import fr.an.attrtreestore.api.IInMemCacheReadTreeData;
+import fr.an.attrtreestore.api.override.OverrideNodeStatus;
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * background sweeper, keeping hot sub-trees warm: periodically walks the in-memory cached tree (getIfInMemCache, no IO), 
+ * and submits refresh of entries approaching expiration, before next user pays the backend latency.
+ * 
+ * only entries queried recently (lastTreeDataQueryTimeMillis) are candidates, weighted by recency x popularity x staleness.
+ * at most maxRefreshPerSecond x sweepPeriod refreshes submitted per sweep (backend call budget), highest weights first
+ */
+@Slf4j
+public class ProactiveRefreshSweeper {
+
+	@FunctionalInterface
+	public static interface RefreshSubmitter {
+		void submitRefresh(NodeNamesPath path, double priority);
+	}
+
+	@AllArgsConstructor
+	private static class Candidate {
+		final NodeNamesPath path;
+		final double weight;
+	}
+
+	private final String displayName;
+	private final IInMemCacheReadTreeData cache;
+	/** age from which data is due for refresh (= expiration - refresh-ahead delay) */
+	private final LongSupplier refreshDueAgeMillisSupplier;
+	private final RefreshSubmitter submitter;
+
+	@Getter @Setter
+	private long sweepPeriodMillis = 10_000;
+	/** backend call budget */
+	@Getter @Setter
+	private double maxRefreshPerSecond = 10;
+	/** entries not queried since are considered cold.. not refreshed */
+	@Getter @Setter
+	private long recentQueryWindowMillis = 3600_000;
+	@Getter @Setter
+	private int maxVisitCountPerSweep = 1_000_000;
+
+	private ScheduledExecutorService sweepExecutor;
+
+	@Getter
+	private volatile long sweepCount;
+	@Getter
+	private volatile long lastSweepVisitCount;
+	@Getter
+	private volatile long submittedCount;
+
+	// ------------------------------------------------------------------------
+
+	public ProactiveRefreshSweeper(String displayName, IInMemCacheReadTreeData cache, 
+			LongSupplier refreshDueAgeMillisSupplier, RefreshSubmitter submitter) {
+		this.displayName = displayName;
+		this.cache = cache;
+		this.refreshDueAgeMillisSupplier = refreshDueAgeMillisSupplier;
+		this.submitter = submitter;
+	}
+
+	// ------------------------------------------------------------------------
+
+	public synchronized boolean isStarted() {
+		return sweepExecutor != null;
+	}
+
+	public synchronized void start() {
+		if (sweepExecutor != null) {
+			return;
+		}
+		log.info("start refresh sweeper (period:" + sweepPeriodMillis + " ms, max " + maxRefreshPerSecond + " refresh/s) for " + displayName);
+		this.sweepExecutor = Executors.newSingleThreadScheduledExecutor(
+				new DefaultNamedThreadFactory("Refresh-Sweeper-", " " + displayName, true));
+		sweepExecutor.scheduleWithFixedDelay(this::safeSweepOnce, sweepPeriodMillis, sweepPeriodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (sweepExecutor == null) {
+			return;
+		}
+		log.info("stop refresh sweeper for " + displayName);
+		sweepExecutor.shutdownNow();
+		this.sweepExecutor = null;
+	}
+
+	protected void safeSweepOnce() {
+		try {
+			sweepOnce();
+		} catch(RuntimeException ex) {
+			log.error("Failed refresh sweep for " + displayName + ".. ignore, retry next period", ex);
+		}
+	}
+
+	/** @return count of submitted refreshes */
+	public int sweepOnce() {
+		val now = System.currentTimeMillis();
+		val refreshDueAgeMillis = refreshDueAgeMillisSupplier.getAsLong();
+		val candidates = new ArrayList<Candidate>();
+
+		// walk in-memory cached tree only (not cached sub-trees skipped)
+		val remainPaths = new ArrayDeque<NodeNamesPath>();
+		remainPaths.push(NodeNamesPath.ROOT);
+		int visitCount = 0;
+		while(! remainPaths.isEmpty() && visitCount < maxVisitCountPerSweep) {
+			val path = remainPaths.pop();
+			val cachedData = cache.getIfInMemCache(path);
+			if (cachedData == null || cachedData.status != OverrideNodeStatus.UPDATED || cachedData.data == null) {
+				continue;
+			}
+			visitCount++;
+			val data = cachedData.data;
+			val ageMillis = now - data.getLastExternalRefreshTimeMillis();
+			val sinceQueryMillis = now - data.getLastTreeDataQueryTimeMillis();
+			if (ageMillis >= refreshDueAgeMillis 
+					&& data.getLastTreeDataQueryTimeMillis() > 0 && sinceQueryMillis < recentQueryWindowMillis) {
+				val recency = 1.0 / (1.0 + (double) sinceQueryMillis / recentQueryWindowMillis);
+				val weight = recency * PriorityRefreshScheduler.priorityOf(ageMillis, data.getLruCount(), data.getLruAmortizedCount());
+				candidates.add(new Candidate(path, weight));
+			}
+			for(val childName: data.childNames) {
+				remainPaths.push(path.toChild(childName));
+			}
+		}
+		this.lastSweepVisitCount = visitCount;
+		this.sweepCount++;
+
+		val budget = (int) Math.max(1, maxRefreshPerSecond * sweepPeriodMillis / 1000);
+		candidates.sort(Comparator.comparingDouble((Candidate c) -> c.weight).reversed());
+		val submitCount = Math.min(budget, candidates.size());
+		for(int i = 0; i < submitCount; i++) {
+			val candidate = candidates.get(i);
+			submitter.submitRefresh(candidate.path, candidate.weight);
+		}
+		this.submittedCount += submitCount;
+		if (candidates.size() > submitCount) {
+			log.info("refresh sweep for " + displayName + ": " + candidates.size() + " due, submitted " + submitCount + " (budget)");
+		}
+		return submitCount;
+	}
+
+}
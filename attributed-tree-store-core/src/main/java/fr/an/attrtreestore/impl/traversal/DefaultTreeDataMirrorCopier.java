@@ -114,9 +114,15 @@ public class DefaultTreeDataMirrorCopier<TCtx> extends TreeDataMirrorCopier<TCtx
 		if ((srcChildNames != null && !srcChildNames.isEmpty())) {
 			val childListCtx = visitor.preVisitChildrenList(currPath, ctx);
 			
+			// batched get of all child, instead of 1 get() per child re-resolving path
+			val childSrcDatas = src.getAll(currPath, srcChildNames);
 			for(val srcChildName: srcChildNames) {
 				val childPath = currPath.toChild(srcChildName);
-				val childSrcData = src.get(childPath);
+				val childSrcData = childSrcDatas.get(srcChildName);
+				if (childSrcData == null) {
+					// inconsistent src tree: child name listed in parent, but not found
+					throw new IllegalStateException("child not found '" + childPath + "', listed in parent childNames");
+				}
 				recursiveAdd(childPath, childSrcData, childListCtx);
 			}
 
@@ -0,0 +1,476 @@
+package fr.an.attrtreestore.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.path4j.NodeName;
+import org.path4j.NodeNamesPath;
+
+import fr.an.attrtreestore.api.IReadTreeData;
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.DoubleNodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.IntNodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.LongNodeAttr;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.DoubleAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.IntAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import lombok.Getter;
+import lombok.val;
+
+/**
+ * in-memory columnar snapshot of node attributes, for scans over sub-trees (ex: "sum size under /x") and bulk recomputation
+ * ... a utility built from any IReadTreeData, NOT the attribute storage of indexed trees (NodeData.attrs stay the reference)
+ *
+ * each node has an ordinal, in pre-order with children sorted by name (root = 0, sub-tree of node = contiguous ordinals range)
+ * one column per AttrInfo (addressed by AttrInfoIndexes index): primitive array for long/int/double attrs, else Object[]
+ * => scans touch contiguous memory
+ * path lookup: binary search in sorted child ordinals of each parent
+ *
+ * not thread-safe for writes (set*), reads after build are ok
+ */
+public class AttrColumnStore {
+
+	@Getter
+	private final AttrInfoIndexes attrIndexes;
+
+	@Getter
+	private int nodeCount;
+
+	/** node name by ordinal */
+	private NodeName[] names;
+
+	/** exclusive end ordinal of sub-tree by ordinal .. first child = ordinal + 1, next sibling = subTreeEnd */
+	private int[] subTreeEnds;
+
+	/** by ordinal: start offset in childOrdinals, children count in childCounts */
+	private int[] childStarts;
+	private int[] childCounts;
+	/** child ordinals of all parents, sorted by name within each parent range */
+	private int[] childOrdinals;
+	private int childOrdinalsLen;
+
+	/** by attr index */
+	private final AttrColumn[] columns;
+
+	// ------------------------------------------------------------------------
+
+	public AttrColumnStore(AttrInfoIndexes attrIndexes, int initialCapacity) {
+		this.attrIndexes = attrIndexes;
+		val capacity = Math.max(1, initialCapacity);
+		this.names = new NodeName[capacity];
+		this.subTreeEnds = new int[capacity];
+		this.childStarts = new int[capacity];
+		this.childCounts = new int[capacity];
+		this.childOrdinals = new int[capacity];
+		val attrInfos = attrIndexes.getIndex2Attr();
+		this.columns = new AttrColumn[attrInfos.size()];
+		for(int i = 0; i < columns.length; i++) {
+			columns[i] = createColumn(attrInfos.get(i), capacity);
+		}
+	}
+
+	/** build from tree (pre-order traversal, children sorted by name), copying attrs of all nodes */
+	public static AttrColumnStore build(IReadTreeData src, AttrInfoIndexes attrIndexes) {
+		val res = new AttrColumnStore(attrIndexes, 1024);
+		val rootData = src.get(NodeNamesPath.ROOT);
+		if (rootData != null) {
+			res.recursiveAdd(src, NodeNamesPath.ROOT, rootData);
+		}
+		return res;
+	}
+
+	private void recursiveAdd(IReadTreeData src, NodeNamesPath path, NodeData data) {
+		val ordinal = addNode(path.size() == 0 ? NodeName.EMPTY : path.last(), data);
+		val childNames = (data.childNames != null)? sortedNames(data.childNames.asList()) : null;
+		if (childNames != null && !childNames.isEmpty()) {
+			val childCount = childNames.size();
+			val childStart = allocChildOrdinals(childCount);
+			childStarts[ordinal] = childStart;
+			childCounts[ordinal] = childCount;
+			val childDatas = src.getAll(path, childNames);
+			for(int i = 0; i < childCount; i++) {
+				val childName = childNames.get(i);
+				val childData = childDatas.get(childName);
+				if (childData == null) {
+					throw new IllegalStateException("child '" + childName + "' not found for '" + path + "'");
+				}
+				childOrdinals[childStart + i] = nodeCount;
+				// *** recurse ***
+				recursiveAdd(src, path.toChild(childName), childData);
+			}
+		}
+		subTreeEnds[ordinal] = nodeCount;
+	}
+
+	private static List<NodeName> sortedNames(List<NodeName> names) {
+		for(int i = 1; i < names.size(); i++) {
+			if (names.get(i - 1).compareTo(names.get(i)) > 0) {
+				val res = new ArrayList<NodeName>(names);
+				Collections.sort(res);
+				return res;
+			}
+		}
+		return names; // already sorted, usual case
+	}
+
+	private int allocChildOrdinals(int count) {
+		val res = childOrdinalsLen;
+		childOrdinalsLen += count;
+		if (childOrdinalsLen > childOrdinals.length) {
+			this.childOrdinals = Arrays.copyOf(childOrdinals, Math.max(childOrdinalsLen, childOrdinals.length * 2));
+		}
+		return res;
+	}
+
+	private int addNode(NodeName name, NodeData data) {
+		val ordinal = nodeCount++;
+		if (ordinal == names.length) {
+			val newCapacity = names.length * 2;
+			this.names = Arrays.copyOf(names, newCapacity);
+			this.subTreeEnds = Arrays.copyOf(subTreeEnds, newCapacity);
+			this.childStarts = Arrays.copyOf(childStarts, newCapacity);
+			this.childCounts = Arrays.copyOf(childCounts, newCapacity);
+			for(val column: columns) {
+				column.ensureCapacity(newCapacity);
+			}
+		}
+		names[ordinal] = name;
+		subTreeEnds[ordinal] = ordinal + 1;
+		if (data.attrs != null) {
+			for(val attr: data.attrs.values()) {
+				columns[attrIndexes.attrToIndex(attr.attrInfo)].setAttr(ordinal, attr);
+			}
+		}
+		return ordinal;
+	}
+
+	private static AttrColumn createColumn(AttrInfo<Object> attrInfo, int capacity) {
+		AttrDataEncoder<?> encoder = attrInfo.attrDataEncoder;
+		if (encoder instanceof LongAttrDataEncoder) {
+			return new LongAttrColumn(attrInfo, capacity);
+		} else if (encoder instanceof IntAttrDataEncoder) {
+			return new IntAttrColumn(attrInfo, capacity);
+		} else if (encoder instanceof DoubleAttrDataEncoder) {
+			return new DoubleAttrColumn(attrInfo, capacity);
+		} else {
+			return new ObjectAttrColumn(attrInfo, capacity);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** @return ordinal of node, or -1 if not found */
+	public int ordinalOf(NodeNamesPath path) {
+		if (nodeCount == 0) {
+			return -1;
+		}
+		int ordinal = 0;
+		val pathSize = path.size();
+		for(int i = 0; i < pathSize; i++) {
+			ordinal = childOrdinalOf(ordinal, path.get(i));
+			if (ordinal == -1) {
+				return -1;
+			}
+		}
+		return ordinal;
+	}
+
+	/** @return ordinal of child, or -1 if not found .. binary search in sorted children */
+	public int childOrdinalOf(int parentOrdinal, NodeName childName) {
+		val start = childStarts[parentOrdinal];
+		int low = 0, high = childCounts[parentOrdinal] - 1;
+		while(low <= high) {
+			val mid = (low + high) >>> 1;
+			val child = childOrdinals[start + mid];
+			val cmp = names[child].compareTo(childName);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	public NodeName nameAt(int ordinal) {
+		return names[ordinal];
+	}
+
+	/** @return exclusive end ordinal of sub-tree, cf descendants range [ordinal+1, subTreeEnd[ */
+	public int subTreeEndOrdinal(int ordinal) {
+		return subTreeEnds[ordinal];
+	}
+
+	public AttrColumn column(AttrInfo<?> attrInfo) {
+		return columns[attrIndexes.attrToIndex(attrInfo)];
+	}
+
+	/** @return attr of node, or null if not set */
+	public NodeAttr getAttr(AttrInfo<?> attrInfo, int ordinal) {
+		return column(attrInfo).getAttr(ordinal);
+	}
+
+	/** @return sum of long/int attr values over node and all its descendants, 0 if not found */
+	public long sumSubTree(AttrInfo<?> attrInfo, NodeNamesPath path) {
+		val ordinal = ordinalOf(path);
+		if (ordinal == -1) {
+			return 0;
+		}
+		val end = subTreeEnds[ordinal];
+		val column = column(attrInfo);
+		long res = 0;
+		if (column instanceof LongAttrColumn) {
+			val values = ((LongAttrColumn) column).values; // contiguous scan, unset values are 0
+			for(int i = ordinal; i < end; i++) {
+				res += values[i];
+			}
+		} else if (column instanceof IntAttrColumn) {
+			val values = ((IntAttrColumn) column).values;
+			for(int i = ordinal; i < end; i++) {
+				res += values[i];
+			}
+		} else {
+			throw new IllegalArgumentException("attr '" + attrInfo.name + "' is not a long/int column");
+		}
+		return res;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * column of 1 attr, by node ordinal
+	 */
+	public static abstract class AttrColumn {
+		public final AttrInfo<Object> attrInfo;
+		protected final BitSet present = new BitSet();
+		protected long[] lastEvalTimestamps;
+		protected AttrEvalStatus[] evalStatuses;
+
+		protected AttrColumn(AttrInfo<Object> attrInfo, int capacity) {
+			this.attrInfo = attrInfo;
+			this.lastEvalTimestamps = new long[capacity];
+			this.evalStatuses = new AttrEvalStatus[capacity];
+		}
+
+		protected void ensureCapacity(int capacity) {
+			if (lastEvalTimestamps.length < capacity) {
+				this.lastEvalTimestamps = Arrays.copyOf(lastEvalTimestamps, capacity);
+				this.evalStatuses = Arrays.copyOf(evalStatuses, capacity);
+				ensureValuesCapacity(capacity);
+			}
+		}
+
+		protected abstract void ensureValuesCapacity(int capacity);
+
+		public boolean isPresent(int ordinal) {
+			return present.get(ordinal);
+		}
+
+		public long getLastEvalTimestamp(int ordinal) {
+			return lastEvalTimestamps[ordinal];
+		}
+
+		public AttrEvalStatus getEvalStatus(int ordinal) {
+			return evalStatuses[ordinal];
+		}
+
+		protected void setMeta(int ordinal, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			present.set(ordinal);
+			lastEvalTimestamps[ordinal] = lastEvalTimestamp;
+			evalStatuses[ordinal] = evalStatus;
+		}
+
+		public void remove(int ordinal) {
+			present.clear(ordinal);
+			evalStatuses[ordinal] = null;
+			clearValue(ordinal);
+		}
+
+		protected abstract void clearValue(int ordinal);
+
+		public void setAttr(int ordinal, NodeAttr attr) {
+			setData(ordinal, attr.getData(), attr.getLastEvalTimestamp(), attr.getEvalStatus());
+		}
+
+		public abstract void setData(int ordinal, Object data, long lastEvalTimestamp, AttrEvalStatus evalStatus);
+
+		/** @return NodeAttr (re-created), or null if not set */
+		public abstract NodeAttr getAttr(int ordinal);
+	}
+
+	public static class LongAttrColumn extends AttrColumn {
+		protected long[] values;
+
+		public LongAttrColumn(AttrInfo<Object> attrInfo, int capacity) {
+			super(attrInfo, capacity);
+			this.values = new long[capacity];
+		}
+
+		@Override
+		protected void ensureValuesCapacity(int capacity) {
+			this.values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void clearValue(int ordinal) {
+			values[ordinal] = 0;
+		}
+
+		public long getLong(int ordinal) {
+			return values[ordinal];
+		}
+
+		public void setLong(int ordinal, long value, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			values[ordinal] = value;
+			setMeta(ordinal, lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public void setAttr(int ordinal, NodeAttr attr) {
+			val value = (attr instanceof LongNodeAttr)? ((LongNodeAttr) attr).longValue : ((Number) attr.getData()).longValue();
+			setLong(ordinal, value, attr.getLastEvalTimestamp(), attr.getEvalStatus());
+		}
+
+		@Override
+		public void setData(int ordinal, Object data, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			setLong(ordinal, ((Number) data).longValue(), lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public NodeAttr getAttr(int ordinal) {
+			return (present.get(ordinal))? new LongNodeAttr(attrInfo, values[ordinal], lastEvalTimestamps[ordinal], evalStatuses[ordinal]) : null;
+		}
+	}
+
+	public static class IntAttrColumn extends AttrColumn {
+		protected int[] values;
+
+		public IntAttrColumn(AttrInfo<Object> attrInfo, int capacity) {
+			super(attrInfo, capacity);
+			this.values = new int[capacity];
+		}
+
+		@Override
+		protected void ensureValuesCapacity(int capacity) {
+			this.values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void clearValue(int ordinal) {
+			values[ordinal] = 0;
+		}
+
+		public int getInt(int ordinal) {
+			return values[ordinal];
+		}
+
+		public void setInt(int ordinal, int value, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			values[ordinal] = value;
+			setMeta(ordinal, lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public void setAttr(int ordinal, NodeAttr attr) {
+			val value = (attr instanceof IntNodeAttr)? ((IntNodeAttr) attr).intValue : ((Number) attr.getData()).intValue();
+			setInt(ordinal, value, attr.getLastEvalTimestamp(), attr.getEvalStatus());
+		}
+
+		@Override
+		public void setData(int ordinal, Object data, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			setInt(ordinal, ((Number) data).intValue(), lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public NodeAttr getAttr(int ordinal) {
+			return (present.get(ordinal))? new IntNodeAttr(attrInfo, values[ordinal], lastEvalTimestamps[ordinal], evalStatuses[ordinal]) : null;
+		}
+	}
+
+	public static class DoubleAttrColumn extends AttrColumn {
+		protected double[] values;
+
+		public DoubleAttrColumn(AttrInfo<Object> attrInfo, int capacity) {
+			super(attrInfo, capacity);
+			this.values = new double[capacity];
+		}
+
+		@Override
+		protected void ensureValuesCapacity(int capacity) {
+			this.values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void clearValue(int ordinal) {
+			values[ordinal] = 0.0;
+		}
+
+		public double getDouble(int ordinal) {
+			return values[ordinal];
+		}
+
+		public void setDouble(int ordinal, double value, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			values[ordinal] = value;
+			setMeta(ordinal, lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public void setAttr(int ordinal, NodeAttr attr) {
+			val value = (attr instanceof DoubleNodeAttr)? ((DoubleNodeAttr) attr).doubleValue : ((Number) attr.getData()).doubleValue();
+			setDouble(ordinal, value, attr.getLastEvalTimestamp(), attr.getEvalStatus());
+		}
+
+		@Override
+		public void setData(int ordinal, Object data, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			setDouble(ordinal, ((Number) data).doubleValue(), lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public NodeAttr getAttr(int ordinal) {
+			return (present.get(ordinal))? new DoubleNodeAttr(attrInfo, values[ordinal], lastEvalTimestamps[ordinal], evalStatuses[ordinal]) : null;
+		}
+	}
+
+	public static class ObjectAttrColumn extends AttrColumn {
+		protected Object[] values;
+
+		public ObjectAttrColumn(AttrInfo<Object> attrInfo, int capacity) {
+			super(attrInfo, capacity);
+			this.values = new Object[capacity];
+		}
+
+		@Override
+		protected void ensureValuesCapacity(int capacity) {
+			this.values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		protected void clearValue(int ordinal) {
+			values[ordinal] = null;
+		}
+
+		public Object getData(int ordinal) {
+			return values[ordinal];
+		}
+
+		@Override
+		public void setData(int ordinal, Object data, long lastEvalTimestamp, AttrEvalStatus evalStatus) {
+			values[ordinal] = data;
+			setMeta(ordinal, lastEvalTimestamp, evalStatus);
+		}
+
+		@Override
+		public NodeAttr getAttr(int ordinal) {
+			return (present.get(ordinal))? new NodeAttr(attrInfo, values[ordinal], lastEvalTimestamps[ordinal], evalStatuses[ordinal]) : null;
+		}
+	}
+
+}
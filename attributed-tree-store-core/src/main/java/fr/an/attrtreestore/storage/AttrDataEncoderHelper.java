@@ -3,6 +3,8 @@ package fr.an.attrtreestore.storage;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.path4j.NodeName;
@@ -16,23 +18,92 @@ import fr.an.attrtreestore.api.NodeAttr;
 import fr.an.attrtreestore.api.NodeData;
 import fr.an.attrtreestore.api.NodeData.NodeDataInternalFields;
 import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
-import lombok.AllArgsConstructor;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.val;
 
-@AllArgsConstructor
+/**
+ * encoder for NodeData records. 2 record formats, both readable:
+ * <PRE>
+ * v1: fixed width int/long fields, starting with int type
+ * v2: marker byte RECORD_V2_MARKER, varint presence bitmap, then varint/zigzag encoded present fields only
+ *     timestamps delta-encoded against previous present timestamp in record (first against EPOCH_MILLIS)
+ *     transient fields (lruCount, lruAmortizedCount, lastTreeDataQueryTimeMillis) optional, not written in index
+ * </PRE>
+ * v1 records start with the high byte of 'type' (0x00 for dir/file, 0xFF for null) => never equals marker
+ */
 public class AttrDataEncoderHelper {
 
+	public static final byte RECORD_V2_MARKER = (byte) 0xF2;
+
+	/** base for delta encoding of first timestamp in v2 record: 2020-01-01T00:00:00Z */
+	public static final long EPOCH_MILLIS = 1577836800000L;
+
+	private static final int V2_MASK = 1;
+	private static final int V2_CHILD_NAMES = 1 << 1;
+	private static final int V2_ATTRS = 1 << 2;
+	private static final int V2_EXTERNAL_CREATION_TIME = 1 << 3;
+	private static final int V2_EXTERNAL_LAST_MODIFIED_TIME = 1 << 4;
+	private static final int V2_EXTERNAL_LENGTH = 1 << 5;
+	private static final int V2_LAST_EXTERNAL_REFRESH_TIME = 1 << 6;
+	private static final int V2_LAST_TREEDATA_UPDATE_TIME = 1 << 7;
+	private static final int V2_LAST_TREEDATA_UPDATE_COUNT = 1 << 8;
+	private static final int V2_RECOMPUTATION_MASK = 1 << 9;
+	private static final int V2_TRANSIENT_FIELDS = 1 << 10;
+	/** child names as varint ids in index name dictionary (0 for inline name) */
+	private static final int V2_CHILD_NAMES_DICT = 1 << 11;
+	/** lastTreeDataQueryTimeMillis in transient fields (delta may be 0, when same as previous timestamp) */
+	private static final int V2_LAST_TREEDATA_QUERY_TIME = 1 << 12;
+	
 	public final AttrInfoIndexes attrIndexes;
 	public final NodeNameEncoder nodeNameEncoder;
 	
+	/** record format version for writing: 1 or 2 */
+	@Getter @Setter
+	private int writeRecordVersion = 2;
+	
+	/** optional, per index file, cf withNameDictionary() */
+	@Getter
+	private final NodeNameDictionary nameDictionary;
+	
+	// ------------------------------------------------------------------------
+	
+	public AttrDataEncoderHelper(AttrInfoIndexes attrIndexes, NodeNameEncoder nodeNameEncoder) {
+		this(attrIndexes, nodeNameEncoder, null);
+	}
+
+	private AttrDataEncoderHelper(AttrInfoIndexes attrIndexes, NodeNameEncoder nodeNameEncoder, NodeNameDictionary nameDictionary) {
+		this.attrIndexes = attrIndexes;
+		this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
+		this.nameDictionary = nameDictionary;
+	}
+
+	/** @return derived helper, for encoding/decoding records of an index file with name dictionary */
+	public AttrDataEncoderHelper withNameDictionary(NodeNameDictionary nameDictionary) {
+		val res = new AttrDataEncoderHelper(attrIndexes, nodeNameEncoder, nameDictionary);
+		res.writeRecordVersion = this.writeRecordVersion;
+		return res;
+	}
+
 	// ------------------------------------------------------------------------
 	
+	/** write for immutable index: without transient fields (in v2) */
 	public void writeNodeData_noName(DataOutput out, NodeData nodeData
 			) throws IOException {
+		writeNodeData_noName(out, nodeData, false);
+	}
+	
+	public void writeNodeData_noName(DataOutput out, NodeData nodeData, boolean withTransientFields
+			) throws IOException {
 		if (nodeData == null) {
 			out.writeInt(-1);
 			return;
 		}
+		if (writeRecordVersion >= 2) {
+			writeNodeData_noName_v2(out, nodeData, withTransientFields);
+			return;
+		}
 		
 		out.writeInt(nodeData.type);
 		
@@ -58,16 +129,20 @@ public class AttrDataEncoderHelper {
 	}
 
 	public NodeData readNodeData_noName(DataInput in, NodeName name) throws IOException {
-		
-		int type = in.readInt();
+		val firstByte = in.readByte();
+		if (firstByte == RECORD_V2_MARKER) {
+			return readNodeData_noName_v2(in, name);
+		}
+		// v1: firstByte is high byte of int type
+		int type = ((firstByte & 0xFF) << 24) | (in.readUnsignedByte() << 16) 
+				| (in.readUnsignedByte() << 8) | in.readUnsignedByte();
 		if (type == -1) {
 			return null;
 		}
 		
 		int mask = in.readInt();
 		
-		val childNameArray = readIncrNodeNames(in, "", nodeNameEncoder);
-		val childNames = ImmutableSet.<NodeName>copyOf(childNameArray);
+		val childNames = readIncrNodeNames_immutableSet(in, nodeNameEncoder);
 		
 		val attrs = readAttrDatas_immutableMap(in);
 		
@@ -92,6 +167,181 @@ public class AttrDataEncoderHelper {
 				);
 	}
 
+	protected void writeNodeData_noName_v2(DataOutput out, NodeData nodeData, boolean withTransientFields
+			) throws IOException {
+		val childNames = nodeData.childNames;
+		val attrs = nodeData.attrs.values();
+		val lastExternalRefreshTimeMillis = nodeData.getLastExternalRefreshTimeMillis();
+		val treeDataRecomputationMask = nodeData.getTreeDataRecomputationMask();
+		int presence = 0;
+		if (nodeData.mask != 0) presence |= V2_MASK;
+		if (childNames != null && ! childNames.isEmpty()) presence |= V2_CHILD_NAMES;
+		if (! attrs.isEmpty()) presence |= V2_ATTRS;
+		if (nodeData.externalCreationTime != 0) presence |= V2_EXTERNAL_CREATION_TIME;
+		if (nodeData.externalLastModifiedTime != 0) presence |= V2_EXTERNAL_LAST_MODIFIED_TIME;
+		if (nodeData.externalLength != 0) presence |= V2_EXTERNAL_LENGTH;
+		if (lastExternalRefreshTimeMillis != 0) presence |= V2_LAST_EXTERNAL_REFRESH_TIME;
+		if (nodeData.lastTreeDataUpdateTimeMillis != 0) presence |= V2_LAST_TREEDATA_UPDATE_TIME;
+		if (nodeData.lastTreeDataUpdateCount != 0) presence |= V2_LAST_TREEDATA_UPDATE_COUNT;
+		if (treeDataRecomputationMask != 0) presence |= V2_RECOMPUTATION_MASK;
+		if (withTransientFields) presence |= V2_TRANSIENT_FIELDS;
+		val lastQueryTime = nodeData.getLastTreeDataQueryTimeMillis();
+		if (withTransientFields && lastQueryTime != 0) presence |= V2_LAST_TREEDATA_QUERY_TIME;
+		val dict = this.nameDictionary;
+		if (dict != null && (presence & V2_CHILD_NAMES) != 0) presence |= V2_CHILD_NAMES_DICT;
+		
+		out.writeByte(RECORD_V2_MARKER);
+		writeVarInt(out, presence);
+		writeVarInt(out, zigzag(nodeData.type));
+		if ((presence & V2_MASK) != 0) {
+			writeVarInt(out, nodeData.mask);
+		}
+		if ((presence & V2_CHILD_NAMES) != 0) {
+			writeVarInt(out, childNames.size());
+			String curr = "";
+			for(val childName: childNames) {
+				if (dict != null) {
+					val id = dict.idForWrite(childName);
+					writeVarInt(out, id + 1);
+					if (id != -1) {
+						continue;
+					} // else dictionary full => inline name
+				}
+				String value = childName.toText();
+				writeIncrString_v2(out, value, curr);
+				curr = value;
+			}
+		}
+		long prevTime = EPOCH_MILLIS;
+		if ((presence & V2_EXTERNAL_CREATION_TIME) != 0) {
+			prevTime = writeDeltaTime(out, nodeData.externalCreationTime, prevTime);
+		}
+		if ((presence & V2_EXTERNAL_LAST_MODIFIED_TIME) != 0) {
+			prevTime = writeDeltaTime(out, nodeData.externalLastModifiedTime, prevTime);
+		}
+		if ((presence & V2_EXTERNAL_LENGTH) != 0) {
+			writeVarLong(out, zigzag(nodeData.externalLength));
+		}
+		if ((presence & V2_LAST_EXTERNAL_REFRESH_TIME) != 0) {
+			prevTime = writeDeltaTime(out, lastExternalRefreshTimeMillis, prevTime);
+		}
+		if ((presence & V2_LAST_TREEDATA_UPDATE_TIME) != 0) {
+			prevTime = writeDeltaTime(out, nodeData.lastTreeDataUpdateTimeMillis, prevTime);
+		}
+		if ((presence & V2_LAST_TREEDATA_UPDATE_COUNT) != 0) {
+			writeVarInt(out, nodeData.lastTreeDataUpdateCount);
+		}
+		if ((presence & V2_RECOMPUTATION_MASK) != 0) {
+			writeVarInt(out, treeDataRecomputationMask);
+		}
+		if ((presence & V2_ATTRS) != 0) {
+			writeVarInt(out, attrs.size());
+			for(val attr: attrs) {
+				val attrInfo = attr.attrInfo;
+				writeVarInt(out, attrIndexes.attrToIndex(attrInfo));
+				writeVarLong(out, zigzag(attr.getLastEvalTimestamp() - prevTime));
+				out.writeByte(attr.getEvalStatus().toByte());
+				attrInfo.attrDataEncoder.writeNodeAttrData(out, attr);
+			}
+		}
+		if (withTransientFields) {
+			writeVarInt(out, nodeData.getLruCount());
+			writeVarInt(out, nodeData.getLruAmortizedCount());
+			if ((presence & V2_LAST_TREEDATA_QUERY_TIME) != 0) {
+				writeDeltaTime(out, lastQueryTime, prevTime);
+			}
+		}
+	}
+
+	/** after RECORD_V2_MARKER already read */
+	protected NodeData readNodeData_noName_v2(DataInput in, NodeName name) throws IOException {
+		val presence = readVarInt(in);
+		val type = unzigzag(readVarInt(in));
+		val mask = ((presence & V2_MASK) != 0)? readVarInt(in) : 0;
+		ImmutableSet<NodeName> childNames;
+		if ((presence & V2_CHILD_NAMES) != 0) {
+			val childCount = readVarInt(in);
+			val useDict = (presence & V2_CHILD_NAMES_DICT) != 0;
+			val dict = this.nameDictionary;
+			if (useDict && dict == null) {
+				throw new IOException("missing name dictionary, to decode child names");
+			}
+			// no intermediate NodeName[] (copied again by ImmutableSet.copyOf), builder sized once 
+			val childNamesBuilder = ImmutableSet.<NodeName>builderWithExpectedSize(childCount);
+			val scratch = decodeScratch.get();
+			scratch.charsLen = 0; // current name, as chars
+			for(int i = 0; i < childCount; i++) {
+				if (useDict) {
+					val idPlus1 = readVarInt(in);
+					if (idPlus1 != 0) {
+						childNamesBuilder.add(dict.nameAt(idPlus1 - 1)); // no String allocation
+						continue;
+					}
+				}
+				readIncrChars_v2(in, scratch);
+				childNamesBuilder.add(nodeNameEncoder.encode(new String(scratch.chars, 0, scratch.charsLen)));
+			}
+			childNames = childNamesBuilder.build();
+		} else {
+			childNames = ImmutableSet.of();
+		}
+		long prevTime = EPOCH_MILLIS;
+		long externalCreationTime = 0, externalLastModifiedTime = 0, externalLength = 0;
+		long lastExternalRefreshTimeMillis = 0, lastTreeDataUpdateTimeMillis = 0;
+		if ((presence & V2_EXTERNAL_CREATION_TIME) != 0) {
+			externalCreationTime = prevTime = prevTime + unzigzag(readVarLong(in));
+		}
+		if ((presence & V2_EXTERNAL_LAST_MODIFIED_TIME) != 0) {
+			externalLastModifiedTime = prevTime = prevTime + unzigzag(readVarLong(in));
+		}
+		if ((presence & V2_EXTERNAL_LENGTH) != 0) {
+			externalLength = unzigzag(readVarLong(in));
+		}
+		if ((presence & V2_LAST_EXTERNAL_REFRESH_TIME) != 0) {
+			lastExternalRefreshTimeMillis = prevTime = prevTime + unzigzag(readVarLong(in));
+		}
+		if ((presence & V2_LAST_TREEDATA_UPDATE_TIME) != 0) {
+			lastTreeDataUpdateTimeMillis = prevTime = prevTime + unzigzag(readVarLong(in));
+		}
+		val lastTreeDataUpdateCount = ((presence & V2_LAST_TREEDATA_UPDATE_COUNT) != 0)? readVarInt(in) : 0;
+		val treeDataRecomputationMask = ((presence & V2_RECOMPUTATION_MASK) != 0)? readVarInt(in) : 0;
+		ImmutableMap<String,NodeAttr> attrs;
+		if ((presence & V2_ATTRS) != 0) {
+			val attrCount = readVarInt(in);
+			val b = ImmutableMap.<String,NodeAttr>builderWithExpectedSize(attrCount);
+			for(int i = 0; i < attrCount; i++) {
+				val attrInfo = attrIndexes.indexToAttr(readVarInt(in));
+				long lastEvalTimestamp = prevTime + unzigzag(readVarLong(in));
+				AttrEvalStatus evalStatus = AttrEvalStatus.fromByte(in.readByte());
+				val attr = attrInfo.attrDataEncoder.readNodeAttr(in, attrInfo, lastEvalTimestamp, evalStatus);
+				b.put(attr.getName(), attr);
+			}
+			attrs = b.build();
+		} else {
+			attrs = ImmutableMap.of();
+		}
+		int lruCount = 0, lruAmortizedCount = 0;
+		long lastTreeDataQueryTimeMillis = 0;
+		if ((presence & V2_TRANSIENT_FIELDS) != 0) {
+			lruCount = readVarInt(in);
+			lruAmortizedCount = readVarInt(in);
+			if ((presence & V2_LAST_TREEDATA_QUERY_TIME) != 0) {
+				lastTreeDataQueryTimeMillis = prevTime + unzigzag(readVarLong(in));
+			}
+		}
+		return new NodeData(name, type, mask, childNames, attrs, // 
+				externalCreationTime, externalLastModifiedTime, externalLength, lastExternalRefreshTimeMillis, //
+				lastTreeDataUpdateTimeMillis, lastTreeDataUpdateCount, //
+				treeDataRecomputationMask, //
+				lruCount, lruAmortizedCount, lastTreeDataQueryTimeMillis
+				);
+	}
+
+	private static long writeDeltaTime(DataOutput out, long time, long prevTime) throws IOException {
+		writeVarLong(out, zigzag(time - prevTime));
+		return time;
+	}
+
 	public void writeNodeData_internalFields(DataOutput out, NodeDataInternalFields src
 			) throws IOException {
 		out.writeLong(src.getLastExternalRefreshTimeMillis());
@@ -127,7 +377,7 @@ public class AttrDataEncoderHelper {
 			out.writeByte(attr.getEvalStatus().toByte());
 
 			val attrEncoder = attrInfo.attrDataEncoder;
-			attrEncoder.writeData(out, attr.getData());
+			attrEncoder.writeNodeAttrData(out, attr);
 		}
 	}
 
@@ -143,7 +393,7 @@ public class AttrDataEncoderHelper {
 			out.writeByte(attr.getEvalStatus().toByte());
 
 			val attrEncoder = attrInfo.attrDataEncoder;
-			attrEncoder.writeData(out, attr.getData());
+			attrEncoder.writeNodeAttrData(out, attr);
 		}
 	}
 
@@ -158,18 +408,23 @@ public class AttrDataEncoderHelper {
 			long lastEvalTimestamp = in.readLong();
 			AttrEvalStatus evalStatus = AttrEvalStatus.fromByte(in.readByte());
 			
-			val attrEncoder = attrInfo.attrDataEncoder;
-			Object data = attrEncoder.readData(in);
-			
-			res[i] = new NodeAttr(attrInfo, data, lastEvalTimestamp, evalStatus);
+			res[i] = attrInfo.attrDataEncoder.readNodeAttr(in, attrInfo, lastEvalTimestamp, evalStatus);
 		}
 		return res;
 	}
 
 	public ImmutableMap<String,NodeAttr> readAttrDatas_immutableMap(DataInput in) throws IOException {
-		NodeAttr[] attrs = readAttrDatas(in);
-		val b = ImmutableMap.<String,NodeAttr>builder();
-		for(val attr: attrs) {
+		int attrCount = in.readShort();
+		if (attrCount == 0) {
+			return ImmutableMap.of();
+		}
+		// same as readAttrDatas(), without intermediate NodeAttr[]
+		val b = ImmutableMap.<String,NodeAttr>builderWithExpectedSize(attrCount);
+		for(int i = 0; i < attrCount; i++) {
+			val attrInfo = attrIndexes.indexToAttr(in.readShort());
+			long lastEvalTimestamp = in.readLong();
+			AttrEvalStatus evalStatus = AttrEvalStatus.fromByte(in.readByte());
+			val attr = attrInfo.attrDataEncoder.readNodeAttr(in, attrInfo, lastEvalTimestamp, evalStatus);
 			b.put(attr.getName(), attr);
 		}
 		return b.build();
@@ -194,6 +449,149 @@ public class AttrDataEncoderHelper {
 		} 
 	}
 
+	/** v2: varint removeLen + varint utf8 len + utf8 bytes */
+	public static void writeIncrString_v2(DataOutput out, String value, String prev) throws IOException {
+		int commonLen = commonStringLen(value, prev);
+		int removeLen = prev.length() - commonLen;
+		writeVarInt(out, removeLen);
+		val addBytes = value.substring(commonLen).getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, addBytes.length);
+		out.write(addBytes);
+	}
+	
+	public static String readIncrString_v2(DataInput in, String prev) throws IOException {
+		int removeLen = readVarInt(in);
+		val addBytes = new byte[readVarInt(in)];
+		in.readFully(addBytes);
+		val addStr = new String(addBytes, StandardCharsets.UTF_8);
+		int commonLen = prev.length() - removeLen;
+		if (commonLen == 0) {
+			return addStr;
+		} else {
+			return prev.substring(0, commonLen) + addStr;
+		} 
+	}
+
+	/**
+	 * per-thread reusable decode buffers, cf readNodeData_noName_v2() 
+	 * .. avoid per-child temporary byte[] / substring / concat, only the final name String is allocated
+	 */
+	private static final class DecodeScratch {
+		byte[] bytes = new byte[256];
+		char[] chars = new char[256];
+		int charsLen;
+
+		byte[] bytes(int minLen) {
+			if (bytes.length < minLen) {
+				bytes = new byte[Math.max(minLen, bytes.length * 2)];
+			}
+			return bytes;
+		}
+
+		/** grow, keeping current chars */
+		char[] chars(int minLen) {
+			if (chars.length < minLen) {
+				chars = Arrays.copyOf(chars, Math.max(minLen, chars.length * 2));
+			}
+			return chars;
+		}
+	}
+
+	private static final ThreadLocal<DecodeScratch> decodeScratch = ThreadLocal.withInitial(DecodeScratch::new);
+
+	/** same as readIncrString_v2(), but decoding in place in scratch chars (= previous value, common prefix kept) */
+	private static void readIncrChars_v2(DataInput in, DecodeScratch scratch) throws IOException {
+		int removeLen = readVarInt(in);
+		int addLen = readVarInt(in);
+		int commonLen = scratch.charsLen - removeLen;
+		if (commonLen < 0 || addLen < 0) {
+			throw new IOException("malformed incremental string");
+		}
+		val bytes = scratch.bytes(addLen);
+		in.readFully(bytes, 0, addLen);
+		boolean ascii = true;
+		for(int i = 0; i < addLen; i++) {
+			if (bytes[i] < 0) {
+				ascii = false;
+				break;
+			}
+		}
+		if (ascii) {
+			// fast path, most common for file names
+			val chars = scratch.chars(commonLen + addLen);
+			for(int i = 0; i < addLen; i++) {
+				chars[commonLen + i] = (char) bytes[i];
+			}
+			scratch.charsLen = commonLen + addLen;
+		} else {
+			val addStr = new String(bytes, 0, addLen, StandardCharsets.UTF_8);
+			val chars = scratch.chars(commonLen + addStr.length());
+			addStr.getChars(0, addStr.length(), chars, commonLen);
+			scratch.charsLen = commonLen + addStr.length();
+		}
+	}
+
+	// varint: unsigned LEB128, 7 bits per byte 
+	// ------------------------------------------------------------------------
+	
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	public static int readVarInt(DataInput in) throws IOException {
+		int res = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			val b = in.readByte();
+			res |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return res;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+	
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		while((value & ~0x7FL) != 0) {
+			out.writeByte(((int) value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	public static long readVarLong(DataInput in) throws IOException {
+		long res = 0;
+		for(int shift = 0; shift < 70; shift += 7) {
+			val b = in.readByte();
+			res |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return res;
+			}
+		}
+		throw new IOException("malformed varlong");
+	}
+
+	public static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	public static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	// ------------------------------------------------------------------------
+
 	public static void writeIncrNodeNames(DataOutput out, ImmutableSet<NodeName> nodeNames, String prev) throws IOException {
 		String curr = prev;
 		int valuesCount = nodeNames.size();
@@ -231,6 +629,74 @@ public class AttrDataEncoderHelper {
 		return res;
 	}
 	
+	/** same as ImmutableSet.copyOf(readIncrNodeNames(in, "", nodeNameEncoder)), but decoding in place in scratch chars
+	 * .. no intermediate NodeName[], substring / concat, or readUTF() byte[]+char[]: only the final name String is allocated
+	 */
+	public static ImmutableSet<NodeName> readIncrNodeNames_immutableSet(DataInput in, NodeNameEncoder nodeNameEncoder) throws IOException {
+		int valuesCount = in.readInt();
+		if (valuesCount == 0) {
+			return ImmutableSet.of();
+		}
+		val res = ImmutableSet.<NodeName>builderWithExpectedSize(valuesCount);
+		val scratch = decodeScratch.get();
+		scratch.charsLen = 0; // current value, as chars
+		for(int i = 0; i < valuesCount; i++) {
+			readIncrChars(in, scratch);
+			val chars = scratch.chars;
+			int start = 0, end = scratch.charsLen;
+			// same as TEMPORARY BUG HACK in readIncrNodeNames()
+			if (end > 0 && chars[end - 1] == '/') {
+				end--; // should not occur
+			}
+			for(int j = end - 1; j >= 0; j--) {
+				if (chars[j] == '/') {
+					start = j + 1; // should not occur
+					break;
+				}
+			}
+			res.add(nodeNameEncoder.encode(new String(chars, start, end - start)));
+		}
+		return res.build();
+	}
+
+	/** same as readIncrString(), but decoding in place in scratch chars (= previous value, common prefix kept)
+	 * .. decode modified-UTF8 of DataInput.readUTF() 
+	 */
+	private static void readIncrChars(DataInput in, DecodeScratch scratch) throws IOException {
+		int removeLen = in.readShort();
+		int utfLen = in.readUnsignedShort();
+		int commonLen = scratch.charsLen - removeLen;
+		if (commonLen < 0) {
+			throw new IOException("malformed incremental string");
+		}
+		val bytes = scratch.bytes(utfLen);
+		in.readFully(bytes, 0, utfLen);
+		val chars = scratch.chars(commonLen + utfLen); // at most 1 char per byte
+		int charPos = commonLen;
+		for(int i = 0; i < utfLen; ) {
+			int c = bytes[i] & 0xFF;
+			if (c < 0x80) {
+				chars[charPos++] = (char) c;
+				i++;
+			} else if ((c & 0xE0) == 0xC0) {
+				if (i + 1 >= utfLen) {
+					throw new IOException("malformed modified-UTF8 string");
+				}
+				chars[charPos++] = (char) (((c & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+				i += 2;
+			} else if ((c & 0xF0) == 0xE0) {
+				if (i + 2 >= utfLen) {
+					throw new IOException("malformed modified-UTF8 string");
+				}
+				chars[charPos++] = (char) (((c & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+				i += 3;
+			} else {
+				throw new IOException("malformed modified-UTF8 string");
+			}
+		}
+		scratch.charsLen = charPos;
+	}
+
 	public static void writeIncrStrings(DataOutput out, Collection<String> values, String prev) throws IOException {
 		String curr = prev;
 		int valuesCount = values.size();
@@ -253,15 +719,21 @@ public class AttrDataEncoderHelper {
 		return res;
 	}
 	
+	/** common prefix length, in chars.. never ending between the 2 chars of a surrogate pair 
+	 * (else the remaining low surrogate alone would be encoded as '?' in UTF-8) */
 	/*pp*/ static int commonStringLen(String left, String right) {
 		int i = 0;
 		int len = Math.min(left.length(), right.length());
 		for(; i < len; i++) {
 			if (left.charAt(i) != right.charAt(i)) {
-				return i;
+				break;
 			}
 		}
-		return len;
+		if (i > 0 && Character.isHighSurrogate(left.charAt(i - 1))
+				&& (i < left.length() || i < right.length())) {
+			i--;
+		}
+		return i;
 	}
 
 }
@@ -1,44 +1,123 @@
 package fr.an.attrtreestore.storage;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 
 import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.AttrInfoRegistry;
 import lombok.val;
 
 /**
  * mapping AttrInfo <-> int, to encode AttrInfo using 'int32 index' bits instead of 'String name'
+ *
+ * dense array: index -> AttrInfo is an array access.
+ * AttrInfo -> index is also an array access, using AttrInfo.ordinal (no hashing, no boxing).. 
+ * attr instances not indexed here are rejected, even if same name
+ *
+ * the index -> name table is written in files (index file section, WAL header),
+ * and checked on open against current indexes: cf writeAttrTable() / checkAttrTable()
  */
 public class AttrInfoIndexes {
 
-	private final ImmutableMap<String,Integer> attr2Index;
-	private final ImmutableList<AttrInfo<Object>> index2Attr;
-	
+	/** "ATTRTAB1" .. index file section, same trailer layout as NodeNameDictionary */
+	public static final long SECTION_MAGIC = 0x4154545254414231L;
+	public static final int TRAILER_LEN = 24;
+
+	private final AttrInfo<Object>[] index2Attr;
+
+	/** AttrInfo.ordinal -> index, -1 if not indexed */
+	private final int[] ordinal2Index;
+
 	// ------------------------------------------------------------------------
-	
+
+	/** index = registry id, and new attrs appended to registry get new indexes => previously written files remain readable */
+	public AttrInfoIndexes(AttrInfoRegistry registry) {
+		this(registry.getAttrsById());
+	}
+
+	/** index = position in collection */
+	@SuppressWarnings("unchecked")
 	public AttrInfoIndexes(Collection<AttrInfo<Object>> attrInfos) {
-		this.index2Attr = ImmutableList.copyOf(attrInfos);
-		val attr2IndexB = ImmutableMap.<String,Integer>builder();
-		for(int i = 0; i < index2Attr.size(); i++) {
-			attr2IndexB.put(index2Attr.get(i).name, i);
+		this.index2Attr = attrInfos.toArray(new AttrInfo[attrInfos.size()]);
+		int maxOrdinal = -1;
+		for(val attr: index2Attr) {
+			maxOrdinal = Math.max(maxOrdinal, attr.ordinal);
+		}
+		this.ordinal2Index = new int[maxOrdinal + 1];
+		Arrays.fill(ordinal2Index, -1);
+		for(int i = 0; i < index2Attr.length; i++) {
+			val ordinal = index2Attr[i].ordinal;
+			if (ordinal2Index[ordinal] != -1) {
+				throw new IllegalArgumentException("attr '" + index2Attr[i].name + "' indexed twice");
+			}
+			ordinal2Index[ordinal] = i;
 		}
-		this.attr2Index = attr2IndexB.build();
 	}
-	
+
 	// ------------------------------------------------------------------------
 
 	public int attrToIndex(AttrInfo<?> attr) {
-		return attr2Index.get(attr.name);
+		val ordinal = attr.ordinal;
+		val res = (ordinal < ordinal2Index.length)? ordinal2Index[ordinal] : -1;
+		if (res < 0) {
+			throw new IllegalArgumentException("attr '" + attr.name + "' not indexed (unregistered AttrInfo instance)");
+		}
+		return res;
 	}
 
 	public AttrInfo<Object> indexToAttr(int index) {
-		return indexToAttr(index);
+		if (index < 0 || index >= index2Attr.length) {
+			throw new IllegalArgumentException("unknown attr index " + index + " (indexed: " + index2Attr.length + ")");
+		}
+		return index2Attr[index];
+	}
+
+	public int size() {
+		return index2Attr.length;
 	}
 
 	public ImmutableList<AttrInfo<Object>> getIndex2Attr() {
-		return index2Attr;
+		return ImmutableList.copyOf(index2Attr);
 	}
-	
+
+	// persisted index -> name table
+	// ------------------------------------------------------------------------
+
+	/** varint count, then names in index order */
+	public void writeAttrTable(DataOutput out) throws IOException {
+		AttrDataEncoderHelper.writeVarInt(out, index2Attr.length);
+		for(val attr: index2Attr) {
+			out.writeUTF(attr.name);
+		}
+	}
+
+	public static List<String> readAttrTable(DataInput in) throws IOException {
+		val count = AttrDataEncoderHelper.readVarInt(in);
+		val res = new ArrayList<String>(count);
+		for(int i = 0; i < count; i++) {
+			res.add(in.readUTF());
+		}
+		return res;
+	}
+
+	/** check attr names persisted in file have same indexes .. attrs appended since file written are ok */
+	public void checkAttrTable(List<String> fileAttrNames, String fileDisplayName) {
+		for(int i = 0; i < fileAttrNames.size(); i++) {
+			val fileAttrName = fileAttrNames.get(i);
+			val currAttrName = (i < index2Attr.length)? index2Attr[i].name : null;
+			if (! fileAttrName.equals(currAttrName)) {
+				throw new IllegalStateException("attr index mismatch in '" + fileDisplayName + "': index " + i
+						+ " is attr '" + fileAttrName + "' in file, "
+						+ ((currAttrName != null)? "'" + currAttrName + "'" : "not registered") + " in current attr registry");
+			}
+		}
+	}
+
 }
@@ -0,0 +1,119 @@
+package fr.an.attrtreestore.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.path4j.NodeName;
+import org.path4j.NodeNameEncoder;
+
+import lombok.val;
+
+/**
+ * dictionary of child names for an index file: deduplicated names, referenced by varint ids in v2 records.
+ * decoding returns same (already encoded) NodeName instances, without per-child String allocation
+ *
+ * <PRE>
+ * index file (logical stream, maybe block-compressed):
+ * [records] [dictionary section]
+ * trailer (TRAILER_LEN): long sectionPos, long recordsLen, long SECTION_MAGIC
+ * dictionary section: varint count, then names (incremental strings, in id order)
+ * </PRE>
+ *
+ * 2 modes: for write (ids assigned on first use, up to maxSize .. then names written inline),
+ * or read-only (loaded from section)
+ */
+public class NodeNameDictionary {
+
+	/** "NAMEDIC1" .. last byte != '\n', so never equals end of a raw index file without dictionary */
+	public static final long SECTION_MAGIC = 0x4e414d4544494331L;
+	public static final int TRAILER_LEN = 24;
+
+	public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+	private final int maxSize;
+	private final List<NodeName> names;
+	private final Map<NodeName,Integer> nameToId; // only in write mode
+	private final NodeName[] idToName; // only in read mode
+
+	// ------------------------------------------------------------------------
+
+	private NodeNameDictionary(int maxSize, NodeName[] idToName) {
+		this.maxSize = maxSize;
+		this.names = (idToName == null)? new ArrayList<>() : null;
+		this.nameToId = (idToName == null)? new HashMap<>() : null;
+		this.idToName = idToName;
+	}
+
+	/** for writing, not thread-safe */
+	public static NodeNameDictionary forWrite(int maxSize) {
+		return new NodeNameDictionary(maxSize, null);
+	}
+
+	public static NodeNameDictionary readSection(byte[] sectionData, NodeNameEncoder nodeNameEncoder) {
+		try (val in = new DataInputStream(new ByteArrayInputStream(sectionData))) {
+			return readSection(in, nodeNameEncoder);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read name dictionary", ex);
+		}
+	}
+
+	public static NodeNameDictionary readSection(DataInput in, NodeNameEncoder nodeNameEncoder) throws IOException {
+		val count = AttrDataEncoderHelper.readVarInt(in);
+		val idToName = new NodeName[count];
+		String curr = "";
+		for(int i = 0; i < count; i++) {
+			val value = AttrDataEncoderHelper.readIncrString_v2(in, curr);
+			idToName[i] = nodeNameEncoder.encode(value);
+			curr = value;
+		}
+		return new NodeNameDictionary(count, idToName);
+	}
+
+	// ------------------------------------------------------------------------
+
+	public int size() {
+		return (idToName != null)? idToName.length : names.size();
+	}
+
+	/** write mode: @return id of name, assigned if new, or -1 when dictionary is full */
+	public int idForWrite(NodeName name) {
+		val found = nameToId.get(name);
+		if (found != null) {
+			return found;
+		}
+		if (names.size() >= maxSize) {
+			return -1;
+		}
+		val id = names.size();
+		names.add(name);
+		nameToId.put(name, id);
+		return id;
+	}
+
+	/** read mode */
+	public NodeName nameAt(int id) throws IOException {
+		if (id < 0 || id >= idToName.length) {
+			throw new IOException("invalid name dictionary id " + id + ", size " + idToName.length);
+		}
+		return idToName[id];
+	}
+
+	/** write mode: write section (names in id order) */
+	public void writeSection(DataOutput out) throws IOException {
+		AttrDataEncoderHelper.writeVarInt(out, names.size());
+		String curr = "";
+		for(val name: names) {
+			val value = name.toText();
+			AttrDataEncoderHelper.writeIncrString_v2(out, value, curr);
+			curr = value;
+		}
+	}
+
+}
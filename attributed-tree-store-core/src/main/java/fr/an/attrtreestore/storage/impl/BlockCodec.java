@@ -0,0 +1,128 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import lombok.val;
+
+/**
+ * codec for blocks of block-compressed index file, cf BlockCompressedOutputStream
+ * codec id is stored per block in footer, so file may mix codecs (ex: NONE for incompressible blocks)
+ *
+ * only JDK built-in codecs here (no native libs).. TOADD LZ4 / zstd when available in classpath
+ */
+public interface BlockCodec {
+
+	public static final byte CODEC_ID_NONE = 0;
+	public static final byte CODEC_ID_DEFLATE = 1;
+
+	byte codecId();
+
+	byte[] compress(byte[] src, int offset, int len);
+
+	void decompress(byte[] src, int srcOffset, int srcLen, byte[] dest, int destLen);
+
+	public static BlockCodec byId(byte codecId) {
+		switch(codecId) {
+		case CODEC_ID_NONE: return NoneBlockCodec.INSTANCE;
+		case CODEC_ID_DEFLATE: return DeflateBlockCodec.DEFAULT;
+		default: throw new IllegalArgumentException("unknown block codec id " + codecId);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	public static class NoneBlockCodec implements BlockCodec {
+		public static final NoneBlockCodec INSTANCE = new NoneBlockCodec();
+
+		@Override
+		public byte codecId() {
+			return CODEC_ID_NONE;
+		}
+
+		@Override
+		public byte[] compress(byte[] src, int offset, int len) {
+			val res = new byte[len];
+			System.arraycopy(src, offset, res, 0, len);
+			return res;
+		}
+
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLen, byte[] dest, int destLen) {
+			if (srcLen != destLen) {
+				throw new IllegalStateException("corrupted block, len " + srcLen + " != " + destLen);
+			}
+			System.arraycopy(src, srcOffset, dest, 0, destLen);
+		}
+	}
+
+	/**
+	 * java.util.zip Deflater/Inflater, raw deflate (no zlib header)
+	 */
+	public static class DeflateBlockCodec implements BlockCodec {
+		public static final DeflateBlockCodec DEFAULT = new DeflateBlockCodec(Deflater.DEFAULT_COMPRESSION);
+
+		private final int level;
+
+		public DeflateBlockCodec(int level) {
+			this.level = level;
+		}
+
+		@Override
+		public byte codecId() {
+			return CODEC_ID_DEFLATE;
+		}
+
+		@Override
+		public byte[] compress(byte[] src, int offset, int len) {
+			val deflater = new Deflater(level, true);
+			try {
+				deflater.setInput(src, offset, len);
+				deflater.finish();
+				byte[] buffer = new byte[len + len / 16 + 64]; // enough for incompressible data
+				int resLen = 0;
+				while(! deflater.finished()) {
+					if (resLen == buffer.length) {
+						val tmp = new byte[buffer.length * 2];
+						System.arraycopy(buffer, 0, tmp, 0, resLen);
+						buffer = tmp;
+					}
+					resLen += deflater.deflate(buffer, resLen, buffer.length - resLen);
+				}
+				val res = new byte[resLen];
+				System.arraycopy(buffer, 0, res, 0, resLen);
+				return res;
+			} finally {
+				deflater.end();
+			}
+		}
+
+		@Override
+		public void decompress(byte[] src, int srcOffset, int srcLen, byte[] dest, int destLen) {
+			val inflater = new Inflater(true);
+			try {
+				// raw inflate may need 1 extra dummy byte at end of input
+				val input = new byte[srcLen + 1];
+				System.arraycopy(src, srcOffset, input, 0, srcLen);
+				inflater.setInput(input);
+				int resLen = 0;
+				while(resLen < destLen) {
+					val count = inflater.inflate(dest, resLen, destLen - resLen);
+					if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+						break;
+					}
+					resLen += count;
+				}
+				if (resLen != destLen) {
+					throw new IllegalStateException("corrupted block, inflated " + resLen + " != " + destLen);
+				}
+			} catch(DataFormatException ex) {
+				throw new IllegalStateException("corrupted block", ex);
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.simplestorage4j.api.BlobStorage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lombok.Getter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * reader for block-compressed index file, written by BlockCompressedOutputStream.
+ * reads are done at logical positions (in uncompressed stream),
+ * whole blocks are fetched from BlobStorage, decompressed and cached (bounded by bytes)
+ */
+@Slf4j
+public class BlockCompressedIndexFile {
+
+	/** "BLKIDX01" .. last byte != '\n', so never equals end of a raw index file */
+	public static final long TRAILER_MAGIC = 0x424c4b4944583031L;
+	public static final int TRAILER_LEN = 24;
+
+	public static final long DEFAULT_BLOCK_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+
+	private final BlobStorage blobStorage;
+	@Getter
+	private final String fileName;
+
+	@Getter
+	private final long uncompressedLen;
+
+	private final long[] blockStartPos; // logical (uncompressed) start pos, sorted
+	private final long[] blockFilePos;
+	private final int[] blockCompressedLen;
+	private final int[] blockUncompressedLen;
+	private final byte[] blockCodecId;
+
+	private final Cache<Integer,byte[]> blockCache;
+
+	private final LongAdder blockLoadCount = new LongAdder();
+	private final LongAdder blockLoadedCompressedBytes = new LongAdder();
+
+	// ------------------------------------------------------------------------
+
+	private BlockCompressedIndexFile(BlobStorage blobStorage, String fileName, long fileLen,
+			long footerFilePos, long uncompressedLen, long maxCacheBytes) {
+		this.blobStorage = blobStorage;
+		this.fileName = fileName;
+		this.uncompressedLen = uncompressedLen;
+		val footer = blobStorage.readAt(fileName, footerFilePos, (int) (fileLen - TRAILER_LEN - footerFilePos));
+		try (val in = new DataInputStream(new ByteArrayInputStream(footer))) {
+			val blockCount = in.readInt();
+			this.blockStartPos = new long[blockCount];
+			this.blockFilePos = new long[blockCount];
+			this.blockCompressedLen = new int[blockCount];
+			this.blockUncompressedLen = new int[blockCount];
+			this.blockCodecId = new byte[blockCount];
+			long currPos = 0;
+			for(int i = 0; i < blockCount; i++) {
+				blockStartPos[i] = currPos;
+				blockFilePos[i] = in.readLong();
+				blockCompressedLen[i] = in.readInt();
+				blockUncompressedLen[i] = in.readInt();
+				blockCodecId[i] = in.readByte();
+				currPos += blockUncompressedLen[i];
+			}
+			if (currPos != uncompressedLen) {
+				throw new IllegalStateException("corrupted footer, blocks len " + currPos + " != " + uncompressedLen);
+			}
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read block index footer of '" + fileName + "'", ex);
+		}
+		this.blockCache = CacheBuilder.newBuilder()
+				.maximumWeight(maxCacheBytes)
+				.weigher((Integer k, byte[] v) -> v.length)
+				.build();
+		log.info("open block-compressed index '" + fileName + "' (" + fileLen + " bytes, "
+				+ uncompressedLen + " uncompressed, " + blockStartPos.length + " block(s))");
+	}
+
+	/** @return reader if file is block-compressed (detected by trailer magic), else null */
+	public static BlockCompressedIndexFile tryOpen(BlobStorage blobStorage, String fileName, long maxCacheBytes) {
+		val fileLen = blobStorage.fileLen(fileName);
+		if (fileLen < TRAILER_LEN) {
+			return null;
+		}
+		val trailer = blobStorage.readAt(fileName, fileLen - TRAILER_LEN, TRAILER_LEN);
+		try (val in = new DataInputStream(new ByteArrayInputStream(trailer))) {
+			val footerFilePos = in.readLong();
+			val uncompressedLen = in.readLong();
+			val magic = in.readLong();
+			if (magic != TRAILER_MAGIC) {
+				return null;
+			}
+			return new BlockCompressedIndexFile(blobStorage, fileName, fileLen, footerFilePos, uncompressedLen, maxCacheBytes);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read trailer of '" + fileName + "'", ex); // should not occur
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	public int getBlockCount() {
+		return blockStartPos.length;
+	}
+
+	public long getBlockLoadCount() {
+		return blockLoadCount.sum();
+	}
+
+	public long getBlockLoadedCompressedBytes() {
+		return blockLoadedCompressedBytes.sum();
+	}
+
+	public int blockIndexOf(long pos) {
+		val idx = Arrays.binarySearch(blockStartPos, pos);
+		return (idx >= 0)? idx : -idx - 2;
+	}
+
+	/** @return decompressed block, from cache or loaded (single load per block for concurrent callers) */
+	public byte[] getBlock(int blockIdx) {
+		try {
+			return blockCache.get(blockIdx, () -> loadBlock(blockIdx));
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("Failed to load block " + blockIdx + " of '" + fileName + "'", ex.getCause());
+		}
+	}
+
+	private byte[] loadBlock(int blockIdx) {
+		val compressedLen = blockCompressedLen[blockIdx];
+		// *** The Biggy: IO read (maybe remote) ***
+		val compressed = blobStorage.readAt(fileName, blockFilePos[blockIdx], compressedLen);
+		val res = new byte[blockUncompressedLen[blockIdx]];
+		BlockCodec.byId(blockCodecId[blockIdx]).decompress(compressed, 0, compressedLen, res, res.length);
+		blockLoadCount.increment();
+		blockLoadedCompressedBytes.add(compressedLen);
+		return res;
+	}
+
+	/** @return bytes at logical pos, copied from 1 or more blocks */
+	public byte[] readAt(long pos, int len) {
+		if (pos < 0 || pos + len > uncompressedLen) {
+			throw new IllegalArgumentException("range [" + pos + ", " + (pos + len) + "[ out of [0, " + uncompressedLen + "[");
+		}
+		val res = new byte[len];
+		int resOffset = 0;
+		long currPos = pos;
+		while(resOffset < len) {
+			val blockIdx = blockIndexOf(currPos);
+			val block = getBlock(blockIdx);
+			val blockOffset = (int) (currPos - blockStartPos[blockIdx]);
+			val copyLen = Math.min(len - resOffset, block.length - blockOffset);
+			System.arraycopy(block, blockOffset, res, resOffset, copyLen);
+			resOffset += copyLen;
+			currPos += copyLen;
+		}
+		return res;
+	}
+
+	public BlockDataInput dataInputAt(long pos) {
+		return new BlockDataInput(pos);
+	}
+
+	/**
+	 * DataInput reading at logical positions, across blocks
+	 */
+	public class BlockDataInput extends PositionalDataInput {
+
+		private byte[] currBlock;
+		private long currBlockStartPos;
+
+		private BlockDataInput(long filePos) {
+			super(filePos, uncompressedLen);
+		}
+
+		private byte[] ensureBlock(long pos) {
+			if (currBlock == null || pos < currBlockStartPos || pos >= currBlockStartPos + currBlock.length) {
+				val blockIdx = blockIndexOf(pos);
+				this.currBlock = getBlock(blockIdx);
+				this.currBlockStartPos = blockStartPos[blockIdx];
+			}
+			return currBlock;
+		}
+
+		@Override
+		protected byte byteAt(long pos) {
+			val block = ensureBlock(pos);
+			return block[(int) (pos - currBlockStartPos)];
+		}
+
+		@Override
+		public void readFully(byte[] b, int off, int len) throws IOException {
+			checkAvailable(len);
+			int remain = len;
+			while(remain > 0) {
+				val block = ensureBlock(filePos);
+				val blockOffset = (int) (filePos - currBlockStartPos);
+				val copyLen = Math.min(remain, block.length - blockOffset);
+				System.arraycopy(block, blockOffset, b, off, copyLen);
+				off += copyLen;
+				remain -= copyLen;
+				filePos += copyLen;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,131 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import lombok.Getter;
+import lombok.val;
+
+/**
+ * block-framed output stream for index file:
+ * uncompressed stream is cut in blocks of <code>blockSize</code>, each compressed independently,
+ * then a footer with block index, read by BlockCompressedIndexFile
+ *
+ * <PRE>
+ * [block 0] .. [block N-1]
+ * footer: int blockCount,
+ *    per block: long filePos, int compressedLen, int uncompressedLen, byte codecId
+ * trailer (TRAILER_LEN): long footerFilePos, long uncompressedLen, long TRAILER_MAGIC
+ * </PRE>
+ *
+ * positions written by caller (child filePos in records) are logical positions in the uncompressed stream.
+ * in pre-order layout, sub-trees are contiguous => mostly in same block
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+	private final OutputStream out;
+	private final BlockCodec codec;
+	private final byte[] buffer;
+	private int bufferLen;
+
+	@Getter
+	private long uncompressedLen;
+	@Getter
+	private long compressedLen;
+	@Getter
+	private int blockCount;
+
+	private final ByteArrayOutputStream footerBuffer = new ByteArrayOutputStream();
+	private final DataOutputStream footerOut = new DataOutputStream(footerBuffer);
+
+	private boolean closed;
+
+	// ------------------------------------------------------------------------
+
+	public BlockCompressedOutputStream(OutputStream out, int blockSize, BlockCodec codec) {
+		this.out = out;
+		this.codec = codec;
+		this.buffer = new byte[blockSize];
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void write(int b) throws IOException {
+		if (bufferLen == buffer.length) {
+			flushBlock();
+		}
+		buffer[bufferLen++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if (bufferLen == buffer.length) {
+				flushBlock();
+			}
+			val copyLen = Math.min(len, buffer.length - bufferLen);
+			System.arraycopy(b, off, buffer, bufferLen, copyLen);
+			bufferLen += copyLen;
+			off += copyLen;
+			len -= copyLen;
+		}
+	}
+
+	/** flush underlying stream only, does not cut current block */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			flushBlock();
+			val footerFilePos = compressedLen;
+			footerOut.flush();
+			val footerContent = new DataOutputStream(out);
+			footerContent.writeInt(blockCount);
+			footerBuffer.writeTo(out);
+			footerContent.writeLong(footerFilePos);
+			footerContent.writeLong(uncompressedLen);
+			footerContent.writeLong(BlockCompressedIndexFile.TRAILER_MAGIC);
+			footerContent.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (bufferLen == 0) {
+			return;
+		}
+		BlockCodec usedCodec = codec;
+		byte[] compressed = codec.compress(buffer, 0, bufferLen);
+		if (compressed.length >= bufferLen && codec.codecId() != BlockCodec.CODEC_ID_NONE) {
+			// incompressible => store raw
+			usedCodec = BlockCodec.NoneBlockCodec.INSTANCE;
+			compressed = usedCodec.compress(buffer, 0, bufferLen);
+		}
+		out.write(compressed);
+
+		footerOut.writeLong(compressedLen);
+		footerOut.writeInt(compressed.length);
+		footerOut.writeInt(bufferLen);
+		footerOut.writeByte(usedCodec.codecId());
+
+		this.compressedLen += compressed.length;
+		this.uncompressedLen += bufferLen;
+		this.blockCount++;
+		this.bufferLen = 0;
+	}
+
+}
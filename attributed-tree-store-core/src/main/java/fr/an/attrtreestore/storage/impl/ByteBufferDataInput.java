@@ -0,0 +1,83 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * DataInput reading directly from a ByteBuffer (heap or direct), at logical file positions
+ * ... replaces ByteArrayInputStream + CountingInputStream + DataInputStream stack, for decoding prefetched ranges
+ *
+ * uses absolute get(index) only: buffer position/limit are not modified, so buffer may be shared.
+ */
+public class ByteBufferDataInput extends PositionalDataInput {
+
+	private final ByteBuffer buffer;
+	private final long bufferStartFilePos;
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param buffer data, from index 0 to limit(), big-endian
+	 * @param bufferStartFilePos file position of buffer index 0
+	 * @param filePos initial read position (file position)
+	 */
+	public ByteBufferDataInput(ByteBuffer buffer, long bufferStartFilePos, long filePos) {
+		super(filePos, bufferStartFilePos + buffer.limit());
+		this.buffer = buffer;
+		this.bufferStartFilePos = bufferStartFilePos;
+	}
+
+	// ------------------------------------------------------------------------
+
+	private int index(long pos) {
+		return (int) (pos - bufferStartFilePos);
+	}
+
+	/** check available 'len' bytes, and advance 
+	 * @return buffer index before advance 
+	 */
+	private int advance(int len) throws IOException {
+		checkAvailable(len);
+		int res = index(filePos);
+		filePos += len;
+		return res;
+	}
+
+	@Override
+	protected byte byteAt(long pos) {
+		return buffer.get(index(pos));
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return buffer.getShort(advance(2));
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return buffer.getChar(advance(2));
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return buffer.getInt(advance(4));
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return buffer.getLong(advance(8));
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		int from = advance(len);
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + from, b, off, len);
+		} else {
+			for(int i = 0; i < len; i++) {
+				b[off + i] = buffer.get(from + i);
+			}
+		}
+	}
+
+}
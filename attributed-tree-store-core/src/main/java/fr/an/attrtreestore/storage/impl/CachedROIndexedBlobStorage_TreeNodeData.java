@@ -1,29 +1,59 @@
 package fr.an.attrtreestore.storage.impl;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
 import org.path4j.NodeName;
 import org.path4j.NodeNamesPath;
 import org.simplestorage4j.api.BlobStorage;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.CountingInputStream;
 
+import fr.an.attrtreestore.api.IInMemCacheReadTreeData;
 import fr.an.attrtreestore.api.IReadTreeData;
 import fr.an.attrtreestore.api.NodeData;
 import fr.an.attrtreestore.api.ROCached_TreeData;
+import fr.an.attrtreestore.api.override.OverrideNodeData;
+import fr.an.attrtreestore.api.override.OverrideNodeStatus;
+import fr.an.attrtreestore.impl.lru.FrequencyEvictionPolicy;
+import fr.an.attrtreestore.impl.lru.FrequencyEvictionPolicy.Candidate;
+import fr.an.attrtreestore.storage.AttrInfoIndexes;
+import fr.an.attrtreestore.storage.NodeNameDictionary;
 import fr.an.attrtreestore.storage.impl.IndexedBlobStorage_TreeNodeDataEncoder.NodeDataAndChildFilePos;
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
 import fr.an.attrtreestore.util.MemoryWarningSystem;
 import fr.an.attrtreestore.util.MemoryWarningSystem.Listener;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,7 +62,7 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData 
-	implements IReadTreeData { // Disposable // ??
+	implements IReadTreeData, IInMemCacheReadTreeData { // Disposable // ??
 	
 	protected final BlobStorage blobStorage;
 
@@ -45,22 +75,65 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	
 	protected final long fileLen; // computed from blobStorage + fileName at init
 
-	protected int maxBufferSize = 32 * 1024; // 32ko ... may use 4ko for TCP message: 1 call ~ 4k ??
-	protected int defaultFetchSize = 128 * 1024; // 128ko ?? ... will force many more calls to storage, to fill cache more aggressively? 
+	/** optional memory-mapped file, when index file is on local disk .. then used instead of <code>blobStorage.openRead()</code> */
+	protected final MMapIndexedFile mmapIndexedFile;
 
+	/** when index file is block-compressed (auto-detected at init): read by decompressed cached blocks */
 	@Getter
-	protected long cacheMiss = 0;
+	protected final BlockCompressedIndexFile blockIndexFile;
+
+	/** when index file has a name dictionary section (auto-detected at init) */
 	@Getter
-	protected long cacheHit = 0;
+	protected final NodeNameDictionary nameDictionary;
+
+	protected int maxBufferSize = 32 * 1024; // 32ko ... may use 4ko for TCP message: 1 call ~ 4k ??
+	protected int defaultFetchSize = 128 * 1024; // 128ko ?? ... will force many more calls to storage, to fill cache more aggressively? 
+
+	// for getAll(): coalesce missing child reads into ranged readAt() 
+	protected int maxCoalesceGapSize = 4 * 1024; // already loaded sibling data to read+skip, instead of splitting range
+	protected int maxCoalesceReadSize = 1024 * 1024;
+
+	private static final long[] EMPTY_LONG_ARRAY = new long[0];
+
+	protected final LongAdder cacheMiss = new LongAdder();
+	protected final LongAdder cacheHit = new LongAdder();
+	/** cache miss, but waiting for same entry already being loaded by another thread */
+	protected final LongAdder cacheMissCoalesced = new LongAdder();
+	/** count of ranged readAt() in getAll(), each one for several missing child entries */
+	protected final LongAdder coalescedRangeReadCount = new LongAdder();
+	
+	/** single-flight loading of child entries, by dataFilePos (unique per entry in file) */
+	private final ConcurrentHashMap<Long,CompletableFuture<CachedNodeEntry>> pendingLoadByFilePos = new ConcurrentHashMap<>();
+
+	/** executor for reading cache misses in asyncGet(), may be shared .. default to a bounded shared one
+	 * when rejected (queue full), asyncGet() returns a future failed with RejectedExecutionException */
+	@Getter @Setter
+	protected Executor ioExecutor = DefaultIoExecutorHolder.INSTANCE;
+
+	private static class DefaultIoExecutorHolder {
+		private static final int IO_THREAD_COUNT = 16; // remote blob storage reads: mostly waiting on network 
+		private static final int IO_QUEUE_CAPACITY = 10_000;
+		static final ThreadPoolExecutor INSTANCE = createDefaultIoExecutor();
+		
+		private static ThreadPoolExecutor createDefaultIoExecutor() {
+			val res = new ThreadPoolExecutor(IO_THREAD_COUNT, IO_THREAD_COUNT, 
+					60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(IO_QUEUE_CAPACITY),
+					new DefaultNamedThreadFactory("Indexed-IO-", "", true),
+					new ThreadPoolExecutor.AbortPolicy()); // when queue full => fail fast, never blocking IO read in caller thread
+			res.allowCoreThreadTimeOut(true);
+			return res;
+		}
+	}
 	
 	/**
 	 * partially loaded Node... 
 	 * immutable except for loading children from cache /evicting children out of memory 
 	 * 
 	 * ... trying to be memory efficient, using (sorted) Arrays instead of Map<> and sub objects..
+	 * not-loaded children cost only 1 long (childDataFilePos[i]), no handle object per child
 	 * 
+	 * thread-safety: loaded children are published / evicted using CAS on loadedChildEntries slots
 	 */
-	@RequiredArgsConstructor //?
 	@AllArgsConstructor
 	protected static class CachedNodeEntry {
 		final NodeName name;
@@ -69,20 +142,67 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 		// int dataLen; // .. redundant with filePos 
 		NodeData cachedData;
 
-		// when loaded => downcast to CachedNodeEntry
-		// else => downcast to NodeEntryHandle 
-		Object[] sortedEntries;
+		/** sorted child names .. view of cachedData.childNames (no copy), cf ImmutableSet.asList() */
+		ImmutableList<NodeName> sortedChildNames;
+		
+		/** child dataFilePos, same index as sortedChildNames .. array as decoded from file (no copy) */
+		long[] childDataFilePos;
+
+		/** loaded child entries, same index as sortedChildNames, null when not loaded yet or evicted
+		 * allocated lazily on first loaded child
+		 */
+		volatile AtomicReferenceArray<CachedNodeEntry> loadedChildEntries;
 
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<CachedNodeEntry,AtomicReferenceArray> loadedChildEntriesUpdater =
+				AtomicReferenceFieldUpdater.newUpdater(CachedNodeEntry.class, AtomicReferenceArray.class, "loadedChildEntries");
+		
+		int childCount() {
+			return (sortedChildNames != null)? sortedChildNames.size() : 0;
+		}
+		
+		CachedNodeEntry loadedChildAt(int i) {
+			val loaded = loadedChildEntries;
+			return (loaded != null)? loaded.get(i) : null;
+		}
+
+		private AtomicReferenceArray<CachedNodeEntry> getOrCreateLoadedChildEntries() {
+			AtomicReferenceArray<CachedNodeEntry> res = loadedChildEntries;
+			if (res == null) {
+				loadedChildEntriesUpdater.compareAndSet(this, null, new AtomicReferenceArray<CachedNodeEntry>(childDataFilePos.length));
+				res = loadedChildEntries;
+			}
+			return res;
+		}
+		
+		/** @return the published child entry: either 'childEntry', or the one already published by another thread */
+		CachedNodeEntry casLoadedChildAt(int i, CachedNodeEntry childEntry) {
+			val loaded = getOrCreateLoadedChildEntries();
+			for(;;) {
+				if (loaded.compareAndSet(i, null, childEntry)) {
+					return childEntry;
+				}
+				val found = loaded.get(i);
+				if (found != null) {
+					return found;
+				} // else evicted concurrently.. retry
+			}
+		}
+
+		boolean casEvictLoadedChildAt(int i, CachedNodeEntry childEntry) {
+			val loaded = loadedChildEntries;
+			return loaded != null && loaded.compareAndSet(i, childEntry, null);
+		}
+		
 		int findChildIndex(NodeName childName) {
 			// dichotomy search child index by name
 			// cf Arrays.binarySearch
-			val childArray = sortedEntries; 
+			val childNames = sortedChildNames; 
 	        int low = 0;
-	        int high = childArray.length - 1;
+	        int high = childNames.size() - 1;
 	        while (low <= high) {
 	            int mid = (low + high) >>> 1;
-	            Object midVal = childArray[mid];
-	            NodeName midName = (midVal instanceof CachedNodeEntry)? ((CachedNodeEntry) midVal).name : ((NodeEntryHandle) midVal).name;
+	            NodeName midName = childNames.get(mid);
 	            int cmp = midName.compareTo(childName);            
 	            if (cmp < 0) {
 	                low = mid + 1;
@@ -97,27 +217,69 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 		
 	}
 	
-	@AllArgsConstructor
-	protected static class NodeEntryHandle {
-		final NodeName name;
-		long dataFilePos;
-		// private int dataLen; // redundant with filePos..
-	}
-	
 	// ------------------------------------------------------------------------
 	
 	public CachedROIndexedBlobStorage_TreeNodeData(BlobStorage blobStorage, String fileName,
 			IndexedBlobStorage_TreeNodeDataEncoder indexedTreeNodeDataEncoder,
 			IndexedBlobStorageInitMode initMode, long initPrefetchSize) {
+		this(blobStorage, fileName, indexedTreeNodeDataEncoder, initMode, initPrefetchSize, null);
+	}
+
+	/**
+	 * @param mmapIndexedFile optional memory-mapped local file, same content as <code>blobStorage</code> + <code>fileName</code> 
+	 */
+	public CachedROIndexedBlobStorage_TreeNodeData(BlobStorage blobStorage, String fileName,
+			IndexedBlobStorage_TreeNodeDataEncoder indexedTreeNodeDataEncoder,
+			IndexedBlobStorageInitMode initMode, long initPrefetchSize,
+			MMapIndexedFile mmapIndexedFile) {
 		this.blobStorage = blobStorage;
 		this.fileName = fileName;
-		this.indexedTreeNodeDataEncoder = indexedTreeNodeDataEncoder;
+		this.mmapIndexedFile = mmapIndexedFile;
 
         if (! blobStorage.exists(fileName)) {
             // TODO throw
             log.warn("read-only file not found '" + fileName + "' .. will not load data!");
         }
-		this.fileLen = blobStorage.fileLen(fileName);
+		this.blockIndexFile = (mmapIndexedFile == null && blobStorage.exists(fileName))? 
+				BlockCompressedIndexFile.tryOpen(blobStorage, fileName, BlockCompressedIndexFile.DEFAULT_BLOCK_CACHE_MAX_BYTES) : null;
+		// logical len (uncompressed) for block-compressed file 
+		long logicalLen = (blockIndexFile != null)? blockIndexFile.getUncompressedLen() 
+				: (mmapIndexedFile != null)? mmapIndexedFile.getFileLen() : blobStorage.fileLen(fileName);
+		
+		// optional sections at end of file, last first: [records] [name dictionary section] [attr table section] 
+		NodeNameDictionary nameDictionary = null;
+		List<String> fileAttrNames = null;
+		long sectionsEndPos = logicalLen;
+		while(sectionsEndPos >= NodeNameDictionary.TRAILER_LEN && blobStorage.exists(fileName)) {
+			val trailer = ByteBuffer.wrap(readRange(sectionsEndPos - NodeNameDictionary.TRAILER_LEN, NodeNameDictionary.TRAILER_LEN));
+			val sectionPos = trailer.getLong();
+			val recordsLen = trailer.getLong();
+			val magic = trailer.getLong();
+			if (magic == AttrInfoIndexes.SECTION_MAGIC && fileAttrNames == null && nameDictionary == null) {
+				val sectionData = readRange(sectionPos, (int) (sectionsEndPos - AttrInfoIndexes.TRAILER_LEN - sectionPos));
+				try {
+					fileAttrNames = AttrInfoIndexes.readAttrTable(new DataInputStream(new ByteArrayInputStream(sectionData)));
+				} catch(IOException ex) {
+					throw new RuntimeException("Failed to read attr table of '" + fileName + "'", ex);
+				}
+			} else if (magic == NodeNameDictionary.SECTION_MAGIC && nameDictionary == null) {
+				val sectionData = readRange(sectionPos, (int) (sectionsEndPos - NodeNameDictionary.TRAILER_LEN - sectionPos));
+				nameDictionary = NodeNameDictionary.readSection(sectionData, 
+						indexedTreeNodeDataEncoder.getAttrDataEncoderHelper().nodeNameEncoder);
+			} else {
+				break;
+			}
+			logicalLen = recordsLen;
+			sectionsEndPos = sectionPos;
+		}
+		if (fileAttrNames != null) {
+			indexedTreeNodeDataEncoder.getAttrDataEncoderHelper().attrIndexes.checkAttrTable(fileAttrNames, fileName);
+		}
+		this.nameDictionary = nameDictionary;
+		this.indexedTreeNodeDataEncoder = (nameDictionary != null)? 
+				indexedTreeNodeDataEncoder.withNameDictionary(nameDictionary) : indexedTreeNodeDataEncoder;
+		// fileLen: end of records
+		this.fileLen = logicalLen;
 		
 		// init the root node, dataFilePos fixed known in file 
 		// field 'rootNode' is final, so must be set in ctor... 
@@ -125,7 +287,7 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 		val rootDataFilePos = IndexedBlobStorage_TreeNodeDataEncoder.FIXED_ROOT_FILEPOS;
 		this.rootNode = new CachedNodeEntry(rootName, rootDataFilePos, 
 				null, // cachedData... can be null, and filePos is set to reload it 
-				null // <= sortedEntries ... must be loaded in init!!
+				null, null, null // <= sortedChildNames, childDataFilePos, loadedChildEntries ... must be loaded in init!!
 				);
 
 		// caller MUST call init next cf next
@@ -148,7 +310,8 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 			break;
 
 		case INIT_EMPTY:
-			this.rootNode.sortedEntries = new Object[0];
+			this.rootNode.sortedChildNames = ImmutableList.of();
+			this.rootNode.childDataFilePos = EMPTY_LONG_ARRAY;
 			break;
 
 		case NOT_INITIALIZED:
@@ -158,22 +321,28 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	}
 
 	protected void initReloadRoot(long initFetchSize) {
-		// initialize rootNode content!! (data + corresponding sortedEntries)
-		val rootHandle = new NodeEntryHandle(this.rootNode.name, this.rootNode.dataFilePos);
-		
+		// initialize rootNode content!! (data + corresponding child entries)
 		NodeData rootData;
-		Object[] rootEntries;
+		ImmutableList<NodeName> rootChildNames;
+		long[] rootChildDataFilePos;
+		AtomicReferenceArray<CachedNodeEntry> rootLoadedChildEntries;
 		if (blobStorage.exists(fileName)) {
-		    val loadedRootNode = doLoadCachedNodeEntry(rootHandle, initFetchSize);
+		    val loadedRootNode = doLoadCachedNodeEntry(rootNode.name, rootNode.dataFilePos, initFetchSize);
 		    rootData = loadedRootNode.cachedData;
-		    rootEntries = loadedRootNode.sortedEntries;
+		    rootChildNames = loadedRootNode.sortedChildNames;
+		    rootChildDataFilePos = loadedRootNode.childDataFilePos;
+		    rootLoadedChildEntries = loadedRootNode.loadedChildEntries;
 		} else {
 		    rootData = null; // ??
-		    rootEntries = new Object[0];
+		    rootChildNames = ImmutableList.of();
+		    rootChildDataFilePos = EMPTY_LONG_ARRAY;
+		    rootLoadedChildEntries = null;
 		}
 		synchronized(this.rootNode) {
 			this.rootNode.cachedData = rootData;
-			this.rootNode.sortedEntries = rootEntries;
+			this.rootNode.sortedChildNames = rootChildNames;
+			this.rootNode.childDataFilePos = rootChildDataFilePos;
+			this.rootNode.loadedChildEntries = rootLoadedChildEntries;
 		}
 	}
 	
@@ -182,6 +351,39 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	
 	@Override
 	public NodeData get(final NodeNamesPath path) {
+		val currEntry = resolveEntry(path);
+		if (currEntry == null) {
+			return null; // Node not found
+		}
+		val res = entryData(currEntry);
+		if (res != null) {
+			res.incrUsed(System.currentTimeMillis()); // for LFU eviction
+		}
+		return res;
+	}
+
+	/** only loaded entries, never loading from file (no IO), and not counted as used for LFU eviction
+	 * @return UPDATED with data, DELETED if not exist, or NOT_OVERRIDEN if not loaded in memory
+	 */
+	@Override // implements IInMemCacheReadTreeData
+	public OverrideNodeData getIfInMemCache(NodeNamesPath path) {
+		val pathEltCount = path.size();
+		CachedNodeEntry currEntry = rootNode;
+		for(int i = 0; i < pathEltCount; i++) {
+			val childIdx = currEntry.findChildIndex(path.get(i));
+			if (childIdx < 0) {
+				return OverrideNodeData.DELETED; // Node not found
+			}
+			currEntry = currEntry.loadedChildAt(childIdx);
+			if (currEntry == null) {
+				return OverrideNodeData.NOT_OVERRIDEN; // not loaded, or evicted
+			}
+		}
+		val data = currEntry.cachedData;
+		return (data != null)? new OverrideNodeData(OverrideNodeStatus.UPDATED, data) : OverrideNodeData.NOT_OVERRIDEN;
+	}
+
+	protected CachedNodeEntry resolveEntry(final NodeNamesPath path) {
 		val pathEltCount = path.size();
 		CachedNodeEntry currEntry = rootNode;
 		for(int i = 0; i < pathEltCount; i++) {
@@ -190,33 +392,297 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 			if (childIdx < 0) {
 				return null; // Node not found 
 			}
-			Object childObj = currEntry.sortedEntries[childIdx];
-			if (childObj == null) {
-				return null;
-			}
-			if (childObj instanceof CachedNodeEntry) {
-				currEntry = (CachedNodeEntry) childObj;
-				cacheHit++;
-			} else { // NodeEntryHandle
-				val childEntryHandle = (NodeEntryHandle) childObj;
-				// cache miss .. need to async reload entry from cache
-				cacheMiss++;
-				CachedNodeEntry childEntry = doLoadCachedNodeEntry(childEntryHandle, defaultFetchSize);
-				currEntry.sortedEntries[childIdx] = childEntry;
-				currEntry = childEntry;
+			val loadedChildEntry = currEntry.loadedChildAt(childIdx);
+			if (loadedChildEntry != null) {
+				currEntry = loadedChildEntry;
+				cacheHit.increment();
+			} else {
+				// cache miss .. need to reload entry from cache (or wait for pending load by another thread)
+				cacheMiss.increment();
+				currEntry = singleFlightLoadChild(currEntry, childIdx, pathElt);
 			}
 		}
-		NodeData res = currEntry.cachedData;
+		return currEntry;
+	}
+	
+	protected NodeData entryData(CachedNodeEntry entry) {
+		NodeData res = entry.cachedData;
 		if (res == null) {
 			// cache miss on last entry on cachedData
-			cacheMiss++;
-			val currHandle = new NodeEntryHandle(currEntry.name, currEntry.dataFilePos);
-			CachedNodeEntry reloadCurrEntry = doLoadCachedNodeEntry(currHandle, defaultFetchSize);
+			cacheMiss.increment();
+			CachedNodeEntry reloadCurrEntry = doLoadCachedNodeEntry(entry.name, entry.dataFilePos, defaultFetchSize);
 			res = reloadCurrEntry.cachedData;
 		}
 		return res;
-	} 
+	}
+
+	/**
+	 * batched get of child: resolve parent once, then read all missing child with few ranged readAt()
+	 * (child entries are stored in increasing dataFilePos order, cf pre-order index file)
+	 */
+	@Override
+	public Map<NodeName,NodeData> getAll(NodeNamesPath parentPath, Collection<NodeName> childNames) {
+		val res = new HashMap<NodeName,NodeData>(Math.max(16, childNames.size() * 4 / 3 + 1));
+		val parentEntry = resolveEntry(parentPath);
+		if (parentEntry == null) {
+			return res;
+		}
+		int missingCount = 0;
+		val missingIndexes = new int[childNames.size()];
+		for(val childName: childNames) {
+			val childIdx = parentEntry.findChildIndex(childName);
+			if (childIdx < 0) {
+				continue; // not found
+			}
+			val loadedChildEntry = parentEntry.loadedChildAt(childIdx);
+			if (loadedChildEntry != null) {
+				cacheHit.increment();
+				res.put(childName, entryData(loadedChildEntry));
+			} else {
+				cacheMiss.increment();
+				missingIndexes[missingCount++] = childIdx;
+			}
+		}
+		if (missingCount > 0) {
+			Arrays.sort(missingIndexes, 0, missingCount);
+			if (mmapIndexedFile != null || missingCount == 1) {
+				// no IO to coalesce
+				for(int i = 0; i < missingCount; i++) {
+					val childIdx = missingIndexes[i];
+					val childName = parentEntry.sortedChildNames.get(childIdx);
+					val childEntry = singleFlightLoadChild(parentEntry, childIdx, childName);
+					res.put(childName, entryData(childEntry));
+				}
+			} else {
+				doLoadCoalescedChildRanges(parentEntry, missingIndexes, missingCount, res);
+			}
+		}
+		val now = System.currentTimeMillis();
+		for(val childData: res.values()) {
+			childData.incrUsed(now); // for LFU eviction
+		}
+		return res;
+	}
+
+	/** @return end filePos of child (=start of next sibling), or -1 when unknown (last child) */
+	private static long childEndFilePos(CachedNodeEntry parent, int childIdx) {
+		val childDataFilePos = parent.childDataFilePos;
+		return (childIdx + 1 < childDataFilePos.length)? childDataFilePos[childIdx + 1] : -1;
+	}
+	
+	protected void doLoadCoalescedChildRanges(CachedNodeEntry parent, int[] missingIndexes, int missingCount,
+			Map<NodeName,NodeData> res) {
+		val childDataFilePos = parent.childDataFilePos;
+		int groupStart = 0;
+		while(groupStart < missingCount) {
+			// extend group while next missing child is close enough
+			val rangeStartPos = childDataFilePos[missingIndexes[groupStart]];
+			int groupEnd = groupStart + 1;
+			for(; groupEnd < missingCount; groupEnd++) {
+				val prevEndPos = childEndFilePos(parent, missingIndexes[groupEnd - 1]);
+				val nextPos = childDataFilePos[missingIndexes[groupEnd]];
+				if (prevEndPos == -1 
+						|| nextPos - prevEndPos > maxCoalesceGapSize
+						|| nextPos - rangeStartPos > maxCoalesceReadSize) {
+					break;
+				}
+			}
+			// read range up to end of last child in group.. capped (when sub-tree is big, or unknown end)
+			val lastIdx = missingIndexes[groupEnd - 1];
+			val lastPos = childDataFilePos[lastIdx];
+			long rangeEndPos = Math.min(fileLen, lastPos + maxBufferSize);
+			val lastEndPos = childEndFilePos(parent, lastIdx);
+			if (lastEndPos != -1) {
+				rangeEndPos = Math.min(rangeEndPos, lastEndPos);
+			}
+			
+			byte[] rangeData;
+			try {
+				rangeData = readRange(rangeStartPos, (int) (rangeEndPos - rangeStartPos));
+				coalescedRangeReadCount.increment();
+			} catch(RuntimeException ex) {
+				log.warn("Failed to read range [" + rangeStartPos + ", " + rangeEndPos + "[ .. fallback to read per entry", ex);
+				rangeData = null;
+			}
+			
+			for(int i = groupStart; i < groupEnd; i++) {
+				val childIdx = missingIndexes[i];
+				val childName = parent.sortedChildNames.get(childIdx);
+				CachedNodeEntry childEntry = (rangeData != null)? 
+						tryParseFromRange(parent, childIdx, childName, rangeData, rangeStartPos, rangeEndPos) : null;
+				if (childEntry == null) {
+					// entry not fully in range (too big?) 
+					childEntry = singleFlightLoadChild(parent, childIdx, childName);
+				}
+				res.put(childName, entryData(childEntry));
+			}
+			groupStart = groupEnd;
+		}
+	}
+
+	/** 
+	 * @return published entry, parsed from range data, or null if not fully in range
+	 * ... not single-flight here, concurrent loads of same entry are resolved by CAS in parent slot 
+	 */
+	protected CachedNodeEntry tryParseFromRange(CachedNodeEntry parent, int childIdx, NodeName childName, 
+			byte[] rangeData, long rangeStartPos, long rangeEndPos) {
+		val dataFilePos = parent.childDataFilePos[childIdx];
+		// decode directly from range buffer, no stream/counting wrappers
+		val in = new ByteBufferDataInput(ByteBuffer.wrap(rangeData), rangeStartPos, dataFilePos);
+		CachedNodeEntry childEntry;
+		try {
+			val dataAndChildPos = indexedTreeNodeDataEncoder.readNodeDataAndChildIndexes(in, childName);
+			childEntry = dataAndChildPosToCachedEntry(childName, dataFilePos, dataAndChildPos);
+		} catch(IOException ex) {
+			return null; // EOF .. entry not fully in range
+		}
+		// also parse sub-tree entries if read in range
+		long childEndPos = childEndFilePos(parent, childIdx);
+		long maxFilePos = (childEndPos != -1)? Math.min(childEndPos, rangeEndPos) : rangeEndPos;
+		if (in.getFilePos() < maxFilePos) {
+			try {
+				tryParseAndAddCachedRecursiveChildList(childEntry, in, in::getFilePos, maxFilePos);
+			} catch(Exception ex) {
+				log.error("Failed to load more entries from range data.. ignore", ex);
+			}
+		}
+		return parent.casLoadedChildAt(childIdx, childEntry);
+	}
+
+	/**
+	 * async version of get(): walk loaded entries in caller thread, 
+	 * then continue resolving path after each cache miss, read on ioExecutor
+	 */
+	@Override
+	public CompletableFuture<NodeData> asyncGet(final NodeNamesPath path) {
+		return asyncResolveFrom(rootNode, path, 0);
+	}
+
+	protected CompletableFuture<NodeData> asyncResolveFrom(CachedNodeEntry fromEntry, NodeNamesPath path, int fromPathIndex) {
+		val pathEltCount = path.size();
+		CachedNodeEntry currEntry = fromEntry;
+		for(int i = fromPathIndex; i < pathEltCount; i++) {
+			val pathElt = path.get(i);
+			val childIdx = currEntry.findChildIndex(pathElt);
+			if (childIdx < 0) {
+				return CompletableFuture.completedFuture(null); // Node not found 
+			}
+			val loadedChildEntry = currEntry.loadedChildAt(childIdx);
+			if (loadedChildEntry != null) {
+				currEntry = loadedChildEntry;
+				cacheHit.increment();
+			} else {
+				cacheMiss.increment();
+				val nextPathIndex = i + 1;
+				return asyncSingleFlightLoadChild(currEntry, childIdx, pathElt)
+						.thenCompose(childEntry -> asyncResolveFrom(childEntry, path, nextPathIndex));
+			}
+		}
+		NodeData res = currEntry.cachedData;
+		if (res == null) {
+			// cache miss on last entry on cachedData
+			cacheMiss.increment();
+			val lastEntry = currEntry;
+			try {
+				return CompletableFuture.supplyAsync(() -> 
+						doLoadCachedNodeEntry(lastEntry.name, lastEntry.dataFilePos, defaultFetchSize).cachedData, 
+						ioExecutor);
+			} catch(RejectedExecutionException ex) {
+				val failed = new CompletableFuture<NodeData>();
+				failed.completeExceptionally(ex);
+				return failed;
+			}
+		}
+		res.incrUsed(System.currentTimeMillis()); // for LFU eviction
+		return CompletableFuture.completedFuture(res);
+	}
+
+	public long getCacheHit() {
+		return cacheHit.sum();
+	}
+
+	public long getCacheMiss() {
+		return cacheMiss.sum();
+	}
+
+	public long getCacheMissCoalesced() {
+		return cacheMissCoalesced.sum();
+	}
+
+	public long getCoalescedRangeReadCount() {
+		return coalescedRangeReadCount.sum();
+	}
+
+	/**
+	 * load child entry, at most once for concurrent callers: 
+	 * first caller decodes and publishes (CAS) in parent slot, others wait for same pending result  
+	 */
+	protected CachedNodeEntry singleFlightLoadChild(CachedNodeEntry parent, int childIdx, NodeName childName) {
+		val childDataFilePos = parent.childDataFilePos[childIdx];
+		val pending = new CompletableFuture<CachedNodeEntry>();
+		val foundPending = pendingLoadByFilePos.putIfAbsent(childDataFilePos, pending);
+		if (foundPending != null) {
+			cacheMissCoalesced.increment();
+			return joinPending(foundPending);
+		}
+		doLoadChildAndComplete(parent, childIdx, childName, pending);
+		return joinPending(pending);
+	}
+
+	/** same as singleFlightLoadChild(), but reading on ioExecutor */
+	protected CompletableFuture<CachedNodeEntry> asyncSingleFlightLoadChild(CachedNodeEntry parent, int childIdx, NodeName childName) {
+		val childDataFilePos = parent.childDataFilePos[childIdx];
+		val pending = new CompletableFuture<CachedNodeEntry>();
+		val foundPending = pendingLoadByFilePos.putIfAbsent(childDataFilePos, pending);
+		if (foundPending != null) {
+			cacheMissCoalesced.increment();
+			return foundPending;
+		}
+		try {
+			ioExecutor.execute(() -> doLoadChildAndComplete(parent, childIdx, childName, pending));
+		} catch(RejectedExecutionException ex) {
+			pendingLoadByFilePos.remove(childDataFilePos, pending);
+			pending.completeExceptionally(ex);
+		}
+		return pending;
+	}
+
+	private void doLoadChildAndComplete(CachedNodeEntry parent, int childIdx, NodeName childName,
+			CompletableFuture<CachedNodeEntry> pending) {
+		val childDataFilePos = parent.childDataFilePos[childIdx];
+		CachedNodeEntry res = null;
+		Throwable failure = null;
+		try {
+			// re-check, may have been loaded by another thread before putIfAbsent
+			res = parent.loadedChildAt(childIdx);
+			if (res == null) {
+				val childEntry = doLoadCachedNodeEntry(childName, childDataFilePos, defaultFetchSize);
+				res = parent.casLoadedChildAt(childIdx, childEntry);
+			}
+		} catch(Throwable ex) { // also Error (OOM, StackOverflow..), else waiters on pending would hang forever
+			failure = ex;
+		}
+		// unregister before completing: callers after completion never join a stale (failed) pending
+		pendingLoadByFilePos.remove(childDataFilePos, pending);
+		if (failure != null) {
+			pending.completeExceptionally(failure);
+		} else {
+			pending.complete(res);
+		}
+	}
 
+	private static <T> T joinPending(CompletableFuture<T> pending) {
+		try {
+			return pending.join();
+		} catch(CompletionException ex) {
+			val cause = ex.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (cause instanceof RuntimeException)? (RuntimeException) cause : ex;
+		}
+	}
+	
 	// public api for freeing memory by evicting some internal nodes, reloadable later from cache
 	// ------------------------------------------------------------------------
 	
@@ -230,11 +696,28 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 				.minSubTreeSizeOnDisk(20 * MEGA)		
 				.maxSubTreeSizeOnDisk(50 * MEGA)		
 				.build();
+
+	/** params for low memory listener, default to LFU eviction .. set to null to fallback to random eviction */
+	@Getter @Setter
+	private FreeMemoryByLfuEvictingSubTreeParams lfuEvictingSubTreeParams =
+			FreeMemoryByLfuEvictingSubTreeParams.builder()
+				.untilFreedMemSize(50 * MEGA)
+				.minLevel(3)
+				.maxSubTreeSizeOnDisk(50 * MEGA)
+				.build();
+
+	@Getter
+	private final FrequencyEvictionPolicy evictionPolicy = new FrequencyEvictionPolicy();
 	
 	public void registerLowMemoryListenerOffloader() {
 		if (innerLowMemListener == null) {
 			innerLowMemListener = (usedMemory, maxMemory) -> {
-				if (randomEvictingSubTreeParams != null) {
+				val lfuParams = lfuEvictingSubTreeParams;
+				if (lfuParams != null) {
+					log.info("detected low memory, lfuEvictingSubTree ..");
+					long estimatedFreed = freeMemoryByLfuEvictingSubTree(lfuParams);
+					log.info("detected low memory.. lfuEvictingSubTree => " + estimatedFreed / MEGA + " Mb");
+				} else if (randomEvictingSubTreeParams != null) {
 					log.info("detected low memory, randomEvictingSubTree ..");
 					long estimatedFreed = freeMemoryByRandomEvictingSubTree(randomEvictingSubTreeParams);
 					log.info("detected low memory.. randomEvictingSubTree => " + estimatedFreed / MEGA + " Mb");
@@ -279,17 +762,16 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	}
 	
 	private void doRecursiveFreeMemory(CachedNodeEntry node, FreeMemoryByRecursiveEvictingEntryContext ctx) {
-		Object[] childEntries = node.sortedEntries;
-		if (childEntries == null || childEntries.length == 0) {
+		val childEntries = node.loadedChildEntries;
+		if (childEntries == null || childEntries.length() == 0) {
 			return;
 		}
 		ctx.currLevel++;
 		try {
-			val childCount = childEntries.length;
+			val childCount = childEntries.length();
 			for(int i = 0; i < childCount; i++) {
-				val e = childEntries[i];
-				if (e instanceof CachedNodeEntry) {
-					val childNode = (CachedNodeEntry) e;
+				val childNode = childEntries.get(i);
+				if (childNode != null) {
 	
 					// *** recurse first (free sub-child, before freeing all tree) ***
 					doRecursiveFreeMemory(childNode, ctx);
@@ -311,9 +793,10 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 					}
 					
 					if (decideEvictEntry) {
-						// cache evict child entry.. replaced by NodeHandle
-						val childEntryHandle = new NodeEntryHandle(childNode.name, childNode.dataFilePos);
-						childEntries[i] = childEntryHandle;
+						// cache evict child entry.. still reloadable from parent childDataFilePos[i]
+						if (! node.casEvictLoadedChildAt(i, childNode)) {
+							continue; // concurrently changed.. ignore
+						}
 						int estimateNodeMem = estimateEntryInMemSize(childNode);
 						// may help GC by recursively clearing all refs, but need replacing by Handle..
 						ctx.currFreedMemSize += estimateNodeMem;
@@ -334,7 +817,10 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 		int estimateNodeMem = 120;
 		if (childNode.cachedData != null) {
 			val data = childNode.cachedData; 
-			estimateNodeMem += 50 * data.attrCount() + 16 * data.childCount();
+			estimateNodeMem += 50 * data.attrCount() + 12 * data.childCount();
+		}
+		if (childNode.loadedChildEntries != null) {
+			estimateNodeMem += 16 + 4 * childNode.loadedChildEntries.length();
 		}
 		return estimateNodeMem;
 	}
@@ -390,37 +876,33 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	private void doRandomTraverseUntilFreeSubTree(CachedNodeEntry node, 
 			FreeMemoryByRandomEvictingSubTreeContext ctx,
 			long currLastChildEndFilePos) {
-		Object[] childEntries = node.sortedEntries;
-		if (childEntries == null || childEntries.length == 0) {
+		val childEntries = node.loadedChildEntries;
+		if (childEntries == null || childEntries.length() == 0) {
 			return;
 		}
+		val childDataFilePosArray = node.childDataFilePos;
 		ctx.currLevel++;
 		try {
-			val childCount = childEntries.length;
+			val childCount = childEntries.length();
 			
 			int maxRetryRand = Math.min(4, childCount);
 			for(int retryRandCount = 0; retryRandCount < maxRetryRand; retryRandCount++) {
 				int i = ctx.rand.nextInt(childCount);
-				Object child = childEntries[i];
+				val childEntry = childEntries.get(i);
 				
 				long childEndFilePos;
 				if (i + 1 < childCount) {
-					val nextSibling = childEntries[i+1];
-					childEndFilePos = ((nextSibling instanceof CachedNodeEntry))? 
-							((CachedNodeEntry) nextSibling).dataFilePos
-							: ((NodeEntryHandle) nextSibling).dataFilePos; 
+					childEndFilePos = childDataFilePosArray[i+1]; 
 				} else {
 					childEndFilePos = currLastChildEndFilePos;
 				}
 	
-				if (!(child instanceof CachedNodeEntry)) {
+				if (childEntry == null) {
 					// child already freed? try choose another child? else return..
 					continue;
 				}
-			
-				val childEntry = (CachedNodeEntry) child;
 				
-				long childDataFilePos = childEntry.dataFilePos;
+				long childDataFilePos = childDataFilePosArray[i];
 				long subTreeSize = childEndFilePos - childDataFilePos;
 
 				boolean freeChild = false;
@@ -443,8 +925,9 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 				}
 
 				if (freeChild) {
-					val childEntryHandle = new NodeEntryHandle(childEntry.name, childDataFilePos);
-					childEntries[i] = childEntryHandle;
+					if (! node.casEvictLoadedChildAt(i, childEntry)) { // still reloadable from childDataFilePos[i]
+						continue; // concurrently changed.. ignore
+					}
 					int estimateNodeMem = estimateEntryInMemSize(childEntry);
 					// may help GC by recursively clearing all refs, but need replacing by Handle..
 					ctx.currFreedMemSize += estimateNodeMem;
@@ -460,10 +943,220 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	
 	
 	// ------------------------------------------------------------------------
+
+	/** 
+	 * evict entry of path (with its loaded sub-tree) if loaded, without IO .. still reloadable from parent
+	 * @return true if evicted, false if not loaded
+	 */
+	public boolean evictLoadedSubTree(NodeNamesPath path) {
+		val pathEltCount = path.size();
+		if (pathEltCount == 0) {
+			return false; // root is never evicted
+		}
+		CachedNodeEntry parentEntry = rootNode;
+		for(int i = 0; i < pathEltCount - 1; i++) {
+			val childIdx = parentEntry.findChildIndex(path.get(i));
+			parentEntry = (childIdx >= 0)? parentEntry.loadedChildAt(childIdx) : null;
+			if (parentEntry == null) {
+				return false;
+			}
+		}
+		val childIdx = parentEntry.findChildIndex(path.last());
+		if (childIdx < 0) {
+			return false;
+		}
+		val childEntry = parentEntry.loadedChildAt(childIdx);
+		return childEntry != null && parentEntry.casEvictLoadedChildAt(childIdx, childEntry);
+	}
+
+	/** cap all read-ahead sizes (fetch, buffer, coalesced getAll range) 
+	 * ... for sequential scan of whole tree, where prefetched sibling sub-trees would stay cached until spilled */
+	public void setMaxPrefetchSize(int maxPrefetchSize) {
+		this.defaultFetchSize = maxPrefetchSize;
+		this.maxBufferSize = maxPrefetchSize;
+		this.maxCoalesceReadSize = maxPrefetchSize;
+	}
+
+	/** @return count of entries currently loaded in memory (including root), walking loaded tree */
+	public int getLoadedEntryCount() {
+		return doRecursiveCountLoadedEntries(rootNode);
+	}
+
+	private int doRecursiveCountLoadedEntries(CachedNodeEntry node) {
+		int res = 1;
+		val childEntries = node.loadedChildEntries;
+		if (childEntries != null) {
+			val childCount = childEntries.length();
+			for(int i = 0; i < childCount; i++) {
+				val childEntry = childEntries.get(i);
+				if (childEntry != null) {
+					// *** recurse ***
+					res += doRecursiveCountLoadedEntries(childEntry);
+				}
+			}
+		}
+		return res;
+	}
+
+	/** clock tick for LFU eviction: halve lru counts of all loaded entries, cf NodeData.decayLruCount() .. to register in LruDecayTicker */
+	public void decayLruCounts() {
+		doRecursiveDecayLruCounts(rootNode);
+	}
+
+	private void doRecursiveDecayLruCounts(CachedNodeEntry node) {
+		val data = node.cachedData;
+		if (data != null) {
+			data.decayLruCount();
+		}
+		val childEntries = node.loadedChildEntries;
+		if (childEntries == null) {
+			return;
+		}
+		val childCount = childEntries.length();
+		for(int i = 0; i < childCount; i++) {
+			val childEntry = childEntries.get(i);
+			if (childEntry != null) {
+				// *** recurse ***
+				doRecursiveDecayLruCounts(childEntry);
+			}
+		}
+	}
 	
-	protected CachedNodeEntry doLoadCachedNodeEntry(NodeEntryHandle entryHandle, long fetchSizeArgs) {
+	@Builder
+	public static class FreeMemoryByLfuEvictingSubTreeParams {
+		public long untilFreedMemSize;
+		public int minLevel;		
+		/** bigger sub-trees are not evicted as a whole, but split into child sub-trees candidates .. 0 for unlimited */
+		public long maxSubTreeSizeOnDisk;		
+	}
+
+	/** loaded child sub-tree, evictable from parent slot */
+	@RequiredArgsConstructor
+	private static class SubTreeSlot {
+		final CachedNodeEntry parent;
+		final int childIdx;
+		final CachedNodeEntry childEntry;
+	}
+
+	/** cumulated stats of a loaded sub-tree */
+	private static class SubTreeStats {
+		long frequency;
+		int loadedNodeCount;
+		long lastQueryTimeMillis;
+		long estimatedMemSize;
+
+		/** mean frequency per loaded node, fixed-point (x FREQUENCY_PER_NODE_SCALE) to keep small counts ordered */
+		long frequencyPerNode() {
+			return (loadedNodeCount > 0)? frequency * FREQUENCY_PER_NODE_SCALE / loadedNodeCount : 0;
+		}
+	}
+	private static final long FREQUENCY_PER_NODE_SCALE = 1024;
+
+	/**
+	 * evict least frequently used sub-trees first, sub-trees queried recently evicted last, cf FrequencyEvictionPolicy
+	 * => hot directories stay resident.
+	 * frequency of a sub-tree = mean of decayed lru counts per loaded entry: 
+	 * a sum would rank big sub-trees of rarely used entries as hot, and evict small hot ones first
+	 */
+	public long freeMemoryByLfuEvictingSubTree(
+			FreeMemoryByLfuEvictingSubTreeParams params) {
+		if (params.untilFreedMemSize == 0) {
+			params.untilFreedMemSize = 50 * 1024* 1024;
+		}
+		val candidates = new ArrayList<Candidate<SubTreeSlot>>();
+		doCollectLfuCandidates(rootNode, 0, fileLen, params, candidates);
+		
+		val victims = evictionPolicy.selectVictims(candidates, params.untilFreedMemSize, System.currentTimeMillis());
+		long res = 0;
+		for(val victim: victims) {
+			val slot = victim.ref;
+			if (! slot.parent.casEvictLoadedChildAt(slot.childIdx, slot.childEntry)) { // still reloadable from childDataFilePos[i]
+				continue; // concurrently changed.. ignore
+			}
+			res += victim.estimatedMemSize;
+		}
+		return res;
+	}
+
+	private void doCollectLfuCandidates(CachedNodeEntry node, int level, long currLastChildEndFilePos,
+			FreeMemoryByLfuEvictingSubTreeParams params,
+			List<Candidate<SubTreeSlot>> res) {
+		val childEntries = node.loadedChildEntries;
+		if (childEntries == null) {
+			return;
+		}
+		val childDataFilePosArray = node.childDataFilePos;
+		val childLevel = level + 1;
+		val childCount = childEntries.length();
+		for(int i = 0; i < childCount; i++) {
+			val childEntry = childEntries.get(i);
+			if (childEntry == null) {
+				continue;
+			}
+			val childEndFilePos = (i + 1 < childCount)? childDataFilePosArray[i+1] : currLastChildEndFilePos;
+			val subTreeSize = childEndFilePos - childDataFilePosArray[i];
+			if (childLevel >= params.minLevel 
+					&& (params.maxSubTreeSizeOnDisk <= 0 || subTreeSize <= params.maxSubTreeSizeOnDisk)) {
+				val stats = new SubTreeStats();
+				doRecursiveSubTreeStats(childEntry, stats);
+				res.add(new Candidate<>(new SubTreeSlot(node, i, childEntry), 
+						stats.frequencyPerNode(), stats.lastQueryTimeMillis, stats.estimatedMemSize));
+			} else {
+				// *** recurse *** split into smaller candidates
+				doCollectLfuCandidates(childEntry, childLevel, childEndFilePos, params, res);
+			}
+		}
+	}
+
+	private void doRecursiveSubTreeStats(CachedNodeEntry node, SubTreeStats res) {
+		val data = node.cachedData;
+		if (data != null) {
+			res.frequency += data.lruFrequency();
+			res.loadedNodeCount++;
+			res.lastQueryTimeMillis = Math.max(res.lastQueryTimeMillis, data.getLastTreeDataQueryTimeMillis());
+		}
+		res.estimatedMemSize += estimateEntryInMemSize(node);
+		val childEntries = node.loadedChildEntries;
+		if (childEntries == null) {
+			return;
+		}
+		val childCount = childEntries.length();
+		for(int i = 0; i < childCount; i++) {
+			val childEntry = childEntries.get(i);
+			if (childEntry != null) {
+				// *** recurse ***
+				doRecursiveSubTreeStats(childEntry, res);
+			}
+		}
+	}
+	
+	// ------------------------------------------------------------------------
+	
+	protected byte[] readRange(long fromFilePos, int len) {
+		if (blockIndexFile != null) {
+			return blockIndexFile.readAt(fromFilePos, len);
+		}
+		if (mmapIndexedFile != null) {
+			val res = new byte[len];
+			try {
+				mmapIndexedFile.dataInputAt(fromFilePos).readFully(res);
+			} catch(IOException ex) {
+				throw new RuntimeException("Failed to read range at " + fromFilePos, ex);
+			}
+			return res;
+		}
+		return blobStorage.readAt(fileName, fromFilePos, len);
+	}
+
+	protected CachedNodeEntry doLoadCachedNodeEntry(NodeName name, long dataFilePos, long fetchSizeArgs) {
+		if (blockIndexFile != null) {
+			val in = blockIndexFile.dataInputAt(dataFilePos);
+			return doLoadCachedNodeEntryFrom(name, dataFilePos, fetchSizeArgs, in, in::getFilePos);
+		}
+		if (mmapIndexedFile != null) {
+			return doLoadCachedNodeEntry_mmap(name, dataFilePos, fetchSizeArgs);
+		}
 		CachedNodeEntry res;
-		val dataFilePos = entryHandle.dataFilePos;
 		long maxReadLen = fileLen - dataFilePos;
 		long maxReadCount = Math.min(fetchSizeArgs, maxReadLen);
 		
@@ -476,7 +1169,6 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 			CountingInputStream counting = new CountingInputStream(bufferedStorageIn);
 			DataInputStream in = new DataInputStream(counting);
 		
-			val name = entryHandle.name;
 			NodeDataAndChildFilePos dataAndChildPos = null;
 		
 			dataAndChildPos = indexedTreeNodeDataEncoder.readNodeDataAndChildIndexes(in, name);
@@ -487,13 +1179,42 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 			if (currReadCount < maxReadCount) {
 				// also try parse recursively few other entries from buffer / re-filled buffer
 				try {
-					tryParseAndAddCachedRecursiveChildList(res, in, dataFilePos, counting, maxReadCount);
+					LongSupplier currFilePos = () -> dataFilePos + counting.getCount();
+					tryParseAndAddCachedRecursiveChildList(res, in, currFilePos, dataFilePos + maxReadCount);
 				} catch(Exception ex) {
 					log.error("Failed to load more entries from prefetched data.. ignore", ex);
 				}
 			}
 		} catch(IOException ex) {
-			throw new RuntimeException("Failed to read entry " + entryHandle.name + " at " + dataFilePos, ex);
+			throw new RuntimeException("Failed to read entry " + name + " at " + dataFilePos, ex);
+		}
+		return res;
+	}
+
+	/** same as doLoadCachedNodeEntry(), but decoding directly from memory-mapped file .. no InputStream/buffer allocation */
+	protected CachedNodeEntry doLoadCachedNodeEntry_mmap(NodeName name, long dataFilePos, long fetchSizeArgs) {
+		val in = mmapIndexedFile.dataInputAt(dataFilePos);
+		return doLoadCachedNodeEntryFrom(name, dataFilePos, fetchSizeArgs, in, in::getFilePos);
+	}
+
+	/** decode from random-access DataInput (mmap or decompressed blocks) */
+	protected CachedNodeEntry doLoadCachedNodeEntryFrom(NodeName name, long dataFilePos, long fetchSizeArgs,
+			DataInput in, LongSupplier currFilePos) {
+		CachedNodeEntry res;
+		long maxFilePos = dataFilePos + Math.min(fetchSizeArgs, fileLen - dataFilePos);
+		try {
+			val dataAndChildPos = indexedTreeNodeDataEncoder.readNodeDataAndChildIndexes(in, name);
+			res = dataAndChildPosToCachedEntry(name, dataFilePos, dataAndChildPos);
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to read entry " + name + " at " + dataFilePos, ex);
+		}
+		if (currFilePos.getAsLong() < maxFilePos) {
+			// also parse recursively few other entries... already in OS page cache / decompressed block 
+			try {
+				tryParseAndAddCachedRecursiveChildList(res, in, currFilePos, maxFilePos);
+			} catch(Exception ex) {
+				log.error("Failed to load more entries from mmap/block data.. ignore", ex);
+			}
 		}
 		return res;
 	}
@@ -502,39 +1223,33 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 	protected CachedNodeEntry dataAndChildPosToCachedEntry(NodeName name, long dataFilePos, NodeDataAndChildFilePos dataAndChildPos) {
 		CachedNodeEntry res;
 		val cachedData = dataAndChildPos.nodeData;
+		// no copy: child names as list view (assume sorted by NodeName!) + decoded childDataFilePos array 
+		val sortedChildNames = cachedData.childNames.asList();
 		val childDataFilePos = dataAndChildPos.childDataFilePos;
-		// rebuild sortedEntries from childNames + childDataFilePos 
-		val childNames = new ArrayList<NodeName>(cachedData.childNames);
-		val childCount = childNames.size(); // assume sorted by NodeName!
-		Object[] sortedEntries = new Object[childCount];
-		for(int i = 0; i < childCount; i++) {
-			val childName = childNames.get(i);
-			sortedEntries[i] = new NodeEntryHandle(childName, childDataFilePos[i]);
-		}
 		
-		res = new CachedNodeEntry(name, dataFilePos, cachedData, sortedEntries);
+		res = new CachedNodeEntry(name, dataFilePos, cachedData, sortedChildNames, childDataFilePos, 
+				null // loadedChildEntries, allocated lazily
+				);
 		return res;
 	}
 
 	protected void tryParseAndAddCachedRecursiveChildList(CachedNodeEntry node, 
-			DataInputStream dataIn,
-			long countDataFilePosOffset, CountingInputStream counting, long maxReadCount
+			DataInput dataIn,
+			LongSupplier currFilePos, long maxFilePos
 			) {
 		// 'node' data already loaded.. only recurse on child list
-		val childNames = node.cachedData.childNames;
+		val childNames = node.sortedChildNames;
 		if (childNames != null && !childNames.isEmpty()) {
-			val childNameLs = new ArrayList<>(childNames);
-			val childNameCount = childNameLs.size();
+			val childNameCount = childNames.size();
 						
 			for(int i = 0; i < childNameCount; i++) {
-				val childName = childNameLs.get(i);
+				val childName = childNames.get(i);
 				
-				long currCount = counting.getCount();
-				if (currCount > maxReadCount) {
+				if (currFilePos.getAsLong() > maxFilePos) {
 					break; // got enough, stop reading
 				}
 
-				val childEntry = recursiveTryParse(childName, dataIn, countDataFilePosOffset, counting, maxReadCount);
+				val childEntry = recursiveTryParse(childName, dataIn, currFilePos, maxFilePos);
 
 				setLoadedChild(node, i, childName, childEntry);
 			}
@@ -545,30 +1260,26 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 			CachedNodeEntry childEntry) {
 		if (childEntry != null) {
 			// ensure update with same name + dataFilePos
-			val prevEntry = node.sortedEntries[i];
-			if (prevEntry instanceof NodeEntryHandle) {
-				val nh = (NodeEntryHandle) prevEntry;
-				if (nh.dataFilePos != childEntry.dataFilePos
-						|| !nh.name.equals(childName)) {
-					throw new IllegalStateException("internal check failed: loaded entry[" + i + "] '" + nh.name + "'" 
-							+ " with dataFilePos:" + childEntry.dataFilePos
-							+ ", expecting dataFilePos:" + nh.dataFilePos
-							+ ((nh.name.equals(childName))? "" : " '" + nh.name + "'")
-							);
-				}
-			} else {
-				log.error("should not occur?? loading and entry already loaded (maybe in different threads)");
+			val expectedDataFilePos = node.childDataFilePos[i];
+			val expectedName = node.sortedChildNames.get(i);
+			if (expectedDataFilePos != childEntry.dataFilePos
+					|| !expectedName.equals(childName)) {
+				throw new IllegalStateException("internal check failed: loaded entry[" + i + "] '" + expectedName + "'" 
+						+ " with dataFilePos:" + childEntry.dataFilePos
+						+ ", expecting dataFilePos:" + expectedDataFilePos
+						+ ((expectedName.equals(childName))? "" : " '" + childName + "'")
+						);
 			}
-					
-			node.sortedEntries[i] = childEntry;
+			// 'node' is not published yet to other threads, but use CAS anyway
+			node.casLoadedChildAt(i, childEntry);
 		}
 	}
 
 	protected CachedNodeEntry recursiveTryParse(NodeName name, 
-			DataInputStream dataIn,
-			long countDataFilePosOffset, CountingInputStream counting, long maxReadCount
+			DataInput dataIn,
+			LongSupplier currFilePos, long maxFilePos
 			) {
-		val dataFilePos = countDataFilePosOffset + counting.getCount();
+		val dataFilePos = currFilePos.getAsLong();
 		NodeDataAndChildFilePos dataAndChildPos;
 		try {
 			dataAndChildPos = indexedTreeNodeDataEncoder.readNodeDataAndChildIndexes(dataIn, name);
@@ -582,21 +1293,19 @@ public class CachedROIndexedBlobStorage_TreeNodeData extends ROCached_TreeData
 		val resEntry = dataAndChildPosToCachedEntry(name, dataFilePos, dataAndChildPos);
 
 		// recurse on child list if any
-		val childNames = resEntry.cachedData.childNames;
+		val childNames = resEntry.sortedChildNames;
 		if (childNames != null && !childNames.isEmpty()) {
-			val childNameLs = new ArrayList<>(childNames);
-			val childNameCount = childNameLs.size();
+			val childNameCount = childNames.size();
 						
 			for(int i = 0; i < childNameCount; i++) {
-				val childName = childNameLs.get(i);
+				val childName = childNames.get(i);
 
-				long currCount = counting.getCount();
-				if (currCount > maxReadCount) {
+				if (currFilePos.getAsLong() > maxFilePos) {
 					break; // got enough, stop reading
 				}
 				
 				// *** recurse ***
-				val childEntry = recursiveTryParse(childName, dataIn, countDataFilePosOffset, counting, maxReadCount);
+				val childEntry = recursiveTryParse(childName, dataIn, currFilePos, maxFilePos);
 
 				setLoadedChild(resEntry, i, childName, childEntry);
 			}
@@ -4,8 +4,10 @@ import java.util.List;
 
 import org.path4j.NodeNamesPath;
 
+import fr.an.attrtreestore.api.IInMemCacheReadTreeData;
 import fr.an.attrtreestore.api.NodeData;
 import fr.an.attrtreestore.api.override.OverrideNodeData;
+import fr.an.attrtreestore.api.override.OverrideNodeStatus;
 import fr.an.attrtreestore.api.override.OverrideTreeData;
 import lombok.Getter;
 import lombok.val;
@@ -13,11 +15,12 @@ import lombok.val;
 /**
  * compound OverrideTreeData, delegating to sequence of OverrideTreeData
  */
-public class Compound_OverrideTreeData extends OverrideTreeData {
+public class Compound_OverrideTreeData extends OverrideTreeData implements IInMemCacheReadTreeData {
 
+	// volatile: may be changed by rollAddWal(), while reading/writing in other threads
 	@Getter
-	protected OverrideTreeData[] sequenceOverrideTrees;
-	protected OverrideTreeData currWriteLast; // redundant with sequenceOverrideTrees[sequenceOverrideTrees.length - 1];
+	protected volatile OverrideTreeData[] sequenceOverrideTrees;
+	protected volatile OverrideTreeData currWriteLast; // redundant with sequenceOverrideTrees[sequenceOverrideTrees.length - 1];
 
 	// ------------------------------------------------------------------------
 	
@@ -36,19 +39,31 @@ public class Compound_OverrideTreeData extends OverrideTreeData {
 
 	@Override
 	public OverrideNodeData getOverride(NodeNamesPath path) {
-		OverrideNodeData res = currWriteLast.getOverride(path);
-		if (res != null) {
-			return res;
-		}
-		for(int i = sequenceOverrideTrees.length-2; i >= 0; i--) {
-			res = sequenceOverrideTrees[i].getOverride(path);
-			if (res != null) {
+		val overrideTrees = sequenceOverrideTrees; // read volatile once
+		for(int i = overrideTrees.length-1; i >= 0; i--) {
+			val res = overrideTrees[i].getOverride(path);
+			if (res != null && res.status != OverrideNodeStatus.NOT_OVERRIDEN) { // else check previous wal
 				return res;
 			}
 		}
 		return null;
 	}
 
+	/** @return first found from last WAL, cf getOverride(), but no IO when all override trees support IInMemCacheReadTreeData */
+	@Override // implements IInMemCacheReadTreeData
+	public OverrideNodeData getIfInMemCache(NodeNamesPath path) {
+		val overrideTrees = sequenceOverrideTrees; // read volatile once
+		for(int i = overrideTrees.length-1; i >= 0; i--) {
+			val overrideTree = overrideTrees[i];
+			val res = (overrideTree instanceof IInMemCacheReadTreeData)? 
+					((IInMemCacheReadTreeData) overrideTree).getIfInMemCache(path) : overrideTree.getOverride(path);
+			if (res != null && res.status != OverrideNodeStatus.NOT_OVERRIDEN) { // else check previous wal
+				return res;
+			}
+		}
+		return OverrideNodeData.NOT_OVERRIDEN;
+	}
+
 	@Override
 	public void put(NodeNamesPath path, NodeData data) {
 		currWriteLast.put(path, data);
@@ -65,12 +80,27 @@ public class Compound_OverrideTreeData extends OverrideTreeData {
 		val prevArray = sequenceOverrideTrees;
 		val len = prevArray.length;
 		val newArray = new OverrideTreeData[len + 1];
-		System.arraycopy(prevArray, len, newArray, 0, len);
+		System.arraycopy(prevArray, 0, newArray, 0, len);
 		newArray[len] = newWalOverrideTree;
 		this.sequenceOverrideTrees = newArray;
 		this.currWriteLast = newWalOverrideTree;
 		return prevArray;
 	}
+
+	/**
+	 * @return new compound, without the first 'count' override trees (after re-indexed in index file)
+	 * ... this compound is unchanged, other threads may still use it
+	 */
+	public synchronized Compound_OverrideTreeData withoutFirstOverrideTrees(int count) {
+		val prevArray = sequenceOverrideTrees;
+		val len = prevArray.length;
+		if (count >= len) {
+			throw new IllegalArgumentException("can not remove all override trees (at least current write one)");
+		}
+		val newArray = new OverrideTreeData[len - count];
+		System.arraycopy(prevArray, count, newArray, 0, len - count);
+		return new Compound_OverrideTreeData(newArray);
+	}
 	
 	// ------------------------------------------------------------------------
 	
@@ -1,19 +1,22 @@
 package fr.an.attrtreestore.storage.impl;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.path4j.NodeName;
 import org.path4j.NodeNamesPath;
@@ -21,6 +24,7 @@ import org.simplestorage4j.api.util.LoggingCounter;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
 
 import fr.an.attrtreestore.api.IWriteTreeData;
 import fr.an.attrtreestore.api.NodeAttr;
@@ -34,6 +38,8 @@ import fr.an.attrtreestore.api.readprefetch.LimitingPrefetchNodeDataContext.Pref
 import fr.an.attrtreestore.api.readprefetch.LimitingPrefetchNodeDataContext.PrefetchTimeLimit;
 import fr.an.attrtreestore.api.readprefetch.PrefetchNodeDataContext;
 import fr.an.attrtreestore.api.readprefetch.PrefetchProposedPathItem;
+import fr.an.attrtreestore.impl.refresh.PriorityRefreshScheduler;
+import fr.an.attrtreestore.impl.refresh.ProactiveRefreshSweeper;
 import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
 import lombok.Getter;
 import lombok.Setter;
@@ -50,7 +56,6 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 
 	protected boolean ownedBackgroundRefreshExecutorService;
 	private final ThreadFactory backgroundRefreshThreadFactory;
-	private final BlockingQueue<Runnable> backgroundRefreshQueue = new SynchronousQueue<Runnable>();
 	protected boolean isRunningBackgroundRefresh;
 	// ExecutorService, may be shared, otherwise created on demand and marked as owned for later shutdown()
 	protected ExecutorService backgroundRefreshExecutorService;
@@ -60,40 +65,34 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 	private final ThreadFactory backgroundChangeResolverThreadFactory;
 	// ExecutorService, may be shared, otherwise created on demand and marked as owned for later shutdown()
 	protected ExecutorService backgroundChangeResolverExecutorService;
-	
-	protected enum PendingRefreshStatus {
-		REFRESH_CACHE_EXPIRED,
-		RESOLVE_CHANGE_DETECTED,
-		CANCEL_TASK_SKIP_REFRESH,
-		IN_PROGRESS
-	}
-	// do not submit immediatly to ExecutorService... some task may be auto-cleared later, but before processing
-	protected class PendingRefreshTask {
-		private final NodeNamesPath path;
-		PendingRefreshStatus status;
-		Future<?> submitedFuture;
-		
-		public PendingRefreshTask(NodeNamesPath path, PendingRefreshStatus status) {
-			this.path = path;
-			this.status = status;
-		}
-	}
-	
-	private final Object pendingRefreshsLock = new Object();
 
-	// @GuardedBy("pendingRefreshsLock")
-	private Map<NodeNamesPath,PendingRefreshTask> pendingCacheExpiredTasks = new LinkedHashMap<>();
-	private int pendingCacheExpiredTaskProcessingCount; // count +1 and -1 at each start/end processing
-	private int pendingCacheExpiredTaskSubmittedCount; // count +1 and -1 at each submit / dequeued
+	/** stale-while-revalidate mode: expired cached data is returned at latest at useCacheIfResponseExceedTimeMillis, 
+	 * while underlying get continues in background to refresh cache */
+	@Getter @Setter
+	protected boolean staleWhileRevalidate = false;
 	@Getter @Setter
-	private int maxSubmittingPendingRefreshTaskCount = 10;
+	private int maxRevalidateThreadCount = 4;
+	@Getter @Setter
+	private int maxRevalidateQueueSize = 1000;
+	protected boolean ownedBackgroundRevalidateExecutorService;
+	private final ThreadFactory backgroundRevalidateThreadFactory;
+	// ExecutorService, may be shared, otherwise created on demand and marked as owned for later shutdown()
+	protected ExecutorService backgroundRevalidateExecutorService;
 	
-	// @GuardedBy("pendingRefreshsLock")
-	private Map<NodeNamesPath,PendingRefreshTask> pendingResolveChangeTasks = new LinkedHashMap<>();
-	private int pendingResolveChangeTaskProcessingCount; // count +1 and -1 at each start/end processing
-	private int pendingResolveChangeTaskSubmittedCount; // count +1 and -1 at each submit / dequeued
+	private final Object pendingRefreshsLock = new Object();
+
+	// do not submit immediatly to ExecutorService... some task may be auto-cleared later, but before processing
+	// a path is pending in at most one of the 2 schedulers (resolve change wins over expired)
+	private final PriorityRefreshScheduler expiredRefreshScheduler;
+	private final PriorityRefreshScheduler resolveChangeRefreshScheduler;
+
+	/** data is due for background refresh this delay before expiration (cf doRefreshCache, refreshSweeper) */
 	@Getter @Setter
-	private int maxSubmittingResolveChangeTaskCount = 50;
+	protected long refreshAheadMillis = 60_000;
+
+	/** proactive refresh of hot entries approaching expiration, null if cachedTree does not support IInMemCacheReadTreeData.. not started by default */
+	@Getter
+	private final ProactiveRefreshSweeper refreshSweeper;
 
 	private PrefetchLimitParams prefetchLimitParams = new PrefetchLimitParams(
 			100_000, // maxCount;
@@ -140,6 +139,23 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
     
 //    protected final LoggingCounter cachedTree_put_transienFieldsChange_Counter = new LoggingCounter("cache.put-transientFieldsChange");
     protected final LoggingCounter cachedTree_get_resyncDeletedAncestorCounter = new LoggingCounter("cache.get-resync-deleted-ancestor");
+
+	/** in-flight underlying get per path, cf coalescingUnderlyingGet() */
+	private final ConcurrentHashMap<NodeNamesPath,CompletableFuture<NodeData>> pendingUnderlyingGets = new ConcurrentHashMap<>();
+
+	/** max wait of a coalesced follower on cache miss (no stale data to fallback).. 
+	 * leader underlying get may hang (no timeout in some underlying clients), followers fail instead of piling up */
+	@Getter @Setter
+	protected long coalescedMissMaxWaitMillis = 5 * 60_000;
+
+	/** revalidate tasks submitted but not yet run, cf RevalidateTask.discard() */
+	private final ConcurrentHashMap<NodeNamesPath,RevalidateTask> pendingRevalidateTasks = new ConcurrentHashMap<>();
+	/** revalidate task queued longer than this is considered lost (discarding executor..) and replaced */
+	@Getter @Setter
+	protected long maxRevalidateQueuedMillis = 60_000;
+
+    protected final LoggingCounter staleWhileRevalidate_servedStaleCounter = new LoggingCounter("cache.get-served-stale");
+    protected final LoggingCounter staleWhileRevalidate_rejectedCounter = new LoggingCounter("cache.revalidate-rejected");
     
 	// ------------------------------------------------------------------------
 
@@ -153,6 +169,14 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 		
 		this.backgroundRefreshThreadFactory = new DefaultNamedThreadFactory("Background-Refresh-", " " + displayName, true);
 		this.backgroundChangeResolverThreadFactory = new DefaultNamedThreadFactory("Background-Change-Resolver-", " " + displayName, true);
+		this.backgroundRevalidateThreadFactory = new DefaultNamedThreadFactory("Background-Revalidate-", " " + displayName, true);
+		
+		this.expiredRefreshScheduler = new PriorityRefreshScheduler("Background-Refresh " + displayName, 
+				this::doRefreshCache, this::getOrCreateBackgroundCacheExpiredRefreshExecutorService, 10);
+		this.resolveChangeRefreshScheduler = new PriorityRefreshScheduler("Background-Change-Resolver " + displayName, 
+				this::doRefreshCache, this::getOrCreateBackgroundChangedResolverExecutorService, 50);
+		this.refreshSweeper = (cachedTree_supportsInMemCached != null)? new ProactiveRefreshSweeper(displayName, cachedTree_supportsInMemCached, 
+				() -> defaultCacheExpirationMillis - refreshAheadMillis, this::enqueueRefresh_proactive) : null;
 	}
 
 	// implements Cached_TreeData 
@@ -192,10 +216,16 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 			if (cacheSinceMillis < cacheExpirationMillis  // fresh cached data
 					|| endGetCacheTime > useCacheIfResponseExceedTimeMillis // not freshed enough, but accepted for response time 
 					) {
+				if (staleWhileRevalidate && cacheSinceMillis >= cacheExpirationMillis) {
+					// expired, returned immediately (deadline exceeded).. but still revalidate in background
+					incrCacheGetHitButExpired(cachedGetMillis, prefix -> log.info(prefix + " " + path));
+					return staleWhileRevalidateUnderlyingGet(path, cachedData, 0, 
+							() -> doUnderlyingGet_expired(path, cachedData, now, endGetCacheTime, useCacheIfResponseExceedTimeMillis));
+				}
 				// OK fast path..
 				incrCacheGetHit(cachedGetMillis, prefix -> log.info(prefix + " " + path)); 
 				
-				cachedData.incrUsed(cachedGetMillis);
+				cachedData.incrUsed(now); // last query time
 				
 				if (cacheSinceMillis > thresholdForBackgroundRefreshMillis
 						&& startedBackgroupRefreshesSupport) {
@@ -207,102 +237,273 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 			} else { // cachedData != null but expired 
 				// got cached data, but considered expired!... need re-query from underlyingTree
 				incrCacheGetHitButExpired(cachedGetMillis, prefix -> log.info(prefix + " " + path)); 
-				NodeData newData;
-				try {
-				    // TODO counter
-					if (underlyingTree_supportsPrefetchOther != null) {
-						val prefetchCtx = createPrefetchContext(now, useCacheIfResponseExceedTimeMillis);
-						newData = underlyingTree_supportsPrefetchOther.get(path, prefetchCtx);
-					} else {
-						newData = underlyingTree.get(path);
-					}
-					
-				} catch(RuntimeException ex) {
-					// failed to refresh from underlying, but still have an old cached data... 
-					// may return it silently?!
-					val endGetUnderlyingTime = System.currentTimeMillis();
-					int underlyingGetMillis = (int) (endGetUnderlyingTime - endGetCacheTime);
-					incrUnderlyingTreeGetFailed(underlyingGetMillis, prefix -> log.warn(prefix + " " + path + " " + ex.getMessage()));
-
-					throw ex;
+				Supplier<NodeData> underlyingGetFunc = () -> doUnderlyingGet_expired(path, cachedData, now, endGetCacheTime, useCacheIfResponseExceedTimeMillis);
+				if (staleWhileRevalidate) {
+					return staleWhileRevalidateUnderlyingGet(path, cachedData, useCacheIfResponseExceedTimeMillis, underlyingGetFunc);
 				}
-				val endGetUnderlyingTime = System.currentTimeMillis();
-				int underlyingGetMillis = (int) (endGetUnderlyingTime - endGetCacheTime);
-				incrUnderlyingTreeGet(underlyingGetMillis, prefix -> log.info(prefix + " " + path));
-				
-				NodeData resData;
-				if (newData != null) {
-					// data exist, was in cache(expired)
-					resData = copyWithLastExternalRefreshTimeMillis(newData, endGetCacheTime);
-					
-					// compare if changed from 'cachedData' to 'newData'
-					boolean equalsIgnoreTransient = cachedData.equalsIgnoreTransientFields(newData);
-					boolean equals = equalsIgnoreTransient && cachedData.compareTransientFields(newData);
-					
-					doCachePut_clearPendingTaskIfAny(path, resData, CachePutReason.underlyingGet, // TODO CachePutReason.underlyingGet_expired 
-					        equalsIgnoreTransient, equals);
-
-					if (!equalsIgnoreTransient) {
-						// check compare+sync newData.childNames with previously cached
-						resyncCacheChildListOf(path, resData, cachedData);
-					}
-					
-				} else {
-					// newData does not exist, but was in cache (expired)
-					// => 'delete' event detected.. 
-					doCacheRemove_clearPendingTaskIfAny(path);
-					
-					resyncDeletedAncestorOf(path);
-					
-					resData = null;
-				}
-				return resData;
+				return coalescingUnderlyingGet(path, cachedData, useCacheIfResponseExceedTimeMillis, underlyingGetFunc);
 			}
 		} else {
 			// cache miss
 			incrCacheGetMiss(cachedGetMillis, prefix -> log.info(prefix + " " + path));
-			
-			// not-exist or not-in-cache? ... may save 'NotExistData' marker in cache?
-			// no marker yet... when not-exist => will always cause cache miss
+			return coalescingUnderlyingGet(path, null, useCacheIfResponseExceedTimeMillis, 
+					() -> doUnderlyingGet_miss(path, now, endGetCacheTime, useCacheIfResponseExceedTimeMillis));
+		}
+	}
+
+	/**
+	 * single-flight: at most 1 pending underlying get per path, concurrent callers wait for the same result
+	 * (ex: many request threads on same hot dir just expired => 1 underlying listing instead of N).
+	 * when a stale cached data exists, wait is bounded by useCacheIfResponseExceedTimeMillis, then stale data is returned
+	 */
+	protected NodeData coalescingUnderlyingGet(NodeNamesPath path, NodeData staleData,
+			long useCacheIfResponseExceedTimeMillis,
+			Supplier<NodeData> underlyingGetFunc) {
+		val future = new CompletableFuture<NodeData>();
+		val pendingFuture = pendingUnderlyingGets.putIfAbsent(path, future);
+		if (pendingFuture == null) {
+			// leader.. do the underlying get, then publish result to waiters
+			return runPendingUnderlyingGet(path, future, underlyingGetFunc);
+		}
+		
+		// follower.. attach to pending underlying get
+		return waitPendingUnderlyingGet(path, pendingFuture, staleData, useCacheIfResponseExceedTimeMillis);
+	}
+
+	private NodeData runPendingUnderlyingGet(NodeNamesPath path, CompletableFuture<NodeData> future, 
+			Supplier<NodeData> underlyingGetFunc) {
+		try {
+			val res = underlyingGetFunc.get();
+			future.complete(res);
+			return res;
+		} catch(Throwable ex) {
+			// also Error (OutOfMemoryError, StackOverflowError..) => never leave waiters on a never completed future
+			future.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			pendingUnderlyingGets.remove(path, future);
+		}
+	}
+
+	/**
+	 * stale-while-revalidate: underlying get (coalesced per path) is always run in background,
+	 * caller waits for it only until useCacheIfResponseExceedTimeMillis, then gets stale data.. 
+	 * => response time bounded by cache latency + deadline, not by underlying (Azure, S3..) latency.
+	 * background result is put in cache when done (cf doUnderlyingGet_expired)
+	 */
+	protected NodeData staleWhileRevalidateUnderlyingGet(NodeNamesPath path, NodeData staleData,
+			long useCacheIfResponseExceedTimeMillis,
+			Supplier<NodeData> underlyingGetFunc) {
+		val future = new CompletableFuture<NodeData>();
+		val pendingFuture = pendingUnderlyingGets.putIfAbsent(path, future);
+		if (pendingFuture == null) {
+			val task = new RevalidateTask(path, future, staleData, underlyingGetFunc);
+			pendingRevalidateTasks.put(path, task);
+			try {
+				getOrCreateBackgroundRevalidateExecutorService().execute(task);
+			} catch(RejectedExecutionException ex) {
+				task.discard();
+				staleWhileRevalidate_rejectedCounter.incr(0, prefix -> log.info(prefix + " " + path));
+			}
+			return waitPendingUnderlyingGet(path, future, staleData, useCacheIfResponseExceedTimeMillis);
+		}
+		// task never run by executor (discarded silently)? => replace it
+		val queuedTask = pendingRevalidateTasks.get(path);
+		if (queuedTask != null && queuedTask.future == pendingFuture
+				&& System.currentTimeMillis() - queuedTask.submitTime > maxRevalidateQueuedMillis
+				&& queuedTask.discard()) {
+			log.warn("revalidate task '" + path + "' not run after " + maxRevalidateQueuedMillis + " ms.. discard, resubmit");
+			return staleWhileRevalidateUnderlyingGet(path, staleData, useCacheIfResponseExceedTimeMillis, underlyingGetFunc);
+		}
+		return waitPendingUnderlyingGet(path, pendingFuture, staleData, useCacheIfResponseExceedTimeMillis);
+	}
+
+	/**
+	 * background revalidate, wrapping runPendingUnderlyingGet().
+	 * pending entry is always cleaned up: when run, or when discarded without running 
+	 * (rejected, executor shutdownNow(), or lost by a discarding executor) => waiters get the stale data
+	 */
+	private class RevalidateTask implements Runnable {
+		final NodeNamesPath path;
+		final CompletableFuture<NodeData> future;
+		final NodeData staleData;
+		final Supplier<NodeData> underlyingGetFunc;
+		final long submitTime = System.currentTimeMillis();
+		/** set once, either by run() or discard() */
+		final AtomicBoolean started = new AtomicBoolean();
+		
+		RevalidateTask(NodeNamesPath path, CompletableFuture<NodeData> future, NodeData staleData, Supplier<NodeData> underlyingGetFunc) {
+			this.path = path;
+			this.future = future;
+			this.staleData = staleData;
+			this.underlyingGetFunc = underlyingGetFunc;
+		}
+
+		@Override
+		public void run() {
+			if (! started.compareAndSet(false, true)) {
+				return; // already discarded
+			}
+			try {
+				runPendingUnderlyingGet(path, future, underlyingGetFunc);
+			} catch(RuntimeException ex) {
+				log.warn("Failed background revalidate '" + path + "'.. ignore, keep stale cached data " + ex.getMessage());
+			} finally {
+				pendingRevalidateTasks.remove(path, this);
+			}
+		}
+
+		/** @return true if discarded, false if already running/done */
+		boolean discard() {
+			if (! started.compareAndSet(false, true)) {
+				return false;
+			}
+			pendingRevalidateTasks.remove(path, this);
+			pendingUnderlyingGets.remove(path, future);
+			future.complete(staleData);
+			return true;
+		}
+	}
+
+	private NodeData waitPendingUnderlyingGet(NodeNamesPath path, CompletableFuture<NodeData> pendingFuture, 
+			NodeData staleData, long useCacheIfResponseExceedTimeMillis) {
+		val startWait = System.currentTimeMillis();
+		try {
+			NodeData res;
+			if (staleData != null) {
+				val waitMillis = Math.max(0, useCacheIfResponseExceedTimeMillis - startWait);
+				res = pendingFuture.get(waitMillis, TimeUnit.MILLISECONDS);
+			} else {
+				res = pendingFuture.get(coalescedMissMaxWaitMillis, TimeUnit.MILLISECONDS); // no fallback data.. wait for leader, bounded
+			}
+			int millis = (int) (System.currentTimeMillis() - startWait);
+			incrCacheGetCoalesced(millis, prefix -> log.info(prefix + " " + path));
+			return res;
+		} catch(TimeoutException ex) {
+			int millis = (int) (System.currentTimeMillis() - startWait);
+			if (staleData == null) {
+				incrCacheGetCoalescedTimeout(millis, prefix -> log.warn(prefix + " " + path + " .. no cached data, fail"));
+				throw new RuntimeException("Timeout waiting pending underlying get '" + path + "' (" + millis + " ms)", ex);
+			}
+			incrCacheGetCoalescedTimeout(millis, prefix -> log.info(prefix + " " + path + " .. return stale cached data"));
+			staleWhileRevalidate_servedStaleCounter.incr(millis, prefix -> log.info(prefix + " " + path));
+			return staleData;
+		} catch(ExecutionException ex) {
+			val cause = ex.getCause();
+			if (staleWhileRevalidate && staleData != null) {
+				// failed background revalidate.. keep serving stale
+				staleWhileRevalidate_servedStaleCounter.incr(0, prefix -> log.info(prefix + " " + path));
+				return staleData;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause; // same as leader
+			}
+			throw new RuntimeException("Failed underlying get '" + path + "'", cause);
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			if (staleData != null) {
+				return staleData;
+			}
+			throw new RuntimeException("Interrupted while waiting underlying get '" + path + "'", ex);
+		}
+	}
 
-			NodeData newData;
-			// TODO counter
+	protected NodeData doUnderlyingGet_expired(NodeNamesPath path, NodeData cachedData, 
+			long now, long endGetCacheTime, long useCacheIfResponseExceedTimeMillis) {
+		NodeData newData;
+		try {
+		    // TODO counter
 			if (underlyingTree_supportsPrefetchOther != null) {
-				val prefetchContext = createPrefetchContext(now, useCacheIfResponseExceedTimeMillis);
-				
-				newData = underlyingTree_supportsPrefetchOther.get(path, prefetchContext);
+				val prefetchCtx = createPrefetchContext(now, useCacheIfResponseExceedTimeMillis);
+				newData = underlyingTree_supportsPrefetchOther.get(path, prefetchCtx);
 			} else {
 				newData = underlyingTree.get(path);
 			}
 			
+		} catch(RuntimeException ex) {
+			// failed to refresh from underlying, but still have an old cached data... 
+			// may return it silently?!
 			val endGetUnderlyingTime = System.currentTimeMillis();
 			int underlyingGetMillis = (int) (endGetUnderlyingTime - endGetCacheTime);
-			incrUnderlyingTreeGet(underlyingGetMillis, prefix -> log.info(prefix + " " + path));
+			incrUnderlyingTreeGetFailed(underlyingGetMillis, prefix -> log.warn(prefix + " " + path + " " + ex.getMessage()));
+
+			throw ex;
+		}
+		val endGetUnderlyingTime = System.currentTimeMillis();
+		int underlyingGetMillis = (int) (endGetUnderlyingTime - endGetCacheTime);
+		incrUnderlyingTreeGet(underlyingGetMillis, prefix -> log.info(prefix + " " + path));
+		
+		NodeData resData;
+		if (newData != null) {
+			// data exist, was in cache(expired)
+			resData = copyWithLastExternalRefreshTimeMillis(newData, cachedData, endGetCacheTime);
 			
-			NodeData resData;
-			if (newData != null) {
-				// newData exist but previously not in cache
-				resData = copyWithLastExternalRefreshTimeMillis(newData, endGetCacheTime);
-				
-				doCachePut_clearPendingTaskIfAny(path, resData, CachePutReason.underlyingGet); // synonym underlyingGet_miss ? 
-
-				// TODO does not work?... too slow, too many (repeated?) calls
-//				// preload more child in background..
-//				if (resData.childCount() > 0) {
-//					for (val childName : resData.childNames) {
-//						val childPath = path.toChild(childName);
-//						enqueueRefresh_resolveChange(childPath);
-//					}
-//				}
-				
-			} else {
-				// newData does not exist, and previously not in cache either
-				// TOADD may save 'NotExistData' marker in cache?
-				
-				resData = null;
+			// compare if changed from 'cachedData' to 'newData'
+			boolean equalsIgnoreTransient = cachedData.equalsIgnoreTransientFields(newData);
+			boolean equals = equalsIgnoreTransient && cachedData.compareTransientFields(newData);
+			
+			doCachePut_clearPendingTaskIfAny(path, resData, CachePutReason.underlyingGet, // TODO CachePutReason.underlyingGet_expired 
+			        equalsIgnoreTransient, equals);
+
+			if (!equalsIgnoreTransient) {
+				// check compare+sync newData.childNames with previously cached
+				resyncCacheChildListOf(path, resData, cachedData);
 			}
-			return resData;
+			
+		} else {
+			// newData does not exist, but was in cache (expired)
+			// => 'delete' event detected.. 
+			doCacheRemove_clearPendingTaskIfAny(path);
+			
+			resyncDeletedAncestorOf(path);
+			
+			resData = null;
 		}
+		return resData;
+	}
+
+	protected NodeData doUnderlyingGet_miss(NodeNamesPath path, 
+			long now, long endGetCacheTime, long useCacheIfResponseExceedTimeMillis) {
+		// not-exist or not-in-cache? ... may save 'NotExistData' marker in cache?
+		// no marker yet... when not-exist => will always cause cache miss
+
+		NodeData newData;
+		// TODO counter
+		if (underlyingTree_supportsPrefetchOther != null) {
+			val prefetchContext = createPrefetchContext(now, useCacheIfResponseExceedTimeMillis);
+			
+			newData = underlyingTree_supportsPrefetchOther.get(path, prefetchContext);
+		} else {
+			newData = underlyingTree.get(path);
+		}
+		
+		val endGetUnderlyingTime = System.currentTimeMillis();
+		int underlyingGetMillis = (int) (endGetUnderlyingTime - endGetCacheTime);
+		incrUnderlyingTreeGet(underlyingGetMillis, prefix -> log.info(prefix + " " + path));
+		
+		NodeData resData;
+		if (newData != null) {
+			// newData exist but previously not in cache
+			resData = copyWithLastExternalRefreshTimeMillis(newData, null, endGetCacheTime);
+			
+			doCachePut_clearPendingTaskIfAny(path, resData, CachePutReason.underlyingGet); // synonym underlyingGet_miss ? 
+
+			// TODO does not work?... too slow, too many (repeated?) calls
+//			// preload more child in background..
+//			if (resData.childCount() > 0) {
+//				for (val childName : resData.childNames) {
+//					val childPath = path.toChild(childName);
+//					enqueueRefresh_resolveChange(childPath);
+//				}
+//			}
+			
+		} else {
+			// newData does not exist, and previously not in cache either
+			// TOADD may save 'NotExistData' marker in cache?
+			
+			resData = null;
+		}
+		return resData;
 	}
 
 	private LimitingPrefetchNodeDataContext createPrefetchContext(
@@ -312,13 +513,19 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 		return new LimitingPrefetchNodeDataContext(prefetchNodeDataCallback, timeLimit, count, 0);
 	}
 
-	// TOCHECK.. maybe useless?
-	protected NodeData copyWithLastExternalRefreshTimeMillis(NodeData src, long timeMillis) {
+	/**
+	 * @param prevCachedData previously cached data (expired), or null .. lru counters are carried over on refresh, 
+	 * otherwise each refresh would make hot entries look cold for LFU eviction
+	 */
+	protected NodeData copyWithLastExternalRefreshTimeMillis(NodeData src, NodeData prevCachedData, long timeMillis) {
+		// do not inherits lruCount from underlying! .. only from previous cached data, +1 for this query
+		int lruCount = (prevCachedData != null)? prevCachedData.getLruCount() + 1 : 1;
+		int lruAmortizedCount = (prevCachedData != null)? prevCachedData.getLruAmortizedCount() : 0;
 		return new NodeData(src.name, src.type, src.mask, src.childNames, src.attrs, //
 				src.externalCreationTime, src.externalLastModifiedTime, src.externalLength, //
 				timeMillis, // lastExternalRefreshTimeMillis
 				src.lastTreeDataUpdateTimeMillis, src.lastTreeDataUpdateCount, src.getTreeDataRecomputationMask(), // 
-				1, 0, // src.lruCount, src.lruAmortizedCount, ... do not inherits lruCount from underlying!
+				lruCount, lruAmortizedCount, //
 				timeMillis // lastTreeDataQueryTimeMillis
 				);
 	}
@@ -440,6 +647,11 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 	protected void doStopBackgroupRefreshSupport() {
 		this.isRunningBackgroundRefresh = false;
 		
+		expiredRefreshScheduler.clear(); // pending tasks will not be processed
+		if (refreshSweeper != null) {
+			refreshSweeper.stop();
+		}
+		
 		if (ownedBackgroundRefreshExecutorService) {
 			val executorService = this.backgroundRefreshExecutorService;
 			if (executorService != null) {
@@ -449,6 +661,20 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 				executorService.shutdownNow(); // pending tasks are returned.. will not be processed 
 			}
 		} // else do nothing?!
+
+		if (ownedBackgroundRevalidateExecutorService) {
+			val executorService = this.backgroundRevalidateExecutorService;
+			if (executorService != null) {
+				this.backgroundRevalidateExecutorService = null;
+				this.ownedBackgroundRevalidateExecutorService = false;
+				executorService.shutdownNow(); // queued tasks will not run.. discarded below
+			}
+		}
+		// queued revalidate tasks (owned or shared executor): complete waiters with stale data, remove pending entries
+		// running ones are interrupted (if owned) or finish normally
+		for(val task: new ArrayList<>(pendingRevalidateTasks.values())) {
+			task.discard();
+		}
 	}
 	
 	@Override
@@ -458,19 +684,12 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 			// ignore do nothing
 			return null;
 		}
-		Runnable refreshTask = () -> doRefresh(path);
-		val executorService = backgroundRefreshExecutorService;
-		if (executorService == null) {
-			// should not occur.. 
-			// ? still try process later after startBackgroupRefreshes()
-			val runnableFuture = new FutureTask<Void>(refreshTask, null);
-			backgroundRefreshQueue.add(runnableFuture);
-			return runnableFuture;
+		synchronized(pendingRefreshsLock) {
+			if (resolveChangeRefreshScheduler.isPending(path)) {
+				return null; // already pending, with higher lane
+			}
+			return expiredRefreshScheduler.enqueue(path, refreshPriorityOf(path));
 		}
-		
-		@SuppressWarnings("unchecked")
-		Future<Void> res = (Future<Void>) executorService.submit(refreshTask);
-		return res;
 	}
 
 	@Override
@@ -496,12 +715,12 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 	protected void doOnPrefetchOtherNodeData(NodeNamesPath path, NodeData data, boolean isIncomplete) {
 	    val putReason = CachePutReason.underlyingPrefetchOther;
 	    val refreshTime = data.getLastExternalRefreshTimeMillis(); // TOCHECK
-		NodeData newData = copyWithLastExternalRefreshTimeMillis(data, refreshTime);
 		
 		// check if previously already in cache, and with same time
 		// if already in => do nothing
 		// else => put in cache... but may enqueue refresh if still incomplete
 		NodeData prevData = getIfInMemCache(path);
+		NodeData newData = copyWithLastExternalRefreshTimeMillis(data, prevData, refreshTime);
 
 		if (prevData == null) {
 			doCachePut_clearPendingTaskIfAny(path, newData, putReason);
@@ -626,80 +845,75 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 	}
 	
 	protected void clearPendingTaskIfAny(NodeNamesPath path) {
+		expiredRefreshScheduler.cancel(path);
+		resolveChangeRefreshScheduler.cancel(path);
+	}
+	
+	protected void enqueueRefresh_expired(NodeNamesPath path) {
 		synchronized(pendingRefreshsLock) {
-			PendingRefreshTask foundTask = pendingCacheExpiredTasks.remove(path);
-			if (foundTask == null) {
-				foundTask = pendingResolveChangeTasks.remove(path);
-			}
-			if (foundTask != null) {
-				foundTask.status = PendingRefreshStatus.CANCEL_TASK_SKIP_REFRESH;
-				if (foundTask.submitedFuture != null) {
-					foundTask.submitedFuture.cancel(false);
-					foundTask.submitedFuture = null;
-				}
+			if (resolveChangeRefreshScheduler.isPending(path)) {
+				return; // already queued, with higher lane
 			}
+			expiredRefreshScheduler.enqueue(path, refreshPriorityOf(path));
 		}
 	}
 
-	protected void enqueueRefresh_expired(NodeNamesPath path) {
-		enqueueRefreshTask(new PendingRefreshTask(path, PendingRefreshStatus.REFRESH_CACHE_EXPIRED));
+	protected void enqueueRefresh_proactive(NodeNamesPath path, double priority) {
+		synchronized(pendingRefreshsLock) {
+			if (resolveChangeRefreshScheduler.isPending(path)) {
+				return;
+			}
+			expiredRefreshScheduler.enqueue(path, priority);
+		}
 	}
 
 	protected void enqueueRefresh_resolveChange(NodeNamesPath path) {
-		enqueueRefreshTask(new PendingRefreshTask(path, PendingRefreshStatus.RESOLVE_CHANGE_DETECTED));
-	}
-	
-	protected void enqueueRefreshTask(PendingRefreshTask task) {
-		val path = task.path;
-		val reason = task.status; // REFRESH_CACHE_EXPIRED or RESOLVE_CHANGE_DETECTED
 		synchronized(pendingRefreshsLock) {
-			PendingRefreshTask foundTask = pendingCacheExpiredTasks.get(path);
-			if (foundTask == null) {
-				foundTask = pendingResolveChangeTasks.get(path);
-				if (foundTask == null) {
-					// add to queue corresponding to reason
-					if (reason == PendingRefreshStatus.REFRESH_CACHE_EXPIRED) {
-						pendingCacheExpiredTasks.put(path, task);
-					} else {
-						pendingResolveChangeTasks.put(path, task);
-					}
-				} else { // not found
-					if (foundTask.status == PendingRefreshStatus.RESOLVE_CHANGE_DETECTED) {
-						// already queue.. do nothing
-						return;
-					} else { // if (foundTask.status != PendingRefreshStatus.RESOLVE_CHANGE_DETECTED) {
-						foundTask.status = PendingRefreshStatus.RESOLVE_CHANGE_DETECTED;
-					}
-				}
-			} else {
-				if (foundTask.status == PendingRefreshStatus.REFRESH_CACHE_EXPIRED) {
-					// already queue.. do nothing
-					return;
-				} else {
-					// change queue
-					pendingCacheExpiredTasks.remove(path);
-					pendingResolveChangeTasks.put(path, foundTask);
-				}
-			}
+			expiredRefreshScheduler.cancel(path); // change queue, if any
+			resolveChangeRefreshScheduler.enqueue(path, refreshPriorityOf(path));
 		}
-		
-		// submit in ExecutorService if current inProgress < maxSubmitting
-		if (reason == PendingRefreshStatus.REFRESH_CACHE_EXPIRED) {
-			if (pendingCacheExpiredTaskProcessingCount < maxSubmittingPendingRefreshTaskCount) {
-				val execService = getOrCreateBackgroundCacheExpiredRefreshExecutorService();
-				execService.submit(() -> doProcessPendingRefreshTaskAndSubmitNext(task));
-			}
-		} else {
-			if (pendingResolveChangeTaskProcessingCount < maxSubmittingResolveChangeTaskCount) {
-				val execService = getOrCreateBackgroundChangedResolverExecutorService();
-				execService.submit(() -> doProcessPendingChangedResolverTaskAndSubmitNext(task));
-			}
-			
+	}
+
+	/** staleness x popularity of in-memory cached data, if any */
+	protected double refreshPriorityOf(NodeNamesPath path) {
+		val cachedData = getIfInMemCache(path);
+		if (cachedData == null) {
+			return PriorityRefreshScheduler.priorityOf(defaultCacheExpirationMillis, 0, 0);
 		}
+		val stalenessMillis = System.currentTimeMillis() - cachedData.getLastExternalRefreshTimeMillis();
+		return PriorityRefreshScheduler.priorityOf(stalenessMillis, cachedData.getLruCount(), cachedData.getLruAmortizedCount());
+	}
+
+	public int getMaxSubmittingPendingRefreshTaskCount() {
+		return expiredRefreshScheduler.getMaxConcurrency();
+	}
+
+	public void setMaxSubmittingPendingRefreshTaskCount(int count) {
+		expiredRefreshScheduler.setMaxConcurrency(count);
+	}
+
+	public int getMaxSubmittingResolveChangeTaskCount() {
+		return resolveChangeRefreshScheduler.getMaxConcurrency();
+	}
+
+	public void setMaxSubmittingResolveChangeTaskCount(int count) {
+		resolveChangeRefreshScheduler.setMaxConcurrency(count);
+	}
+
+	/** rate limit of background refreshes (both expired and resolve change) on underlying backend, 0 for unlimited */
+	public void setRefreshRateLimitPerSecond(double permitsPerSecond) {
+		val rateLimiter = (permitsPerSecond > 0)? RateLimiter.create(permitsPerSecond) : null;
+		expiredRefreshScheduler.setRateLimiter(rateLimiter);
+		resolveChangeRefreshScheduler.setRateLimiter(rateLimiter);
+	}
+
+	public int getPendingRefreshCount() {
+		return expiredRefreshScheduler.getPendingCount() + resolveChangeRefreshScheduler.getPendingCount();
 	}
 
 	protected void doRefreshCache(NodeNamesPath path) {
-		int cacheExpirationMillis = 5 * 60_000; // 5 minutes ... TODO TOCHECK !!! should enqueue path + minRefreshTime
+		// 5 minutes, or less when due ahead of expiration ... TODO TOCHECK !!! should enqueue path + minRefreshTime
+		int cacheExpirationMillis = (int) Math.max(0, Math.min(5 * 60_000, defaultCacheExpirationMillis - refreshAheadMillis));
 		long useCacheIfResponseExceedTimeMillis = System.currentTimeMillis() + 100000;
 
         // TOADD counter
@@ -707,111 +921,83 @@ public class DefaultSyncCachedImage_TreeData<TCacheStorageTreeData extends TreeD
 		getCacheWaitMax(path, cacheExpirationMillis, useCacheIfResponseExceedTimeMillis);
 	}
 		
-	private void doProcessPendingRefreshTaskAndSubmitNext(PendingRefreshTask task) {
-		boolean proceed;
-		synchronized(pendingRefreshsLock) {
-			pendingCacheExpiredTaskProcessingCount++;
-			pendingCacheExpiredTaskSubmittedCount--;
-			pendingCacheExpiredTasks.remove(task.path);
-			proceed = !(task.status == PendingRefreshStatus.CANCEL_TASK_SKIP_REFRESH
-					|| task.status == PendingRefreshStatus.IN_PROGRESS // should not occur
-					); 
-			task.status = PendingRefreshStatus.IN_PROGRESS;
-		}
-		try {
-			if (proceed) {
-				doRefreshCache(task.path);
-			}
-		} catch(Exception ex) {
-			log.error("Failed proceed pending refresh task.. ignore? re-submit later?", ex);
-		} finally {
+	private ExecutorService getOrCreateBackgroundCacheExpiredRefreshExecutorService() {
+		ExecutorService res = backgroundRefreshExecutorService;
+		if (res == null) {
 			synchronized(pendingRefreshsLock) {
-				pendingCacheExpiredTaskProcessingCount--;
-				int totalPending = pendingCacheExpiredTasks.size();
-				int countNotSubmittedYet = totalPending - pendingCacheExpiredTaskProcessingCount - pendingCacheExpiredTaskSubmittedCount;
-				if (countNotSubmittedYet > 0) {
-					// peek up next (not submitted yet) pending task to submit, by linked priority
-				    val execService = getOrCreateBackgroundCacheExpiredRefreshExecutorService();
-					for(val nextSubmitTask: pendingCacheExpiredTasks.values()) {
-						if (nextSubmitTask.submitedFuture == null) {
-						    // TOCHECK 
-						    // nextSubmitTask.status = 
-							nextSubmitTask.submitedFuture = execService.submit(() -> doProcessPendingRefreshTaskAndSubmitNext(nextSubmitTask));
-							pendingCacheExpiredTaskSubmittedCount++;
-							break;
-						}
-					}
+				res = backgroundRefreshExecutorService;
+				if (res == null) {
+					// at most maxConcurrency workers submitted by scheduler => unbounded queue never grows more
+					int maxSize = Math.max(1, expiredRefreshScheduler.getMaxConcurrency());
+					log.info("create ThreadPoolExecutor(max=" + maxSize + "..) for Background-Refresh-* " + displayName);
+					val executor = new ThreadPoolExecutor(maxSize, maxSize, //
+			                60L, TimeUnit.SECONDS, // keepAliveTimeout
+			                new LinkedBlockingQueue<>(),
+			                backgroundRefreshThreadFactory);
+					executor.allowCoreThreadTimeOut(true); // so scaling to 0 when not needed
+					this.ownedBackgroundRefreshExecutorService = true;
+					this.backgroundRefreshExecutorService = res = executor;
 				}
 			}
 		}
+		return res;
 	}
-
-	private void doProcessPendingChangedResolverTaskAndSubmitNext(PendingRefreshTask task) {
-		boolean proceed;
-		synchronized(pendingRefreshsLock) {
-			pendingResolveChangeTaskProcessingCount++;
-			pendingResolveChangeTaskSubmittedCount--;
-			pendingResolveChangeTasks.remove(task.path);
-			proceed = !(task.status == PendingRefreshStatus.CANCEL_TASK_SKIP_REFRESH
-					|| task.status == PendingRefreshStatus.IN_PROGRESS // should not occur
-					); 
-			task.status = PendingRefreshStatus.IN_PROGRESS;
-		}
-		try {
-			if (proceed) {
-				doRefreshCache(task.path);
-			}
-		} catch(Exception ex) {
-			log.error("Failed proceed pending changed resolver task.. ignore? re-submit later?", ex);
-		} finally {
+	
+	private ExecutorService getOrCreateBackgroundRevalidateExecutorService() {
+		ExecutorService res = backgroundRevalidateExecutorService;
+		if (res == null) {
 			synchronized(pendingRefreshsLock) {
-				pendingResolveChangeTaskProcessingCount--;
-				int totalPending = pendingResolveChangeTasks.size();
-				int countNotSubmittedYet = totalPending - pendingResolveChangeTaskProcessingCount - pendingResolveChangeTaskSubmittedCount;
-				if (countNotSubmittedYet > 0) {
-					// peek up next (not submitted yet) pending task to submit, by linked priority
-					for(val nextSubmitTask: pendingResolveChangeTasks.values()) {
-						if (nextSubmitTask.submitedFuture == null) {
-							val execService = getOrCreateBackgroundChangedResolverExecutorService();
-							nextSubmitTask.submitedFuture = execService.submit(() -> doProcessPendingChangedResolverTaskAndSubmitNext(nextSubmitTask));
-							pendingResolveChangeTaskSubmittedCount++;
-							break;
-						}
-					}
+				res = backgroundRevalidateExecutorService;
+				if (res == null) {
+					int maxSize = maxRevalidateThreadCount;
+					log.info("create ThreadPoolExecutor(max=" + maxSize + "..) for Background-Revalidate-* " + displayName);
+					val executor = new ThreadPoolExecutor(maxSize, maxSize, //
+			                60L, TimeUnit.SECONDS, // keepAliveTimeout
+			                new LinkedBlockingQueue<>(maxRevalidateQueueSize), // bounded.. reject when full, keep serving stale
+			                backgroundRevalidateThreadFactory);
+					executor.allowCoreThreadTimeOut(true); // so scaling to 0 when not needed
+					this.ownedBackgroundRevalidateExecutorService = true;
+					this.backgroundRevalidateExecutorService = res = executor;
 				}
 			}
 		}
-	}
-	
-	private ExecutorService getOrCreateBackgroundCacheExpiredRefreshExecutorService() {
-		ExecutorService res = backgroundRefreshExecutorService;
-		if (res == null) {
-			int coreSize = 0; // core pool size .. so scaling to 0 when not needed
-			int maxSize = 1;
-			log.info("create ThreadPoolExecutor(core=" + coreSize + ", max=" + maxSize + "..) for Background-Refresh-* " + displayName);
-			this.ownedBackgroundRefreshExecutorService = true;
-			this.backgroundRefreshExecutorService = new ThreadPoolExecutor(coreSize, maxSize, //
-	                60L, TimeUnit.SECONDS, // keepAliveTimeout
-	                backgroundRefreshQueue,
-	                backgroundRefreshThreadFactory);
-		}
 		return res;
 	}
-	
+
+	public void setBackgroundRevalidateExecutorService(ExecutorService executorService) {
+		this.backgroundRevalidateExecutorService = executorService;
+		this.ownedBackgroundRevalidateExecutorService = false;
+	}
+
+	public int getServedStaleCount() {
+		return staleWhileRevalidate_servedStaleCounter.getCount();
+	}
+
+	public int getRevalidateRejectedCount() {
+		return staleWhileRevalidate_rejectedCounter.getCount();
+	}
+
 	private ExecutorService getOrCreateBackgroundChangedResolverExecutorService() {
 		ExecutorService res = backgroundChangeResolverExecutorService;
 		if (res == null) {
-			if (useCommonForkJoinPoolForBackgroundChangedResolver) {
-				res = ForkJoinPool.commonPool();
-			} else {
-				int coreSize = 0; // core pool size .. so scaling to 0 when not needed
-				int maxSize = 10;
-				log.info("create ThreadPoolExecutor(core=" + coreSize + ", max=" + maxSize + "..) for Background-Change-Resolver-* " + displayName);
-				this.ownedBackgroundRefreshExecutorService = true;
-				this.backgroundRefreshExecutorService = new ThreadPoolExecutor(coreSize, maxSize, //
-		                60L, TimeUnit.SECONDS, // keepAliveTimeout
-		                new SynchronousQueue<>(),
-		                backgroundChangeResolverThreadFactory);
+			synchronized(pendingRefreshsLock) {
+				res = backgroundChangeResolverExecutorService;
+				if (res == null) {
+					if (useCommonForkJoinPoolForBackgroundChangedResolver) {
+						res = ForkJoinPool.commonPool();
+					} else {
+						int maxSize = Math.max(1, resolveChangeRefreshScheduler.getMaxConcurrency());
+						log.info("create ThreadPoolExecutor(max=" + maxSize + "..) for Background-Change-Resolver-* " + displayName);
+						val executor = new ThreadPoolExecutor(maxSize, maxSize, //
+				                60L, TimeUnit.SECONDS, // keepAliveTimeout
+				                new LinkedBlockingQueue<>(), // at most maxConcurrency workers submitted by scheduler
+				                backgroundChangeResolverThreadFactory);
+						executor.allowCoreThreadTimeOut(true);
+						this.ownedBackgroundChangedResolverExecutorService = true;
+						res = executor;
+					}
+					this.backgroundChangeResolverExecutorService = res;
+				}
 			}
 		}
 		return res;
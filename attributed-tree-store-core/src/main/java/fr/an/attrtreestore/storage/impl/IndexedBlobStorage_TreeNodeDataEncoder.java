@@ -1,6 +1,6 @@
 package fr.an.attrtreestore.storage.impl;
 
-import java.io.DataInputStream;
+import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -8,6 +8,7 @@ import org.path4j.NodeName;
 
 import fr.an.attrtreestore.api.NodeData;
 import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+import fr.an.attrtreestore.storage.NodeNameDictionary;
 import lombok.AllArgsConstructor;
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
@@ -36,6 +37,15 @@ public class IndexedBlobStorage_TreeNodeDataEncoder {
 		this.attrDataEncoderHelper = attrDataEncoderHelper;
 	}
 	
+	public AttrDataEncoderHelper getAttrDataEncoderHelper() {
+		return attrDataEncoderHelper;
+	}
+
+	/** @return derived encoder, for records of an index file with name dictionary */
+	public IndexedBlobStorage_TreeNodeDataEncoder withNameDictionary(NodeNameDictionary nameDictionary) {
+		return new IndexedBlobStorage_TreeNodeDataEncoder(attrDataEncoderHelper.withNameDictionary(nameDictionary));
+	}
+
 	// ------------------------------------------------------------------------
 
 	@AllArgsConstructor
@@ -44,14 +54,14 @@ public class IndexedBlobStorage_TreeNodeDataEncoder {
 		public final long[] childDataFilePos;
 	}
 	
-	public NodeDataAndChildFilePos readNodeDataAndChildIndexes(DataInputStream in, NodeName name) throws IOException {
+	public NodeDataAndChildFilePos readNodeDataAndChildIndexes(DataInput in, NodeName name) throws IOException {
 		val nodeData = attrDataEncoderHelper.readNodeData_noName(in, name);
 		val childCount = nodeData.childNames.size();
 		long[] childDataFilePos = new long[childCount];
 		for(int i = 0; i < childCount; i++) {
 			childDataFilePos[i] = in.readLong();
 		}
-		val checkEnd = in.read(); // useless but easier for read/debug/check
+		val checkEnd = in.readByte(); // useless but easier for read/debug/check
 		if (checkEnd != '\n') {
 			log.error("expecting '\n', got " + checkEnd);
 		}
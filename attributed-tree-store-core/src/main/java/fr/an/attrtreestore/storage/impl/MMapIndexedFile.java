@@ -0,0 +1,154 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * read-only memory-mapped view of a (local) indexed file,
+ * for decoding entries directly from OS page cache, without opening InputStream per read
+ *
+ * file is mapped by chunks of <code>chunkSize</code> (1 Go by default), because a MappedByteBuffer is limited to 2 Go.
+ * entries may span across 2 chunks, cf MMapDataInput
+ */
+@Slf4j
+public class MMapIndexedFile implements AutoCloseable {
+
+	public static final int DEFAULT_CHUNK_SIZE_BITS = 30; // 1 Go
+
+	@Getter
+	private final Path filePath;
+
+	@Getter
+	private final long fileLen;
+
+	private final int chunkSizeBits;
+	private final int chunkSize;
+	private final int chunkMask;
+
+	private final MappedByteBuffer[] chunks;
+
+	// ------------------------------------------------------------------------
+
+	public MMapIndexedFile(Path filePath) {
+		this(filePath, DEFAULT_CHUNK_SIZE_BITS);
+	}
+
+	public MMapIndexedFile(Path filePath, int chunkSizeBits) {
+		if (chunkSizeBits <= 0 || chunkSizeBits > 30) {
+			throw new IllegalArgumentException("chunkSizeBits must be in [1, 30]");
+		}
+		this.filePath = filePath;
+		this.chunkSizeBits = chunkSizeBits;
+		this.chunkSize = 1 << chunkSizeBits;
+		this.chunkMask = chunkSize - 1;
+		try (val channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+			this.fileLen = channel.size();
+			val chunkCount = (int) ((fileLen + chunkSize - 1) >>> chunkSizeBits);
+			this.chunks = new MappedByteBuffer[chunkCount];
+			for(int i = 0; i < chunkCount; i++) {
+				long chunkPos = ((long) i) << chunkSizeBits;
+				long chunkLen = Math.min(chunkSize, fileLen - chunkPos);
+				chunks[i] = channel.map(MapMode.READ_ONLY, chunkPos, chunkLen);
+			}
+		} catch(IOException ex) {
+			throw new RuntimeException("Failed to mmap file '" + filePath + "'", ex);
+		}
+		log.info("mmap indexed file '" + filePath + "' (" + fileLen + " bytes, " + chunks.length + " chunk(s))");
+	}
+
+	/** mapping stays valid until garbage collected, channel is already closed after mapping */
+	@Override
+	public void close() {
+		// nothing to close.. no portable way to unmap MappedByteBuffer
+	}
+
+	// ------------------------------------------------------------------------
+
+	public MMapDataInput dataInputAt(long filePos) {
+		return new MMapDataInput(filePos);
+	}
+
+	/**
+	 * DataInput reading at absolute positions in mapped chunks, with fast path when not crossing chunk boundary
+	 */
+	public class MMapDataInput extends PositionalDataInput {
+
+		private MMapDataInput(long filePos) {
+			super(filePos, fileLen);
+		}
+
+		/** @return chunk offset for reading 'len' bytes without crossing chunk boundary, or -1 */
+		private int fastChunkOffset(int len) {
+			int offset = (int) (filePos & chunkMask);
+			return (offset + len <= chunkSize)? offset : -1;
+		}
+
+		@Override
+		protected byte byteAt(long pos) {
+			return chunks[(int) (pos >>> chunkSizeBits)].get((int) (pos & chunkMask));
+		}
+
+		@Override
+		public short readShort() throws IOException {
+			val offset = fastChunkOffset(2);
+			if (offset == -1) {
+				return super.readShort();
+			}
+			checkAvailable(2);
+			short res = chunks[(int) (filePos >>> chunkSizeBits)].getShort(offset);
+			filePos += 2;
+			return res;
+		}
+
+		@Override
+		public int readInt() throws IOException {
+			val offset = fastChunkOffset(4);
+			if (offset == -1) {
+				return super.readInt();
+			}
+			checkAvailable(4);
+			int res = chunks[(int) (filePos >>> chunkSizeBits)].getInt(offset);
+			filePos += 4;
+			return res;
+		}
+
+		@Override
+		public long readLong() throws IOException {
+			val offset = fastChunkOffset(8);
+			if (offset == -1) {
+				return super.readLong();
+			}
+			checkAvailable(8);
+			long res = chunks[(int) (filePos >>> chunkSizeBits)].getLong(offset);
+			filePos += 8;
+			return res;
+		}
+
+		@Override
+		public void readFully(byte[] b, int off, int len) throws IOException {
+			checkAvailable(len);
+			int remain = len;
+			int currOff = off;
+			while(remain > 0) {
+				val chunk = chunks[(int) (filePos >>> chunkSizeBits)].duplicate();
+				int chunkOffset = (int) (filePos & chunkMask);
+				int copyLen = Math.min(remain, chunk.limit() - chunkOffset);
+				chunk.position(chunkOffset);
+				chunk.get(b, currOff, copyLen);
+				currOff += copyLen;
+				remain -= copyLen;
+				filePos += copyLen;
+			}
+		}
+
+	}
+
+}
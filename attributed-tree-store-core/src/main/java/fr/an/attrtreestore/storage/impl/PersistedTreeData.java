@@ -1,13 +1,24 @@
 package fr.an.attrtreestore.storage.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.path4j.NodeName;
 import org.path4j.NodeNamesPath;
 import org.simplestorage4j.api.BlobStorage;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fr.an.attrtreestore.api.IAsyncReadTreeData;
 import fr.an.attrtreestore.api.IInMemCacheReadTreeData;
 import fr.an.attrtreestore.api.IWriteTreeData;
 import fr.an.attrtreestore.api.NodeData;
@@ -17,9 +28,15 @@ import fr.an.attrtreestore.api.TreeData;
 import fr.an.attrtreestore.api.override.OverrideNodeData;
 import fr.an.attrtreestore.api.override.OverrideNodeStatus;
 import fr.an.attrtreestore.api.override.OverrideTreeData;
-import fr.an.attrtreestore.impl.traversal.DefaultTreeDataCopier;
+import fr.an.attrtreestore.impl.lru.LruDecayTicker;
 import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+import fr.an.attrtreestore.storage.impl.CachedROIndexedBlobStorage_TreeNodeData.FreeMemoryByLfuEvictingSubTreeParams;
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
+import fr.an.attrtreestore.util.MemoryWarningSystem;
+import fr.an.attrtreestore.util.MemoryWarningSystem.Listener;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,14 +44,12 @@ import lombok.extern.slf4j.Slf4j;
  * 
  */
 @Slf4j
-public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMemCacheReadTreeData {
+public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMemCacheReadTreeData, IAsyncReadTreeData {
 
 	private static final String FILENAME_manifest = "manifest.json";
 
-	@SuppressWarnings("unused")
 	private final BlobStorage blobStorage;
 	
-	@SuppressWarnings("unused")
 	private final String baseDirname;
 
 	private final String manifestFilename;
@@ -43,12 +58,68 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 	private final AttrDataEncoderHelper attrDataEncoderHelper;
 	private final IndexedBlobStorage_TreeNodeDataEncoder indexedTreeNodeDataEncoder;
 			
-	private ReadUnionOverrideLayer_TreeData unionTree;
+	// volatile: atomically switched after recompaction, while reading/writing in other threads
+	private volatile IndexReadGeneration currReadGeneration;
 	
-	private Compound_OverrideTreeData underlyingOverrideTree;
+	private volatile Compound_OverrideTreeData underlyingOverrideTree;
 	
-	@SuppressWarnings("unused")
-	private ROCached_TreeData underlyingReadIndexedTree;
+	private volatile ROCached_TreeData underlyingReadIndexedTree;
+
+	// background recompaction of WALs into new index file
+	// ------------------------------------------------------------------------
+	
+	/** trigger background recompaction when WALs size exceed, <= 0 to disable */
+	@Getter @Setter
+	private long recompactTriggerWalFileLen = 256 * 1024 * 1024;
+	/** trigger background recompaction when WALs entries count exceed, <= 0 to disable */
+	@Getter @Setter
+	private long recompactTriggerWalEntryCount = 1_000_000;
+	/** codec for recompacted index file, null for raw (not block-compressed) */
+	@Getter @Setter
+	private BlockCodec indexBlockCodec = null;
+	/** write child names of recompacted index file as ids in a name dictionary section (v2 records only) */
+	@Getter @Setter
+	private boolean indexNameDictionary = true;
+	/** max prefetch size of dedicated reader on previous index, while recompacting */
+	@Getter @Setter
+	private int snapshotReaderFetchSize = 64 * 1024;
+
+	private static final ThreadFactory recompactThreadFactory = new DefaultNamedThreadFactory("Recompact-Index-", "", true);
+	private ExecutorService recompactExecutorService; // created on demand
+	
+	private final AtomicReference<CompletableFuture<Void>> pendingBackgroundRecompact = new AtomicReference<>();
+
+	/** at most 1 recompaction at a time (but not blocking reads/writes) */
+	private final Object recompactLock = new Object();
+
+	/** read-locked by put()/remove(), write-locked while rolling WAL + flushing previous one
+	 * ... so no write is appended to previous WAL after it is frozen for recompaction */
+	private final ReentrantReadWriteLock walRollLock = new ReentrantReadWriteLock();
+
+	// recompaction metrics, updated only under recompactLock
+	@Getter
+	private volatile long recompactCount;
+	@Getter
+	private volatile long lastRecompactDurationMillis;
+	@Getter
+	private volatile long totalRecompactDurationMillis;
+	@Getter
+	private volatile long lastRecompactWrittenBytes;
+	@Getter
+	private volatile long totalRecompactWrittenBytes;
+
+	// LFU memory management, on current index tree and WALs (followed across recompactions)
+	// ------------------------------------------------------------------------
+
+	/** clock for decayLruCounts().. not started by default, cf lruDecayTicker.start() */
+	@Getter
+	private final LruDecayTicker lruDecayTicker;
+
+	/** estimated memory size to free on each low memory notification, cf registerLowMemoryListenerOffloader() */
+	@Getter @Setter
+	private long lowMemoryFreedMemSize = 50 * 1024 * 1024;
+
+	private Listener innerLowMemListener = null;
 
 	private ObjectMapper jsonMapper = new ObjectMapper(); 
 
@@ -94,6 +165,41 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 		}
 	}
 
+	/**
+	 * union tree on an index file, ref-counted by in-flight reads:
+	 * after recompaction switch, previous index file is deleted only when last read on it is released
+	 */
+	private class IndexReadGeneration {
+		final ReadUnionOverrideLayer_TreeData unionTree;
+		final String indexFilename;
+		/** +1 while current generation, +1 per in-flight read */
+		private final AtomicInteger refCount = new AtomicInteger(1);
+
+		IndexReadGeneration(ReadUnionOverrideLayer_TreeData unionTree, String indexFilename) {
+			this.unionTree = unionTree;
+			this.indexFilename = indexFilename;
+		}
+
+		/** @return false if already retired and released, file may be deleted */
+		boolean tryAcquire() {
+			for(;;) {
+				val count = refCount.get();
+				if (count <= 0) {
+					return false;
+				}
+				if (refCount.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		void release() {
+			if (refCount.decrementAndGet() == 0) {
+				onRetiredReleased(this);
+			}
+		}
+	}
+
 	// ------------------------------------------------------------------------
 	
 	public PersistedTreeData(BlobStorage blobStorage, String baseDirname,
@@ -125,7 +231,7 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 
 			for(val walFilename: manifest.sequenceWalFilenames) {
 				String walFile = baseDirname + "/" + walFilename;
-				val underlyingOverrideTree = new WALBlobStorage_OverrideTreeData(blobStorage, walFile, attrDataEncoderHelper);
+				val underlyingOverrideTree = createWal(walFile);
 				if (blobStorage.exists(walFile)) {
 				    try {
 				        underlyingOverrideTree.initReload();
@@ -155,16 +261,22 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 					indexedTreeNodeDataEncoder, IndexedBlobStorageInitMode.INIT_EMPTY, 0);
 			
 			String walFile = baseDirname + "/" + walFilename;
-			val underlyingOverrideTree = new WALBlobStorage_OverrideTreeData(blobStorage, walFile, attrDataEncoderHelper);
+			val underlyingOverrideTree = createWal(walFile);
 			underlyingOverrideTree.initCreateEmpty();
 			sequenceOverrideTrees.add(underlyingOverrideTree);
 
 			writeManifest(manifest);
 		}
 		
+		this.manifest = manifest;
 		this.underlyingReadIndexedTree = underlyingReadIndexedTree;
 		this.underlyingOverrideTree = new Compound_OverrideTreeData(sequenceOverrideTrees);
-		this.unionTree = new ReadUnionOverrideLayer_TreeData(underlyingReadIndexedTree, underlyingOverrideTree);
+		this.currReadGeneration = new IndexReadGeneration(
+				new ReadUnionOverrideLayer_TreeData(underlyingReadIndexedTree, underlyingOverrideTree),
+				manifest.indexFilename);
+
+		this.lruDecayTicker = new LruDecayTicker("PersistedTreeData " + baseDirname);
+		lruDecayTicker.addTarget(this::decayLruCounts);
 	}
 
 	// implements IReadableTreeData
@@ -172,34 +284,89 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 	
 	@Override
 	public NodeData get(NodeNamesPath path) {
-		return unionTree.get(path);
+		val gen = acquireReadGeneration();
+		try {
+			return gen.unionTree.get(path);
+		} finally {
+			gen.release();
+		}
+	}
+
+	@Override
+	public Map<NodeName,NodeData> getAll(NodeNamesPath parentPath, Collection<NodeName> childNames) {
+		val gen = acquireReadGeneration();
+		try {
+			return gen.unionTree.getAll(parentPath, childNames);
+		} finally {
+			gen.release();
+		}
+	}
+
+	@Override
+	public CompletableFuture<NodeData> asyncGet(NodeNamesPath path) {
+		val gen = acquireReadGeneration();
+		CompletableFuture<NodeData> res;
+		try {
+			res = gen.unionTree.asyncGet(path);
+		} catch(RuntimeException ex) {
+			gen.release();
+			throw ex;
+		}
+		// release only when async read on index file completed
+		return res.whenComplete((data, ex) -> gen.release());
+	}
+
+	private IndexReadGeneration acquireReadGeneration() {
+		for(;;) {
+			val gen = currReadGeneration;
+			if (gen.tryAcquire()) {
+				return gen;
+			}
+			// else retired concurrently, retry on new current
+		}
+	}
+
+	private void onRetiredReleased(IndexReadGeneration gen) {
+		// TOADD delete previous backup, rename curr to backup?
+		val indexFile = baseDirname + "/" + gen.indexFilename;
+		try {
+			blobStorage.deleteFile(indexFile);
+			log.info("deleted retired index file '" + indexFile + "'");
+		} catch(RuntimeException ex) {
+			log.warn("Failed to delete retired index file '" + indexFile + "' .. ignore", ex);
+		}
 	}
 	
 	@Override // implements IInMemCacheReadTreeData
 	public OverrideNodeData getIfInMemCache(NodeNamesPath path) {
-		OverrideNodeData overrideData;
-		if (underlyingOverrideTree instanceof IInMemCacheReadTreeData) {
-			overrideData = ((IInMemCacheReadTreeData) underlyingOverrideTree).getIfInMemCache(path);
-		} else {
-			overrideData = underlyingOverrideTree.getOverride(path);
-		}
-		if (overrideData != null) {
-			switch(overrideData.status) {
-			case DELETED: return OverrideNodeData.DELETED;
-			case UPDATED: return overrideData;
-			case NOT_OVERRIDEN: break; // cf next
+		// same generation for override + index trees (switched together on recompaction), index file not deleted while reading
+		val gen = acquireReadGeneration();
+		try {
+			val overrideTree = gen.unionTree.getOverrideTree();
+			val indexTree = gen.unionTree.getBaseReadOnlyTree();
+			OverrideNodeData overrideData;
+			if (overrideTree instanceof IInMemCacheReadTreeData) {
+				overrideData = ((IInMemCacheReadTreeData) overrideTree).getIfInMemCache(path);
+			} else {
+				overrideData = overrideTree.getOverride(path);
 			}
-		}
-		if (underlyingReadIndexedTree instanceof IInMemCacheReadTreeData) {
-			return ((IInMemCacheReadTreeData) underlyingReadIndexedTree).getIfInMemCache(path);
-		} else {
-			// underlying tree does not support getIfInMemCache().. fallback
-			NodeData nodeData = underlyingReadIndexedTree.get(path);
-			if (nodeData == null) {
-				return OverrideNodeData.DELETED;
+			if (overrideData != null) {
+				switch(overrideData.status) {
+				case DELETED: return OverrideNodeData.DELETED;
+				case UPDATED: 
+					// overriden but evicted (UPDATED_NOT_IN_MEM) => not in memory, never fallback to index (older data)
+					return (overrideData.data != null)? overrideData : OverrideNodeData.NOT_OVERRIDEN;
+				case NOT_OVERRIDEN: break; // cf next
+				}
+			}
+			if (indexTree instanceof IInMemCacheReadTreeData) {
+				return ((IInMemCacheReadTreeData) indexTree).getIfInMemCache(path);
 			} else {
-				return new OverrideNodeData(OverrideNodeStatus.UPDATED, nodeData);
+				// underlying tree does not support getIfInMemCache().. no IO, considered not in memory
+				return OverrideNodeData.NOT_OVERRIDEN;
 			}
+		} finally {
+			gen.release();
 		}
 	}
 
@@ -208,12 +375,26 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 	
 	@Override
 	public void put(NodeNamesPath path, NodeData data) {
-		unionTree.put(path, data);
+		val lock = walRollLock.readLock();
+		lock.lock();
+		try {
+			currReadGeneration.unionTree.put(path, data);
+		} finally {
+			lock.unlock();
+		}
+		checkTriggerBackgroundRecompact();
 	}
 
 	@Override
 	public void remove(NodeNamesPath path) {
-		unionTree.remove(path);
+		val lock = walRollLock.readLock();
+		lock.lock();
+		try {
+			currReadGeneration.unionTree.remove(path);
+		} finally {
+			lock.unlock();
+		}
+		checkTriggerBackgroundRecompact();
 	}
 
 	// ------------------------------------------------------------------------
@@ -240,7 +421,7 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 		synchronized(manifestLock) {
 			val newWalFilename = manifest.addWalFile();
 			String walFile = baseDirname + "/" + newWalFilename;
-			val newWalOverrideTree = new WALBlobStorage_OverrideTreeData(blobStorage, walFile, attrDataEncoderHelper);
+			val newWalOverrideTree = createWal(walFile);
 			newWalOverrideTree.initCreateEmpty();
 			writeManifest(manifest);
 	
@@ -248,28 +429,136 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 			
 			// atomic add roll wal
 			val prevWalOverrideTrees = underlyingOverrideTree.rollAddWal(newWalOverrideTree);
-			
-			val prevWal = (WALBlobStorage_OverrideTreeData) prevWalOverrideTrees[prevWalOverrideTrees.length-1];
-			prevWal.flushStopWrite();
+			// caller should flushStopWrite() prev wal, outside of manifestLock, but under walRollLock
 			
 			return new RollWALResult(newWalFilename, newWalOverrideTree, prevWalOverrideTrees);
 		}
 	}
 	
+	private WALBlobStorage_OverrideTreeData createWal(String walFile) {
+		val res = new WALBlobStorage_OverrideTreeData(blobStorage, walFile, attrDataEncoderHelper);
+		res.setWriteFailureListener(ex -> onWalWriteFailure(walFile));
+		return res;
+	}
+
+	/** failed WAL rejects next writes => roll to a new WAL, by recompaction (re-indexing in-memory entries of failed one) */
+	private void onWalWriteFailure(String walFile) {
+		log.error("write failure on wal '" + walFile + "' => trigger recompaction, rolling to new wal");
+		submitBackgroundRecompact();
+	}
+
+	/**
+	 * synchronous recompaction (in caller thread)
+	 * ... concurrent reads/writes are not blocked, cf doRecompactIndexFile()
+	 */
 	public void writeRecompactIndexFile() {
-		synchronized(manifestLock) {
-			// rolling WAL, take snapshot
-			RollWALResult rollWALResult = rollAddWal();
-			val prevSnaphostOverrideTree = new Compound_OverrideTreeData(rollWALResult.prevWalOverrideTrees);
-			val prevSnapshotTree = new ReadUnionOverrideLayer_TreeData(underlyingReadIndexedTree, prevSnaphostOverrideTree);
-			// copy snapshot to in-memory tree
-			val newIndexingTree = new InMem_TreeData();
-			DefaultTreeDataCopier.copy(prevSnapshotTree, newIndexingTree);
-			// re-index and save file
-			val prevIndexFilename = manifest.indexFilename;
-			val newIndexFilename = manifest.newIndexFile();
+		doRecompactIndexFile();
+	}
+
+	/**
+	 * submit recompaction in background thread, or return already pending one
+	 */
+	public CompletableFuture<Void> submitBackgroundRecompact() {
+		for(;;) {
+			val foundPending = pendingBackgroundRecompact.get();
+			if (foundPending != null) {
+				return foundPending;
+			}
+			val pending = new CompletableFuture<Void>();
+			if (pendingBackgroundRecompact.compareAndSet(null, pending)) {
+				getOrCreateRecompactExecutorService().execute(() -> {
+					try {
+						doRecompactIndexFile();
+						pendingBackgroundRecompact.compareAndSet(pending, null);
+						pending.complete(null);
+					} catch(Throwable ex) {
+						log.error("Failed background recompaction", ex);
+						pendingBackgroundRecompact.compareAndSet(pending, null);
+						pending.completeExceptionally(ex);
+					}
+				});
+				return pending;
+			}
+		}
+	}
+
+	private synchronized ExecutorService getOrCreateRecompactExecutorService() {
+		if (recompactExecutorService == null) {
+			this.recompactExecutorService = Executors.newSingleThreadExecutor(recompactThreadFactory);
+		}
+		return recompactExecutorService;
+	}
+
+	protected void checkTriggerBackgroundRecompact() {
+		if (pendingBackgroundRecompact.get() != null
+				|| (recompactTriggerWalFileLen <= 0 && recompactTriggerWalEntryCount <= 0)) {
+			return;
+		}
+		long walFileLen = 0;
+		long walEntryCount = 0;
+		for(val overrideTree: underlyingOverrideTree.sequenceOverrideTrees) {
+			if (overrideTree instanceof WALBlobStorage_OverrideTreeData) {
+				val wal = (WALBlobStorage_OverrideTreeData) overrideTree;
+				walFileLen += wal.getWalFileLen();
+				walEntryCount += wal.getWalEntryCount();
+			}
+		}
+		if ((recompactTriggerWalFileLen > 0 && walFileLen >= recompactTriggerWalFileLen)
+				|| (recompactTriggerWalEntryCount > 0 && walEntryCount >= recompactTriggerWalEntryCount)) {
+			log.info("trigger background recompaction, WALs len:" + walFileLen + " entries:" + walEntryCount);
+			submitBackgroundRecompact();
+		}
+	}
+
+	/**
+	 * recompaction, locking manifestLock only for short phases:
+	 * <PRE>
+	 * 1/ (locked) roll new WAL, receiving next writes => freeze snapshot = current index + previous WALs
+	 * 2/ (not locked) re-index snapshot to new index file + reload
+	 * 3/ (locked) atomic switch manifest + in-memory trees: new index + remaining WALs
+	 * 4/ retire previous index, file deleted when last in-flight read on it is released
+	 * </PRE>
+	 */
+	protected void doRecompactIndexFile() {
+		synchronized(recompactLock) {
+			val startTime = System.currentTimeMillis();
+			
+			// phase 1: rolling WAL, take snapshot
+			RollWALResult rollWALResult;
+			List<String> frozenWalFilenames;
+			String prevIndexFilename;
+			String newIndexFilename;
+			OverrideTreeData[] prevWalOverrideTrees;
+			// exclusive with put()/remove(): a write may not append to previous WAL after flushStopWrite() 
+			walRollLock.writeLock().lock();
+			try {
+				synchronized(manifestLock) {
+					frozenWalFilenames = new ArrayList<>(manifest.sequenceWalFilenames);
+					rollWALResult = rollAddWal();
+					prevIndexFilename = manifest.indexFilename;
+					newIndexFilename = manifest.newIndexFile();
+				}
+				prevWalOverrideTrees = rollWALResult.prevWalOverrideTrees;
+				val prevWal = (WALBlobStorage_OverrideTreeData) prevWalOverrideTrees[prevWalOverrideTrees.length-1];
+				prevWal.flushStopWrite();
+			} finally {
+				walRollLock.writeLock().unlock();
+			}
+			
+			// phase 2: re-index and save file.. streaming from frozen snapshot, no full copy in memory
+			// reading previous index with a dedicated reader (not the live index tree, which would cache all entries),
+			// evicting each sub-tree once written => bounded memory
+			val snapshotIndexReader = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, baseDirname + "/" + prevIndexFilename,
+					indexedTreeNodeDataEncoder, IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, snapshotReaderFetchSize);
+			snapshotIndexReader.setMaxPrefetchSize(snapshotReaderFetchSize);
+			val prevSnaphostOverrideTree = new Compound_OverrideTreeData(prevWalOverrideTrees);
+			val prevSnapshotTree = new ReadUnionOverrideLayer_TreeData(snapshotIndexReader, prevSnaphostOverrideTree);
 			val newIndexFile = baseDirname + "/" + newIndexFilename;
-			newIndexingTree.recursiveWriteFull(blobStorage, newIndexFile, indexedTreeNodeDataEncoder);
+			val indexWriter = new StreamingIndexedTreeDataWriter(indexedTreeNodeDataEncoder);
+			indexWriter.setBlockCodec(indexBlockCodec);
+			indexWriter.setUseNameDictionary(indexNameDictionary);
+			indexWriter.setSubTreeSpilledCallback(snapshotIndexReader::evictLoadedSubTree);
+			val writtenBytes = indexWriter.writeFull(prevSnapshotTree, blobStorage, newIndexFile);
 			
 			// check reload all (check for data-integrity + preload fetching..)
 			IndexedBlobStorageInitMode initMode = IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY;
@@ -277,26 +566,108 @@ public class PersistedTreeData extends TreeData implements IWriteTreeData, IInMe
 			val newUnderlyingReadIndexedTree = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, newIndexFile,
 					indexedTreeNodeDataEncoder, initMode, initPrefetchSize);
 			
-			// switch index filename + remove intermediate wal filename
-			manifest.indexFilename = newIndexFilename; 
-			manifest.sequenceWalFilenames = new ArrayList<>(); 
-			manifest.sequenceWalFilenames.add(rollWALResult.newWalFilename);
-			
-			writeManifest(manifest);
+			// phase 3: atomic switch index filename + remove re-indexed wal filenames
+			IndexReadGeneration prevReadGeneration;
+			synchronized(manifestLock) {
+				manifest.indexFilename = newIndexFilename;
+				val remainWalFilenames = new ArrayList<>(manifest.sequenceWalFilenames);
+				remainWalFilenames.removeAll(frozenWalFilenames);
+				manifest.sequenceWalFilenames = remainWalFilenames; 
+				
+				writeManifest(manifest);
+	
+				// also change in-memory
+				val newOverrideTree = underlyingOverrideTree.withoutFirstOverrideTrees(prevWalOverrideTrees.length);
+				this.underlyingOverrideTree = newOverrideTree;
+				this.underlyingReadIndexedTree = newUnderlyingReadIndexedTree;
+				prevReadGeneration = this.currReadGeneration;
+				this.currReadGeneration = new IndexReadGeneration(
+						new ReadUnionOverrideLayer_TreeData(newUnderlyingReadIndexedTree, newOverrideTree),
+						newIndexFilename);
+			}
 
-			// TOADD delete previous backup, rename curr to backup?
-			blobStorage.deleteFile(baseDirname + "/" + prevIndexFilename);
-			
-			writeManifest(manifest);
+			// phase 4: retire previous index, deleted now or by last in-flight read
+			prevReadGeneration.release();
 			
-			// also change in-memory (not strictly needed, for memory compaction)
-			this.underlyingOverrideTree = new Compound_OverrideTreeData(new OverrideTreeData[] { rollWALResult.newWalOverrideTree });
-			this.underlyingReadIndexedTree = newUnderlyingReadIndexedTree;
-			this.unionTree = new ReadUnionOverrideLayer_TreeData(underlyingReadIndexedTree, underlyingOverrideTree);
+			val durationMillis = System.currentTimeMillis() - startTime;
+			this.recompactCount++;
+			this.lastRecompactDurationMillis = durationMillis;
+			this.totalRecompactDurationMillis += durationMillis;
+			this.lastRecompactWrittenBytes = writtenBytes;
+			this.totalRecompactWrittenBytes += writtenBytes;
+			log.info("recompacted index file '" + newIndexFilename + "' (" + writtenBytes + " bytes, " 
+					+ prevWalOverrideTrees.length + " WAL(s)), took " + durationMillis + " ms");
+		}
+	}
+
+
+	// LFU memory management
+	// ------------------------------------------------------------------------
 
+	/** clock tick for LFU eviction, on current index tree and all WALs.. registered in lruDecayTicker */
+	public void decayLruCounts() {
+		val indexTree = underlyingReadIndexedTree;
+		if (indexTree instanceof CachedROIndexedBlobStorage_TreeNodeData) {
+			((CachedROIndexedBlobStorage_TreeNodeData) indexTree).decayLruCounts();
+		}
+		for(val overrideTree: underlyingOverrideTree.sequenceOverrideTrees) {
+			if (overrideTree instanceof WALBlobStorage_OverrideTreeData) {
+				((WALBlobStorage_OverrideTreeData) overrideTree).decayLruCounts();
+			}
 		}
 	}
 
+	/**
+	 * evict least frequently used data: first from WALs (cached data of flushed records), 
+	 * then sub-trees of index tree, until estimated freed size reached.. all reloadable later from files
+	 * @return estimated freed memory size
+	 */
+	public long freeMemoryByLfuEvicting(long untilFreedMemSize) {
+		long res = 0;
+		for(val overrideTree: underlyingOverrideTree.sequenceOverrideTrees) {
+			if (res >= untilFreedMemSize) {
+				break;
+			}
+			if (overrideTree instanceof WALBlobStorage_OverrideTreeData) {
+				res += ((WALBlobStorage_OverrideTreeData) overrideTree).freeMemoryByLfuEvictingData(untilFreedMemSize - res);
+			}
+		}
+		val indexTree = underlyingReadIndexedTree;
+		if (res < untilFreedMemSize && indexTree instanceof CachedROIndexedBlobStorage_TreeNodeData) {
+			val cachedIndexTree = (CachedROIndexedBlobStorage_TreeNodeData) indexTree;
+			val indexParams = cachedIndexTree.getLfuEvictingSubTreeParams();
+			if (indexParams != null) {
+				res += cachedIndexTree.freeMemoryByLfuEvictingSubTree(FreeMemoryByLfuEvictingSubTreeParams.builder()
+						.untilFreedMemSize(untilFreedMemSize - res)
+						.minLevel(indexParams.minLevel)
+						.maxSubTreeSizeOnDisk(indexParams.maxSubTreeSizeOnDisk)
+						.build());
+			}
+		}
+		return res;
+	}
+
+	/** low memory listener, evicting by freeMemoryByLfuEvicting()
+	 * .. to use instead of registering on index tree itself, which is replaced on recompaction
+	 */
+	public void registerLowMemoryListenerOffloader() {
+		if (innerLowMemListener == null) {
+			innerLowMemListener = (usedMemory, maxMemory) -> {
+				log.info("detected low memory, lfuEvicting for " + baseDirname + " ..");
+				long estimatedFreed = freeMemoryByLfuEvicting(lowMemoryFreedMemSize);
+				log.info("detected low memory.. lfuEvicting for " + baseDirname + " => " + estimatedFreed / (1024*1024) + " Mb");
+			};
+		}
+		MemoryWarningSystem.instance.addListener(innerLowMemListener);
+	}
+
+	public void unregisterLowMemoryListenerOffloader() {
+		if (innerLowMemListener != null) {
+			MemoryWarningSystem.instance.removeListener(innerLowMemListener);
+		}
+	}
+
+	// ------------------------------------------------------------------------
 
 	private PersistedTreeDataManifest readManifest() {
 		val manifestFileContent = blobStorage.readFile(manifestFilename);
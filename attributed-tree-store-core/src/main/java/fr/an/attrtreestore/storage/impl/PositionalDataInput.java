@@ -0,0 +1,163 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * DataInput reading at absolute (logical) file positions, in [filePos, endFilePos[, big-endian
+ * ... common part of MMapDataInput, BlockDataInput, ByteBufferDataInput: subclasses only implement byteAt(),
+ * and may override multi-bytes reads for fast paths
+ *
+ * not thread-safe (holds a current file position), but cheap to create, one per read
+ */
+public abstract class PositionalDataInput implements DataInput {
+
+	protected long filePos;
+
+	/** exclusive */
+	protected final long endFilePos;
+
+	// ------------------------------------------------------------------------
+
+	protected PositionalDataInput(long filePos, long endFilePos) {
+		this.filePos = filePos;
+		this.endFilePos = endFilePos;
+	}
+
+	// ------------------------------------------------------------------------
+
+	public long getFilePos() {
+		return filePos;
+	}
+
+	/** @return byte at absolute pos, already checked in bounds */
+	protected abstract byte byteAt(long pos);
+
+	protected void checkAvailable(int len) throws EOFException {
+		if (filePos + len > endFilePos) {
+			throw new EOFException();
+		}
+	}
+
+	// implements DataInput
+	// ------------------------------------------------------------------------
+
+	@Override
+	public byte readByte() throws IOException {
+		checkAvailable(1);
+		return byteAt(filePos++);
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		checkAvailable(2);
+		short res = (short) (((byteAt(filePos) & 0xFF) << 8) | (byteAt(filePos + 1) & 0xFF));
+		filePos += 2;
+		return res;
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char) readShort();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		checkAvailable(4);
+		int res = 0;
+		for(int i = 0; i < 4; i++) {
+			res = (res << 8) | (byteAt(filePos + i) & 0xFF);
+		}
+		filePos += 4;
+		return res;
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		checkAvailable(8);
+		long res = 0;
+		for(int i = 0; i < 8; i++) {
+			res = (res << 8) | (byteAt(filePos + i) & 0xFF);
+		}
+		filePos += 8;
+		return res;
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		checkAvailable(len);
+		for(int i = 0; i < len; i++) {
+			b[off + i] = byteAt(filePos + i);
+		}
+		filePos += len;
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		int res = (int) Math.max(0, Math.min(n, endFilePos - filePos));
+		filePos += res;
+		return res;
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+
+	/** same as RandomAccessFile.readLine(): latin-1 bytes, until '\n', '\r', "\r\n" or end
+	 * @return line, or null when already at end
+	 */
+	@Override
+	public String readLine() throws IOException {
+		if (filePos >= endFilePos) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		while(filePos < endFilePos) {
+			int c = byteAt(filePos++) & 0xFF;
+			if (c == '\n') {
+				break;
+			} else if (c == '\r') {
+				if (filePos < endFilePos && byteAt(filePos) == '\n') {
+					filePos++;
+				}
+				break;
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+}
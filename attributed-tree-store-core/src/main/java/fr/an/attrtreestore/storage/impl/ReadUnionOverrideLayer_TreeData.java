@@ -1,13 +1,16 @@
 package fr.an.attrtreestore.storage.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.path4j.NodeName;
 import org.path4j.NodeNamesPath;
 
+import fr.an.attrtreestore.api.IAsyncReadTreeData;
 import fr.an.attrtreestore.api.IReadTreeData;
 import fr.an.attrtreestore.api.IWriteTreeData;
 import fr.an.attrtreestore.api.NodeData;
@@ -24,7 +27,7 @@ import lombok.val;
  * delegate update/deletes to override layer, else read-only queries to baseReadOnly layer
  *
  */
-public class ReadUnionOverrideLayer_TreeData extends TreeData implements IReadTreeData, IWriteTreeData {
+public class ReadUnionOverrideLayer_TreeData extends TreeData implements IReadTreeData, IAsyncReadTreeData, IWriteTreeData {
 
 	@Getter
 	protected final ROCached_TreeData baseReadOnlyTree;
@@ -58,6 +61,41 @@ public class ReadUnionOverrideLayer_TreeData extends TreeData implements IReadTr
 		return res;
 	}
 
+	/** override layer is in-memory => resolved immediately, only base layer may be async */
+	@Override
+	public CompletableFuture<NodeData> asyncGet(NodeNamesPath path) {
+		OverrideNodeData overrideData = overrideTree.getOverride(path);
+		if (overrideData != null) {
+			switch(overrideData.status) {
+			case DELETED: return CompletableFuture.completedFuture(null);
+			case UPDATED: return CompletableFuture.completedFuture(overrideData.data);
+			case NOT_OVERRIDEN: break; // cf next
+			}
+		}
+		return baseReadOnlyTree.asyncGet(path);
+	}
+
+	/** resolve overrides per child, then batched getAll() on base layer for remaining not-overriden ones */
+	@Override
+	public Map<NodeName,NodeData> getAll(NodeNamesPath parentPath, Collection<NodeName> childNames) {
+		val res = new HashMap<NodeName,NodeData>();
+		val baseChildNames = new ArrayList<NodeName>(childNames.size());
+		for(val childName: childNames) {
+			OverrideNodeData overrideData = overrideTree.getOverride(parentPath.toChild(childName));
+			if (overrideData != null && overrideData.status != OverrideNodeStatus.NOT_OVERRIDEN) {
+				if (overrideData.status == OverrideNodeStatus.UPDATED) {
+					res.put(childName, overrideData.data);
+				} // else DELETED 
+			} else {
+				baseChildNames.add(childName);
+			}
+		}
+		if (! baseChildNames.isEmpty()) {
+			res.putAll(baseReadOnlyTree.getAll(parentPath, baseChildNames));
+		}
+		return res;
+	}
+
 	@Deprecated
 	public NodeData getWithChild(NodeNamesPath path,
 			Map<NodeName,NodeData> foundChildMap,
@@ -0,0 +1,324 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.function.Consumer;
+
+import org.path4j.NodeNamesPath;
+import org.simplestorage4j.api.BlobStorage;
+
+import fr.an.attrtreestore.api.IReadTreeData;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.storage.AttrInfoIndexes;
+import fr.an.attrtreestore.storage.NodeNameDictionary;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * streaming writer for indexed file (same pre-order layout as <code>InMem_TreeData.recursiveWriteFull()</code>),
+ * without loading full tree in memory: only 1 traversal of the source tree + 1 sequential pass on a local spill file
+ *
+ * <PRE>
+ * pass 1: traverse src tree in post-order, with child in reverse order,
+ *    => spill records (relative child offsets) + trailer (childCount, recordLen)
+ * pass 2: read spill file backward (= pre-order, child in normal order),
+ *    back-patch absolute child filePos, write to output
+ * </PRE>
+ *
+ * memory: only child data of directories currently traversed (depth x dir width), + fixed size buffers
+ * ... when src is a caching reader, use subTreeSpilledCallback to evict each sub-tree once spilled, 
+ * else src cache would grow up to the full tree
+ */
+@Slf4j
+public class StreamingIndexedTreeDataWriter {
+
+	private final IndexedBlobStorage_TreeNodeDataEncoder encoder;
+
+	/** directory for spill file, null for default java.io.tmpdir */
+	private final File spillDir;
+
+	@Getter @Setter
+	private int spillBufferSize = 1024 * 1024;
+
+	@Getter @Setter
+	private int writeBufferSize = 10 * 4096;
+
+	/** when not null, write block-compressed file (cf BlockCompressedOutputStream), child filePos are logical positions */
+	@Getter @Setter
+	private BlockCodec blockCodec;
+
+	@Getter @Setter
+	private int blockSize = BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE;
+
+	/** when true (and v2 records), child names are written as ids in a name dictionary section at end of file */
+	@Getter @Setter
+	private boolean useNameDictionary;
+
+	@Getter @Setter
+	private int maxNameDictionarySize = NodeNameDictionary.DEFAULT_MAX_SIZE;
+
+	/** optional callback, when sub-tree of path is fully spilled: src datas of sub-tree will not be read anymore
+	 * ex: CachedROIndexedBlobStorage_TreeNodeData::evictLoadedSubTree 
+	 */
+	@Getter @Setter
+	private Consumer<NodeNamesPath> subTreeSpilledCallback;
+
+	private static final int RECORD_TRAILER_LEN = 8; // int childCount + int recordLen
+
+	// ------------------------------------------------------------------------
+
+	public StreamingIndexedTreeDataWriter(IndexedBlobStorage_TreeNodeDataEncoder encoder) {
+		this(encoder, null);
+	}
+
+	public StreamingIndexedTreeDataWriter(IndexedBlobStorage_TreeNodeDataEncoder encoder, File spillDir) {
+		this.encoder = encoder;
+		this.spillDir = spillDir;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/** @return written (logical) file length */
+	public long writeFull(IReadTreeData src, BlobStorage blobStorage, String fileName) {
+		try(val out = openOutput(new BufferedOutputStream(blobStorage.openWrite(fileName, false), writeBufferSize))) {
+			return writeFull(src, out);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed write to '" + fileName + "'", ex);
+		}
+	}
+
+	protected OutputStream openOutput(OutputStream out) {
+		return (blockCodec != null)? new BlockCompressedOutputStream(out, blockSize, blockCodec) : out;
+	}
+
+	public long writeFull(IReadTreeData src, OutputStream out) throws IOException {
+		val rootData = src.get(NodeNamesPath.ROOT);
+		if (rootData == null) {
+			throw new IllegalArgumentException("root node not found");
+		}
+		NodeNameDictionary nameDictionary = null;
+		IndexedBlobStorage_TreeNodeDataEncoder recordEncoder = encoder;
+		if (useNameDictionary && encoder.getAttrDataEncoderHelper().getWriteRecordVersion() >= 2) {
+			nameDictionary = NodeNameDictionary.forWrite(maxNameDictionarySize);
+			recordEncoder = encoder.withNameDictionary(nameDictionary);
+		}
+		val spillFile = File.createTempFile("index-spill-", ".tmp", spillDir);
+		try {
+			long spillLen;
+			long totalLen;
+			// pass 1: post-order traversal of src, spill records (+ fill name dictionary)
+			try (val spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), spillBufferSize))) {
+				val spillCtx = new SpillContext(src, spillOut, recordEncoder);
+				totalLen = spillCtx.recursiveSpill(NodeNamesPath.ROOT, rootData);
+				spillLen = spillCtx.spillPos;
+			}
+			// pass 2: backward read spill, patch and write
+			long writtenLen;
+			try (val spillIn = new BackwardSpillReader(spillFile, spillLen, spillBufferSize)) {
+				writtenLen = writeReversedPatched(spillIn, out);
+			}
+			if (writtenLen != totalLen) {
+				throw new IllegalStateException("internal check failed: written " + writtenLen + ", expected " + totalLen);
+			}
+			long sectionPos = totalLen;
+			if (nameDictionary != null) {
+				sectionPos += writeNameDictionarySection(out, nameDictionary, totalLen);
+			}
+			val attrIndexes = encoder.getAttrDataEncoderHelper().attrIndexes;
+			if (attrIndexes.size() > 0) {
+				// attr index -> name table, checked on open
+				writeAttrTableSection(out, attrIndexes, sectionPos, totalLen);
+			}
+			log.info("written index (streaming) " + totalLen + " bytes"
+					+ ((nameDictionary != null)? ", name dictionary: " + nameDictionary.size() + " names" : ""));
+			return totalLen;
+		} finally {
+			if (! spillFile.delete()) {
+				log.warn("Failed to delete spill file " + spillFile + " .. ignore");
+			}
+		}
+	}
+
+	// internal
+	// ------------------------------------------------------------------------
+
+	/** @return written len, section + trailer */
+	private static int writeNameDictionarySection(OutputStream out, NodeNameDictionary nameDictionary, long recordsLen) throws IOException {
+		val sectionBuffer = new ByteArrayOutputStream();
+		val sectionOut = new DataOutputStream(sectionBuffer);
+		nameDictionary.writeSection(sectionOut);
+		sectionOut.writeLong(recordsLen); // trailer: sectionPos
+		sectionOut.writeLong(recordsLen); // trailer: recordsLen
+		sectionOut.writeLong(NodeNameDictionary.SECTION_MAGIC);
+		sectionOut.flush();
+		sectionBuffer.writeTo(out);
+		return sectionBuffer.size();
+	}
+
+	/** last section, after optional name dictionary section */
+	private static void writeAttrTableSection(OutputStream out, AttrInfoIndexes attrIndexes, long sectionPos, long recordsLen) throws IOException {
+		val sectionBuffer = new ByteArrayOutputStream();
+		val sectionOut = new DataOutputStream(sectionBuffer);
+		attrIndexes.writeAttrTable(sectionOut);
+		sectionOut.writeLong(sectionPos); // trailer: sectionPos
+		sectionOut.writeLong(recordsLen); // trailer: recordsLen
+		sectionOut.writeLong(AttrInfoIndexes.SECTION_MAGIC);
+		sectionOut.flush();
+		sectionBuffer.writeTo(out);
+	}
+
+	private class SpillContext {
+		final IReadTreeData src;
+		final DataOutputStream spillOut;
+		final IndexedBlobStorage_TreeNodeDataEncoder recordEncoder;
+		long spillPos;
+
+		// reused buffers for encoding 1 record
+		final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(4096);
+		final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+
+		SpillContext(IReadTreeData src, DataOutputStream spillOut, IndexedBlobStorage_TreeNodeDataEncoder recordEncoder) {
+			this.src = src;
+			this.spillOut = spillOut;
+			this.recordEncoder = recordEncoder;
+		}
+
+		/** @return len of sub-tree in final file (record of node + all descendants) */
+		long recursiveSpill(NodeNamesPath path, NodeData data) throws IOException {
+			val childNames = (data.childNames != null)? data.childNames.asList() : null;
+			val childCount = (childNames != null)? childNames.size() : 0;
+			val childSubTreeLens = new long[childCount];
+			if (childCount > 0) {
+				val childDatas = src.getAll(path, childNames);
+				// reverse order: in reversed spill, child will appear in normal order
+				for(int i = childCount - 1; i >= 0; i--) {
+					val childName = childNames.get(i);
+					val childData = childDatas.get(childName);
+					if (childData == null) {
+						throw new IllegalStateException("child '" + childName + "' not found for '" + path + "'");
+					}
+					val childPath = path.toChild(childName);
+					// *** recurse ***
+					childSubTreeLens[i] = recursiveSpill(childPath, childData);
+					
+					if (subTreeSpilledCallback != null) {
+						subTreeSpilledCallback.accept(childPath);
+					}
+				}
+			}
+
+			// encode record, with child filePos relative to record start
+			recordBuffer.reset();
+			recordEncoder.writeNodeDataAndChildIndexes(recordOut, data, new long[childCount]);
+			recordOut.flush();
+			val record = recordBuffer.toByteArray();
+			val recordLen = record.length;
+			val childPosOffset = recordLen - 1 - 8 * childCount;
+			long relChildPos = recordLen;
+			for(int i = 0; i < childCount; i++) {
+				putLong(record, childPosOffset + 8 * i, relChildPos);
+				relChildPos += childSubTreeLens[i];
+			}
+
+			spillOut.write(record);
+			spillOut.writeInt(childCount);
+			spillOut.writeInt(recordLen);
+			spillPos += recordLen + RECORD_TRAILER_LEN;
+			return relChildPos; // = recordLen + sum childSubTreeLens
+		}
+	}
+
+	private long writeReversedPatched(BackwardSpillReader spillIn, OutputStream out) throws IOException {
+		long outPos = 0;
+		while(spillIn.hasPrevious()) {
+			val trailer = spillIn.previous(RECORD_TRAILER_LEN);
+			val childCount = getInt(trailer.buffer, trailer.offset);
+			val recordLen = getInt(trailer.buffer, trailer.offset + 4);
+			val record = spillIn.previous(recordLen);
+			val childPosOffset = record.offset + recordLen - 1 - 8 * childCount;
+			for(int i = 0; i < childCount; i++) {
+				val off = childPosOffset + 8 * i;
+				putLong(record.buffer, off, outPos + getLong(record.buffer, off));
+			}
+			out.write(record.buffer, record.offset, recordLen);
+			outPos += recordLen;
+		}
+		return outPos;
+	}
+
+	/** slice of buffer, valid until next call */
+	private static class BufferSlice {
+		byte[] buffer;
+		int offset;
+	}
+
+	/**
+	 * read file backward by large chunks
+	 */
+	private static class BackwardSpillReader implements AutoCloseable {
+		private final RandomAccessFile file;
+		private long currPos; // all bytes before currPos not read yet
+		private byte[] buffer;
+		private long bufferStartPos; // buffer holds file bytes [bufferStartPos, currPos + ..)
+		private final BufferSlice slice = new BufferSlice();
+
+		BackwardSpillReader(File spillFile, long fileLen, int bufferSize) throws IOException {
+			this.file = new RandomAccessFile(spillFile, "r");
+			this.currPos = fileLen;
+			this.buffer = new byte[bufferSize];
+			this.bufferStartPos = fileLen;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+
+		boolean hasPrevious() {
+			return currPos > 0;
+		}
+
+		BufferSlice previous(int len) throws IOException {
+			val fromPos = currPos - len;
+			if (fromPos < bufferStartPos) {
+				// refill buffer, ending at currPos
+				if (len > buffer.length) {
+					buffer = new byte[len]; // big record .. should not occur often
+				}
+				val readStartPos = Math.max(0, currPos - buffer.length);
+				val readLen = (int) (currPos - readStartPos);
+				file.seek(readStartPos);
+				file.readFully(buffer, 0, readLen);
+				this.bufferStartPos = readStartPos;
+			}
+			slice.buffer = buffer;
+			slice.offset = (int) (fromPos - bufferStartPos);
+			this.currPos = fromPos;
+			return slice;
+		}
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return ((b[off] & 0xFF) << 24) | ((b[off+1] & 0xFF) << 16) | ((b[off+2] & 0xFF) << 8) | (b[off+3] & 0xFF);
+	}
+
+	private static long getLong(byte[] b, int off) {
+		return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xFFFFFFFFL);
+	}
+
+	private static void putLong(byte[] b, int off, long v) {
+		for(int i = 7; i >= 0; i--) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+}
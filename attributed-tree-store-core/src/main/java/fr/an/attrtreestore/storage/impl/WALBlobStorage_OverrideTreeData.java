@@ -7,31 +7,47 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import org.path4j.NodeName;
 import org.path4j.NodeNameEncoder;
 import org.path4j.NodeNamesPath;
 import org.simplestorage4j.api.BlobStorage;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CountingInputStream;
 
+import fr.an.attrtreestore.api.IInMemCacheReadTreeData;
 import fr.an.attrtreestore.api.NodeData;
 import fr.an.attrtreestore.api.NodeData.NodeDataInternalFields;
 import fr.an.attrtreestore.api.override.OverrideNodeData;
 import fr.an.attrtreestore.api.override.OverrideNodeStatus;
 import fr.an.attrtreestore.api.override.OverrideTreeData;
+import fr.an.attrtreestore.impl.lru.FrequencyEvictionPolicy;
+import fr.an.attrtreestore.impl.lru.FrequencyEvictionPolicy.Candidate;
 import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+import fr.an.attrtreestore.storage.AttrInfoIndexes;
+import fr.an.attrtreestore.storage.impl.WALGroupCommitWriter.WALDurabilityMode;
 import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 
@@ -46,81 +62,185 @@ import lombok.extern.slf4j.Slf4j;
  * using internally partial tree node 'PartialNodeEntry', containing 'Map<NodeName, PartialNodeEntry>'
  */
 @Slf4j
-public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
+public class WALBlobStorage_OverrideTreeData extends OverrideTreeData implements IInMemCacheReadTreeData {
 
 	private static final String FILE_HEADER = "wal-override-tree-data";
+	/** v2: dataLen prefix for records with data, for skipping data on replay. same length as v1 header */
+	private static final String FILE_HEADER_V2 = "wal-override-tree-v002";
+	/** v3: same records as v2, header followed by int len + attr index -> name table (checked on reload) */
+	private static final String FILE_HEADER_V3 = "wal-override-tree-v003";
+
+	private static final String CHECKPOINT_HEADER = "wal-override-tree-checkpoint-v1";
+	private static final String CHECKPOINT_SUFFIX = ".ckpt";
+	private static final byte CKPT_STATUS_NOT_OVERRIDEN = 0;
+	private static final byte CKPT_STATUS_UPDATED = 1;
+	private static final byte CKPT_STATUS_DELETED = 2;
+	private static final byte CKPT_FLAG_DATA = 1;
+	private static final byte CKPT_FLAG_INTERNAL_FIELDS = 2;
 
 	private static final byte ENTRY_NODE_UPDATE = ' '; 
 	private static final byte ENTRY_NODE_REMOVED = '-';
 	private static final byte ENTRY_NODE_ATTR_CHANGED = 'a';
 	private static final byte ENTRY_NODE_INTERNAL_FIELDS_CHANGED = 'i';
 
-	@AllArgsConstructor
+	/**
+	 * in-memory entry, for lock-free readers:
+	 * all fields volatile, child in ConcurrentHashMap, (filePos,len) immutable per written data.
+	 * all mutations are done by writers holding 'writeLock' (same order as appended in WAL file)
+	 */
 	private static class OverrideNodeEntry {
 		private final NodeName name; // for debug only, else could be implicit..
-		private OverrideNodeStatus overrideStatus;
-		private Map<NodeName,OverrideNodeEntry> child;
-		private long dataFilePos;
-		private int dataLen;
-		private NodeData cachedData;
-		private NodeDataInternalFields internalFields;
+		/** null when disposed (sub-child of a deleted entry) */
+		private volatile OverrideNodeStatus overrideStatus;
+		private volatile ConcurrentHashMap<NodeName,OverrideNodeEntry> child;
+		/** null for intermediate entry, without written data */
+		private volatile WALDataRef dataRef;
+		private volatile NodeDataInternalFields internalFields;
+		
+		OverrideNodeEntry(NodeName name, OverrideNodeStatus overrideStatus) {
+			this.name = name;
+			this.overrideStatus = overrideStatus;
+		}
+
+		// @GuardedBy("writeLock")
+		ConcurrentHashMap<NodeName,OverrideNodeEntry> getOrCreateChildMap() {
+			ConcurrentHashMap<NodeName,OverrideNodeEntry> res = child;
+			if (res == null) {
+				res = new ConcurrentHashMap<>(2);
+				this.child = res;
+			}
+			return res;
+		}
 		
 		void setMarkDisposed() {
 			this.overrideStatus = null; // NodeOverrideStatus.INTERNAL_ENTRY_DISPOSED; // ??
 			this.child = null;
-			this.cachedData = null;
+			this.dataRef = null;
 		}
 		
-		void setOverrideData(OverrideNodeStatus overrideStatus, long dataFilePos, int dataLen, NodeData cachedData) {
-			this.overrideStatus = overrideStatus;
-			this.dataFilePos = dataFilePos;
-			this.dataLen = dataLen;
-			this.cachedData = cachedData;
+		/** mark DELETED, and detach sub-child (to be disposed by caller) */
+		Map<NodeName,OverrideNodeEntry> setDeleted() {
+			this.overrideStatus = OverrideNodeStatus.DELETED; // first, cf readers re-check status when child==null
+			val res = this.child;
+			this.child = null;
+			this.dataRef = null;
+			this.internalFields = null;
+			return res;
+		}
+		
+		void setOverrideData(WALDataRef dataRef) {
+			this.dataRef = dataRef;
+			this.internalFields = null;
+			this.overrideStatus = OverrideNodeStatus.UPDATED;
 		}
 		
 		void setOverrideInternalFields(NodeDataInternalFields internalFields) {
+			this.internalFields = internalFields;
+			val ref = dataRef;
+			val cachedData = (ref != null)? ref.cachedData : null;
 			if (cachedData != null) {
 				cachedData.setInternalFields(internalFields);
-			} else {
-				this.internalFields = internalFields;
 			}
 		}
 		
 		@Override
 		public String toString() {
+			val childMap = child;
 			return "PartialNodeEntry [" + name + " " 
 					+ overrideStatus 
-					+ ((child != null && !child.isEmpty())? child.size() + " child" : "")
+					+ ((childMap != null && !childMap.isEmpty())? childMap.size() + " child" : "")
 					+ "]";
 		}
 		
 	}
 
+	/**
+	 * immutable (filePos,len) of data written in WAL, + reloadable cached data
+	 * ... readers caching reloaded data in the ref they read can not overwrite a newer put
+	 */
+	private static class WALDataRef {
+		private final long dataFilePos;
+		private final int dataLen;
+		private volatile NodeData cachedData;
+
+		private static final AtomicReferenceFieldUpdater<WALDataRef,NodeData> cachedDataUpdater =
+				AtomicReferenceFieldUpdater.newUpdater(WALDataRef.class, NodeData.class, "cachedData");
+		
+		WALDataRef(long dataFilePos, int dataLen, NodeData cachedData) {
+			this.dataFilePos = dataFilePos;
+			this.dataLen = dataLen;
+			this.cachedData = cachedData;
+		}
+
+		/** evict cached data, reloadable from (filePos,len) .. unless concurrently reloaded */
+		boolean casEvictCachedData(NodeData expected) {
+			return cachedDataUpdater.compareAndSet(this, expected, null);
+		}
+	}
+
 	private final BlobStorage blobStorage;
 	@Getter
 	private final String fileName;
 
 	private final AttrDataEncoderHelper attrDataEncoderHelper; 
 	
-	private final OverrideNodeEntry rootEntry = new OverrideNodeEntry(null, OverrideNodeStatus.NOT_OVERRIDEN, new HashMap<>(), 0L, 0, null, null);
+	private final OverrideNodeEntry rootEntry = new OverrideNodeEntry(null, OverrideNodeStatus.NOT_OVERRIDEN);
 
-	private final Object writeLock = new Object();
+	// package-protected for test
+	final Object writeLock = new Object();
 
 	// @GuardedBy("writeLock")
 	private String currPathSlash = "";
+	// @GuardedBy("writeLock") for write, volatile for reading WAL size
+	private volatile long currFilePos = 0;
 	// @GuardedBy("writeLock")
-	private long currFilePos = 0;
-	
-	private OutputStream currWriteStream;
+	private volatile long walEntryCount = 0;
+	/** end of WAL records flushed to blobStorage: data before it can be evicted from memory, and reloaded */
+	private final AtomicLong flushedFilePos = new AtomicLong();
+	/** file format version: 2 for new files, 1 when appending to reloaded old file */ 
+	private int formatVersion = 2;
 
-	private boolean useWriterThread = false;
-	private final LinkedBlockingQueue<byte[]> writeQueue = new LinkedBlockingQueue<byte[]>(); 
-	private final Object writerNotifyLock = new Object();
+	/** write checkpoint every N appended entries, 0 to disable periodic (only on flushStopWrite()), <0 to disable all */
+	@Getter @Setter
+	private long checkpointTriggerEntryCount = 100_000;
+	private volatile long lastCheckpointEntryCount = 0;
+	private final AtomicBoolean checkpointInProgress = new AtomicBoolean();
+	private static final ThreadFactory checkpointThreadFactory = new DefaultNamedThreadFactory("WAL-Checkpoint-", "", true);
+	private ExecutorService checkpointExecutorService; // created on demand, for periodic checkpoints
+	@Getter
+	private volatile long checkpointCount;
+	/** stats of last initReload(): replayed WAL bytes, after checkpoint if any */
+	@Getter
+	private long lastReloadReplayedBytes;
 	
-	private static final ThreadFactory writeThreadFactory = new DefaultNamedThreadFactory("WAL-WriteThread-", "", true);
-	private Thread writerThread;
-	private volatile boolean writerStopRequested;
-	private volatile boolean writerStopped;
+	// reused buffer for encoding records, @GuardedBy("writeLock")
+	private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream(4096);
+	private final DataOutputStream encodeOut = new DataOutputStream(encodeBuffer);
+
+	// group-commit writer, opened on demand, @GuardedBy("writeLock")
+	private WALGroupCommitWriter groupCommitWriter;
+
+	// params for groupCommitWriter, to be set before first write
+	@Getter @Setter
+	private WALDurabilityMode durabilityMode = WALDurabilityMode.PER_RECORD;
+	@Getter @Setter
+	private long flushPeriodMillis = 100;
+	@Getter @Setter
+	private int ringBufferCapacity = 16 * 1024;
+	@Getter @Setter
+	private int maxBatchSize = 1024;
+	@Getter @Setter
+	private int writeBufferSize = 64 * 1024;
+
+	/** first write failure of groupCommitWriter, then next writes are rejected */
+	@Getter
+	private volatile Throwable writeFailure;
+	/** optional owner callback on write failure (ex: roll to new WAL) */
+	@Getter @Setter
+	private Consumer<Throwable> writeFailureListener;
+
+	@Getter
+	private final FrequencyEvictionPolicy evictionPolicy = new FrequencyEvictionPolicy();
 	
 	// ------------------------------------------------------------------------
 
@@ -141,17 +261,72 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 
 	public void initCreateEmpty() {
 		// create empty file
-		byte[] header = FILE_HEADER.getBytes(); 
+		byte[] header;
+		try {
+			val tableBuffer = new ByteArrayOutputStream();
+			attrDataEncoderHelper.attrIndexes.writeAttrTable(new DataOutputStream(tableBuffer));
+			val headerBuffer = new ByteArrayOutputStream();
+			val headerOut = new DataOutputStream(headerBuffer);
+			headerOut.write(FILE_HEADER_V3.getBytes());
+			headerOut.writeInt(tableBuffer.size());
+			tableBuffer.writeTo(headerOut);
+			headerOut.flush();
+			header = headerBuffer.toByteArray();
+		} catch(IOException ex) {
+			throw new RuntimeException("should not occur", ex);
+		}
 		blobStorage.writeFile(fileName, header);
+		this.formatVersion = 3;
 		this.currFilePos = header.length;
+		flushedFilePos.set(currFilePos);
+		val checkpointFileName = getCheckpointFileName();
+		if (blobStorage.exists(checkpointFileName)) {
+			blobStorage.deleteFile(checkpointFileName); // stale checkpoint of previous file
+		}
 	}
 
 	public void initReload() {
 		// TODO .. should aquire file lock..
 		val headerLen = FILE_HEADER.getBytes().length;
-		this.currFilePos = headerLen;
+		val header = new String(blobStorage.readAt(fileName, 0, headerLen));
+		int recordsStartPos = headerLen;
+		if (header.equals(FILE_HEADER_V3)) {
+			this.formatVersion = 3;
+			val tableLen = ByteBuffer.wrap(blobStorage.readAt(fileName, headerLen, 4)).getInt();
+			val tableData = blobStorage.readAt(fileName, headerLen + 4, tableLen);
+			try {
+				val fileAttrNames = AttrInfoIndexes.readAttrTable(new DataInputStream(new ByteArrayInputStream(tableData)));
+				attrDataEncoderHelper.attrIndexes.checkAttrTable(fileAttrNames, fileName);
+			} catch(IOException ex) {
+				throw new IllegalStateException("Failed to read attr table of WAL file " + fileName, ex);
+			}
+			recordsStartPos = headerLen + 4 + tableLen;
+		} else if (header.equals(FILE_HEADER_V2)) {
+			this.formatVersion = 2;
+		} else if (header.equals(FILE_HEADER)) {
+			this.formatVersion = 1;
+		} else {
+			throw new IllegalStateException("unrecognized WAL file header '" + header + "' for " + fileName);
+		}
+		this.currFilePos = recordsStartPos;
 		val currFileLen = blobStorage.fileLen(fileName);
-		doReloadFileRange(headerLen, currFileLen);
+		
+		// fast path: reload checkpoint if any, then replay only remaining WAL records
+		long replayFromFilePos = recordsStartPos;
+		if (tryReloadCheckpoint(currFileLen)) {
+			replayFromFilePos = this.currFilePos;
+		}
+		this.lastReloadReplayedBytes = currFileLen - replayFromFilePos;
+		if (replayFromFilePos < currFileLen) {
+			doReloadFileRange(replayFromFilePos, currFileLen);
+		}
+		this.walEntryCount = 0; // count of appended since open
+		this.lastCheckpointEntryCount = 0;
+		flushedFilePos.set(currFileLen);
+	}
+
+	public String getCheckpointFileName() {
+		return fileName + CHECKPOINT_SUFFIX;
 	}
 	
 	public void startWrite() {
@@ -160,59 +335,277 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 	
 
 	// open on demand
+	// @GuardedBy("writeLock")
 	private void ensureOpenWrite() {
-		if (this.currWriteStream == null) {
-			this.currWriteStream = blobStorage.openWrite(fileName, true);
-			// TOCHECK seek to last checkpoint flushed pos... 
-			
-//			this.writerThread = writeThreadFactory.newThread(() -> writeLoop());
-//			this.writerThread.start();
+		if (this.groupCommitWriter == null) {
+			// append at end of file.. must be currFilePos (reloaded/replayed up to end of file, or flushed on stop)
+			val fileLen = blobStorage.exists(fileName)? blobStorage.fileLen(fileName) : 0;
+			if (fileLen != currFilePos) {
+				throw new IllegalStateException("can not append to wal " + fileName + ", file length " + fileLen 
+						+ " != expected " + currFilePos);
+			}
+			val out = new BufferedOutputStream(blobStorage.openWrite(fileName, true), writeBufferSize);
+			this.groupCommitWriter = new WALGroupCommitWriter(fileName, out, 
+					durabilityMode, flushPeriodMillis, ringBufferCapacity, maxBatchSize);
+			groupCommitWriter.setWriteFailureListener(this::onWriteFailure);
 		}
 	}
 
 	
+	// in writer thread
+	private void onWriteFailure(Throwable ex) {
+		this.writeFailure = ex;
+		log.error("Failed write to wal " + fileName + " => next writes rejected", ex);
+		val listener = writeFailureListener;
+		if (listener != null) {
+			listener.accept(ex);
+		}
+	}
+
 	public void flushStopWrite() {
+		boolean hasWritten;
 		synchronized(writeLock) {
-			if (currWriteStream != null) {
-			    if (useWriterThread) {
-    				// wait empty writeQueue!
-    				synchronized (writerNotifyLock) {
-    					writerNotifyLock.notify();
-    				}
-    				// wait queue is empty
-    				if (! writeQueue.isEmpty()) {
-    					for(;;) {
-    						if (writeQueue.isEmpty()) {
-    							break;
-    						}
-    						safeSleep(200);
-    					}
-    
-    					safeSleep(200);
-    				}
-    				// wait writerThread as written + flushed all
-    				for(;;) {
-    					if (this.writerStopped) {
-    						break;
-    					}
-    					safeSleep(200);
-    				}
-			    }
-			    
+			hasWritten = groupCommitWriter != null;
+			if (groupCommitWriter != null) {
+				// flush all pending + wait writer thread stopped
+				groupCommitWriter.close();
+				this.groupCommitWriter = null;
+			}
+			if (writeFailure == null) {
+				markFlushedUpTo(currFilePos);
+			}
+		}
+		stopCheckpointExecutor(); // wait pending periodic checkpoint, if any 
+		if (hasWritten && checkpointTriggerEntryCount >= 0 
+				&& writeFailure == null) { // else checkpoint would reference records not in file
+			// clean stop => fast restart
+			writeCheckpoint();
+		}
+	}
+
+	// Checkpoint: compact dump of in-memory entries {status, dataFilePos, dataLen}, without data
+	// ------------------------------------------------------------------------
+
+	private void checkTriggerCheckpoint() {
+		val trigger = checkpointTriggerEntryCount;
+		if (trigger > 0 && walEntryCount - lastCheckpointEntryCount >= trigger
+				&& ! checkpointInProgress.get()) {
+			// not in caller (writer) thread
+			getOrCreateCheckpointExecutorService().execute(() -> {
 				try {
-					currWriteStream.close();
-				} catch (IOException ex) {
-					log.error("Failed close WAL file (last entry might be corrupted?) !!", ex);
+					writeCheckpoint();
+				} catch(RuntimeException ex) {
+					log.error("Failed to write checkpoint for wal " + fileName + " .. ignore, retry later", ex);
 				}
-				this.currWriteStream = null;
+			});
+		}
+	}
+
+	private synchronized ExecutorService getOrCreateCheckpointExecutorService() {
+		if (checkpointExecutorService == null) {
+			this.checkpointExecutorService = Executors.newSingleThreadExecutor(checkpointThreadFactory);
+		}
+		return checkpointExecutorService;
+	}
+
+	private void stopCheckpointExecutor() {
+		ExecutorService executor;
+		synchronized(this) {
+			executor = checkpointExecutorService;
+			this.checkpointExecutorService = null;
+		}
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** immutable copy of in-memory entry, without data */
+	@AllArgsConstructor
+	private static class CheckpointEntrySnapshot {
+		final NodeName name;
+		final byte status;
+		final WALDataRef dataRef; // only immutable (filePos,len) used
+		final NodeDataInternalFields internalFields;
+		final CheckpointEntrySnapshot[] childs;
+	}
+	
+	/**
+	 * write checkpoint file, for fast reload.
+	 * entries are copied under writeLock (short, no encoding), then encoded and written in caller thread
+	 * after WAL is flushed up to snapshot filePos (writers are not blocked, readers never are)
+	 */
+	public void writeCheckpoint() {
+		if (! checkpointInProgress.compareAndSet(false, true)) {
+			return; // already in progress by another thread
+		}
+		try {
+			long entryCount;
+			long snapshotFilePos;
+			String snapshotPathSlash;
+			CheckpointEntrySnapshot rootSnapshot;
+			CompletableFuture<Void> flushAck;
+			synchronized(writeLock) {
+				entryCount = walEntryCount;
+				snapshotFilePos = currFilePos;
+				snapshotPathSlash = currPathSlash;
+				rootSnapshot = recursiveSnapshotCheckpointEntry(rootEntry);
+				flushAck = (groupCommitWriter != null)? groupCommitWriter.flush() : CompletableFuture.completedFuture(null);
+			}
+
+			byte[] content;
+			val buffer = new ByteArrayOutputStream(64 * 1024);
+			try (val out = new DataOutputStream(buffer)) {
+				out.writeUTF(CHECKPOINT_HEADER);
+				out.writeLong(snapshotFilePos);
+				out.writeUTF(snapshotPathSlash);
+				recursiveWriteCheckpointEntry(out, rootSnapshot);
+				out.flush();
+				val crc = new CRC32();
+				crc.update(buffer.toByteArray());
+				out.writeLong(crc.getValue());
+			} catch(IOException ex) {
+				throw new RuntimeException("Failed to encode", ex); // should not occur.. encode only!
+			}
+			content = buffer.toByteArray();
+
+			// checkpoint must not reference not-yet-flushed data
+			try {
+				flushAck.join();
+			} catch(CompletionException ex) {
+				throw new RuntimeException("Failed to flush wal " + fileName, ex.getCause());
+			}
+			// TOCHECK no atomic rename in BlobStorage api.. partially written checkpoint is detected by crc, then ignored 
+			blobStorage.writeFile(getCheckpointFileName(), content);
+			this.lastCheckpointEntryCount = entryCount;
+			this.checkpointCount++;
+		} finally {
+			checkpointInProgress.set(false);
+		}
+	}
+
+	// @GuardedBy("writeLock")
+	private static CheckpointEntrySnapshot recursiveSnapshotCheckpointEntry(OverrideNodeEntry entry) {
+		val status = entry.overrideStatus;
+		val statusCode = (status == OverrideNodeStatus.UPDATED)? CKPT_STATUS_UPDATED 
+				: (status == OverrideNodeStatus.DELETED)? CKPT_STATUS_DELETED : CKPT_STATUS_NOT_OVERRIDEN;
+		CheckpointEntrySnapshot[] childs = null;
+		val childMap = entry.child;
+		if (childMap != null && ! childMap.isEmpty()) {
+			childs = new CheckpointEntrySnapshot[childMap.size()]; // no concurrent modif, under writeLock
+			int i = 0;
+			for(val child: childMap.values()) {
+				// *** recurse ***
+				childs[i++] = recursiveSnapshotCheckpointEntry(child);
+			}
+		}
+		return new CheckpointEntrySnapshot(entry.name, statusCode, entry.dataRef, entry.internalFields, childs);
+	}
+
+	private void recursiveWriteCheckpointEntry(DataOutputStream out, CheckpointEntrySnapshot entry) throws IOException {
+		out.writeByte(entry.status);
+		val dataRef = entry.dataRef;
+		val internalFields = entry.internalFields;
+		out.writeByte(((dataRef != null)? CKPT_FLAG_DATA : 0) | ((internalFields != null)? CKPT_FLAG_INTERNAL_FIELDS : 0));
+		if (dataRef != null) {
+			out.writeLong(dataRef.dataFilePos);
+			out.writeInt(dataRef.dataLen);
+		}
+		if (internalFields != null) {
+			attrDataEncoderHelper.writeNodeData_internalFields(out, internalFields);
+		}
+		val childs = entry.childs;
+		if (childs != null) {
+			out.writeInt(childs.length);
+			for(val child: childs) {
+				out.writeUTF(child.name.toText());
+				recursiveWriteCheckpointEntry(out, child);
 			}
+		} else {
+			out.writeInt(0);
 		}
 	}
 
-	private static void safeSleep(long millis) {
+	/** @return true if checkpoint reloaded, then currFilePos/currPathSlash are restored */
+	private boolean tryReloadCheckpoint(long currFileLen) {
+		val checkpointFileName = getCheckpointFileName();
+		if (! blobStorage.exists(checkpointFileName)) {
+			return false;
+		}
 		try {
-			Thread.sleep(millis);
-		} catch (InterruptedException e) {
+			val content = blobStorage.readFile(checkpointFileName);
+			if (content.length < 8) {
+				log.warn("ignore truncated checkpoint " + checkpointFileName);
+				return false;
+			}
+			val crc = new CRC32();
+			crc.update(content, 0, content.length - 8);
+			try (val in = new DataInputStream(new ByteArrayInputStream(content))) {
+				if (! CHECKPOINT_HEADER.equals(in.readUTF())) {
+					log.warn("ignore checkpoint " + checkpointFileName + ", unrecognized header");
+					return false;
+				}
+				val checkpointFilePos = in.readLong();
+				val checkpointPathSlash = in.readUTF();
+				if (checkpointFilePos > currFileLen) {
+					log.warn("ignore checkpoint " + checkpointFileName + ", filePos " + checkpointFilePos + " > WAL len " + currFileLen);
+					return false;
+				}
+				val storedCrc = ByteBuffer.wrap(content, content.length - 8, 8).getLong();
+				if (storedCrc != crc.getValue()) {
+					log.warn("ignore checkpoint " + checkpointFileName + ", bad crc (partially written?)");
+					return false;
+				}
+				synchronized(writeLock) {
+					recursiveReadCheckpointEntry(in, rootEntry);
+					this.currFilePos = checkpointFilePos;
+					this.currPathSlash = checkpointPathSlash;
+				}
+			}
+			return true;
+		} catch(Exception ex) {
+			log.warn("Failed to reload checkpoint " + checkpointFileName + " .. ignore, replay full WAL", ex);
+			// clear partially reloaded entries
+			synchronized(writeLock) {
+				val childMap = rootEntry.child;
+				rootEntry.child = null;
+				rootEntry.overrideStatus = OverrideNodeStatus.NOT_OVERRIDEN;
+				if (childMap != null) {
+					recursiveMarkDisposed(childMap);
+				}
+			}
+			return false;
+		}
+	}
+
+	// @GuardedBy("writeLock")
+	private void recursiveReadCheckpointEntry(DataInputStream in, OverrideNodeEntry entry) throws IOException {
+		val statusCode = in.readByte();
+		val flags = in.readByte();
+		if ((flags & CKPT_FLAG_DATA) != 0) {
+			val dataFilePos = in.readLong();
+			val dataLen = in.readInt();
+			entry.dataRef = new WALDataRef(dataFilePos, dataLen, null); // lazy reloaded
+		}
+		if ((flags & CKPT_FLAG_INTERNAL_FIELDS) != 0) {
+			entry.internalFields = attrDataEncoderHelper.readNodeData_internalFields(in);
+		}
+		entry.overrideStatus = (statusCode == CKPT_STATUS_UPDATED)? OverrideNodeStatus.UPDATED
+				: (statusCode == CKPT_STATUS_DELETED)? OverrideNodeStatus.DELETED : OverrideNodeStatus.NOT_OVERRIDEN;
+		val childCount = in.readInt();
+		if (childCount > 0) {
+			val nodeNameEncoder = attrDataEncoderHelper.nodeNameEncoder;
+			val childMap = entry.getOrCreateChildMap();
+			for(int i = 0; i < childCount; i++) {
+				val childName = nodeNameEncoder.encode(in.readUTF());
+				val child = new OverrideNodeEntry(childName, OverrideNodeStatus.NOT_OVERRIDEN);
+				recursiveReadCheckpointEntry(in, child);
+				childMap.put(childName, child);
+			}
 		}
 	}
 
@@ -223,31 +616,41 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 	// TODO may use async
 	// public CompletableFuture<NodeOverrideData> asyncGetOverride(NodeNamesPath path) {
 	
+	/** lock-free: never blocked by writers (holding writeLock while appending to WAL) */
 	@Override
 	public OverrideNodeData getOverride(NodeNamesPath path) {
 		val pathEltCount = path.size();
 		OverrideNodeEntry currEntry = rootEntry;
 		// implicit.. NodeName currName = null;
 		for(int i = 0; i < pathEltCount; i++) {
-			if (currEntry.child == null) {
-				return OverrideNodeData.NOT_OVERRIDEN; 
+			val childMap = currEntry.child; // read volatile once
+			if (childMap == null) {
+				val currStatus = currEntry.overrideStatus; // re-check, may be concurrently deleted
+				return (currStatus == OverrideNodeStatus.DELETED || currStatus == null)? 
+						OverrideNodeData.DELETED : OverrideNodeData.NOT_OVERRIDEN; 
 			}
 			val pathElt = path.get(i);
-			val foundChild = currEntry.child.get(pathElt);
+			val foundChild = childMap.get(pathElt);
 			if (foundChild == null) {
 				return OverrideNodeData.NOT_OVERRIDEN;
-			} else if (foundChild.overrideStatus == OverrideNodeStatus.DELETED) {
+			}
+			val foundStatus = foundChild.overrideStatus;
+			if (foundStatus == OverrideNodeStatus.DELETED
+					|| foundStatus == null // concurrently disposed => an ancestor was deleted
+					) {
 				return OverrideNodeData.DELETED; 
 			}
 			currEntry = foundChild;
 			// implicit.. currName = pathElt;
 		}
-		if (currEntry == null) { // should not occur
-			return OverrideNodeData.NOT_OVERRIDEN; 
-		}
-		if (currEntry.overrideStatus == OverrideNodeStatus.UPDATED) {
-			val cachedData = currEntry.cachedData;
+		val status = currEntry.overrideStatus;
+		val dataRef = currEntry.dataRef;
+		if (status == OverrideNodeStatus.UPDATED
+				&& dataRef != null // intermediate entry marked updated, but no data written => not overriden
+				) {
+			val cachedData = dataRef.cachedData;
 			if (cachedData != null) {
+				cachedData.incrUsed(System.currentTimeMillis()); // for LFU eviction
 				return new OverrideNodeData(OverrideNodeStatus.UPDATED, cachedData);
 			} else {
 				// need reload data from cache, using filePos
@@ -256,11 +659,12 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 			    val currName = path.lastOrEmpty();
 
 				// **** The Biggy: IO Read (maybe remote) ***
-				val reloadedData = doReadData(currEntry, currName);
+				val reloadedData = doReadData(currEntry, dataRef, currName);
+				reloadedData.incrUsed(System.currentTimeMillis());
 
 				return new OverrideNodeData(OverrideNodeStatus.UPDATED, reloadedData);
 			}
-		} else if (currEntry.overrideStatus == OverrideNodeStatus.DELETED) {
+		} else if (status == OverrideNodeStatus.DELETED || status == null) {
 		    return OverrideNodeData.DELETED;
 		} else { // if (OverrideNodeData.NOT_OVERRIDEN)
 		    if (currEntry == rootEntry) {     
@@ -272,6 +676,43 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 		}
 	}
 
+	/** same as getOverride(), but never reloading evicted data from WAL file (no IO), and not counted as used for LFU eviction
+	 * @return UPDATED with data, UPDATED_NOT_IN_MEM if evicted, DELETED, or NOT_OVERRIDEN
+	 */
+	@Override // implements IInMemCacheReadTreeData
+	public OverrideNodeData getIfInMemCache(NodeNamesPath path) {
+		val pathEltCount = path.size();
+		OverrideNodeEntry currEntry = rootEntry;
+		for(int i = 0; i < pathEltCount; i++) {
+			val childMap = currEntry.child; // read volatile once
+			if (childMap == null) {
+				val currStatus = currEntry.overrideStatus;
+				return (currStatus == OverrideNodeStatus.DELETED || currStatus == null)? 
+						OverrideNodeData.DELETED : OverrideNodeData.NOT_OVERRIDEN; 
+			}
+			val foundChild = childMap.get(path.get(i));
+			if (foundChild == null) {
+				return OverrideNodeData.NOT_OVERRIDEN;
+			}
+			val foundStatus = foundChild.overrideStatus;
+			if (foundStatus == OverrideNodeStatus.DELETED || foundStatus == null) {
+				return OverrideNodeData.DELETED; 
+			}
+			currEntry = foundChild;
+		}
+		val status = currEntry.overrideStatus;
+		val dataRef = currEntry.dataRef;
+		if (status == OverrideNodeStatus.UPDATED && dataRef != null) {
+			val cachedData = dataRef.cachedData;
+			return (cachedData != null)? new OverrideNodeData(OverrideNodeStatus.UPDATED, cachedData) 
+					: OverrideNodeData.UPDATED_NOT_IN_MEM;
+		} else if (status == OverrideNodeStatus.DELETED || status == null) {
+		    return OverrideNodeData.DELETED;
+		} else {
+			return OverrideNodeData.NOT_OVERRIDEN;
+		}
+	}
+
 	@Override
 	public OverrideNodeData getOverrideWithChild(NodeNamesPath path, 
 			Map<NodeName, OverrideNodeData> foundChildMap,
@@ -285,225 +726,245 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 
 	@Override
 	public void put(NodeNamesPath path, NodeData data) {
+		awaitAckIfPerRecord(putAsync(path, data));
+	}
+
+	/** @return ack, completed when written (and flushed), cf durabilityMode */
+	public CompletableFuture<Void> putAsync(NodeNamesPath path, NodeData data) {
 		if (data == null) {
-			remove(path);
-			return;
+			return removeAsync(path);
 		}
 		String pathSlash = path.toPathSlash();
-		val dataBuffer = new ByteArrayOutputStream(4096);
-
-		// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
-		OverrideNodeEntry entry = resolveMkEntry(path, true);
 
-		long dataFilePos;
-		int dataLen;
+		CompletableFuture<Void> ack;
 		synchronized(writeLock) {
-			// compute byte data payload to be appended
-			try(val out = new DataOutputStream(dataBuffer)) {
+			// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
+			OverrideNodeEntry entry = resolveMkEntry(path, true);
+
+			long dataFilePos;
+			int dataLen;
+			// compute byte data payload to be appended, in reused buffer
+			encodeBuffer.reset();
+			try {
+				val out = encodeOut;
 				// encode: {(incremental)path, overrideStatus, data}
 				AttrDataEncoderHelper.writeIncrString(out, pathSlash, currPathSlash);
 				this.currPathSlash = pathSlash;
 
 				out.write(ENTRY_NODE_UPDATE);
+				if (formatVersion >= 2) {
+					out.writeInt(0); // dataLen prefix, patched below
+				}
 				
 				out.flush();
-				val bufferLenBeforeData = dataBuffer.size();
+				val bufferLenBeforeData = encodeBuffer.size();
 				dataFilePos = this.currFilePos + bufferLenBeforeData;
-				// take current filePos
-				// dataFilePos = bufferLenBefore;
-
-				// TOADD write (redundant) dataLen for skippable ? 
-				// out.writeInt(dataLen);
 				
-				attrDataEncoderHelper.writeNodeData_noName(out, data);
+				attrDataEncoderHelper.writeNodeData_noName(out, data, true); // mutable => with transient fields
 				
 				out.flush();
-				val bufferLenAfterData = dataBuffer.size();
+				val bufferLenAfterData = encodeBuffer.size();
 				dataLen = bufferLenAfterData - bufferLenBeforeData;
 			} catch (IOException ex) {
 				throw new RuntimeException("Failed to encode", ex); // should not occur.. encode only!
 			}
 			
 			// do write append
-			byte[] filePart = dataBuffer.toByteArray();
-			writeAppendToWal(filePart);
+			ack = writeAppendToWal(encodedRecordWithDataLen(dataLen));
 			
-			synchronized(entry) { // useless redundant lock?
-				// update in-memory: mark as 'UPDATED'
-				entry.setOverrideData(OverrideNodeStatus.UPDATED, dataFilePos, dataLen, data);
-			}
+			// update in-memory: mark as 'UPDATED'
+			entry.setOverrideData(new WALDataRef(dataFilePos, dataLen, data));
 		} // synchronized writeLock
+		checkTriggerCheckpoint();
+		return ack;
 	}
 	
 	@Override
 	public void put_transientFieldsChanged(NodeNamesPath path, NodeData data) {
 		String pathSlash = path.toPathSlash();
-		val dataBuffer = new ByteArrayOutputStream(4096);
 
-		// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
-		OverrideNodeEntry entry = resolveMkEntry(path, true);
-
-		long dataFilePos;
-		int dataLen;
+		CompletableFuture<Void> ack = null;
 		synchronized(writeLock) {
-			// compute byte data payload to be appended
-			try(val out = new DataOutputStream(dataBuffer)) {
-				// encode: {(incremental)path, overrideStatus, data}
-				AttrDataEncoderHelper.writeIncrString(out, pathSlash, currPathSlash);
-				this.currPathSlash = pathSlash;
+			// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
+			OverrideNodeEntry entry = resolveMkEntry(path, true);
+			val prevDataRef = entry.dataRef;
+			if (prevDataRef != null) {
+				ack = doAppendInternalFieldsChanged(entry, prevDataRef, pathSlash, data);
+			}
+		} // synchronized writeLock
+		if (ack == null) {
+			// no previous full record in this WAL: an internal-fields-only record would be ignored on replay
+			// => write full data record instead
+			ack = putAsync(path, data);
+		} else {
+			checkTriggerCheckpoint();
+		}
+		awaitAckIfPerRecord(ack);
+	}
 
-				out.write(ENTRY_NODE_INTERNAL_FIELDS_CHANGED);
-				
-				out.flush();
-				val bufferLenBeforeData = dataBuffer.size();
-				dataFilePos = this.currFilePos + bufferLenBeforeData;
-				// take current filePos
-				// dataFilePos = bufferLenBefore;
+	// @GuardedBy("writeLock")
+	private CompletableFuture<Void> doAppendInternalFieldsChanged(OverrideNodeEntry entry, WALDataRef prevDataRef, 
+			String pathSlash, NodeData data) {
+		int dataLen;
+		// compute byte data payload to be appended, in reused buffer
+		encodeBuffer.reset();
+		try {
+			val out = encodeOut;
+			// encode: {(incremental)path, overrideStatus, data}
+			AttrDataEncoderHelper.writeIncrString(out, pathSlash, currPathSlash);
+			this.currPathSlash = pathSlash;
 
-				// TOADD write previous filePos
-				
-				attrDataEncoderHelper.writeNodeData_internalFields(out, data.toInternalFields());
-				
-				out.flush();
-				val bufferLenAfterData = dataBuffer.size();
-				dataLen = bufferLenAfterData - bufferLenBeforeData;
-			} catch (IOException ex) {
-				throw new RuntimeException("Failed to encode", ex); // should not occur.. encode only!
+			out.write(ENTRY_NODE_INTERNAL_FIELDS_CHANGED);
+			if (formatVersion >= 2) {
+				out.writeInt(0); // dataLen prefix, patched below
 			}
 			
-			// do write append
-			byte[] filePart = dataBuffer.toByteArray();
-			writeAppendToWal(filePart);
+			out.flush();
+			val bufferLenBeforeData = encodeBuffer.size();
+
+			// TOADD write previous filePos
 			
-			synchronized(entry) { // useless redundant lock?
-				// update in-memory: mark as 'UPDATED'
-				entry.setOverrideData(OverrideNodeStatus.UPDATED, dataFilePos, dataLen, data);
-			}
-		} // synchronized writeLock
+			attrDataEncoderHelper.writeNodeData_internalFields(out, data.toInternalFields());
+			
+			out.flush();
+			val bufferLenAfterData = encodeBuffer.size();
+			dataLen = bufferLenAfterData - bufferLenBeforeData;
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed to encode", ex); // should not occur.. encode only!
+		}
+		
+		// do write append
+		val ack = writeAppendToWal(encodedRecordWithDataLen(dataLen));
+		
+		// update in-memory: keep (filePos,len) of previous full data, same as after replay 
+		entry.setOverrideData(new WALDataRef(prevDataRef.dataFilePos, prevDataRef.dataLen, data));
+		entry.setOverrideInternalFields(data.toInternalFields());
+		return ack;
 	}
 
 
 	
 	@Override
 	public void remove(NodeNamesPath path) {
+		awaitAckIfPerRecord(removeAsync(path));
+	}
+
+	/** @return ack, completed when written (and flushed), cf durabilityMode */
+	public CompletableFuture<Void> removeAsync(NodeNamesPath path) {
 		String pathSlash = path.toPathSlash();
-		val dataBuffer = new ByteArrayOutputStream(4096);
 
-		// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
-		OverrideNodeEntry entry = resolveMkEntry_Deleted(path);
-		if (entry == null) {
-			return;
-		}
-		
+		CompletableFuture<Void> ack;
 		Map<NodeName,OverrideNodeEntry> recursiveDisposeChildMap = null;
 		synchronized(writeLock) {
-			// compute byte data payload to be appended
-			try(val out = new DataOutputStream(dataBuffer)) {
+			// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
+			OverrideNodeEntry entry = resolveMkEntry_Deleted(path);
+			if (entry == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+		
+			// compute byte data payload to be appended, in reused buffer
+			encodeBuffer.reset();
+			try {
+				val out = encodeOut;
 				// encode: {(incremental)path, overrideStatus, data}
 				AttrDataEncoderHelper.writeIncrString(out, pathSlash, currPathSlash);
 				this.currPathSlash = pathSlash;
 
 				out.write(ENTRY_NODE_REMOVED);
-				
+				out.flush();
 			} catch (IOException ex) {
 				throw new RuntimeException("Failed to encode", ex); // should not occur.. encode only!
 			}
 			
 			// do write append
-			byte[] filePart = dataBuffer.toByteArray();
-			writeAppendToWal(filePart);
+			ack = writeAppendToWal(encodeBuffer.toByteArray());
 			
-			// update in-memory: mark as 'DELETED' + remove all sub-child if any
-			synchronized(entry) { // useless redundant lock?
-				entry.setOverrideData(OverrideNodeStatus.DELETED, 0, 0, null);
-				
-				// remove all sub-child overrides if any
-				recursiveDisposeChildMap = entry.child;
-				entry.setMarkDisposed();
-			}
+			// update in-memory: mark as 'DELETED' + detach all sub-child if any
+			recursiveDisposeChildMap = entry.setDeleted();
 		} // synchronized writeLock
 		
 		// change status to null (INTERNAL_ENTRY_DISPOSED) + help gc by clearing references
 		if (recursiveDisposeChildMap != null) {
 			recursiveMarkDisposed(recursiveDisposeChildMap);
 		}
+		checkTriggerCheckpoint();
+		return ack;
+	}
+
+	/** @return copy of encodeBuffer, with v2 dataLen prefix patched (int just before the last dataLen bytes) */
+	// @GuardedBy("writeLock")
+	private byte[] encodedRecordWithDataLen(int dataLen) {
+		val res = encodeBuffer.toByteArray();
+		if (formatVersion >= 2) {
+			int pos = res.length - dataLen - 4;
+			res[pos] = (byte) (dataLen >>> 24);
+			res[pos+1] = (byte) (dataLen >>> 16);
+			res[pos+2] = (byte) (dataLen >>> 8);
+			res[pos+3] = (byte) dataLen;
+		}
+		return res;
+	}
+
+	private void awaitAckIfPerRecord(CompletableFuture<Void> ack) {
+		if (durabilityMode == WALDurabilityMode.PER_RECORD) {
+			try {
+				ack.join();
+			} catch(CompletionException ex) {
+				throw new RuntimeException("Failed to write wal " + fileName, ex.getCause());
+			}
+		}
 	}
 
 
 	// internal
 	// ------------------------------------------------------------------------
 	
+	// @GuardedBy("writeLock")
 	protected OverrideNodeEntry resolveMkEntry(NodeNamesPath path, boolean setIntermediateEntryUpdated) {
 		val pathEltCount = path.size();
 		OverrideNodeEntry currEntry = rootEntry;
 		for(int i = 0; i < pathEltCount; i++) {
 			val pathElt = path.get(i);
-			synchronized(currEntry) {
-				if (setIntermediateEntryUpdated && i+1 < pathEltCount) {
-					if (currEntry.overrideStatus != OverrideNodeStatus.UPDATED) {
-						currEntry.overrideStatus = OverrideNodeStatus.UPDATED;
-					}
-				}
-				
-				if (currEntry.child == null) {
-					currEntry.child = new HashMap<>(); 
-				}
-				val foundChild = currEntry.child.get(pathElt);
-				if (foundChild == null) {
-					val child = new OverrideNodeEntry(
-							pathElt, // for debug only, else could be implicit..
-							OverrideNodeStatus.NOT_OVERRIDEN,
-							new HashMap<NodeName,OverrideNodeEntry>(1),
-							0, 0, // dataFilePos, dataLen
-							null, null 
-							);
-					currEntry.child.put(pathElt, child);
-					currEntry = child; 
-				} else {
-					currEntry = foundChild; 
+			if (setIntermediateEntryUpdated && i+1 < pathEltCount) {
+				if (currEntry.overrideStatus != OverrideNodeStatus.UPDATED) {
+					currEntry.overrideStatus = OverrideNodeStatus.UPDATED;
 				}
 			}
+			currEntry = getOrCreateChild(currEntry, pathElt);
 		}
 		return currEntry;
 	}
 	
+	// @GuardedBy("writeLock")
 	protected OverrideNodeEntry resolveMkEntry_Deleted(NodeNamesPath path) {
 		val pathEltCount = path.size();
 		OverrideNodeEntry currEntry = rootEntry;
 		for(int i = 0; i < pathEltCount; i++) {
 			val pathElt = path.get(i);
-			synchronized(currEntry) {
-				if (i+1 < pathEltCount) {
-					if (currEntry.overrideStatus == OverrideNodeStatus.DELETED) {
-						// parent already deleted => deleting sub-child should have no effect!!
-						return null;
-					}
-					if (currEntry.overrideStatus != OverrideNodeStatus.UPDATED) {
-						currEntry.overrideStatus = OverrideNodeStatus.UPDATED;
-					}
-				}
-				
-				if (currEntry.child == null) {
-					currEntry.child = new HashMap<>(); 
+			if (i+1 < pathEltCount) {
+				if (currEntry.overrideStatus == OverrideNodeStatus.DELETED) {
+					// parent already deleted => deleting sub-child should have no effect!!
+					return null;
 				}
-				val foundChild = currEntry.child.get(pathElt);
-				if (foundChild == null) {
-					val child = new OverrideNodeEntry(
-							pathElt, // for debug only, else could be implicit..
-							OverrideNodeStatus.NOT_OVERRIDEN,
-							new HashMap<NodeName,OverrideNodeEntry>(1),
-							0, 0,  // dataFilePos, dataLen
-							null, null
-							);
-					currEntry.child.put(pathElt, child);
-					currEntry = child; 
-				} else {
-					currEntry = foundChild; 
+				if (currEntry.overrideStatus != OverrideNodeStatus.UPDATED) {
+					currEntry.overrideStatus = OverrideNodeStatus.UPDATED;
 				}
 			}
+			currEntry = getOrCreateChild(currEntry, pathElt);
 		}
 		return currEntry;
 	}
+
+	// @GuardedBy("writeLock")
+	private static OverrideNodeEntry getOrCreateChild(OverrideNodeEntry parent, NodeName childName) {
+		val childMap = parent.getOrCreateChildMap();
+		OverrideNodeEntry res = childMap.get(childName);
+		if (res == null) {
+			res = new OverrideNodeEntry(childName, OverrideNodeStatus.NOT_OVERRIDEN);
+			childMap.put(childName, res); // published to readers, after fully initialized 
+		}
+		return res;
+	}
 	
 	/** read and replay events (in same order) from appended-only Log file from BlobStorage */
 	protected void doReloadFileRange(final long fromFilePos, final long toFilePos) {
@@ -532,24 +993,34 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 							 												
 					val chgByte = in.read();
 					if (chgByte == ENTRY_NODE_UPDATE) {
-						// take current filePos
-						long dataFilePos = fromFilePos + inCounter.getCount();
-								
-						val name = path.lastOrEmpty();
-						val data = attrDataEncoderHelper.readNodeData_noName(in, name);
-
-						// current filePos
-						long filePosAfterData = fromFilePos + inCounter.getCount();
-						int dataLen = (int) (filePosAfterData - dataFilePos);
-
-						// TOADD read (redundant) dataLen for skippable ? 
-						
-						doReplayPut(path, dataFilePos, dataLen, data);
+						if (formatVersion >= 2) {
+							// skip data, without decoding: lazy reloaded on demand using (filePos,len)
+							int dataLen = in.readInt();
+							long dataFilePos = fromFilePos + inCounter.getCount();
+							ByteStreams.skipFully(in, dataLen);
+							
+							doReplayPut(path, dataFilePos, dataLen, null);
+						} else {
+							// take current filePos
+							long dataFilePos = fromFilePos + inCounter.getCount();
+									
+							val name = path.lastOrEmpty();
+							val data = attrDataEncoderHelper.readNodeData_noName(in, name);
+	
+							// current filePos
+							long filePosAfterData = fromFilePos + inCounter.getCount();
+							int dataLen = (int) (filePosAfterData - dataFilePos);
+	
+							doReplayPut(path, dataFilePos, dataLen, data);
+						}
 
 					} else if (chgByte == ENTRY_NODE_REMOVED) {
 						doReplayRemoved(path);
 
 					} else if (chgByte == ENTRY_NODE_INTERNAL_FIELDS_CHANGED) {
+						if (formatVersion >= 2) {
+							in.readInt(); // dataLen, ignored.. always decoded (small)
+						}
 						val internalFields = attrDataEncoderHelper.readNodeData_internalFields(in);
 						doReplayInternalFieldsChanged(path, internalFields);
 
@@ -580,10 +1051,8 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 		// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
 		OverrideNodeEntry entry = resolveMkEntry(path, true);
 		
-		synchronized(entry) { // useless redundant lock?
-			// update in-memory: mark as 'UPDATED'
-			entry.setOverrideData(OverrideNodeStatus.UPDATED, dataFilePos, dataLen, cachedData);
-		}
+		// update in-memory: mark as 'UPDATED'
+		entry.setOverrideData(new WALDataRef(dataFilePos, dataLen, cachedData));
 	}
 	
 	protected void doReplayRemoved(NodeNamesPath path) {
@@ -593,16 +1062,8 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 			return;
 		}
 		
-		Map<NodeName,OverrideNodeEntry> recursiveDisposeChildMap = null;
-			
-		// update in-memory: mark as 'DELETED' + remove all sub-child if any
-		synchronized(entry) { // useless redundant lock?
-			entry.setOverrideData(OverrideNodeStatus.DELETED, 0, 0, null);
-			
-			// remove all sub-child overrides if any
-			recursiveDisposeChildMap = entry.child;
-			entry.setMarkDisposed();
-		}
+		// update in-memory: mark as 'DELETED' + detach all sub-child if any
+		val recursiveDisposeChildMap = entry.setDeleted();
 		
 		// change status to null (INTERNAL_ENTRY_DISPOSED) + help gc by clearing references
 		if (recursiveDisposeChildMap != null) {
@@ -614,9 +1075,7 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 		// update in-memory: resolve (mkdirs) parent node + update/add PartialNodeEntry
 		OverrideNodeEntry entry = resolveMkEntry(path, true);
 		
-		synchronized(entry) { // useless redundant lock?
-			entry.setOverrideInternalFields(internalFields);
-		}
+		entry.setOverrideInternalFields(internalFields);
 	}
 	
 	protected static void recursiveMarkDisposed(Map<NodeName,OverrideNodeEntry> map) {
@@ -633,9 +1092,9 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 	// TODO may use async
 	// public CompletableFuture<NodeOverrideData> asyncGetOverride(NodeNamesPath path) {
 
-	protected NodeData doReadData(OverrideNodeEntry entry, NodeName name) {
-		val dataFilePos = entry.dataFilePos;
-		val dataLen = entry.dataLen;
+	protected NodeData doReadData(OverrideNodeEntry entry, WALDataRef dataRef, NodeName name) {
+		val dataFilePos = dataRef.dataFilePos;
+		val dataLen = dataRef.dataLen;
 		
 		// *** The Biggy: IO read (maybe remote) ***
 		byte[] dataBytes = blobStorage.readAt(fileName, dataFilePos, dataLen);
@@ -648,120 +1107,121 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 			throw new RuntimeException("Failed to decode", ex); // should not occur.. decode only!
 		}
 
-		entry.cachedData = res;
+		val internalFields = entry.internalFields;
+		if (internalFields != null) {
+			res.setInternalFields(internalFields);
+		}
+		dataRef.cachedData = res;
 		return res;
 	}
 
 	
-	protected void writeAppendToWal(byte[] data) {
-		// inneficient for local file: open+write+flush+close... 
-		// (but maybe equivalent for distributed blobStorage, like Azure Storage)
-		// ... this.blobStorage.writeAppendToFile(fileName, filePart);
+	// @GuardedBy("writeLock") .. enqueue in file order
+	protected CompletableFuture<Void> writeAppendToWal(byte[] data) {
+		val failure = writeFailure;
+		if (failure != null) {
+			throw new RuntimeException("Failed previous write to wal " + fileName, failure);
+		}
+		// inneficient for remote blobStorage, like Azure Storage: 1 append per record.. using group-commit writer 
 		ensureOpenWrite();
-		
-		if (useWriterThread) {
-		    // write using enqueue, then async write in writerThread
-    		writeQueue.add(data);
-    		
-    		this.currFilePos += data.length; // not writen/flushed yet
-    		
-    		synchronized(writerNotifyLock) {
-    			writerNotifyLock.notify();
-    		}
-		} else {
-		    // simple write
-		    try {
-                this.currWriteStream.write(data);
-            } catch (IOException ex) {
-                throw new RuntimeException("Failed to write wal " + fileName, ex);
-                // TODO notify parent owner, maybe roll wal
-            }
-    		try {
-    		    this.currWriteStream.flush();
-    		} catch (IOException ex) {
-    		    throw new RuntimeException("Failed to flush wal " + fileName, ex);
-    		}
+		this.walEntryCount++;
+		this.currFilePos += data.length; // not writen/flushed yet
+		val ack = groupCommitWriter.append(data);
+		if (groupCommitWriter.getDurabilityMode() != WALDurabilityMode.OS_BUFFERED) { // else acked before flush
+			val endFilePos = currFilePos;
+			ack.thenRun(() -> markFlushedUpTo(endFilePos));
 		}
-		
+		return ack;
 	}
 
-	private void writeLoop() {
-		this.writerStopped = false;
-		try {
-			for(;;) {
-				val foundFrag = writeQueue.poll();
-				if (foundFrag == null) {
-					synchronized(writerNotifyLock) {
-						try {
-							writerNotifyLock.wait(10000);
-						} catch (InterruptedException e) {
-						}
-					}
-					if (writerStopRequested) {
-						break;
-					}
-				} else { // else foundFrag != null
-					val foundFrag2 = writeQueue.poll();
-					if (foundFrag2 == null) {
-						// no more to concatenate, just write..
-						try {
-							this.currWriteStream.write(foundFrag);
-						} catch (IOException ex) {
-							throw new RuntimeException("Failed to write wal " + fileName, ex);
-							// TODO notify parent owner, maybe roll wal
-						}
-					} else {
-						// concatenate more frag up to maxConcatFrags (2M)
-						int maxConcatFrags = 2 * 1024*1024;
-						int currConcatLen = foundFrag.length + foundFrag2.length;
-						val frags = new ArrayList<byte[]>();
-						frags.add(foundFrag);
-						frags.add(foundFrag2);
-						for(;;) {
-							val moreFrag = writeQueue.poll();
-							if (moreFrag == null) {
-								break;
-							}
-							frags.add(moreFrag);
-							currConcatLen += moreFrag.length;
-							if (currConcatLen > maxConcatFrags) {
-								break;
-							}
-						}
-						// allocate buffer, and concatenate frags
-						val concatBuffer = new byte[currConcatLen];
-						int currBufferPos = 0;
-						for(val frag: frags) {
-							System.arraycopy(frag, 0, concatBuffer, currBufferPos, frag.length);
-						}
-						// do write concatenate frags
-						try {
-							this.currWriteStream.write(concatBuffer);
-						} catch (IOException ex) {
-							throw new RuntimeException("Failed to write wal " + fileName, ex);
-							// TODO notify parent owner, maybe roll wal
-						}
-					}
-					
-					try {
-						this.currWriteStream.flush();
-					} catch (IOException ex) {
-						throw new RuntimeException("Failed to flush wal " + fileName, ex);
-					}
-				}
-			} // for(;;)
+	private void markFlushedUpTo(long filePos) {
+		flushedFilePos.accumulateAndGet(filePos, Math::max);
+	}
 
-			try {
-				this.currWriteStream.flush();
-			} catch (IOException ex) {
-				throw new RuntimeException("Failed to flush wal " + fileName, ex);
+	/** @return ack, completed when all previous appended records are flushed */
+	public CompletableFuture<Void> flushAsync() {
+		synchronized(writeLock) {
+			if (groupCommitWriter == null) {
+				return CompletableFuture.completedFuture(null);
 			}
+			val endFilePos = currFilePos;
+			return groupCommitWriter.flush().thenRun(() -> markFlushedUpTo(endFilePos));
+		}
+	}
 
-		} finally {
-			this.writerStopped = true;
+	/** current WAL file length, including pending writes (for recompaction trigger) */
+	public long getWalFileLen() {
+		return currFilePos;
+	}
+
+	/** count of entries appended since open (not including reloaded ones) */
+	public long getWalEntryCount() {
+		return walEntryCount;
+	}
+
+	// freeing memory by evicting cached NodeData, reloadable later from WAL (entries themselves stay in memory)
+	// ------------------------------------------------------------------------
+
+	/** clock tick for LFU eviction: halve lru counts of all cached data, cf NodeData.decayLruCount() .. to register in LruDecayTicker */
+	public void decayLruCounts() {
+		doRecursiveDecayLruCounts(rootEntry);
+	}
+
+	private void doRecursiveDecayLruCounts(OverrideNodeEntry entry) {
+		val dataRef = entry.dataRef;
+		val cachedData = (dataRef != null)? dataRef.cachedData : null;
+		if (cachedData != null) {
+			cachedData.decayLruCount();
+		}
+		val childMap = entry.child;
+		if (childMap != null) {
+			for(val childEntry: childMap.values()) {
+				// *** recurse ***
+				doRecursiveDecayLruCounts(childEntry);
+			}
 		}
 	}
 
+	/**
+	 * evict least frequently used cached data first, recently queried ones last, cf FrequencyEvictionPolicy
+	 * only data already flushed to WAL file can be evicted (else not reloadable)
+	 * @return estimated freed memory size
+	 */
+	public long freeMemoryByLfuEvictingData(long untilFreedMemSize) {
+		val candidates = new ArrayList<Candidate<WALDataRef>>();
+		doCollectLfuCandidates(rootEntry, flushedFilePos.get(), candidates);
+
+		val victims = evictionPolicy.selectVictims(candidates, untilFreedMemSize, System.currentTimeMillis());
+		long res = 0;
+		for(val victim: victims) {
+			val dataRef = victim.ref;
+			val cachedData = dataRef.cachedData;
+			if (cachedData == null || ! dataRef.casEvictCachedData(cachedData)) {
+				continue; // concurrently changed.. ignore
+			}
+			res += victim.estimatedMemSize;
+		}
+		return res;
+	}
+
+	private void doCollectLfuCandidates(OverrideNodeEntry entry, long maxFilePos, List<Candidate<WALDataRef>> res) {
+		val dataRef = entry.dataRef;
+		val cachedData = (dataRef != null)? dataRef.cachedData : null;
+		if (cachedData != null && dataRef.dataFilePos + dataRef.dataLen <= maxFilePos) {
+			val estimatedMemSize = 120 + 50 * cachedData.attrCount() + 12 * cachedData.childCount();
+			res.add(new Candidate<>(dataRef, cachedData.lruFrequency(), cachedData.getLastTreeDataQueryTimeMillis(), estimatedMemSize));
+		}
+		val childMap = entry.child;
+		if (childMap != null) {
+			for(val childEntry: childMap.values()) {
+				// *** recurse ***
+				doCollectLfuCandidates(childEntry, maxFilePos, res);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
     public void dumpTo(String storageFileName) {
         try (val out = new BufferedOutputStream(blobStorage.openWrite(storageFileName, false))) {
             val pout = new PrintStream(out);
@@ -773,7 +1233,11 @@ public class WALBlobStorage_OverrideTreeData extends OverrideTreeData {
 
     private void recursiveDumpTo(PrintStream out, NodeNamesPath currPath, OverrideNodeEntry currEntry) {
         boolean recurse = true;
-        switch(currEntry.overrideStatus) {
+        val status = currEntry.overrideStatus;
+        if (status == null) {
+            return; // concurrently disposed
+        }
+        switch(status) {
         case DELETED:
             out.append('-');
             out.print(currPath.toPathSlash());
@@ -0,0 +1,234 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import fr.an.attrtreestore.util.DefaultNamedThreadFactory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * group-commit writer for WAL file:
+ * records are enqueued in a bounded ring buffer (by caller threads),
+ * then written by a single writer thread, by batch, with 1 flush per batch (depending on durability mode)
+ *
+ * callers get an ack future, completed when record is durable (cf WALDurabilityMode)
+ * ... no fsync in BlobStorage api, 'flush()' is the durability barrier
+ */
+@Slf4j
+public class WALGroupCommitWriter {
+
+	public static enum WALDurabilityMode {
+		/** ack after flush of the batch containing the record (group commit) */
+		PER_RECORD,
+		/** flush at most every 'flushPeriodMillis', ack after flush */
+		PERIODIC_FLUSH,
+		/** no explicit flush (only when stream buffer full, or on close), ack after write to stream */
+		OS_BUFFERED
+	}
+
+	private static final ThreadFactory writeThreadFactory = new DefaultNamedThreadFactory("WAL-WriteThread-", "", true);
+
+	private final String displayName;
+
+	private final OutputStream out;
+
+	@Getter
+	private final WALDurabilityMode durabilityMode;
+
+	private final long flushPeriodMillis;
+
+	private final int maxBatchSize;
+
+	/** ring buffer of pending records, bounded => back-pressure on caller when writer is slow */
+	private final ArrayBlockingQueue<PendingRecord> pendingRecords;
+
+	private final Thread writerThread;
+
+	@Getter
+	private volatile Throwable writeFailure;
+
+	/** notified once, in writer thread, when writer failed: all pending and next records are failed
+	 * (ex: owner WAL rejecting next writes, and rolling to a new WAL) */
+	@Setter
+	private volatile Consumer<Throwable> writeFailureListener;
+
+	/** max wait before re-checking writer failure, when ring buffer is full */
+	private static final long ENQUEUE_RECHECK_MILLIS = 100;
+
+	// stats, updated only by writer thread
+	@Getter
+	private volatile long writtenRecordCount;
+	@Getter
+	private volatile long writtenBatchCount;
+	@Getter
+	private volatile long flushCount;
+
+	@AllArgsConstructor
+	private static class PendingRecord {
+		final byte[] data; // null for flush/stop marker
+		final boolean forceFlush;
+		final boolean stop;
+		final CompletableFuture<Void> ack;
+	}
+
+	// ------------------------------------------------------------------------
+
+	public WALGroupCommitWriter(String displayName, OutputStream out,
+			WALDurabilityMode durabilityMode, long flushPeriodMillis,
+			int ringBufferCapacity, int maxBatchSize) {
+		this.displayName = displayName;
+		this.out = out;
+		this.durabilityMode = durabilityMode;
+		this.flushPeriodMillis = flushPeriodMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.pendingRecords = new ArrayBlockingQueue<>(ringBufferCapacity);
+		this.writerThread = writeThreadFactory.newThread(() -> writeLoop());
+		writerThread.start();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * enqueue record to be written, in caller order
+	 * (caller is responsible for ordering, typically calling under a lock)
+	 * @return ack, completed when durable, cf WALDurabilityMode
+	 */
+	public CompletableFuture<Void> append(byte[] data) {
+		return enqueue(new PendingRecord(data, false, false, new CompletableFuture<>()));
+	}
+
+	/** @return ack, completed when all previously appended records are flushed */
+	public CompletableFuture<Void> flush() {
+		return enqueue(new PendingRecord(null, true, false, new CompletableFuture<>()));
+	}
+
+	/** flush all pending records, stop writer thread, and close stream */
+	public void close() {
+		if (writerThread.isAlive() && writeFailure == null) {
+			enqueue(new PendingRecord(null, true, true, new CompletableFuture<>()));
+			try {
+				writerThread.join(); // wait written + flushed all
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				log.warn("interrupted while waiting WAL writer thread " + displayName + " .. ignore");
+			}
+		}
+		try {
+			out.close();
+		} catch (IOException ex) {
+			log.error("Failed close WAL file " + displayName + " (last entry might be corrupted?) !!", ex);
+		}
+	}
+
+	private CompletableFuture<Void> enqueue(PendingRecord record) {
+		try {
+			// bounded wait, re-checking failure: a dead writer thread would never free space in ring buffer
+			for(;;) {
+				checkNoWriteFailure();
+				if (pendingRecords.offer(record, ENQUEUE_RECHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+					break;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while enqueuing write to wal " + displayName, ex);
+		}
+		// re-check: writer may have failed after check, and already drained pending records
+		val failure = writeFailure;
+		if (failure != null && pendingRecords.remove(record)) {
+			record.ack.completeExceptionally(failure);
+		}
+		return record.ack;
+	}
+
+	private void checkNoWriteFailure() {
+		val failure = writeFailure;
+		if (failure != null) {
+			throw new RuntimeException("Failed previous write to wal " + displayName, failure);
+		}
+	}
+
+	// internal, in writer thread
+	// ------------------------------------------------------------------------
+
+	private void writeLoop() {
+		val batch = new ArrayList<PendingRecord>(maxBatchSize);
+		val unflushedAcks = new ArrayList<CompletableFuture<Void>>();
+		long lastFlushTime = System.currentTimeMillis();
+		boolean stop = false;
+		try {
+			while(! stop) {
+				long pollTimeoutMillis = 1000;
+				if (durabilityMode == WALDurabilityMode.PERIODIC_FLUSH && ! unflushedAcks.isEmpty()) {
+					pollTimeoutMillis = Math.max(0, lastFlushTime + flushPeriodMillis - System.currentTimeMillis());
+				}
+				val first = pendingRecords.poll(pollTimeoutMillis, TimeUnit.MILLISECONDS);
+				boolean forceFlush = false;
+				if (first != null) {
+					batch.add(first);
+					pendingRecords.drainTo(batch, maxBatchSize - 1);
+					for(val record: batch) {
+						if (record.data != null) {
+							out.write(record.data);
+							this.writtenRecordCount++;
+						}
+						forceFlush |= record.forceFlush;
+						stop |= record.stop;
+						if (durabilityMode == WALDurabilityMode.OS_BUFFERED && ! record.forceFlush) {
+							record.ack.complete(null);
+						} else {
+							unflushedAcks.add(record.ack);
+						}
+					}
+					batch.clear();
+					this.writtenBatchCount++;
+				}
+
+				boolean doFlush;
+				switch(durabilityMode) {
+				case PER_RECORD: doFlush = ! unflushedAcks.isEmpty(); break;
+				case PERIODIC_FLUSH: doFlush = ! unflushedAcks.isEmpty()
+						&& System.currentTimeMillis() - lastFlushTime >= flushPeriodMillis; break;
+				default: doFlush = false; break;
+				}
+				if (doFlush || forceFlush) {
+					out.flush();
+					this.flushCount++;
+					lastFlushTime = System.currentTimeMillis();
+					for(val ack: unflushedAcks) {
+						ack.complete(null);
+					}
+					unflushedAcks.clear();
+				}
+			}
+		} catch(Throwable ex) {
+			log.error("Failed to write wal " + displayName, ex);
+			this.writeFailure = ex; // first, cf re-check in enqueue()
+			batch.forEach(r -> r.ack.completeExceptionally(ex));
+			unflushedAcks.forEach(ack -> ack.completeExceptionally(ex));
+			PendingRecord remain;
+			while(null != (remain = pendingRecords.poll())) {
+				remain.ack.completeExceptionally(ex);
+			}
+			val listener = writeFailureListener;
+			if (listener != null) {
+				try {
+					listener.accept(ex);
+				} catch(RuntimeException ex2) {
+					log.error("Failed to notify write failure of wal " + displayName + " .. ignore", ex2);
+				}
+			}
+		}
+	}
+
+}
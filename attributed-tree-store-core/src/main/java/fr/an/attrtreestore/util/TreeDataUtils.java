@@ -1,5 +1,9 @@
 package fr.an.attrtreestore.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,10 +26,10 @@ public class TreeDataUtils {
 		}
 		val childNames = res.childNames;
 		if (childNames != null && ! childNames.isEmpty()) {
-			// may add .. foundChildLs.ensureCapacity(Math.min())
+			// batched get.. may resolve parent once, and coalesce IO for child
+			val foundChilds = tree.getAll(path, childNames);
 			for(val childName: childNames) {
-				val childPath = path.toChild(childName); 
-				val childData = tree.get(childPath);
+				val childData = foundChilds.get(childName);
 				if (childData != null) {
 					foundChildMap.put(childName, childData);
 				} else {
@@ -36,4 +40,42 @@ public class TreeDataUtils {
 		return res;
 	}
 
+	/** default impl of IReadTreeData.getAll(): 1 get() per child */
+	public static Map<NodeName,NodeData> getAllByChildGet(IReadTreeData tree,
+			NodeNamesPath parentPath, Collection<NodeName> childNames) {
+		val res = new HashMap<NodeName,NodeData>(Math.max(16, childNames.size() * 4 / 3 + 1));
+		for(val childName: childNames) {
+			val childData = tree.get(parentPath.toChild(childName));
+			if (childData != null) {
+				res.put(childName, childData);
+			}
+		}
+		return res;
+	}
+
+	/** default impl of IReadTreeData.getMany(): group paths by parent, then getAll() per parent */
+	public static Map<NodeNamesPath,NodeData> getManyByParentGetAll(IReadTreeData tree,
+			Collection<NodeNamesPath> paths) {
+		val res = new HashMap<NodeNamesPath,NodeData>(Math.max(16, paths.size() * 4 / 3 + 1));
+		val childNamesByParent = new LinkedHashMap<NodeNamesPath,List<NodeName>>();
+		for(val path: paths) {
+			if (path.size() == 0) {
+				val rootData = tree.get(path);
+				if (rootData != null) {
+					res.put(path, rootData);
+				}
+				continue;
+			}
+			childNamesByParent.computeIfAbsent(path.toParent(), k -> new ArrayList<>()).add(path.last());
+		}
+		for(val e: childNamesByParent.entrySet()) {
+			val parentPath = e.getKey();
+			val foundChilds = tree.getAll(parentPath, e.getValue());
+			for(val found: foundChilds.entrySet()) {
+				res.put(parentPath.toChild(found.getKey()), found.getValue());
+			}
+		}
+		return res;
+	}
+
 }
@@ -17,6 +17,7 @@ import org.path4j.NodeNamesPath;
 
 import com.google.common.collect.ImmutableMap;
 
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import fr.an.attrtreestore.util.fsdata.NodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.DirNodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.FileNodeFsData;
@@ -60,7 +61,7 @@ public class JavaNIOFileToNodeFsDataScanner {
 		
 		protected JavaNIOToNodeFsDataFileVisitor(NodeName rootName, NodeNameEncoder nodeNameEncoder, NodeFsDataVisitor callback) {
 			this.rootName = rootName;
-			this.nodeNameEncoder = nodeNameEncoder;
+			this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
 			this.callback = callback;
 			// currDirBuilder = new DirNodeFsDataBuilder(NodeNamesPath.ROOT, 0, 0, null);
 			// currDirBuilderStack.add(currDirBuilder);
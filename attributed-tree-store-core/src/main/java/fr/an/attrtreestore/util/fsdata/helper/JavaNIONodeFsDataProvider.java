@@ -17,6 +17,7 @@ import com.google.common.collect.ImmutableMap;
 
 import fr.an.attrtreestore.cachedfsview.NodeFsDataProvider;
 import fr.an.attrtreestore.cachedfsview.PrefetchNodeFsDataContext;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import fr.an.attrtreestore.util.fsdata.NodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.DirNodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.FileNodeFsData;
@@ -35,7 +36,7 @@ public class JavaNIONodeFsDataProvider extends NodeFsDataProvider {
 	// ------------------------------------------------------------------------
 	
 	public JavaNIONodeFsDataProvider(NodeNameEncoder nodeNameEncoder, Path baseDirPath) {
-		this.nodeNameEncoder = nodeNameEncoder;
+		this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
 		this.baseDirPath = baseDirPath;
 		this.baseDirPathText = baseDirPath.toString();
 	}
@@ -66,7 +66,7 @@ public class PersistedCachedFsViewTreeDataTest {
 		// Then
 		// => cache miss
 		// Assert.assertEquals(1, sutTree.getCacheGetCount());
-		Assert.assertEquals(0, sutTree.getCacheGetHitCounter());
+		Assert.assertEquals(0, sutTree.getCacheGetHitCount());
 		Assert.assertEquals(1, sutTree.getCacheGetMissCount());
 		Assert.assertEquals(1, sutTree.getUnderlyingGetCount());
 		Assert.assertNotNull(dir1Data);
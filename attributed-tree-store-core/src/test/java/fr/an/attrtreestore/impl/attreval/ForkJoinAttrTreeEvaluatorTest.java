@@ -0,0 +1,144 @@
+package fr.an.attrtreestore.impl.attreval;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeNamesPath;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
+import fr.an.attrtreestore.api.attrinfo.InheritedAttrInfo;
+import fr.an.attrtreestore.api.attrinfo.IntAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.SynthethizedAttrInfo;
+import fr.an.attrtreestore.impl.attreval.IncrementalAttrEvalTreeData.AttrEvalFunc;
+import fr.an.attrtreestore.storage.api.TreeDataTstGenerator;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import fr.an.attrtreestore.storage.impl.InMem_TreeData;
+import lombok.val;
+
+public class ForkJoinAttrTreeEvaluatorTest {
+
+	@Test
+	public void testEvaluateSubTree() {
+		val fileCountAttr = new SynthethizedAttrInfo<Long>("fileCount", Long.class, LongAttrDataEncoder.INSTANCE, ImmutableList.of());
+		val depthAttr = new InheritedAttrInfo<Integer>("depth", Integer.class, IntAttrDataEncoder.INSTANCE, ImmutableList.of());
+
+		val src = new TreeTstObj();
+		val dest = new InMem_TreeData();
+		val pool = new ForkJoinPool(4);
+		try {
+			val sut = new ForkJoinAttrTreeEvaluator(src.treeData, dest, pool);
+			sut.registerAttr(fileCountAttr, ctx -> {
+				if (ctx.getData().childNames.isEmpty()) {
+					return 1L;
+				}
+				long res = 0;
+				for(val child: ctx.getChildDatas()) {
+					res += (Long) AttrEvalContext.attrData(child, fileCountAttr);
+				}
+				return res;
+			});
+			sut.registerAttr(depthAttr, ctx -> {
+				val parentDepth = ctx.parentAttrData(depthAttr);
+				return (parentDepth != null)? (Integer) parentDepth + 1 : 0;
+			});
+
+			val rootRes = sut.evaluateSubTree(NodeNamesPath.ROOT);
+			Assert.assertEquals(3L, AttrEvalContext.attrData(rootRes, fileCountAttr)); // e1, d2, d3
+			Assert.assertEquals(8, sut.getEvaluatedNodeCount());
+
+			Assert.assertEquals(3L, AttrEvalContext.attrData(dest.get(NodeNamesPath.ROOT), fileCountAttr));
+			Assert.assertEquals(3L, AttrEvalContext.attrData(dest.get(TreeTstObj.PATH_a_b_c), fileCountAttr));
+			Assert.assertEquals(1L, AttrEvalContext.attrData(dest.get(TreeTstObj.PATH_a_b_c_d1), fileCountAttr));
+			Assert.assertEquals(5, AttrEvalContext.attrData(dest.get(TreeTstObj.PATH_a_b_c_d1_e1), depthAttr));
+			Assert.assertEquals(4, AttrEvalContext.attrData(dest.get(TreeTstObj.PATH_a_b_c_d3), depthAttr));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testEvaluateSubTree_failedAttr_markedDirty() {
+		val fileCountAttr = new SynthethizedAttrInfo<Long>("fileCount", Long.class, LongAttrDataEncoder.INSTANCE, ImmutableList.of());
+		val src = new TreeTstObj();
+		val dest1 = new InMem_TreeData();
+		val dest2 = new InMem_TreeData();
+		val pool = new ForkJoinPool(4);
+		val failOnPath = new AtomicReference<NodeNamesPath>();
+		val writerThreads = ConcurrentHashMap.<String>newKeySet();
+		try {
+			AttrEvalFunc fileCountFunc = ctx -> {
+				if (ctx.getPath().equals(failOnPath.get())) {
+					throw new RuntimeException("test failure");
+				}
+				if (ctx.getData().childNames.isEmpty()) {
+					return 1L;
+				}
+				long res = 0;
+				for(val child: ctx.getChildDatas()) {
+					val childCount = AttrEvalContext.attrData(child, fileCountAttr);
+					res += (childCount != null)? (Long) childCount : 0;
+				}
+				return res;
+			};
+			val sut1 = new ForkJoinAttrTreeEvaluator(src.treeData, dest1, pool);
+			sut1.registerAttr(fileCountAttr, fileCountFunc);
+			sut1.evaluateSubTree(NodeNamesPath.ROOT);
+			Assert.assertEquals(0, sut1.getFailedEvalCount());
+
+			// re-evaluate from previous result, failing on c: previous value kept, not stamped OK
+			failOnPath.set(TreeTstObj.PATH_a_b_c);
+			val recordingDest = new InMem_TreeData() {
+				@Override
+				public void put(NodeNamesPath path, NodeData data) {
+					writerThreads.add(Thread.currentThread().getName());
+					dest2.put(path, data);
+				}
+			};
+			val sut2 = new ForkJoinAttrTreeEvaluator(dest1, recordingDest, pool);
+			sut2.registerAttr(fileCountAttr, fileCountFunc);
+			sut2.evaluateSubTree(NodeNamesPath.ROOT);
+			Assert.assertEquals(1, sut2.getFailedEvalCount());
+			val attr_c = dest2.get(TreeTstObj.PATH_a_b_c).attrs.get(fileCountAttr.name);
+			Assert.assertEquals(AttrEvalStatus.DIRTY, attr_c.getEvalStatus());
+			Assert.assertEquals(3L, attr_c.getData());
+			Assert.assertEquals(AttrEvalStatus.OK, dest2.get(TreeTstObj.PATH_a_b_c_d1).attrs.get(fileCountAttr.name).getEvalStatus());
+			// all writes from 1 dedicated writer thread, not from pool workers
+			Assert.assertEquals(1, writerThreads.size());
+			Assert.assertTrue(writerThreads.iterator().next().startsWith("AttrEval-Writer-"));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testEvaluateSubTree_missingChild_fails() {
+		val fileCountAttr = new SynthethizedAttrInfo<Long>("fileCount", Long.class, LongAttrDataEncoder.INSTANCE, ImmutableList.of());
+		val src = new TreeTstObj();
+		val dX = DefaultNodeNameEncoder.createDefault().encode("dX");
+		src.treeData.put_strictNoCreateParent(TreeTstObj.PATH_a_b_c, new TreeDataTstGenerator().createDirData(TreeTstObj.c, 
+				ImmutableSet.of(TreeTstObj.d1, TreeTstObj.d2, TreeTstObj.d3, dX)));
+		val pool = new ForkJoinPool(4);
+		try {
+			val sut = new ForkJoinAttrTreeEvaluator(src.treeData, new InMem_TreeData(), pool);
+			sut.registerAttr(fileCountAttr, ctx -> 1L);
+			try {
+				sut.evaluateSubTree(NodeNamesPath.ROOT);
+				Assert.fail();
+			} catch(IllegalStateException ex) {
+				Assert.assertTrue(ex.getMessage().contains("'dX' not found"));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package fr.an.attrtreestore.impl.attreval;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeNamesPath;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.api.IWriteTreeData;
+import fr.an.attrtreestore.api.attrinfo.InheritedAttrInfo;
+import fr.an.attrtreestore.api.attrinfo.IntAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.SynthethizedAttrInfo;
+import fr.an.attrtreestore.storage.api.TreeDataTstGenerator;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import lombok.val;
+
+public class IncrementalAttrEvalTreeDataTest {
+
+	private final SynthethizedAttrInfo<Long> fileCountAttr = new SynthethizedAttrInfo<Long>("fileCount", Long.class, LongAttrDataEncoder.INSTANCE, ImmutableList.of());
+	private final InheritedAttrInfo<Integer> depthAttr = new InheritedAttrInfo<Integer>("depth", Integer.class, IntAttrDataEncoder.INSTANCE, ImmutableList.of());
+	// implicit self dependencies: child fileCount -> parent fileCount, parent depth -> child depth
+
+	/** when set, fileCount evaluation fails on root (~crash before end of evaluation) */
+	private boolean failFileCountOnRoot;
+
+	private IncrementalAttrEvalTreeData createSut(IWriteTreeData delegate) {
+		val sut = new IncrementalAttrEvalTreeData(delegate);
+		sut.registerAttr(fileCountAttr, ctx -> {
+			if (failFileCountOnRoot && ctx.getPath().size() == 0) {
+				throw new RuntimeException("test failure");
+			}
+			if (ctx.getData().childNames.isEmpty()) {
+				return 1L;
+			}
+			long res = 0;
+			for(val child: ctx.getChildDatas()) {
+				val childCount = AttrEvalContext.attrData(child, fileCountAttr);
+				res += (childCount != null)? (Long) childCount : 0;
+			}
+			return res;
+		});
+		sut.registerAttr(depthAttr, ctx -> {
+			val parentDepth = ctx.parentAttrData(depthAttr);
+			return (ctx.getPath().size() == 0)? 0 : ((parentDepth != null)? (Integer) parentDepth : 0) + 1;
+		});
+		return sut;
+	}
+
+	@Test
+	public void testEvaluateDirty_upward_downward() {
+		val src = new TreeTstObj();
+		val sut = createSut(src.treeData);
+
+		// initial full evaluation
+		sut.markSubTreeDirty(NodeNamesPath.ROOT);
+		sut.evaluateDirty();
+		Assert.assertEquals(0, sut.getDirtyPathCount());
+		Assert.assertEquals(3L, AttrEvalContext.attrData(sut.get(NodeNamesPath.ROOT), fileCountAttr)); // e1, d2, d3
+		Assert.assertEquals(1L, AttrEvalContext.attrData(sut.get(TreeTstObj.PATH_a_b_c_d1), fileCountAttr));
+		Assert.assertEquals(5, AttrEvalContext.attrData(sut.get(TreeTstObj.PATH_a_b_c_d1_e1), depthAttr));
+		Assert.assertEquals(0, sut.get(TreeTstObj.PATH_a_b_c_d1_e1).getTreeDataRecomputationMask());
+
+		// add file deep in tree => only path to root re-evaluated
+		val gen = new TreeDataTstGenerator();
+		val e2 = DefaultNodeNameEncoder.createDefault().encode("e2");
+		val evalCount0 = sut.getEvalCount();
+		sut.put(TreeTstObj.PATH_a_b_c_d1, gen.createDirData(TreeTstObj.d1, ImmutableSet.of(TreeTstObj.e1, e2)));
+		val path_e2 = TreeTstObj.PATH_a_b_c_d1.toChild(e2);
+		sut.put(path_e2, gen.createDirData(e2, ImmutableSet.of()));
+		Assert.assertNotEquals(0, sut.get(path_e2).getTreeDataRecomputationMask());
+		sut.evaluateDirty();
+
+		Assert.assertEquals(4L, AttrEvalContext.attrData(sut.get(NodeNamesPath.ROOT), fileCountAttr));
+		Assert.assertEquals(2L, AttrEvalContext.attrData(sut.get(TreeTstObj.PATH_a_b_c_d1), fileCountAttr));
+		Assert.assertEquals(5, AttrEvalContext.attrData(sut.get(path_e2), depthAttr));
+		Assert.assertEquals(0, sut.get(path_e2).getTreeDataRecomputationMask());
+		// O(depth): e2, d1 (2 attrs each) + fileCount on c, b, a, root
+		// + depth on e1 (d1 was re-put without attrs => depth re-added, propagated to children)
+		Assert.assertEquals(2 + 2 + 4 + 1, sut.getEvalCount() - evalCount0);
+
+		// remove => ancestors updated
+		sut.remove(path_e2);
+		sut.put(TreeTstObj.PATH_a_b_c_d1, gen.createDirData(TreeTstObj.d1, ImmutableSet.of(TreeTstObj.e1)));
+		sut.evaluateDirty();
+		Assert.assertEquals(3L, AttrEvalContext.attrData(sut.get(NodeNamesPath.ROOT), fileCountAttr));
+	}
+
+	@Test
+	public void testPut_callerDataNotModified() {
+		val src = new TreeTstObj();
+		val sut = createSut(src.treeData);
+		val e2 = DefaultNodeNameEncoder.createDefault().encode("e2");
+		val data_e2 = new TreeDataTstGenerator().createDirData(e2, ImmutableSet.of());
+		sut.put(TreeTstObj.PATH_a_b_c_d1.toChild(e2), data_e2);
+
+		Assert.assertEquals(0, data_e2.getTreeDataRecomputationMask());
+		val stored = src.treeData.get(TreeTstObj.PATH_a_b_c_d1.toChild(e2));
+		Assert.assertNotSame(data_e2, stored);
+		Assert.assertNotEquals(0, stored.getTreeDataRecomputationMask());
+	}
+
+	@Test
+	public void testRecoverDirtyFromMasks() {
+		val src = new TreeTstObj();
+		val sut = createSut(src.treeData);
+		sut.markSubTreeDirty(NodeNamesPath.ROOT);
+		sut.evaluateDirty();
+		Assert.assertEquals(3L, AttrEvalContext.attrData(sut.get(NodeNamesPath.ROOT), fileCountAttr));
+
+		// add file deep in tree, then "crash": root not re-evaluated
+		val gen = new TreeDataTstGenerator();
+		val e2 = DefaultNodeNameEncoder.createDefault().encode("e2");
+		sut.put(TreeTstObj.PATH_a_b_c_d1, gen.createDirData(TreeTstObj.d1, ImmutableSet.of(TreeTstObj.e1, e2)));
+		sut.put(TreeTstObj.PATH_a_b_c_d1.toChild(e2), gen.createDirData(e2, ImmutableSet.of()));
+		failFileCountOnRoot = true;
+		sut.evaluateDirty();
+		Assert.assertEquals(2L, AttrEvalContext.attrData(sut.get(TreeTstObj.PATH_a_b_c_d1), fileCountAttr));
+		Assert.assertEquals(3L, AttrEvalContext.attrData(sut.get(NodeNamesPath.ROOT), fileCountAttr)); // stale
+		Assert.assertNotEquals(0, src.treeData.get(NodeNamesPath.ROOT).getTreeDataRecomputationMask());
+
+		// restart: new instance on same (persisted) tree, in-memory dirty set lost
+		failFileCountOnRoot = false;
+		val sut2 = createSut(src.treeData);
+		Assert.assertEquals(0, sut2.getDirtyPathCount());
+		Assert.assertEquals(1, sut2.recoverDirtyFromMasks(NodeNamesPath.ROOT));
+		sut2.evaluateDirty();
+		Assert.assertEquals(4L, AttrEvalContext.attrData(sut2.get(NodeNamesPath.ROOT), fileCountAttr));
+		Assert.assertEquals(0, sut2.get(NodeNamesPath.ROOT).getTreeDataRecomputationMask());
+		Assert.assertEquals(0, sut2.recoverDirtyFromMasks(NodeNamesPath.ROOT));
+	}
+
+	@Test
+	public void testRecoverDirtyFromMasks_propagatedNotEvaluated() {
+		val src = new TreeTstObj();
+		val sut = createSut(src.treeData);
+		sut.markSubTreeDirty(NodeNamesPath.ROOT);
+		sut.evaluateDirty();
+
+		// put without any evaluation => put node and its parent flagged (not only in memory)
+		val gen = new TreeDataTstGenerator();
+		val e2 = DefaultNodeNameEncoder.createDefault().encode("e2");
+		sut.put(TreeTstObj.PATH_a_b_c_d1, gen.createDirData(TreeTstObj.d1, ImmutableSet.of(TreeTstObj.e1, e2)));
+		sut.put(TreeTstObj.PATH_a_b_c_d1.toChild(e2), gen.createDirData(e2, ImmutableSet.of()));
+
+		val sut2 = createSut(src.treeData);
+		Assert.assertEquals(3, sut2.recoverDirtyFromMasks(NodeNamesPath.ROOT)); // c (parent of d1), d1, e2
+		sut2.evaluateDirty();
+		Assert.assertEquals(4L, AttrEvalContext.attrData(sut2.get(NodeNamesPath.ROOT), fileCountAttr));
+		Assert.assertEquals(5, AttrEvalContext.attrData(sut2.get(TreeTstObj.PATH_a_b_c_d1.toChild(e2)), depthAttr));
+		Assert.assertEquals(0, sut2.recoverDirtyFromMasks(NodeNamesPath.ROOT));
+	}
+
+}
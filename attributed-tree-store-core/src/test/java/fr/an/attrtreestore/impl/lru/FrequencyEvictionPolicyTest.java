@@ -0,0 +1,61 @@
+package fr.an.attrtreestore.impl.lru;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.impl.lru.FrequencyEvictionPolicy.Candidate;
+import fr.an.attrtreestore.storage.api.TreeDataTstGenerator;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import lombok.val;
+
+public class FrequencyEvictionPolicyTest {
+
+	@Test
+	public void testDecayLruCount() {
+		val gen = new TreeDataTstGenerator();
+		NodeData data = gen.createDirData(TreeTstObj.d1, ImmutableSet.of());
+		for(int i = 0; i < 8; i++) {
+			data.incrUsed(1000);
+		}
+		Assert.assertEquals(8, data.getLruCount());
+		Assert.assertEquals(8, data.lruFrequency());
+
+		Assert.assertEquals(8, data.decayLruCount()); // 0/2 + 8
+		Assert.assertEquals(0, data.getLruCount());
+		data.incrUsed(2000);
+		Assert.assertEquals(5, data.decayLruCount()); // 8/2 + 1
+		Assert.assertEquals(2, data.decayLruCount());
+		Assert.assertEquals(1, data.decayLruCount());
+		Assert.assertEquals(0, data.decayLruCount());
+		Assert.assertEquals(2000, data.getLastTreeDataQueryTimeMillis());
+	}
+
+	@Test
+	public void testSelectVictims_coldFirst_windowLast() {
+		val now = 1_000_000L;
+		val sut = new FrequencyEvictionPolicy(60_000);
+		val hot = new Candidate<String>("hot", 100, now - 120_000, 10);
+		val cold = new Candidate<String>("cold", 1, now - 120_000, 10);
+		val coldOlder = new Candidate<String>("coldOlder", 1, now - 300_000, 10);
+		val recentCold = new Candidate<String>("recentCold", 0, now - 1000, 10); // in window
+		val candidates = new ArrayList<Candidate<String>>(Arrays.asList(hot, recentCold, cold, coldOlder));
+
+		val sorted = sut.sortedVictims(candidates, now);
+		Assert.assertSame(coldOlder, sorted.get(0));
+		Assert.assertSame(cold, sorted.get(1));
+		Assert.assertSame(hot, sorted.get(2));
+		Assert.assertSame(recentCold, sorted.get(3));
+
+		val victims = sut.selectVictims(candidates, 15, now);
+		Assert.assertEquals(2, victims.size());
+		Assert.assertSame(coldOlder, victims.get(0));
+		Assert.assertSame(cold, victims.get(1));
+	}
+
+}
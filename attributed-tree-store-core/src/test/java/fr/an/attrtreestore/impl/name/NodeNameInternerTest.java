@@ -0,0 +1,29 @@
+package fr.an.attrtreestore.impl.name;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+
+import lombok.val;
+
+public class NodeNameInternerTest {
+
+	@Test
+	public void testIntern_hitMiss() {
+		val interner = new NodeNameInterner();
+		val sut = new InterningNodeNameEncoder(DefaultNodeNameEncoder.createDefault(), interner);
+
+		val name1 = sut.encode("file1.txt");
+		val name1Again = sut.encode("file1.txt");
+		Assert.assertSame(name1, name1Again);
+		Assert.assertNotSame(name1, sut.encode("file2.txt"));
+		Assert.assertEquals(1, interner.getHitCount());
+		Assert.assertEquals(2, interner.getMissCount());
+
+		// idempotent wrapping
+		Assert.assertSame(sut, InterningNodeNameEncoder.of(sut));
+		val defaultEncoder = InterningNodeNameEncoder.of(DefaultNodeNameEncoder.createDefault());
+		Assert.assertSame(defaultEncoder.encode("file1.txt"), defaultEncoder.encode("file1.txt"));
+	}
+
+}
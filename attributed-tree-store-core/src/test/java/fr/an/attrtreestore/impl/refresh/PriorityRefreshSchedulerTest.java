@@ -0,0 +1,101 @@
+package fr.an.attrtreestore.impl.refresh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeNamesPath;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import lombok.val;
+
+public class PriorityRefreshSchedulerTest {
+
+	@Test
+	public void testPriorityOrder_cancel_bounded() throws Exception {
+		val refreshed = Collections.synchronizedList(new ArrayList<NodeNamesPath>());
+		val started = new CountDownLatch(1);
+		val release = new CountDownLatch(1);
+		val executor = Executors.newFixedThreadPool(4);
+		try {
+			val sut = new PriorityRefreshScheduler("test", path -> {
+				if (path.equals(NodeNamesPath.ROOT)) {
+					started.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+				refreshed.add(path);
+			}, () -> executor, 1);
+
+			// first task blocks the only worker, next ones are queued
+			sut.enqueue(NodeNamesPath.ROOT, 1.0);
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+			sut.enqueue(TreeTstObj.PATH_a, PriorityRefreshScheduler.priorityOf(1000, 0, 0));
+			sut.enqueue(TreeTstObj.PATH_a_b, PriorityRefreshScheduler.priorityOf(1000, 10, 5)); // hot
+			sut.enqueue(TreeTstObj.PATH_a_b_c, PriorityRefreshScheduler.priorityOf(60_000, 0, 0)); // very stale
+			val future_d1 = sut.enqueue(TreeTstObj.PATH_a_b_c_d1, 1.0);
+			sut.enqueue(TreeTstObj.PATH_a, 100.0); // re-enqueue: raise priority
+			Assert.assertEquals(1, sut.getWorkerCount());
+			Assert.assertEquals(4, sut.getPendingCount());
+
+			Assert.assertTrue(sut.cancel(TreeTstObj.PATH_a_b_c_d1));
+			Assert.assertTrue(future_d1.isCancelled());
+			Assert.assertFalse(sut.cancel(TreeTstObj.PATH_a_b_c_d1));
+
+			val last = sut.enqueue(TreeTstObj.PATH_a_b_c_d2, 0.5);
+			release.countDown();
+			last.get(10, TimeUnit.SECONDS);
+
+			Assert.assertEquals(Arrays.asList(NodeNamesPath.ROOT, TreeTstObj.PATH_a, TreeTstObj.PATH_a_b_c, TreeTstObj.PATH_a_b, TreeTstObj.PATH_a_b_c_d2), 
+					refreshed);
+			Assert.assertEquals(5, sut.getProcessedCount());
+			Assert.assertEquals(1, sut.getCancelledCount());
+			Assert.assertEquals(0, sut.getPendingCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRateLimiter_doesNotBlockExecutorThread() throws Exception {
+		val refreshed = Collections.synchronizedList(new ArrayList<NodeNamesPath>());
+		val executor = Executors.newSingleThreadExecutor(); // same as a shared pool, saturated
+		try {
+			val sut = new PriorityRefreshScheduler("test", path -> refreshed.add(path), () -> executor, 1);
+			val rateLimiter = RateLimiter.create(2); // 1 permit / 500ms
+			sut.setRateLimiter(rateLimiter);
+			Assert.assertTrue(rateLimiter.tryAcquire()); // no stored permit left => next ones in 500ms, 1000ms..
+
+			sut.enqueue(TreeTstObj.PATH_a, 1.0);
+			sut.enqueue(TreeTstObj.PATH_a_b, 1.0);
+			val last = sut.enqueue(TreeTstObj.PATH_a_b_c, 1.0);
+			
+			// other tasks on executor still run while refreshes wait for permits
+			val startTime = System.currentTimeMillis();
+			executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+			Assert.assertTrue(System.currentTimeMillis() - startTime < 300);
+			Assert.assertTrue(refreshed.size() < 3);
+			Assert.assertEquals(1, sut.getWorkerCount());
+
+			last.get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(Arrays.asList(TreeTstObj.PATH_a, TreeTstObj.PATH_a_b, TreeTstObj.PATH_a_b_c), refreshed);
+			for(int retry = 0; retry < 100 && sut.getWorkerCount() > 0; retry++) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, sut.getWorkerCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package fr.an.attrtreestore.impl.refresh;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeNamesPath;
+
+import fr.an.attrtreestore.api.override.OverrideNodeData;
+import fr.an.attrtreestore.api.override.OverrideNodeStatus;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import lombok.val;
+
+public class ProactiveRefreshSweeperTest {
+
+	@Test
+	public void testSweepOnce_hotDueFirst_budget() {
+		val src = new TreeTstObj();
+		val tree = src.treeData;
+		val now = System.currentTimeMillis();
+		val expirationMillis = 600_000L;
+		// all fresh, except..
+		for(val path: new NodeNamesPath[] { NodeNamesPath.ROOT, TreeTstObj.PATH_a, TreeTstObj.PATH_a_b, TreeTstObj.PATH_a_b_c, 
+				TreeTstObj.PATH_a_b_c_d1, TreeTstObj.PATH_a_b_c_d1_e1, TreeTstObj.PATH_a_b_c_d2, TreeTstObj.PATH_a_b_c_d3 }) {
+			tree.get(path).setLastExternalRefreshTimeMillis(now);
+		}
+		// due, hot
+		val data_d1 = tree.get(TreeTstObj.PATH_a_b_c_d1);
+		data_d1.setLastExternalRefreshTimeMillis(now - expirationMillis + 10_000);
+		data_d1.setLastTreeDataQueryTimeMillis(now - 1000);
+		data_d1.setLruCountAndAmortized(20, 10);
+		// due, less hot
+		val data_e1 = tree.get(TreeTstObj.PATH_a_b_c_d1_e1);
+		data_e1.setLastExternalRefreshTimeMillis(now - expirationMillis + 10_000);
+		data_e1.setLastTreeDataQueryTimeMillis(now - 60_000);
+		data_e1.setLruCountAndAmortized(1, 0);
+		// due, but cold (never queried)
+		tree.get(TreeTstObj.PATH_a_b_c_d2).setLastExternalRefreshTimeMillis(0);
+
+		val submitted = new ArrayList<NodeNamesPath>();
+		val sut = new ProactiveRefreshSweeper("test", 
+				path -> {
+					val data = tree.get(path);
+					return (data != null)? new OverrideNodeData(OverrideNodeStatus.UPDATED, data) : OverrideNodeData.NOT_OVERRIDEN;
+				},
+				() -> expirationMillis - 60_000, // refresh 1mn ahead
+				(path, priority) -> submitted.add(path));
+
+		sut.setMaxRefreshPerSecond(1);
+		sut.setSweepPeriodMillis(1000); // => budget 1 per sweep
+		Assert.assertEquals(1, sut.sweepOnce());
+		Assert.assertEquals(8, sut.getLastSweepVisitCount());
+		Assert.assertEquals(TreeTstObj.PATH_a_b_c_d1, submitted.get(0));
+
+		submitted.clear();
+		sut.setMaxRefreshPerSecond(10);
+		Assert.assertEquals(2, sut.sweepOnce());
+		Assert.assertEquals(TreeTstObj.PATH_a_b_c_d1, submitted.get(0));
+		Assert.assertEquals(TreeTstObj.PATH_a_b_c_d1_e1, submitted.get(1));
+	}
+
+}
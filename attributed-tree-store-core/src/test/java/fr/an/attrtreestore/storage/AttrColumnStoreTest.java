@@ -0,0 +1,107 @@
+package fr.an.attrtreestore.storage;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeName;
+import org.path4j.NodeNamesPath;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.LongNodeAttr;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.SynthethizedAttrInfo;
+import fr.an.attrtreestore.storage.AttrColumnStore.LongAttrColumn;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import fr.an.attrtreestore.storage.impl.InMem_TreeData;
+import lombok.val;
+
+public class AttrColumnStoreTest {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final AttrInfo<Object> sizeAttr = (AttrInfo<Object>) (AttrInfo) new SynthethizedAttrInfo<Long>(
+			"recursiveSize", Long.class, LongAttrDataEncoder.INSTANCE, ImmutableList.of());
+
+	@Test
+	public void testBuild_ordinals_sumSubTree() {
+		val src = new TreeTstObj();
+		val sut = AttrColumnStore.build(src.treeData, new AttrInfoIndexes(Arrays.asList(sizeAttr)));
+
+		// pre-order: root, a, b, c, d1, e1, d2, d3
+		Assert.assertEquals(8, sut.getNodeCount());
+		Assert.assertEquals(0, sut.ordinalOf(NodeNamesPath.ROOT));
+		val ord_c = sut.ordinalOf(TreeTstObj.PATH_a_b_c);
+		Assert.assertEquals(3, ord_c);
+		Assert.assertEquals(5, sut.ordinalOf(TreeTstObj.PATH_a_b_c_d1_e1));
+		Assert.assertEquals(6, sut.ordinalOf(TreeTstObj.PATH_a_b_c_d2));
+		Assert.assertEquals(8, sut.subTreeEndOrdinal(ord_c));
+		Assert.assertEquals(-1, sut.ordinalOf(TreeTstObj.PATH_a_b_c_d1.toChild(TreeTstObj.d2)));
+
+		val column = (LongAttrColumn) sut.column(sizeAttr);
+		for(int i = 0; i < sut.getNodeCount(); i++) {
+			column.setLong(i, 10 + i, 1000, AttrEvalStatus.OK);
+		}
+		Assert.assertEquals(13 + 14 + 15 + 16 + 17, sut.sumSubTree(sizeAttr, TreeTstObj.PATH_a_b_c));
+		Assert.assertEquals(14 + 15, sut.sumSubTree(sizeAttr, TreeTstObj.PATH_a_b_c_d1));
+		Assert.assertEquals(0, sut.sumSubTree(sizeAttr, TreeTstObj.PATH_a_b_c_d1.toChild(TreeTstObj.d2)));
+
+		val attr = sut.getAttr(sizeAttr, ord_c);
+		Assert.assertEquals(13L, ((LongNodeAttr) attr).longValue);
+		column.remove(ord_c);
+		Assert.assertNull(sut.getAttr(sizeAttr, ord_c));
+	}
+
+	@Test
+	public void testBuild_copyAttrs_sortedChildLookup() {
+		val nodeNameEncoder = DefaultNodeNameEncoder.createDefault();
+		val src = new InMem_TreeData();
+		// children deliberately not in name order
+		val childCount = 50;
+		val childNamesBuilder = ImmutableSet.<NodeName>builder();
+		for(int i = childCount - 1; i >= 0; i--) {
+			childNamesBuilder.add(nodeNameEncoder.encode("f" + i));
+		}
+		src.put_root(createData(nodeNameEncoder.encode(""), childNamesBuilder.build(), 1000));
+		for(int i = 0; i < childCount; i++) {
+			val name = nodeNameEncoder.encode("f" + i);
+			src.put_strictNoCreateParent(NodeNamesPath.of(name), createData(name, ImmutableSet.of(), i));
+		}
+
+		val sut = AttrColumnStore.build(src, new AttrInfoIndexes(Arrays.asList(sizeAttr)));
+		Assert.assertEquals(childCount + 1, sut.getNodeCount());
+		long expectedSum = 1000;
+		for(int i = 0; i < childCount; i++) {
+			val path = NodeNamesPath.of(nodeNameEncoder.encode("f" + i));
+			val ordinal = sut.ordinalOf(path);
+			Assert.assertTrue(ordinal > 0);
+			Assert.assertEquals(path.last(), sut.nameAt(ordinal));
+			// copied from source attrs
+			val attr = (LongNodeAttr) sut.getAttr(sizeAttr, ordinal);
+			Assert.assertEquals(i, attr.longValue);
+			Assert.assertEquals(100 + i, attr.getLastEvalTimestamp());
+			Assert.assertEquals(AttrEvalStatus.OK, attr.getEvalStatus());
+			expectedSum += i;
+		}
+		Assert.assertEquals(1000L, ((LongNodeAttr) sut.getAttr(sizeAttr, 0)).longValue);
+		Assert.assertEquals(expectedSum, sut.sumSubTree(sizeAttr, NodeNamesPath.ROOT));
+		Assert.assertEquals(-1, sut.ordinalOf(NodeNamesPath.of(nodeNameEncoder.encode("f" + childCount))));
+		// ordinals in name order
+		Assert.assertTrue(sut.ordinalOf(NodeNamesPath.of(nodeNameEncoder.encode("f1"))) 
+				< sut.ordinalOf(NodeNamesPath.of(nodeNameEncoder.encode("f10"))));
+	}
+
+	private static NodeData createData(NodeName name, ImmutableSet<NodeName> childNames, long size) {
+		val attrs = ImmutableMap.<String,NodeAttr>of(sizeAttr.name, new LongNodeAttr(sizeAttr, size, 100 + size, AttrEvalStatus.OK));
+		return new NodeData(name, (childNames.isEmpty())? NodeData.TYPE_FILE : NodeData.TYPE_DIR, 0, childNames, attrs,
+				0, 0, size, 0, 0, 0, 0, 0, 0, 0);
+	}
+
+}
@@ -1,11 +1,48 @@
 package fr.an.attrtreestore.storage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import org.path4j.NodeName;
+import org.path4j.NodeNameEncoder;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.api.NodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.DoubleNodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.IntNodeAttr;
+import fr.an.attrtreestore.api.NodeAttr.LongNodeAttr;
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrEvalStatus;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.AttrInfoRegistry;
+import fr.an.attrtreestore.api.attrinfo.DoubleAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.IntAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.SimpleAttrInfo;
+import fr.an.attrtreestore.api.attrinfo.SynthethizedAttrInfo;
+import fr.an.attrtreestore.storage.impl.ByteBufferDataInput;
+import lombok.val;
 
 
 public class AttrDataEncoderHelperTest {
 
+	private static final NodeNameEncoder nodeNameEncoder = DefaultNodeNameEncoder.createDefault();
+
 	@Test
 	public void testCommon() {
 		Assert.assertEquals(3, AttrDataEncoderHelper.commonStringLen("abcX", "abcY"));
@@ -15,5 +52,318 @@ public class AttrDataEncoderHelperTest {
 		Assert.assertEquals(0, AttrDataEncoderHelper.commonStringLen("X", "Y"));
 		Assert.assertEquals(0, AttrDataEncoderHelper.commonStringLen("X", ""));
 		Assert.assertEquals(0, AttrDataEncoderHelper.commonStringLen("", "Y"));
+		// not splitting surrogate pairs
+		Assert.assertEquals(1, AttrDataEncoderHelper.commonStringLen("a\uD83D\uDE00", "a\uD83D\uDE01"));
+		Assert.assertEquals(1, AttrDataEncoderHelper.commonStringLen("a\uD83D\uDE00", "a\uD83D"));
+		Assert.assertEquals(3, AttrDataEncoderHelper.commonStringLen("a\uD83D\uDE00", "a\uD83D\uDE00"));
+		Assert.assertEquals(3, AttrDataEncoderHelper.commonStringLen("a\uD83D\uDE00b", "a\uD83D\uDE00c"));
+	}
+
+	@Test
+	public void testChildNames_supplementaryChars_v1_v2_dictionary() throws IOException {
+		val sut = new AttrDataEncoderHelper(new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder);
+		NodeName name = nodeNameEncoder.encode("dir1");
+		val b = ImmutableSet.<NodeName>builder();
+		for(val childName: new String[] { "a\uD83D\uDE00", "a\uD83D\uDE01", "a\uD83D\uDE01x", "a\uD83D\uDE02", "a\uD83E\uDD14", "b" }) {
+			b.add(nodeNameEncoder.encode(childName));
+		}
+		val childNames = b.build();
+		val data = new NodeData(name, NodeData.TYPE_DIR, 0, childNames, ImmutableMap.<String,NodeAttr>of(),
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		for(val version: new int[] { 1, 2 }) {
+			sut.setWriteRecordVersion(version);
+			Assert.assertEquals("v" + version, childNames.asList(), read(sut, write(sut, data, false), name).childNames.asList());
+		}
+
+		// name dictionary section
+		val dictionary = NodeNameDictionary.forWrite(100);
+		for(val childName: childNames) {
+			dictionary.idForWrite(childName);
+		}
+		val buffer = new ByteArrayOutputStream();
+		dictionary.writeSection(new DataOutputStream(buffer));
+		val readDictionary = NodeNameDictionary.readSection(buffer.toByteArray(), nodeNameEncoder);
+		Assert.assertEquals(childNames.size(), readDictionary.size());
+		for(int i = 0; i < childNames.size(); i++) {
+			Assert.assertEquals(childNames.asList().get(i), readDictionary.nameAt(i));
+		}
+	}
+
+	@Test
+	public void testNodeData_v1_v2() throws IOException {
+		val sut = new AttrDataEncoderHelper(new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder);
+		NodeName name = nodeNameEncoder.encode("dir1");
+		val childNames = ImmutableSet.of(nodeNameEncoder.encode("file1.txt"), nodeNameEncoder.encode("file2.txt"));
+		long now = 1650000000000L;
+		val data = new NodeData(name, NodeData.TYPE_DIR, 0, childNames, ImmutableMap.<String,NodeAttr>of(),
+				now - 3600_000, now - 1000, 1234L, now, //
+				now + 1, 3, //
+				0, // treeDataRecomputationMask
+				5, 2, now + 10);
+
+		sut.setWriteRecordVersion(1);
+		val bytesV1 = write(sut, data, true);
+		sut.setWriteRecordVersion(2);
+		val bytesV2 = write(sut, data, true);
+		val bytesV2NoTransient = write(sut, data, false);
+		Assert.assertTrue(bytesV2.length * 2 < bytesV1.length);
+		Assert.assertTrue(bytesV2NoTransient.length < bytesV2.length);
+
+		// both readable
+		assertSameData(data, read(sut, bytesV1, name), true);
+		assertSameData(data, read(sut, bytesV2, name), true);
+		val resNoTransient = read(sut, bytesV2NoTransient, name);
+		assertSameData(data, resNoTransient, false);
+		Assert.assertEquals(0, resNoTransient.getLruCount());
+		Assert.assertEquals(0, resNoTransient.getLastTreeDataQueryTimeMillis());
+
+		// null data
+		Assert.assertNull(read(sut, write(sut, null, false), name));
+	}
+
+	@Test
+	public void testNodeData_v2_lastQueryTime_sameAsPrevTime() throws IOException {
+		val sut = new AttrDataEncoderHelper(new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder);
+		NodeName name = nodeNameEncoder.encode("dir1");
+		long now = 1650000000000L;
+		// lastTreeDataQueryTimeMillis == lastTreeDataUpdateTimeMillis => delta 0, still present
+		val data = new NodeData(name, NodeData.TYPE_DIR, 0, ImmutableSet.of(), ImmutableMap.<String,NodeAttr>of(),
+				now - 3600_000, now - 1000, 1234L, now, //
+				now + 1, 3, //
+				0, // treeDataRecomputationMask
+				5, 2, now + 1);
+		val res = read(sut, write(sut, data, true), name);
+		assertSameData(data, res, true);
+		Assert.assertEquals(now + 1, res.getLastTreeDataQueryTimeMillis());
+
+		// never queried => still 0
+		val dataNoQuery = new NodeData(name, NodeData.TYPE_DIR, 0, ImmutableSet.of(), ImmutableMap.<String,NodeAttr>of(),
+				now - 3600_000, now - 1000, 1234L, now, //
+				now + 1, 3, //
+				0, // treeDataRecomputationMask
+				5, 2, 0);
+		val resNoQuery = read(sut, write(sut, dataNoQuery, true), name);
+		Assert.assertEquals(0, resNoQuery.getLastTreeDataQueryTimeMillis());
+		Assert.assertEquals(5, resNoQuery.getLruCount());
+	}
+
+	@Test
+	public void testChildNames_v2_incrementalDecode() throws IOException {
+		val sut = new AttrDataEncoderHelper(new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder);
+		NodeName name = nodeNameEncoder.encode("dir1");
+		val b = ImmutableSet.<NodeName>builder();
+		for(val childName: new String[] { "abc", "abcd", "abd", "ab\u00e9t\u00e9", "ab\u00e9x", "b", "\u00e9t\u00e9-" + Strings.repeat("x", 300) }) {
+			b.add(nodeNameEncoder.encode(childName));
+		}
+		val childNames = b.build();
+		val data = new NodeData(name, NodeData.TYPE_DIR, 0, childNames, ImmutableMap.<String,NodeAttr>of(),
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		val bytes = write(sut, data, false);
+
+		Assert.assertEquals(childNames.asList(), read(sut, bytes, name).childNames.asList());
+		// same from direct ByteBuffer
+		val directBuffer = ByteBuffer.allocateDirect(bytes.length);
+		directBuffer.put(bytes);
+		val in = new ByteBufferDataInput(directBuffer, 100, 100);
+		Assert.assertEquals(childNames.asList(), sut.readNodeData_noName(in, name).childNames.asList());
+		Assert.assertEquals(100 + bytes.length, in.getFilePos());
+
+		// same for v1 records (modified-UTF8 decoded in place)
+		sut.setWriteRecordVersion(1);
+		Assert.assertEquals(childNames.asList(), read(sut, write(sut, data, false), name).childNames.asList());
+	}
+
+	/** allocation regression: decoded bytes per child name, for v1 and v2 records */
+	@Test
+	public void testReadNodeData_allocatedBytesPerChild() throws IOException {
+		val threadMXBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+		val allocMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+		Assume.assumeTrue(allocMXBean.isThreadAllocatedMemorySupported());
+		allocMXBean.setThreadAllocatedMemoryEnabled(true);
+
+		val sut = new AttrDataEncoderHelper(new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder);
+		NodeName name = nodeNameEncoder.encode("dir1");
+		val childCount = 200;
+		val b = ImmutableSet.<NodeName>builder();
+		for(int i = 0; i < childCount; i++) {
+			b.add(nodeNameEncoder.encode(String.format("file-%05d.txt", i)));
+		}
+		val data = new NodeData(name, NodeData.TYPE_DIR, 0, b.build(), ImmutableMap.<String,NodeAttr>of(),
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		val threadId = Thread.currentThread().getId();
+		for(val version: new int[] { 1, 2 }) {
+			sut.setWriteRecordVersion(version);
+			val buffer = ByteBuffer.wrap(write(sut, data, false));
+			val loopCount = 2000;
+			for(int i = 0; i < loopCount; i++) { // warmup
+				sut.readNodeData_noName(new ByteBufferDataInput(buffer, 0, 0), name);
+			}
+			val startBytes = allocMXBean.getThreadAllocatedBytes(threadId);
+			for(int i = 0; i < loopCount; i++) {
+				sut.readNodeData_noName(new ByteBufferDataInput(buffer, 0, 0), name);
+			}
+			val bytesPerChild = (allocMXBean.getThreadAllocatedBytes(threadId) - startBytes) / loopCount / childCount;
+			System.out.println("decode v" + version + ": " + bytesPerChild + " allocated bytes per child");
+			// name String + its byte[] + NodeName + ImmutableSet hash table/array slots: ~90 bytes with compressed oops (v1 was ~310)
+			Assert.assertTrue("v" + version + " allocated bytes per child: " + bytesPerChild, bytesPerChild < 150);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testPrimitiveAttrEncoders() {
+		val sizeAttr = (AttrInfo<Object>) (AttrInfo) new SynthethizedAttrInfo<Long>("recursiveSize", Long.class, 
+				LongAttrDataEncoder.INSTANCE, ImmutableList.of());
+		val countAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Integer>("count", Integer.class, IntAttrDataEncoder.INSTANCE);
+		val ratioAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Double>("ratio", Double.class, DoubleAttrDataEncoder.INSTANCE);
+
+		// written from boxed or unboxed NodeAttr, read as unboxed
+		val boxedSize = new NodeAttr(sizeAttr, 123L, 1000, AttrEvalStatus.OK);
+		val sizeBytes = writeAttr(boxedSize);
+		Assert.assertEquals(2, sizeBytes.length); // zigzag varint
+		val readSize = readAttr(sizeAttr, sizeBytes);
+		Assert.assertEquals(123L, ((LongNodeAttr) readSize).longValue);
+		Assert.assertEquals(boxedSize, readSize);
+		Assert.assertArrayEquals(sizeBytes, writeAttr(readSize));
+
+		val count = new IntNodeAttr(countAttr, -5, 1000, AttrEvalStatus.OK);
+		Assert.assertEquals(-5, ((IntNodeAttr) readAttr(countAttr, writeAttr(count))).intValue);
+
+		val ratio = new DoubleNodeAttr(ratioAttr, 0.25, 1000, AttrEvalStatus.OK);
+		Assert.assertEquals(ratio, readAttr(ratioAttr, writeAttr(ratio)));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testAttrIndexes_registryIds_appendAttr() throws IOException {
+		val sizeAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Long>("size", Long.class, LongAttrDataEncoder.INSTANCE);
+		val countAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Integer>("count", Integer.class, IntAttrDataEncoder.INSTANCE);
+		val registry = new AttrInfoRegistry(ImmutableList.of(sizeAttr));
+		Assert.assertEquals(0, registry.getId(sizeAttr));
+		val indexesV1 = new AttrInfoIndexes(registry);
+		Assert.assertEquals(0, indexesV1.attrToIndex(sizeAttr));
+		Assert.assertSame(sizeAttr, indexesV1.indexToAttr(0));
+
+		NodeName name = nodeNameEncoder.encode("file1");
+		val data = new NodeData(name, NodeData.TYPE_FILE, 0, ImmutableSet.of(), 
+				ImmutableMap.of("size", new NodeAttr(sizeAttr, 123L, 1000, AttrEvalStatus.OK)),
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		val bytes = write(new AttrDataEncoderHelper(indexesV1, nodeNameEncoder), data, false);
+
+		// append attr => existing ids unchanged, previously written data still readable
+		Assert.assertEquals(1, registry.register(countAttr));
+		Assert.assertEquals(0, registry.register(sizeAttr));
+		val indexesV2 = new AttrInfoIndexes(registry);
+		Assert.assertEquals(1, indexesV2.attrToIndex(countAttr));
+		val res = read(new AttrDataEncoderHelper(indexesV2, nodeNameEncoder), bytes, name);
+		Assert.assertEquals(123L, res.attrs.get("size").getData());
+
+		// not from registry: index by position
+		val indexesOther = new AttrInfoIndexes(ImmutableList.of(countAttr, sizeAttr));
+		Assert.assertEquals(1, indexesOther.attrToIndex(sizeAttr));
+		Assert.assertEquals(0, indexesOther.attrToIndex(countAttr));
+		// other instance with same name: not indexed, no fallback by name
+		val otherSizeAttr = new SimpleAttrInfo<Long>("size", Long.class, LongAttrDataEncoder.INSTANCE);
+		try {
+			indexesOther.attrToIndex(otherSizeAttr);
+			Assert.fail();
+		} catch(IllegalArgumentException ex) {
+			// ok
+		}
+		try {
+			indexesV1.attrToIndex(countAttr);
+			Assert.fail();
+		} catch(IllegalArgumentException ex) {
+			// ok
+		}
+		try {
+			indexesV1.indexToAttr(1);
+			Assert.fail();
+		} catch(IllegalArgumentException ex) {
+			// ok
+		}
+
+		// ids per registry: same AttrInfo in another registry, other order
+		val registryOther = new AttrInfoRegistry(ImmutableList.of(countAttr, sizeAttr));
+		Assert.assertEquals(1, registryOther.getId(sizeAttr));
+		Assert.assertEquals(0, registry.getId(sizeAttr));
+		Assert.assertEquals(1, new AttrInfoIndexes(registryOther).attrToIndex(sizeAttr));
+		Assert.assertEquals(0, new AttrInfoIndexes(registry).attrToIndex(sizeAttr));
+
+		// from Map: name order, whatever map iteration order
+		val attrMap = new HashMap<String,AttrInfo<Object>>();
+		attrMap.put("size", sizeAttr);
+		attrMap.put("count", countAttr);
+		val registryFromMap = new AttrInfoRegistry(attrMap);
+		Assert.assertEquals(0, registryFromMap.getId(countAttr));
+		Assert.assertEquals(1, registryFromMap.getId(sizeAttr));
+
+		// persisted attr table: appended attrs ok, other order rejected
+		val tableBuffer = new ByteArrayOutputStream();
+		indexesV1.writeAttrTable(new DataOutputStream(tableBuffer));
+		val fileAttrNames = AttrInfoIndexes.readAttrTable(new DataInputStream(new ByteArrayInputStream(tableBuffer.toByteArray())));
+		Assert.assertEquals(ImmutableList.of("size"), fileAttrNames);
+		indexesV2.checkAttrTable(fileAttrNames, "test");
+		try {
+			indexesOther.checkAttrTable(fileAttrNames, "test");
+			Assert.fail();
+		} catch(IllegalStateException ex) {
+			Assert.assertTrue(ex.getMessage().contains("index 0 is attr 'size' in file, 'count'"));
+		}
+	}
+
+	private static byte[] writeAttr(NodeAttr attr) {
+		val buffer = new ByteArrayOutputStream();
+		attr.attrInfo.attrDataEncoder.writeNodeAttrData(new DataOutputStream(buffer), attr);
+		return buffer.toByteArray();
+	}
+
+	private static NodeAttr readAttr(AttrInfo<Object> attrInfo, byte[] bytes) {
+		val in = new DataInputStream(new ByteArrayInputStream(bytes));
+		return attrInfo.attrDataEncoder.readNodeAttr(in, attrInfo, 1000, AttrEvalStatus.OK);
+	}
+
+	@Test
+	public void testVarLong_zigzag() throws IOException {
+		long[] values = { 0, 1, -1, 127, 128, -128, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+		for(val value: values) {
+			val buffer = new ByteArrayOutputStream();
+			AttrDataEncoderHelper.writeVarLong(new DataOutputStream(buffer), AttrDataEncoderHelper.zigzag(value));
+			val in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+			Assert.assertEquals(value, AttrDataEncoderHelper.unzigzag(AttrDataEncoderHelper.readVarLong(in)));
+		}
+	}
+
+	private static byte[] write(AttrDataEncoderHelper sut, NodeData data, boolean withTransientFields) throws IOException {
+		val buffer = new ByteArrayOutputStream();
+		val out = new DataOutputStream(buffer);
+		sut.writeNodeData_noName(out, data, withTransientFields);
+		out.flush();
+		return buffer.toByteArray();
+	}
+
+	private static NodeData read(AttrDataEncoderHelper sut, byte[] bytes, NodeName name) throws IOException {
+		val in = new DataInputStream(new ByteArrayInputStream(bytes));
+		val res = sut.readNodeData_noName(in, name);
+		Assert.assertEquals(-1, in.read()); // fully read
+		return res;
+	}
+
+	private static void assertSameData(NodeData expected, NodeData actual, boolean withTransientFields) {
+		Assert.assertEquals(expected.type, actual.type);
+		Assert.assertEquals(expected.mask, actual.mask);
+		Assert.assertEquals(expected.childNames, actual.childNames);
+		Assert.assertEquals(expected.externalCreationTime, actual.externalCreationTime);
+		Assert.assertEquals(expected.externalLastModifiedTime, actual.externalLastModifiedTime);
+		Assert.assertEquals(expected.externalLength, actual.externalLength);
+		Assert.assertEquals(expected.getLastExternalRefreshTimeMillis(), actual.getLastExternalRefreshTimeMillis());
+		Assert.assertEquals(expected.lastTreeDataUpdateTimeMillis, actual.lastTreeDataUpdateTimeMillis);
+		Assert.assertEquals(expected.lastTreeDataUpdateCount, actual.lastTreeDataUpdateCount);
+		if (withTransientFields) {
+			Assert.assertEquals(expected.getLruCount(), actual.getLruCount());
+			Assert.assertEquals(expected.getLruAmortizedCount(), actual.getLruAmortizedCount());
+			Assert.assertEquals(expected.getLastTreeDataQueryTimeMillis(), actual.getLastTreeDataQueryTimeMillis());
+		}
 	}
 }
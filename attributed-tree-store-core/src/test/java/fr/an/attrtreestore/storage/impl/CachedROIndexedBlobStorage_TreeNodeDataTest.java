@@ -1,10 +1,29 @@
 package fr.an.attrtreestore.storage.impl;
 
 import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 import org.path4j.NodeNameEncoder;
 import org.path4j.NodeNamesPath;
 import org.path4j.encoder.DefaultNodeNameEncoder;
@@ -13,14 +32,23 @@ import org.simplestorage4j.api.BlobStorageGroupId;
 import org.simplestorage4j.api.BlobStorageId;
 import org.simplestorage4j.api.FileBlobStorage;
 
+import com.google.common.collect.ImmutableList;
+
 import fr.an.attrtreestore.TstMkdirDirUtils;
 import fr.an.attrtreestore.api.NodeData;
 import fr.an.attrtreestore.api.ROCached_TreeData.IndexedBlobStorageInitMode;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.AttrInfoRegistry;
+import fr.an.attrtreestore.api.attrinfo.IntAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.SimpleAttrInfo;
 import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
 import fr.an.attrtreestore.storage.AttrInfoIndexes;
 import fr.an.attrtreestore.storage.api.TreeTstObj;
 import lombok.val;
 
+/** run for each record format version (v1: fixed size records, v2: varint encoded) */
+@RunWith(Parameterized.class)
 public class CachedROIndexedBlobStorage_TreeNodeDataTest {
 	
 	private static final File baseDir = TstMkdirDirUtils.initMkdir("target/test-data/CachedReadOnlyIndexed");
@@ -29,14 +57,28 @@ public class CachedROIndexedBlobStorage_TreeNodeDataTest {
 			"test-data", baseDir);
 	private static final AttrInfoIndexes attrIndexes; 
 	private static final NodeNameEncoder nodeNameEncoder = DefaultNodeNameEncoder.createDefault();
-	private static final AttrDataEncoderHelper attrDataEncoder; 
-	private static final IndexedBlobStorage_TreeNodeDataEncoder indexedEncoder;
 
 	static {
 		baseDir.mkdirs();
 		attrIndexes = new AttrInfoIndexes(Collections.emptyList());
-		attrDataEncoder = new AttrDataEncoderHelper(attrIndexes, nodeNameEncoder); 
-		indexedEncoder = new IndexedBlobStorage_TreeNodeDataEncoder(attrDataEncoder);
+	}
+
+	private final int recordVersion;
+	private final IndexedBlobStorage_TreeNodeDataEncoder indexedEncoder;
+	/** small prefetch size => load only 1 entry... hit/miss counts below depend on it */
+	private final int smallPrefetchSize;
+
+	@Parameters(name = "recordVersion={0}")
+	public static Collection<Object[]> recordVersions() {
+		return Arrays.asList(new Object[] { 1 }, new Object[] { 2 });
+	}
+
+	public CachedROIndexedBlobStorage_TreeNodeDataTest(int recordVersion) {
+		this.recordVersion = recordVersion;
+		val attrDataEncoder = new AttrDataEncoderHelper(attrIndexes, nodeNameEncoder); 
+		attrDataEncoder.setWriteRecordVersion(recordVersion);
+		this.indexedEncoder = new IndexedBlobStorage_TreeNodeDataEncoder(attrDataEncoder);
+		this.smallPrefetchSize = (recordVersion == 1)? 100 : 30;
 	}
 	
 	@Test
@@ -44,7 +86,7 @@ public class CachedROIndexedBlobStorage_TreeNodeDataTest {
 		val src = new TreeTstObj();
 		
 		// write to file
-		String fileName = "test-full-treedata1";
+		String fileName = "test-full-treedata1-v" + recordVersion;
 		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
 		
 		// re-read full file... and navigate + compare
@@ -75,7 +117,7 @@ public class CachedROIndexedBlobStorage_TreeNodeDataTest {
 		// re-read only file with root .. and navigate with cache resolver + compare
 		{
 			val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
-					IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 100); // small size => load only 1 entry...
+					IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, smallPrefetchSize); // small size => load only 1 entry...
 
 			get_assertDirData(src.data_a_b_c, sutReload, TreeTstObj.PATH_a_b_c);
 			val cacheHit1 = sutReload.getCacheHit();
@@ -101,10 +143,399 @@ public class CachedROIndexedBlobStorage_TreeNodeDataTest {
 		}
 	}
 
+	@Test
+	public void test_put_recursiveWriteFull_mmap() {
+		val src = new TreeTstObj();
+		
+		// write to file
+		String fileName = "test-full-treedata-mmap1-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+		val mmapFile = new MMapIndexedFile(new File(baseDir, fileName).toPath(), 6); // small chunks (64 bytes) => test entries spanning chunks
+		
+		// re-read only file with root .. and navigate with mmap + compare
+		{
+			val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+					IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, smallPrefetchSize, // small size => load only 1 entry...
+					mmapFile);
+
+			get_assertDirData(src.data_a_b_c, sutReload, TreeTstObj.PATH_a_b_c);
+			val cacheMiss1 = sutReload.getCacheMiss();
+			Assert.assertEquals(1, cacheMiss1);
+			
+			get_assertDirData(src.data_a_b_c_d1, sutReload, TreeTstObj.PATH_a_b_c_d1);
+			get_assertDirData(src.data_a_b_c_d2, sutReload, TreeTstObj.PATH_a_b_c_d2);
+			get_assertDirData(src.data_a_b_c_d3, sutReload, TreeTstObj.PATH_a_b_c_d3);
+			get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+			Assert.assertEquals(cacheMiss1, sutReload.getCacheMiss());
+		}
+
+		// re-read full
+		{
+			val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+					IndexedBlobStorageInitMode.RELOAD_FULL, -1, mmapFile);
+			get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+			Assert.assertEquals(0, sutReload.getCacheMiss());
+		}
+	}
+
+	@Test
+	public void test_asyncGet() {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-async1-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, smallPrefetchSize); // small size => load only 1 entry...
+
+		// concurrent async queries, overlapping cache misses
+		val f_a_b_c_d1_e1 = sutReload.asyncGet(TreeTstObj.PATH_a_b_c_d1_e1);
+		val f_a_b_c_d2 = sutReload.asyncGet(TreeTstObj.PATH_a_b_c_d2);
+		val f_a_b_c = sutReload.asyncGet(TreeTstObj.PATH_a_b_c);
+		
+		assertDirData(src.data_a_b_c_d1_e1, f_a_b_c_d1_e1.join(), TreeTstObj.PATH_a_b_c_d1_e1);
+		assertDirData(src.data_a_b_c_d2, f_a_b_c_d2.join(), TreeTstObj.PATH_a_b_c_d2);
+		assertDirData(src.data_a_b_c, f_a_b_c.join(), TreeTstObj.PATH_a_b_c);
+		
+		// now in cache => completed immediately
+		val cacheMiss1 = sutReload.getCacheMiss();
+		val f2 = sutReload.asyncGet(TreeTstObj.PATH_a_b_c_d1_e1);
+		Assert.assertTrue(f2.isDone());
+		assertDirData(src.data_a_b_c_d1_e1, f2.join(), TreeTstObj.PATH_a_b_c_d1_e1);
+		Assert.assertEquals(cacheMiss1, sutReload.getCacheMiss());
+	}
+
+	@Test
+	public void test_asyncGet_rejectedExecution_failedFuture() {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-async-rejected-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, smallPrefetchSize);
+		sutReload.setIoExecutor(task -> { throw new RejectedExecutionException("simulated saturated executor"); });
+
+		// no read in caller thread, no exception thrown by asyncGet() itself
+		val f = sutReload.asyncGet(TreeTstObj.PATH_a_b_c_d1_e1);
+		Assert.assertTrue(f.isCompletedExceptionally());
+		try {
+			f.join();
+			Assert.fail();
+		} catch(CompletionException ex) {
+			Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+		}
+		
+		// not kept as pending => sync get() still ok
+		get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+	}
+
+	/** counting openRead() by file position, slowed down to widen concurrent cache miss window */
+	private static class CountingReadBlobStorage extends FileBlobStorage {
+		final ConcurrentHashMap<Long,AtomicInteger> openReadCountByPos = new ConcurrentHashMap<>();
+		
+		CountingReadBlobStorage() {
+			super(new BlobStorageId("test-data"), new BlobStorageGroupId("local"), "test-data", CachedROIndexedBlobStorage_TreeNodeDataTest.baseDir);
+		}
+
+		@Override
+		public InputStream openRead(String filePath, long pos) {
+			openReadCountByPos.computeIfAbsent(pos, k -> new AtomicInteger()).incrementAndGet();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return super.openRead(filePath, pos);
+		}
+	}
+
+	@Test
+	public void test_concurrentGet_singleDecodePerEntry() throws Exception {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-concurrent1-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val countingBlobStorage = new CountingReadBlobStorage();
+		val sut = new CachedROIndexedBlobStorage_TreeNodeData(countingBlobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, smallPrefetchSize); // small size => load only 1 entry per read
+		countingBlobStorage.openReadCountByPos.clear();
+
+		val threadCount = 8;
+		val barrier = new CyclicBarrier(threadCount);
+		val executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			val futures = new ArrayList<Future<NodeData>>();
+			for(int i = 0; i < threadCount; i++) {
+				futures.add(executor.submit(() -> {
+					barrier.await();
+					return sut.get(TreeTstObj.PATH_a_b_c_d1_e1);
+				}));
+			}
+			for(val future: futures) {
+				assertDirData(src.data_a_b_c_d1_e1, future.get(10, TimeUnit.SECONDS), TreeTstObj.PATH_a_b_c_d1_e1);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		// each entry of sub-tree read (and decoded) at most once, whatever the count of concurrent readers
+		Assert.assertFalse(countingBlobStorage.openReadCountByPos.isEmpty());
+		for(val e: countingBlobStorage.openReadCountByPos.entrySet()) {
+			Assert.assertEquals("openRead at " + e.getKey(), 1, e.getValue().get());
+		}
+		Assert.assertTrue(sut.getCacheMissCoalesced() > 0);
+	}
+
+	/** throwing Error (not RuntimeException) on openRead(), while armed */
+	private static class FailingErrorBlobStorage extends FileBlobStorage {
+		volatile boolean failRead;
+		
+		FailingErrorBlobStorage() {
+			super(new BlobStorageId("test-data"), new BlobStorageGroupId("local"), "test-data", CachedROIndexedBlobStorage_TreeNodeDataTest.baseDir);
+		}
+
+		@Override
+		public InputStream openRead(String filePath, long pos) {
+			if (failRead) {
+				throw new Error("simulated read Error");
+			}
+			return super.openRead(filePath, pos);
+		}
+	}
+
+	@Test
+	public void test_loadChild_error_completesPending() throws Exception {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-error1-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val failingBlobStorage = new FailingErrorBlobStorage();
+		val sut = new CachedROIndexedBlobStorage_TreeNodeData(failingBlobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, smallPrefetchSize);
+		val executor = Executors.newSingleThreadExecutor();
+		try {
+			sut.setIoExecutor(executor);
+			failingBlobStorage.failRead = true;
+			val future = sut.asyncGet(TreeTstObj.PATH_a_b_c_d1_e1);
+			try {
+				future.get(10, TimeUnit.SECONDS); // would timeout if pending never completed
+				Assert.fail();
+			} catch(ExecutionException ex) {
+				Assert.assertEquals("simulated read Error", ex.getCause().getMessage());
+			}
+			try {
+				sut.get(TreeTstObj.PATH_a_b_c_d1_e1);
+				Assert.fail();
+			} catch(Error ex) {
+				Assert.assertEquals("simulated read Error", ex.getMessage());
+			}
+			
+			// failed pending loads are not kept => retried
+			failingBlobStorage.failRead = false;
+			get_assertDirData(src.data_a_b_c_d1_e1, sut, TreeTstObj.PATH_a_b_c_d1_e1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void test_freeMemoryByLfuEvictingSubTree() {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-lfu1-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val sut = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_FULL, -1);
+		sut.getEvictionPolicy().setRecentWindowMillis(0); // no window protection, only frequency
+		// hot sub-tree d1 (queried on child e1), d2 queried once, d3 never
+		for(int i = 0; i < 10; i++) {
+			sut.get(TreeTstObj.PATH_a_b_c_d1_e1);
+		}
+		sut.get(TreeTstObj.PATH_a_b_c_d2);
+		sut.decayLruCounts();
+		Assert.assertEquals(10, sut.get(TreeTstObj.PATH_a_b_c_d1_e1).getLruAmortizedCount());
+		
+		val params = CachedROIndexedBlobStorage_TreeNodeData.FreeMemoryByLfuEvictingSubTreeParams.builder()
+				.untilFreedMemSize(1) // => evict only 1 sub-tree
+				.minLevel(4) // a/b/c/*
+				.build();
+		Assert.assertTrue(sut.freeMemoryByLfuEvictingSubTree(params) > 0);
+
+		val cacheMiss0 = sut.getCacheMiss();
+		get_assertDirData(src.data_a_b_c_d1_e1, sut, TreeTstObj.PATH_a_b_c_d1_e1);
+		get_assertDirData(src.data_a_b_c_d2, sut, TreeTstObj.PATH_a_b_c_d2);
+		Assert.assertEquals(cacheMiss0, sut.getCacheMiss()); // hot ones still resident
+		get_assertDirData(src.data_a_b_c_d3, sut, TreeTstObj.PATH_a_b_c_d3); // coldest evicted, reloaded
+		Assert.assertTrue(sut.getCacheMiss() > cacheMiss0);
+	}
+
+	@Test
+	public void test_freeMemoryByLfuEvictingSubTree_rankedPerNode() {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-lfu2-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val sut = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_FULL, -1);
+		sut.getEvictionPolicy().setRecentWindowMillis(0);
+		// sub-tree d1 (2 entries) with highest sum, but lowest per entry
+		for(int i = 0; i < 3; i++) {
+			sut.get(TreeTstObj.PATH_a_b_c_d1);
+			sut.get(TreeTstObj.PATH_a_b_c_d1_e1);
+		}
+		for(int i = 0; i < 6; i++) {
+			sut.get(TreeTstObj.PATH_a_b_c_d2);
+		}
+		for(int i = 0; i < 5; i++) {
+			sut.get(TreeTstObj.PATH_a_b_c_d3);
+		}
+		
+		val params = CachedROIndexedBlobStorage_TreeNodeData.FreeMemoryByLfuEvictingSubTreeParams.builder()
+				.untilFreedMemSize(1) // => evict only 1 sub-tree
+				.minLevel(4) // a/b/c/*
+				.build();
+		Assert.assertTrue(sut.freeMemoryByLfuEvictingSubTree(params) > 0);
+
+		val cacheMiss0 = sut.getCacheMiss();
+		get_assertDirData(src.data_a_b_c_d2, sut, TreeTstObj.PATH_a_b_c_d2);
+		get_assertDirData(src.data_a_b_c_d3, sut, TreeTstObj.PATH_a_b_c_d3);
+		Assert.assertEquals(cacheMiss0, sut.getCacheMiss());
+		get_assertDirData(src.data_a_b_c_d1_e1, sut, TreeTstObj.PATH_a_b_c_d1_e1); // evicted, reloaded
+		Assert.assertTrue(sut.getCacheMiss() > cacheMiss0);
+	}
+
+	@Test
+	public void test_getAll_coalesced() {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-getAll1-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+
+		val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 1);
+		sutReload.defaultFetchSize = 1; // no prefetch => 1 read per missing entry
+		
+		get_assertDirData(src.data_a_b_c, sutReload, TreeTstObj.PATH_a_b_c);
+		Assert.assertEquals(3, sutReload.getCacheMiss());
+		
+		val res = sutReload.getAll(TreeTstObj.PATH_a_b_c, Arrays.asList(TreeTstObj.d1, TreeTstObj.d2, TreeTstObj.d3));
+		Assert.assertEquals(3, res.size());
+		Assert.assertEquals(1, sutReload.getCoalescedRangeReadCount()); // 1 readAt for 3 missing child
+		assertDirData(src.data_a_b_c_d1, res.get(TreeTstObj.d1), TreeTstObj.PATH_a_b_c_d1);
+		assertDirData(src.data_a_b_c_d2, res.get(TreeTstObj.d2), TreeTstObj.PATH_a_b_c_d2);
+		assertDirData(src.data_a_b_c_d3, res.get(TreeTstObj.d3), TreeTstObj.PATH_a_b_c_d3);
+		val cacheMiss1 = sutReload.getCacheMiss();
+		// batched read also counted for LFU eviction
+		val lruCount_d2 = res.get(TreeTstObj.d2).getLruCount();
+		Assert.assertTrue(lruCount_d2 >= 1);
+		sutReload.getAll(TreeTstObj.PATH_a_b_c, Arrays.asList(TreeTstObj.d2));
+		Assert.assertEquals(lruCount_d2 + 1, res.get(TreeTstObj.d2).getLruCount());
+		
+		// sub-tree of d1 also parsed from range
+		get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+		Assert.assertEquals(cacheMiss1, sutReload.getCacheMiss());
+	}
+
+	@Test
+	public void test_blockCompressed() {
+		val src = new TreeTstObj();
+		String fileName = "test-full-treedata-block1-v" + recordVersion;
+		val writer = new StreamingIndexedTreeDataWriter(indexedEncoder);
+		writer.setBlockCodec(BlockCodec.DeflateBlockCodec.DEFAULT);
+		writer.setBlockSize(64); // small blocks => test entries spanning blocks
+		val logicalLen = writer.writeFull(src.treeData, blobStorage, fileName);
+		
+		val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 100);
+		val blockIndexFile = sutReload.getBlockIndexFile();
+		Assert.assertNotNull(blockIndexFile);
+		Assert.assertEquals(logicalLen, blockIndexFile.getUncompressedLen());
+		Assert.assertTrue(blockIndexFile.getBlockCount() > 1);
+
+		get_assertDirData(src.data_a_b_c, sutReload, TreeTstObj.PATH_a_b_c);
+		get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+		val res = sutReload.getAll(TreeTstObj.PATH_a_b_c, Arrays.asList(TreeTstObj.d1, TreeTstObj.d2, TreeTstObj.d3));
+		assertDirData(src.data_a_b_c_d2, res.get(TreeTstObj.d2), TreeTstObj.PATH_a_b_c_d2);
+		assertDirData(src.data_a_b_c_d3, res.get(TreeTstObj.d3), TreeTstObj.PATH_a_b_c_d3);
+		Assert.assertTrue(blockIndexFile.getBlockLoadCount() <= blockIndexFile.getBlockCount()); // each block loaded once
+
+		// raw file not detected as block-compressed
+		String rawFileName = "test-full-treedata-block1-raw-v" + recordVersion;
+		src.treeData.recursiveWriteFull(blobStorage, rawFileName, indexedEncoder);
+		Assert.assertNull(BlockCompressedIndexFile.tryOpen(blobStorage, rawFileName, 1024));
+	}
+
+	@Test
+	public void test_nameDictionary() {
+		Assume.assumeTrue(recordVersion >= 2); // name dictionary only for v2 records
+		val src = new TreeTstObj();
+		for(val blockCodec: Arrays.asList(null, BlockCodec.DeflateBlockCodec.DEFAULT)) {
+			String fileName = "test-full-treedata-namedic" + ((blockCodec != null)? "-block" : "") + "-v" + recordVersion;
+			val writer = new StreamingIndexedTreeDataWriter(indexedEncoder);
+			writer.setUseNameDictionary(true);
+			writer.setBlockCodec(blockCodec);
+			val recordsLen = writer.writeFull(src.treeData, blobStorage, fileName);
+	
+			val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+					IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 100);
+			Assert.assertNotNull(sutReload.getNameDictionary());
+			Assert.assertTrue(sutReload.getNameDictionary().size() > 0);
+			Assert.assertEquals(recordsLen, sutReload.fileLen);
+	
+			val res_a_b_c = get_assertDirData(src.data_a_b_c, sutReload, TreeTstObj.PATH_a_b_c);
+			Assert.assertEquals(src.data_a_b_c.childNames, res_a_b_c.childNames);
+			get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+			get_assertDirData(src.data_a_b_c_d3, sutReload, TreeTstObj.PATH_a_b_c_d3);
+		}
+		
+		// without dictionary: not detected
+		String rawFileName = "test-full-treedata-namedic-raw-v" + recordVersion;
+		new StreamingIndexedTreeDataWriter(indexedEncoder).writeFull(src.treeData, blobStorage, rawFileName);
+		val sutRaw = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, rawFileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 100);
+		Assert.assertNull(sutRaw.getNameDictionary());
+		get_assertDirData(src.data_a_b_c_d1_e1, sutRaw, TreeTstObj.PATH_a_b_c_d1_e1);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void test_attrTable_checkedOnOpen() {
+		val src = new TreeTstObj();
+		val sizeAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Long>("size", Long.class, LongAttrDataEncoder.INSTANCE);
+		val countAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Integer>("count", Integer.class, IntAttrDataEncoder.INSTANCE);
+		Function<List<AttrInfo<Object>>,IndexedBlobStorage_TreeNodeDataEncoder> encoderFor = attrs -> {
+			val attrDataEncoder = new AttrDataEncoderHelper(new AttrInfoIndexes(new AttrInfoRegistry(attrs)), nodeNameEncoder);
+			attrDataEncoder.setWriteRecordVersion(recordVersion);
+			return new IndexedBlobStorage_TreeNodeDataEncoder(attrDataEncoder);
+		};
+		String fileName = "test-full-treedata-attrtable-v" + recordVersion;
+		val writer = new StreamingIndexedTreeDataWriter(encoderFor.apply(ImmutableList.of(sizeAttr)));
+		writer.setUseNameDictionary(true); // v2: both sections
+		val recordsLen = writer.writeFull(src.treeData, blobStorage, fileName);
+
+		// appended attr: ok
+		val sutReload = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, encoderFor.apply(ImmutableList.of(sizeAttr, countAttr)), 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 100);
+		Assert.assertEquals(recordsLen, sutReload.fileLen);
+		Assert.assertEquals(recordVersion >= 2, sutReload.getNameDictionary() != null);
+		get_assertDirData(src.data_a_b_c_d1_e1, sutReload, TreeTstObj.PATH_a_b_c_d1_e1);
+
+		// other ids: rejected
+		try {
+			new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, encoderFor.apply(ImmutableList.of(countAttr, sizeAttr)), 
+					IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 100);
+			Assert.fail();
+		} catch(IllegalStateException ex) {
+			Assert.assertTrue(ex.getMessage().contains("attr index mismatch"));
+		}
+	}
+
 	private static NodeData get_assertDirData(NodeData expected,
 			CachedROIndexedBlobStorage_TreeNodeData tree, 
 			NodeNamesPath path) {
 		val actual = tree.get(path);
+		assertDirData(expected, actual, path);
+		return actual;
+	}
+	
+	private static void assertDirData(NodeData expected, NodeData actual, NodeNamesPath path) {
 		Assert.assertNotNull(actual);
 		Assert.assertEquals(expected.name, path.last());
 		Assert.assertEquals(expected.name, actual.name);
@@ -121,7 +552,5 @@ public class CachedROIndexedBlobStorage_TreeNodeDataTest {
 		Assert.assertEquals(expected.getLastTreeDataUpdateCount(), actual.getLastTreeDataUpdateCount());
 		
 		// lruCount... may differ 
-		
-		return actual;
 	}
 }
@@ -0,0 +1,307 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeNamesPath;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.TreeData;
+import fr.an.attrtreestore.storage.api.TreeDataTstGenerator;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import lombok.val;
+
+public class DefaultSyncCachedImage_TreeDataTest {
+
+	/** underlying tree blocking until released, counting calls */
+	private static class BlockingTstTreeData extends TreeData {
+		final AtomicInteger getCount = new AtomicInteger();
+		/** per path.. new child names of refreshed data are resolved in background */
+		final ConcurrentHashMap<NodeNamesPath,AtomicInteger> pathGetCounts = new ConcurrentHashMap<>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final NodeData data = new TreeDataTstGenerator().createDirData(TreeTstObj.a, ImmutableSet.of(TreeTstObj.b));
+		volatile Error failWith;
+
+		int getCount(NodeNamesPath path) {
+			val res = pathGetCounts.get(path);
+			return (res != null)? res.get() : 0;
+		}
+
+		@Override
+		public NodeData get(NodeNamesPath path) {
+			getCount.incrementAndGet();
+			pathGetCounts.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			if (failWith != null) {
+				throw failWith;
+			}
+			return data;
+		}
+	}
+
+	@Test
+	public void testGetCacheWaitMax_coalesceConcurrentMiss() throws Exception {
+		val underlying = new BlockingTstTreeData();
+		val sut = new DefaultSyncCachedImage_TreeData<InMem_TreeData>("test", "test", underlying, new InMem_TreeData());
+		val path = TreeTstObj.PATH_a;
+		val threadCount = 5;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			val futures = new ArrayList<Future<NodeData>>();
+			for(int i = 0; i < threadCount; i++) {
+				futures.add(executor.submit(() -> sut.getCacheWaitMax(path, 0, 0)));
+			}
+			// wait all threads attached to pending underlying get
+			for(int retry = 0; retry < 500 && sut.getCacheGetMissCount() < threadCount; retry++) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			underlying.release.countDown();
+
+			for(val future: futures) {
+				val res = future.get(10, TimeUnit.SECONDS);
+				Assert.assertNotNull(res);
+				Assert.assertEquals(TreeTstObj.a, res.name);
+			}
+			Assert.assertEquals(1, underlying.getCount.get());
+			Assert.assertEquals(1, sut.getUnderlyingGetCount());
+			Assert.assertEquals(threadCount - 1, sut.getCacheGetCoalescedCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testGetCacheWaitMax_coalescedMiss_boundedWait_leaderError() throws Exception {
+		val underlying = new BlockingTstTreeData();
+		val sut = new DefaultSyncCachedImage_TreeData<InMem_TreeData>("test", "test", underlying, new InMem_TreeData());
+		val path = TreeTstObj.PATH_a;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			val leaderFuture = executor.submit(() -> sut.getCacheWaitMax(path, 0, 0));
+			for(int retry = 0; retry < 500 && underlying.getCount.get() < 1; retry++) {
+				Thread.sleep(10);
+			}
+			
+			// leader blocked, no stale data => follower fails after max wait
+			sut.setCoalescedMissMaxWaitMillis(50);
+			val startTime = System.currentTimeMillis();
+			try {
+				sut.getCacheWaitMax(path, 0, 0);
+				Assert.fail();
+			} catch(RuntimeException ex) {
+				Assert.assertTrue(ex.getMessage().startsWith("Timeout waiting pending underlying get"));
+			}
+			Assert.assertTrue(System.currentTimeMillis() - startTime < 5000);
+			
+			// leader fails with Error => follower is also completed (not left waiting)
+			sut.setCoalescedMissMaxWaitMillis(60_000);
+			val followerFuture = executor.submit(() -> sut.getCacheWaitMax(path, 0, 0));
+			for(int retry = 0; retry < 500 && sut.getCacheGetMissCount() < 3; retry++) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			val error = new Error("test underlying error");
+			underlying.failWith = error;
+			underlying.release.countDown();
+			
+			try {
+				leaderFuture.get(10, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch(ExecutionException ex) {
+				Assert.assertSame(error, ex.getCause());
+			}
+			try {
+				followerFuture.get(10, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch(ExecutionException ex) {
+				Assert.assertSame(error, Throwables.getRootCause(ex));
+			}
+			Assert.assertEquals(1, underlying.getCount.get());
+		} finally {
+			underlying.release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		val underlying = new BlockingTstTreeData();
+		val cachedTree = new InMem_TreeData();
+		val path = TreeTstObj.PATH_a;
+		val staleData = new TreeDataTstGenerator().createDirData(TreeTstObj.a, ImmutableSet.of()); // lastExternalRefreshTimeMillis=0 => expired
+		cachedTree.put(path, staleData);
+		val sut = new DefaultSyncCachedImage_TreeData<InMem_TreeData>("test", "test", underlying, cachedTree);
+		sut.setStaleWhileRevalidate(true);
+		try {
+			// underlying blocked => stale returned at deadline, revalidate continues in background
+			val startTime = System.currentTimeMillis();
+			val res = sut.getCacheWaitMaxWithFreshness(path, 60_000, startTime + 50);
+			Assert.assertTrue(System.currentTimeMillis() - startTime < 5000);
+			Assert.assertFalse(res.isFresh());
+			Assert.assertTrue(res.getData().childNames.isEmpty());
+			Assert.assertEquals(1, sut.getServedStaleCount());
+
+			// deadline already exceeded => stale returned at once, coalesced with pending revalidate
+			val res2 = sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+			Assert.assertFalse(res2.isFresh());
+
+			underlying.release.countDown();
+			for(int retry = 0; retry < 500 && cachedTree.get(path).childNames.isEmpty(); retry++) {
+				Thread.sleep(10);
+			}
+			val res3 = sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+			Assert.assertTrue(res3.isFresh());
+			Assert.assertEquals(1, res3.getData().childNames.size());
+			Assert.assertEquals(1, underlying.getCount(path)); // child 'a/b' may also be resolved in background
+		} finally {
+			underlying.release.countDown();
+		}
+	}
+
+	@Test
+	public void testRefreshExpired_keepsLruCounts() {
+		val underlying = new BlockingTstTreeData();
+		underlying.release.countDown();
+		val cachedTree = new InMem_TreeData();
+		val path = TreeTstObj.PATH_a;
+		val staleData = new TreeDataTstGenerator().createDirData(TreeTstObj.a, ImmutableSet.of()); // expired
+		staleData.setLruCountAndAmortized(5, 8);
+		cachedTree.put(path, staleData);
+		val sut = new DefaultSyncCachedImage_TreeData<InMem_TreeData>("test", "test", underlying, cachedTree);
+
+		val res = sut.getCacheWaitMax(path, 60_000, System.currentTimeMillis() + 60_000);
+		Assert.assertEquals(1, res.childNames.size()); // refreshed
+		Assert.assertEquals(6, res.getLruCount()); // +1 for this query
+		Assert.assertEquals(8, res.getLruAmortizedCount());
+		Assert.assertSame(res, cachedTree.get(path));
+	}
+
+	/** executor silently dropping tasks */
+	private static class DiscardingTstExecutorService extends AbstractExecutorService {
+		final AtomicInteger discardedCount = new AtomicInteger();
+		@Override
+		public void execute(Runnable command) {
+			discardedCount.incrementAndGet();
+		}
+		@Override
+		public void shutdown() {
+		}
+		@Override
+		public List<Runnable> shutdownNow() {
+			return Collections.emptyList();
+		}
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return false;
+		}
+	}
+
+	private static DefaultSyncCachedImage_TreeData<InMem_TreeData> createStaleSut(BlockingTstTreeData underlying, InMem_TreeData cachedTree) {
+		val staleData = new TreeDataTstGenerator().createDirData(TreeTstObj.a, ImmutableSet.of()); // lastExternalRefreshTimeMillis=0 => expired
+		cachedTree.put(TreeTstObj.PATH_a, staleData);
+		val sut = new DefaultSyncCachedImage_TreeData<InMem_TreeData>("test", "test", underlying, cachedTree);
+		sut.setStaleWhileRevalidate(true);
+		return sut;
+	}
+
+	private static void assertRevalidated(DefaultSyncCachedImage_TreeData<InMem_TreeData> sut, InMem_TreeData cachedTree) throws InterruptedException {
+		val path = TreeTstObj.PATH_a;
+		sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+		for(int retry = 0; retry < 500 && cachedTree.get(path).childNames.isEmpty(); retry++) {
+			Thread.sleep(10);
+		}
+		val res = sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+		Assert.assertTrue(res.isFresh());
+		Assert.assertEquals(1, res.getData().childNames.size());
+	}
+
+	@Test
+	public void testStaleWhileRevalidate_discardedTask_replaced() throws Exception {
+		val underlying = new BlockingTstTreeData();
+		underlying.release.countDown();
+		val cachedTree = new InMem_TreeData();
+		val sut = createStaleSut(underlying, cachedTree);
+		val path = TreeTstObj.PATH_a;
+		val discardingExecutor = new DiscardingTstExecutorService();
+		sut.setBackgroundRevalidateExecutorService(discardingExecutor);
+
+		val res = sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+		Assert.assertFalse(res.isFresh());
+		Assert.assertEquals(1, discardingExecutor.discardedCount.get());
+		// queued for less than maxRevalidateQueuedMillis => coalesced, not resubmitted
+		sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+		Assert.assertEquals(1, discardingExecutor.discardedCount.get());
+
+		// lost task replaced
+		sut.setMaxRevalidateQueuedMillis(0);
+		Thread.sleep(5);
+		sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+		Assert.assertEquals(2, discardingExecutor.discardedCount.get());
+
+		Thread.sleep(5);
+		val executor = Executors.newSingleThreadExecutor();
+		try {
+			sut.setBackgroundRevalidateExecutorService(executor);
+			assertRevalidated(sut, cachedTree);
+			Assert.assertEquals(1, underlying.getCount(path));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testStaleWhileRevalidate_stopBackgroundRefresh_discardsQueuedTasks() throws Exception {
+		val underlying = new BlockingTstTreeData();
+		underlying.release.countDown();
+		val cachedTree = new InMem_TreeData();
+		val sut = createStaleSut(underlying, cachedTree);
+		val path = TreeTstObj.PATH_a;
+		sut.startBackgroupRefreshSupport();
+		val discardingExecutor = new DiscardingTstExecutorService();
+		sut.setBackgroundRevalidateExecutorService(discardingExecutor);
+
+		val res = sut.getCacheWaitMaxWithFreshness(path, 60_000, 0);
+		Assert.assertFalse(res.isFresh());
+		// queued task will never run.. cleaned up on stop
+		sut.stopBackgroupRefreshSupport();
+
+		val executor = Executors.newSingleThreadExecutor();
+		try {
+			sut.setBackgroundRevalidateExecutorService(executor);
+			assertRevalidated(sut, cachedTree);
+			Assert.assertEquals(1, underlying.getCount(path));
+			Assert.assertEquals(1, discardingExecutor.discardedCount.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,253 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeName;
+import org.path4j.NodeNameEncoder;
+import org.path4j.NodeNamesPath;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+import org.simplestorage4j.api.BlobStorage;
+import org.simplestorage4j.api.BlobStorageGroupId;
+import org.simplestorage4j.api.BlobStorageId;
+import org.simplestorage4j.api.FileBlobStorage;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.TstMkdirDirUtils;
+import fr.an.attrtreestore.impl.refresh.ProactiveRefreshSweeper;
+import fr.an.attrtreestore.api.override.OverrideNodeStatus;
+import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+import fr.an.attrtreestore.storage.AttrInfoIndexes;
+import fr.an.attrtreestore.storage.api.TreeDataTstGenerator;
+import lombok.val;
+
+public class PersistedTreeDataTest {
+
+	private static final File baseDir = TstMkdirDirUtils.initMkdir("target/test-data/PersistedTreeData");
+	private static final BlobStorage blobStorage = new FileBlobStorage(
+			new BlobStorageId("test-data"), new BlobStorageGroupId("local"), 
+			"test-data", baseDir);
+	private static final NodeNameEncoder nodeNameEncoder = DefaultNodeNameEncoder.createDefault(); 
+	private static final AttrDataEncoderHelper attrDataEncoderHelper = new AttrDataEncoderHelper(
+			new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder);
+	
+	TreeDataTstGenerator gen = new TreeDataTstGenerator();
+
+	private static final NodeName a = nodeNameEncoder.encode("a");
+	private static final NodeName b1 = nodeNameEncoder.encode("b1");
+	private static final NodeName b2 = nodeNameEncoder.encode("b2");
+	private static final NodeNamesPath PATH_a = nodeNameEncoder.encodePath("a");
+	private static final NodeNamesPath PATH_a_b1 = nodeNameEncoder.encodePath("a/b1");
+	private static final NodeNamesPath PATH_a_b2 = nodeNameEncoder.encodePath("a/b2");
+
+	@Test
+	public void test_recompact() {
+		String testDir = "test-recompact";
+		TstMkdirDirUtils.initMkdir(baseDir, testDir);
+		val sut = new PersistedTreeData(blobStorage, testDir, attrDataEncoderHelper);
+		sut.setRecompactTriggerWalEntryCount(0); // no auto trigger
+		sut.setRecompactTriggerWalFileLen(0);
+
+		sut.put(NodeNamesPath.ROOT, gen.createDirData(NodeName.EMPTY, ImmutableSet.of(a)));
+		sut.put(PATH_a, gen.createDirData(a, ImmutableSet.of(b1)));
+		sut.put(PATH_a_b1, gen.createDirData(b1, ImmutableSet.of()));
+		
+		// sync recompaction
+		sut.writeRecompactIndexFile();
+		Assert.assertEquals(1, sut.getRecompactCount());
+		Assert.assertTrue(sut.getLastRecompactWrittenBytes() > 0);
+		Assert.assertNotNull(sut.get(PATH_a_b1));
+
+		// write in new WAL, then background recompaction
+		sut.put(PATH_a, gen.createDirData(a, ImmutableSet.of(b1, b2)));
+		sut.put(PATH_a_b2, gen.createDirData(b2, ImmutableSet.of()));
+		sut.submitBackgroundRecompact().join();
+		Assert.assertEquals(2, sut.getRecompactCount());
+		Assert.assertNotNull(sut.get(PATH_a_b1));
+		Assert.assertNotNull(sut.get(PATH_a_b2));
+		
+		// reload from manifest + index file
+		val sutReload = new PersistedTreeData(blobStorage, testDir, attrDataEncoderHelper);
+		Assert.assertNotNull(sutReload.get(PATH_a_b1));
+		Assert.assertNotNull(sutReload.get(PATH_a_b2));
+	}
+
+	@Test
+	public void test_lruDecay_freeMemoryByLfuEvicting() {
+		String testDir = "test-lfu";
+		TstMkdirDirUtils.initMkdir(baseDir, testDir);
+		val sut = new PersistedTreeData(blobStorage, testDir, attrDataEncoderHelper);
+		sut.setRecompactTriggerWalEntryCount(0); // no auto trigger
+		sut.setRecompactTriggerWalFileLen(0);
+		sut.put(NodeNamesPath.ROOT, gen.createDirData(NodeName.EMPTY, ImmutableSet.of(a)));
+		val data_a = gen.createDirData(a, ImmutableSet.of(b1));
+		sut.put(PATH_a, data_a);
+		sut.put(PATH_a_b1, gen.createDirData(b1, ImmutableSet.of()));
+		for(int i = 0; i < 4; i++) {
+			sut.get(PATH_a);
+		}
+		val lruCount = data_a.getLruCount();
+		Assert.assertTrue(lruCount >= 4);
+
+		sut.getLruDecayTicker().tick(); // => decayLruCounts() on WALs + index
+		Assert.assertEquals(0, data_a.getLruCount());
+		Assert.assertEquals(lruCount, data_a.getLruAmortizedCount());
+
+		sut.flushWrite(); // only flushed WAL data can be evicted
+		Assert.assertTrue(sut.freeMemoryByLfuEvicting(Long.MAX_VALUE) > 0);
+		val res_a = sut.get(PATH_a);
+		Assert.assertNotSame(data_a, res_a); // reloaded from WAL
+		Assert.assertEquals(data_a.childNames, res_a.childNames);
+	}
+
+	@Test
+	public void test_recompact_concurrentReadsWrites() throws Exception {
+		String testDir = "test-recompact-concurrent";
+		TstMkdirDirUtils.initMkdir(baseDir, testDir);
+		val sut = new PersistedTreeData(blobStorage, testDir, attrDataEncoderHelper);
+		sut.setRecompactTriggerWalEntryCount(0); // no auto trigger
+		sut.setRecompactTriggerWalFileLen(0);
+
+		val childCount = 20;
+		val childNames = new ArrayList<NodeName>();
+		for(int i = 0; i < childCount; i++) {
+			childNames.add(nodeNameEncoder.encode(String.format("x%02d", i))); // sorted, as expected in index
+		}
+		sut.put(NodeNamesPath.ROOT, gen.createDirData(NodeName.EMPTY, ImmutableSet.of(a)));
+		sut.put(PATH_a, gen.createDirData(a, ImmutableSet.copyOf(childNames)));
+		val lastWrittenModifTimes = new long[childCount];
+		for(int i = 0; i < childCount; i++) {
+			val childData = gen.createDirData(childNames.get(i), ImmutableSet.of());
+			sut.put(PATH_a.toChild(childNames.get(i)), childData);
+			lastWrittenModifTimes[i] = childData.externalLastModifiedTime;
+		}
+		sut.writeRecompactIndexFile();
+		val PATH_a_x0 = PATH_a.toChild(childNames.get(0));
+
+
+		val stop = new AtomicBoolean();
+		val failure = new AtomicReference<Throwable>();
+		val readCount = new AtomicInteger();
+		val readers = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++) {
+			readers.add(new Thread(() -> {
+				try {
+					while(! stop.get()) {
+						Assert.assertNotNull(sut.get(PATH_a_x0));
+						Assert.assertNotNull(sut.asyncGet(PATH_a_x0).join());
+						Assert.assertEquals(childCount, sut.getAll(PATH_a, childNames).size());
+						val inMem = sut.getIfInMemCache(PATH_a_x0); // never on a retired (deleted) index file
+						Assert.assertTrue(inMem == null || inMem.status != OverrideNodeStatus.DELETED);
+						readCount.incrementAndGet();
+					}
+				} catch(Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+			}));
+		}
+		// writer: updating children round-robin .. no update may be lost when WAL is rolled
+		val writer = new Thread(() -> {
+			try {
+				for(int i = 0; ! stop.get(); i = (i + 1) % childCount) {
+					val childData = gen.createDirData(childNames.get(i), ImmutableSet.of());
+					sut.put(PATH_a.toChild(childNames.get(i)), childData);
+					lastWrittenModifTimes[i] = childData.externalLastModifiedTime;
+				}
+			} catch(Throwable ex) {
+				failure.compareAndSet(null, ex);
+			}
+		});
+		readers.forEach(Thread::start);
+		writer.start();
+		
+		for(int i = 0; i < 5; i++) {
+			sut.writeRecompactIndexFile();
+		}
+		stop.set(true);
+		for(val reader: readers) {
+			reader.join();
+		}
+		writer.join();
+		if (failure.get() != null) {
+			throw new AssertionError("failed concurrent read/write during recompaction", failure.get());
+		}
+		Assert.assertTrue(readCount.get() > 0);
+		Assert.assertEquals(6, sut.getRecompactCount());
+
+		// retired index files deleted, once all reads released
+		val remainIndexFiles = new File(baseDir, testDir).list((dir, name) -> name.startsWith("index-"));
+		Assert.assertEquals(1, remainIndexFiles.length);
+
+		// last updates are in last recompacted index, or in WAL
+		sut.writeRecompactIndexFile();
+		for(int i = 0; i < childCount; i++) {
+			Assert.assertEquals("lost update x" + i, lastWrittenModifTimes[i], 
+					sut.get(PATH_a.toChild(childNames.get(i))).externalLastModifiedTime);
+		}
+		sut.flushWrite();
+		val sutReload = new PersistedTreeData(blobStorage, testDir, attrDataEncoderHelper);
+		for(int i = 0; i < childCount; i++) {
+			Assert.assertEquals("lost update x" + i, lastWrittenModifTimes[i], 
+					sutReload.get(PATH_a.toChild(childNames.get(i))).externalLastModifiedTime);
+		}
+	}
+
+	@Test
+	public void test_refreshSweep_getIfInMemCache_noIO() {
+		String testDir = "test-sweep-noio";
+		TstMkdirDirUtils.initMkdir(baseDir, testDir);
+		val readCount = new AtomicInteger();
+		val countingBlobStorage = new FileBlobStorage(
+				new BlobStorageId("test-data"), new BlobStorageGroupId("local"), "test-data", baseDir) {
+			@Override
+			public InputStream openRead(String filePath, long position) {
+				readCount.incrementAndGet();
+				return super.openRead(filePath, position);
+			}
+			@Override
+			public byte[] readAt(String filePath, long position, int len) {
+				readCount.incrementAndGet();
+				return super.readAt(filePath, position, len);
+			}
+		};
+		val sut = new PersistedTreeData(countingBlobStorage, testDir, attrDataEncoderHelper);
+		sut.setRecompactTriggerWalEntryCount(0); // no auto trigger
+		sut.setRecompactTriggerWalFileLen(0);
+		sut.put(NodeNamesPath.ROOT, gen.createDirData(NodeName.EMPTY, ImmutableSet.of(a)));
+		sut.put(PATH_a, gen.createDirData(a, ImmutableSet.of(b1)));
+		sut.put(PATH_a_b1, gen.createDirData(b1, ImmutableSet.of()));
+		sut.writeRecompactIndexFile();
+		sut.put(PATH_a, gen.createDirData(a, ImmutableSet.of(b1, b2)));
+		sut.put(PATH_a_b2, gen.createDirData(b2, ImmutableSet.of()));
+		sut.flushWrite();
+		sut.freeMemoryByLfuEvicting(Long.MAX_VALUE);
+
+		val sweeper = new ProactiveRefreshSweeper("test", sut, () -> 0L, (path, priority) -> {});
+		readCount.set(0);
+		sweeper.sweepOnce();
+		Assert.assertEquals(0, readCount.get());
+		// evicted override is not in memory, never the older index data
+		val inMem_a = sut.getIfInMemCache(PATH_a);
+		Assert.assertTrue(inMem_a.status == OverrideNodeStatus.NOT_OVERRIDEN || inMem_a.data.childNames.size() == 2);
+		Assert.assertEquals(0, readCount.get());
+
+		// explicit get() still reloads
+		Assert.assertEquals(2, sut.get(PATH_a).childNames.size());
+		Assert.assertNotNull(sut.get(PATH_a_b1));
+		Assert.assertTrue(readCount.get() > 0);
+		// then in memory, visited by sweep without IO
+		readCount.set(0);
+		sweeper.sweepOnce();
+		Assert.assertTrue(sweeper.getLastSweepVisitCount() >= 2);
+		Assert.assertEquals(0, readCount.get());
+	}
+
+}
@@ -0,0 +1,50 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import lombok.val;
+
+public class PositionalDataInputTest {
+
+	@Test
+	public void testRead_byteBuffer() throws IOException {
+		val bout = new ByteArrayOutputStream();
+		val out = new DataOutputStream(bout);
+		out.writeShort(-2);
+		out.writeInt(123456789);
+		out.writeLong(-987654321987L);
+		out.writeUTF("héllo");
+		out.writeBytes("line1\r\nline2\nline3");
+		val bytes = bout.toByteArray();
+
+		// file positions from 100, buffer as direct => generic byte per byte path 
+		val directBuffer = ByteBuffer.allocateDirect(bytes.length);
+		directBuffer.put(bytes).flip();
+		for(val buffer: new ByteBuffer[] { ByteBuffer.wrap(bytes), directBuffer }) {
+			val in = new ByteBufferDataInput(buffer, 100, 100);
+			Assert.assertEquals(-2, in.readShort());
+			Assert.assertEquals(123456789, in.readInt());
+			Assert.assertEquals(-987654321987L, in.readLong());
+			Assert.assertEquals("héllo", in.readUTF());
+			Assert.assertEquals("line1", in.readLine());
+			Assert.assertEquals("line2", in.readLine());
+			Assert.assertEquals("line3", in.readLine());
+			Assert.assertNull(in.readLine());
+			Assert.assertEquals(100 + bytes.length, in.getFilePos());
+			try {
+				in.readByte();
+				Assert.fail();
+			} catch(EOFException ex) {
+				// ok
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.path4j.NodeName;
+import org.path4j.NodeNameEncoder;
+import org.path4j.NodeNamesPath;
+import org.path4j.encoder.DefaultNodeNameEncoder;
+import org.simplestorage4j.api.BlobStorage;
+import org.simplestorage4j.api.BlobStorageGroupId;
+import org.simplestorage4j.api.BlobStorageId;
+import org.simplestorage4j.api.FileBlobStorage;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.an.attrtreestore.TstMkdirDirUtils;
+import fr.an.attrtreestore.api.ROCached_TreeData.IndexedBlobStorageInitMode;
+import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
+import fr.an.attrtreestore.storage.AttrInfoIndexes;
+import fr.an.attrtreestore.storage.api.TreeDataTstGenerator;
+import fr.an.attrtreestore.storage.api.TreeTstObj;
+import lombok.val;
+
+public class StreamingIndexedTreeDataWriterTest {
+
+	private static final NodeNameEncoder nodeNameEncoder = DefaultNodeNameEncoder.createDefault();
+	private static final AttrDataEncoderHelper attrDataEncoder = new AttrDataEncoderHelper(
+			new AttrInfoIndexes(Collections.emptyList()), nodeNameEncoder); 
+	private static final IndexedBlobStorage_TreeNodeDataEncoder indexedEncoder = new IndexedBlobStorage_TreeNodeDataEncoder(attrDataEncoder);
+
+	private static final File baseDir = TstMkdirDirUtils.initMkdir("target/test-data/StreamingIndexedTreeDataWriter");
+	private static final BlobStorage blobStorage = new FileBlobStorage(
+			new BlobStorageId("test-data"), new BlobStorageGroupId("local"), 
+			"test-data", baseDir);
+
+	@Test
+	public void testWriteFull_sameAsInMemWrite() throws IOException {
+		val src = new TreeTstObj();
+		
+		val expectedOut = new ByteArrayOutputStream();
+		src.treeData.recursiveWriteFull(expectedOut, indexedEncoder);
+		val expected = expectedOut.toByteArray();
+		
+		val sut = new StreamingIndexedTreeDataWriter(indexedEncoder);
+		sut.setSpillBufferSize(16); // small buffer => test records spanning backward read chunks
+		val actualOut = new ByteArrayOutputStream();
+		val actualLen = sut.writeFull(src.treeData, actualOut);
+		val actual = actualOut.toByteArray();
+		
+		Assert.assertEquals(expected.length, actualLen);
+		Assert.assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testWriteFull_fromCachingReader_boundedLoadedEntries() throws IOException {
+		// root / 10 dirs / 10 files each
+		val gen = new TreeDataTstGenerator();
+		val src = new InMem_TreeData();
+		val dirCount = 10;
+		val fileCount = 10;
+		val dirNames = new ArrayList<NodeName>();
+		for(int i = 0; i < dirCount; i++) {
+			dirNames.add(nodeNameEncoder.encode("d" + i));
+		}
+		val fileNames = new ArrayList<NodeName>();
+		for(int j = 0; j < fileCount; j++) {
+			fileNames.add(nodeNameEncoder.encode("f" + j));
+		}
+		src.put_root(gen.createDirData(NodeName.EMPTY, ImmutableSet.copyOf(dirNames)));
+		for(val dirName: dirNames) {
+			val dirPath = NodeNamesPath.of(dirName);
+			src.put(dirPath, gen.createDirData(dirName, ImmutableSet.copyOf(fileNames)));
+			for(val fileName: fileNames) {
+				src.put(dirPath.toChild(fileName), gen.createDirData(fileName, ImmutableSet.of()));
+			}
+		}
+		val fileName = "src-index";
+		src.recursiveWriteFull(blobStorage, fileName, indexedEncoder);
+		val expectedOut = new ByteArrayOutputStream();
+		src.recursiveWriteFull(expectedOut, indexedEncoder);
+
+		val reader = new CachedROIndexedBlobStorage_TreeNodeData(blobStorage, fileName, indexedEncoder, 
+				IndexedBlobStorageInitMode.RELOAD_ROOT_ONLY, 1);
+		reader.setMaxPrefetchSize(1); // no prefetch of sibling sub-trees
+
+		val sut = new StreamingIndexedTreeDataWriter(indexedEncoder);
+		val maxLoadedCount = new int[1];
+		sut.setSubTreeSpilledCallback(path -> {
+			maxLoadedCount[0] = Math.max(maxLoadedCount[0], reader.getLoadedEntryCount());
+			reader.evictLoadedSubTree(path);
+		});
+		val actualOut = new ByteArrayOutputStream();
+		sut.writeFull(reader, actualOut);
+
+		Assert.assertArrayEquals(expectedOut.toByteArray(), actualOut.toByteArray());
+		// at most: root + dirs + files of 1 dir, instead of full tree (1 + 10 + 100)
+		Assert.assertTrue("max loaded:" + maxLoadedCount[0], maxLoadedCount[0] <= 1 + dirCount + fileCount);
+		Assert.assertTrue(reader.getLoadedEntryCount() <= 1 + dirCount);
+	}
+
+}
@@ -1,7 +1,17 @@
 package fr.an.attrtreestore.storage.impl;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 import org.junit.Assert;
@@ -15,10 +25,16 @@ import org.simplestorage4j.api.BlobStorageGroupId;
 import org.simplestorage4j.api.BlobStorageId;
 import org.simplestorage4j.api.FileBlobStorage;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import fr.an.attrtreestore.TstMkdirDirUtils;
 import fr.an.attrtreestore.api.NodeData;
+import fr.an.attrtreestore.api.attrinfo.AttrInfo;
+import fr.an.attrtreestore.api.attrinfo.AttrInfoRegistry;
+import fr.an.attrtreestore.api.attrinfo.IntAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.LongAttrDataEncoder;
+import fr.an.attrtreestore.api.attrinfo.SimpleAttrInfo;
 import fr.an.attrtreestore.api.override.OverrideNodeStatus;
 import fr.an.attrtreestore.storage.AttrDataEncoderHelper;
 import fr.an.attrtreestore.storage.AttrInfoIndexes;
@@ -50,6 +66,35 @@ public class WALBlobStorage_OverrideTreeDataTest {
 		attrDataEncoderHelper = new AttrDataEncoderHelper(attrIndexes, nodeNameEncoder);
 	}
 			
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void test_attrTable_checkedOnReload() {
+		val sizeAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Long>("size", Long.class, LongAttrDataEncoder.INSTANCE);
+		val countAttr = (AttrInfo<Object>) (AttrInfo) new SimpleAttrInfo<Integer>("count", Integer.class, IntAttrDataEncoder.INSTANCE);
+		val fileName = "test-attrtable";
+		val encoderV1 = new AttrDataEncoderHelper(new AttrInfoIndexes(new AttrInfoRegistry(ImmutableList.of(sizeAttr))), nodeNameEncoder);
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, encoderV1);
+		sut.initCreateEmpty();
+		sut.put(PATH_a_b_c, gen.createDirData(c, ImmutableSet.of(d1, d2)));
+		sut.flushStopWrite();
+
+		// appended attr: ok
+		val encoderAppended = new AttrDataEncoderHelper(new AttrInfoIndexes(new AttrInfoRegistry(ImmutableList.of(sizeAttr, countAttr))), nodeNameEncoder);
+		val reloaded = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, encoderAppended);
+		reloaded.initReload();
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, reloaded.getOverride(PATH_a_b_c).status);
+		reloaded.flushStopWrite();
+
+		// other ids: rejected
+		val encoderOther = new AttrDataEncoderHelper(new AttrInfoIndexes(new AttrInfoRegistry(ImmutableList.of(countAttr, sizeAttr))), nodeNameEncoder);
+		try {
+			new WALBlobStorage_OverrideTreeData(blobStorage, fileName, encoderOther).initReload();
+			Assert.fail();
+		} catch(IllegalStateException ex) {
+			Assert.assertTrue(ex.getMessage().contains("attr index mismatch"));
+		}
+	}
+
 	@Test
 	public void test_put_get_remove() {
 		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, "test1", attrDataEncoderHelper);
@@ -137,6 +182,270 @@ public class WALBlobStorage_OverrideTreeDataTest {
 		
 	}
 	
+	@Test
+	public void test_getOverride_notBlockedByWriteLock() throws Exception {
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, "test-lockfree", attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		sut.put(PATH_a_b_c, gen.createDirData(c, ImmutableSet.of(d1, d2)));
+
+		// simulate a writer blocked while appending to WAL
+		val lockAcquired = new CountDownLatch(1);
+		val releaseLock = new CountDownLatch(1);
+		val writerThread = new Thread(() -> {
+			synchronized(sut.writeLock) {
+				lockAcquired.countDown();
+				try {
+					releaseLock.await();
+				} catch (InterruptedException ex) {
+					// ignore
+				}
+			}
+		});
+		writerThread.start();
+		try {
+			Assert.assertTrue(lockAcquired.await(10, TimeUnit.SECONDS));
+			val readResult = CompletableFuture.supplyAsync(() -> sut.getOverride(PATH_a_b_c));
+			val res = readResult.get(10, TimeUnit.SECONDS); // would timeout if blocked
+			Assert.assertEquals(OverrideNodeStatus.UPDATED, res.status);
+		} finally {
+			releaseLock.countDown();
+			writerThread.join();
+			sut.flushStopWrite();
+		}
+	}
+
+	@Test
+	public void test_concurrent_put_remove_getOverride() throws Exception {
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, "test-stress", attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		val names = new NodeName[8];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = nodeNameEncoder.encode("n" + i);
+		}
+		val paths = new ArrayList<NodeNamesPath>();
+		for(val n1: names) {
+			val p1 = PATH_a_b_c.toChild(n1);
+			paths.add(p1);
+			for(val n2: names) {
+				paths.add(p1.toChild(n2));
+			}
+		}
+		val stop = new AtomicBoolean();
+		val readCount = new AtomicLong();
+		val failure = new AtomicReference<Throwable>();
+		int writerCount = 4, readerCount = 4;
+		val executor = Executors.newFixedThreadPool(writerCount + readerCount);
+		val writerFutures = new ArrayList<Future<?>>();
+		for(int t = 0; t < writerCount; t++) {
+			val seed = t;
+			writerFutures.add(executor.submit(() -> {
+				val rand = new Random(seed);
+				try {
+					for(int i = 0; i < 2000; i++) {
+						val path = paths.get(rand.nextInt(paths.size()));
+						if (rand.nextInt(4) == 0) {
+							sut.remove(path);
+						} else {
+							sut.put(path, gen.createDirData(path.last(), ImmutableSet.of()));
+						}
+					}
+				} catch(Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+			}));
+		}
+		for(int t = 0; t < readerCount; t++) {
+			val seed = 100 + t;
+			executor.submit(() -> {
+				val rand = new Random(seed);
+				try {
+					while(! stop.get()) {
+						val path = paths.get(rand.nextInt(paths.size()));
+						val res = sut.getOverride(path);
+						if (res != null && res.status == OverrideNodeStatus.UPDATED) {
+							Assert.assertNotNull(res.data);
+							Assert.assertEquals(path.last(), res.data.name);
+						}
+						readCount.incrementAndGet();
+					}
+				} catch(Throwable ex) {
+					failure.compareAndSet(null, ex);
+				}
+			});
+		}
+		// writers finish, then stop readers
+		for(val f: writerFutures) {
+			f.get(60, TimeUnit.SECONDS);
+		}
+		stop.set(true);
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		sut.flushStopWrite();
+		if (failure.get() != null) {
+			throw new AssertionError("failed", failure.get());
+		}
+		Assert.assertTrue(readCount.get() > 0);
+
+		// check in-memory state same as reloaded from WAL file
+		val sutReload = new WALBlobStorage_OverrideTreeData(blobStorage, "test-stress", attrDataEncoderHelper);
+		sutReload.initReload();
+		for(val path: paths) {
+			val expected = sut.getOverride(path);
+			val actual = sutReload.getOverride(path);
+			val expectedStatus = (expected != null)? expected.status : null;
+			val actualStatus = (actual != null)? actual.status : null;
+			Assert.assertEquals("status for " + path, expectedStatus, actualStatus);
+		}
+	}
+
+	@Test
+	public void test_reload_checkpoint() {
+		val fileName = "test-ckpt";
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		val data_a_b_c = gen.createDirData(c, ImmutableSet.of(d1, d2));
+		sut.put(PATH_a_b_c, data_a_b_c);
+		sut.put(PATH_a_b_c_d1, gen.createDirData(d1, ImmutableSet.of()));
+		sut.writeCheckpoint();
+		sut.remove(PATH_a_b_c_d1);
+		// no checkpoint for last remove
+		
+		val reload1 = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		reload1.initReload();
+		val walFileLen = blobStorage.fileLen(fileName);
+		Assert.assertTrue(reload1.getLastReloadReplayedBytes() > 0);
+		Assert.assertTrue(reload1.getLastReloadReplayedBytes() < walFileLen / 2);
+		val res_a_b_c = reload1.getOverride(PATH_a_b_c);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, res_a_b_c.status);
+		Assert.assertEquals(data_a_b_c.childNames, res_a_b_c.data.childNames); // lazy reloaded from WAL
+		Assert.assertEquals(OverrideNodeStatus.DELETED, reload1.getOverride(PATH_a_b_c_d1).status);
+		
+		// clean stop => checkpoint up to end of WAL
+		sut.flushStopWrite();
+		val reload2 = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		reload2.initReload();
+		Assert.assertEquals(0, reload2.getLastReloadReplayedBytes());
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, reload2.getOverride(PATH_a_b_c).status);
+		Assert.assertEquals(OverrideNodeStatus.DELETED, reload2.getOverride(PATH_a_b_c_d1).status);
+		
+		// append after reload, then full replay if checkpoint is corrupted
+		val PATH_a_b_c_d2 = PATH_a_b_c.toChild(d2);
+		reload2.put(PATH_a_b_c_d2, gen.createDirData(d2, ImmutableSet.of()));
+		reload2.flushStopWrite();
+		blobStorage.writeFile(reload2.getCheckpointFileName(), new byte[] { 1, 2, 3 });
+		val reload3 = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		reload3.initReload();
+		val headerLen = 22 + 4 + 1; // v3 header: magic, attr table len, empty attr table
+		Assert.assertEquals(blobStorage.fileLen(fileName) - headerLen, reload3.getLastReloadReplayedBytes()); // full replay
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, reload3.getOverride(PATH_a_b_c_d2).status);
+		Assert.assertEquals(OverrideNodeStatus.DELETED, reload3.getOverride(PATH_a_b_c_d1).status);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, reload3.getOverride(PATH_a_b_c).status);
+	}
+
+	@Test
+	public void test_periodicCheckpoint_background() throws Exception {
+		val fileName = "test-ckpt-periodic";
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		sut.setCheckpointTriggerEntryCount(2);
+		sut.put(PATH_a_b_c, gen.createDirData(c, ImmutableSet.of(d1, d2)));
+		sut.put(PATH_a_b_c_d1, gen.createDirData(d1, ImmutableSet.of())); // => trigger, written in background
+		long waitStart = System.currentTimeMillis();
+		while(sut.getCheckpointCount() == 0 && System.currentTimeMillis() - waitStart < 10_000) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(1, sut.getCheckpointCount());
+
+		val reload = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		reload.initReload();
+		Assert.assertTrue(reload.getLastReloadReplayedBytes() < blobStorage.fileLen(fileName) / 2);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, reload.getOverride(PATH_a_b_c_d1).status);
+		sut.flushStopWrite();
+	}
+
+	@Test
+	public void test_put_transientFieldsChanged_reload() {
+		val fileName = "test-transient";
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		sut.setCheckpointTriggerEntryCount(-1); // replay only
+		// no previous record for path => written as full data
+		val data_a_b_c = gen.createDirData(c, ImmutableSet.of(d1, d2));
+		data_a_b_c.setLastExternalRefreshTimeMillis(1234);
+		sut.put_transientFieldsChanged(PATH_a_b_c, data_a_b_c);
+		// previous record => only internal fields appended
+		val data_a_b_c_d1 = gen.createDirData(d1, ImmutableSet.of());
+		sut.put(PATH_a_b_c_d1, data_a_b_c_d1);
+		data_a_b_c_d1.setLastExternalRefreshTimeMillis(5678);
+		sut.put_transientFieldsChanged(PATH_a_b_c_d1, data_a_b_c_d1);
+		sut.flushStopWrite();
+
+		val reload = new WALBlobStorage_OverrideTreeData(blobStorage, fileName, attrDataEncoderHelper);
+		reload.initReload();
+		val res_a_b_c = reload.getOverride(PATH_a_b_c);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, res_a_b_c.status);
+		Assert.assertEquals(data_a_b_c.childNames, res_a_b_c.data.childNames);
+		Assert.assertEquals(1234, res_a_b_c.data.getLastExternalRefreshTimeMillis());
+		val res_d1 = reload.getOverride(PATH_a_b_c_d1);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, res_d1.status);
+		Assert.assertEquals(5678, res_d1.data.getLastExternalRefreshTimeMillis());
+	}
+
+	@Test
+	public void test_freeMemoryByLfuEvictingData() {
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, "test-lfu", attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		sut.getEvictionPolicy().setRecentWindowMillis(0); // no window protection, only frequency
+		val data_a_b_c = gen.createDirData(c, ImmutableSet.of(d1, d2));
+		sut.put(PATH_a_b_c, data_a_b_c);
+		val data_a_b_c_d1 = gen.createDirData(d1, ImmutableSet.of());
+		sut.put(PATH_a_b_c_d1, data_a_b_c_d1);
+		for(int i = 0; i < 5; i++) {
+			sut.getOverride(PATH_a_b_c); // hot
+		}
+		sut.flushAsync().join(); // only flushed data can be evicted
+
+		Assert.assertTrue(sut.freeMemoryByLfuEvictingData(1) > 0); // => evict only coldest
+
+		Assert.assertSame(data_a_b_c, sut.getOverride(PATH_a_b_c).data);
+		val res_d1 = sut.getOverride(PATH_a_b_c_d1);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, res_d1.status);
+		Assert.assertNotSame(data_a_b_c_d1, res_d1.data); // reloaded from WAL
+		Assert.assertEquals(data_a_b_c_d1.childNames, res_d1.data.childNames);
+		sut.flushStopWrite();
+	}
+
+	@Test
+	public void test_put_transientFieldsChanged_freshPath_evict_get() {
+		val sut = new WALBlobStorage_OverrideTreeData(blobStorage, "test-transient-lfu", attrDataEncoderHelper);
+		sut.initCreateEmpty();
+		sut.getEvictionPolicy().setRecentWindowMillis(0);
+		// fresh path, no previous record => full data written, evicted data must be reloadable
+		val data_a_b_c = gen.createDirData(c, ImmutableSet.of(d1, d2));
+		data_a_b_c.setLastExternalRefreshTimeMillis(1234);
+		sut.put_transientFieldsChanged(PATH_a_b_c, data_a_b_c);
+		sut.flushAsync().join();
+
+		Assert.assertTrue(sut.freeMemoryByLfuEvictingData(Long.MAX_VALUE) > 0);
+		val res = sut.getOverride(PATH_a_b_c);
+		Assert.assertEquals(OverrideNodeStatus.UPDATED, res.status);
+		Assert.assertNotSame(data_a_b_c, res.data); // reloaded from WAL
+		Assert.assertEquals(data_a_b_c.childNames, res.data.childNames);
+		Assert.assertEquals(1234, res.data.getLastExternalRefreshTimeMillis());
+
+		// then internal fields only record, evict again => full record + internal fields
+		val data2 = res.data;
+		data2.setLastExternalRefreshTimeMillis(5678);
+		sut.put_transientFieldsChanged(PATH_a_b_c, data2);
+		sut.flushAsync().join();
+		Assert.assertTrue(sut.freeMemoryByLfuEvictingData(Long.MAX_VALUE) > 0);
+		val res2 = sut.getOverride(PATH_a_b_c);
+		Assert.assertNotSame(data2, res2.data);
+		Assert.assertEquals(data_a_b_c.childNames, res2.data.childNames);
+		Assert.assertEquals(5678, res2.data.getLastExternalRefreshTimeMillis());
+		sut.flushStopWrite();
+	}
+
 	private static WALBlobStorage_OverrideTreeData reloadFromFile(String baseFilename) {
 		val res = new WALBlobStorage_OverrideTreeData(blobStorage, "test1", attrDataEncoderHelper);
 		res.initReload();
@@ -0,0 +1,103 @@
+package fr.an.attrtreestore.storage.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.an.attrtreestore.storage.impl.WALGroupCommitWriter.WALDurabilityMode;
+import lombok.val;
+
+public class WALGroupCommitWriterTest {
+
+	@Test
+	public void testAppend_concurrent_perRecord() throws Exception {
+		val out = new ByteArrayOutputStream();
+		val sut = new WALGroupCommitWriter("test", out, WALDurabilityMode.PER_RECORD, 100, 64, 16);
+		int threadCount = 4, recordPerThread = 250;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		val acks = new ArrayList<CompletableFuture<Void>>();
+		val lock = new Object();
+		for(int t = 0; t < threadCount; t++) {
+			executor.submit(() -> {
+				for(int i = 0; i < recordPerThread; i++) {
+					synchronized(lock) { // same as WAL: enqueue in file order under lock
+						acks.add(sut.append(new byte[] { 1, 2, 3 }));
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		synchronized(lock) {
+			CompletableFuture.allOf(acks.toArray(new CompletableFuture[acks.size()])).get(10, TimeUnit.SECONDS);
+		}
+
+		int recordCount = threadCount * recordPerThread;
+		Assert.assertEquals(recordCount, sut.getWrittenRecordCount());
+		Assert.assertEquals(3 * recordCount, out.size());
+		Assert.assertTrue(sut.getFlushCount() <= sut.getWrittenBatchCount());
+		sut.close();
+	}
+
+	@Test
+	public void testFlush_osBuffered() throws Exception {
+		val out = new ByteArrayOutputStream();
+		val sut = new WALGroupCommitWriter("test", out, WALDurabilityMode.OS_BUFFERED, 100, 64, 16);
+		val ack = sut.append(new byte[] { 1 });
+		sut.flush().get(10, TimeUnit.SECONDS);
+		Assert.assertTrue(ack.isDone());
+		Assert.assertEquals(1, out.size());
+		Assert.assertEquals(1, sut.getFlushCount());
+		sut.close();
+	}
+
+	@Test
+	public void testWriteFailure_failAcks_notifyOwner_noBlockingEnqueue() throws Exception {
+		val out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("test disk full");
+			}
+		};
+		// ring buffer of 1 record: a blocking put() would never return once writer is dead
+		val sut = new WALGroupCommitWriter("test", out, WALDurabilityMode.PER_RECORD, 100, 1, 16);
+		val notifiedFailure = new AtomicReference<Throwable>();
+		sut.setWriteFailureListener(notifiedFailure::set);
+
+		val ack = sut.append(new byte[] { 1 });
+		try {
+			ack.get(10, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch(ExecutionException ex) {
+			Assert.assertTrue(ex.getCause() instanceof IOException);
+		}
+		Assert.assertNotNull(sut.getWriteFailure());
+		long waitStart = System.currentTimeMillis();
+		while(notifiedFailure.get() == null && System.currentTimeMillis() - waitStart < 10_000) {
+			Thread.sleep(10);
+		}
+		Assert.assertSame(sut.getWriteFailure(), notifiedFailure.get());
+
+		// next appends are rejected, not blocked
+		for(int i = 0; i < 3; i++) {
+			try {
+				sut.append(new byte[] { 2 });
+				Assert.fail();
+			} catch(RuntimeException ex) {
+				// ok
+			}
+		}
+		sut.close();
+	}
+
+}
@@ -15,6 +15,7 @@ import com.google.common.collect.ImmutableMap;
 
 import fr.an.attrtreestore.cachedfsview.NodeFsDataProvider;
 import fr.an.attrtreestore.cachedfsview.PrefetchNodeFsDataContext;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import fr.an.attrtreestore.util.LoggingCallStats;
 import fr.an.attrtreestore.util.fsdata.NodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.DirNodeFsData;
@@ -50,7 +51,7 @@ public class HadoopNodeFsDataProvider extends NodeFsDataProvider {
 		this.baseUrl = baseUrl;
 		this.fs = fs;
 		this.basePath = new Path(baseUrl);
-		this.nodeNameEncoder = nodeNameEncoder;
+		this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
 		this.fsGetStatusStats = new LoggingCallStats("HadoopFS " + baseUrl + " .getStatus()", "getStatus", 1000);
 		this.fsListStatusStats = new LoggingCallStats("HadoopFS " + baseUrl + " .listStatus()", "listStatus", 1000);
 	}
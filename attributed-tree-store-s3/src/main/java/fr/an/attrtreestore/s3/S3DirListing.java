@@ -19,6 +19,7 @@ import org.simplestorage4j.api.util.LoggingCounter.LoggingCounterParams;
 import fr.an.attrtreestore.api.IWriteTreeData;
 import fr.an.attrtreestore.cachedfsview.converter.NodeFsDataToNodeDataConverter;
 import fr.an.attrtreestore.cachedfsview.converter.NodeFsDataToNodeDataConverter.DefaultNodeFsDataToNodeDataConverter;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import fr.an.attrtreestore.storage.impl.PersistedTreeData;
 import fr.an.attrtreestore.util.AttrTreeStoreUtils;
 import fr.an.attrtreestore.util.fsdata.NodeFsData;
@@ -70,7 +71,7 @@ public class S3DirListing {
             NodeNameEncoder nodeNameEncoder) {
         this.s3NodeFsDataProvider = s3NodeFsDataProvider;
         this.destTree = destTree;
-        this.nodeNameEncoder = nodeNameEncoder;
+        this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
     }
     
     // --------------------------------------------------------------------------------------------
@@ -18,6 +18,7 @@ import fr.an.attrtreestore.api.readprefetch.PrefetchNodeDataContext;
 import fr.an.attrtreestore.api.readprefetch.PrefetchProposedPathItem;
 import fr.an.attrtreestore.cachedfsview.NodeFsDataProvider;
 import fr.an.attrtreestore.cachedfsview.PrefetchNodeFsDataContext;
+import fr.an.attrtreestore.impl.name.InterningNodeNameEncoder;
 import fr.an.attrtreestore.util.AttrTreeStoreUtils;
 import fr.an.attrtreestore.util.fsdata.NodeFsData;
 import fr.an.attrtreestore.util.fsdata.NodeFsData.DirNodeFsData;
@@ -61,7 +62,7 @@ public class S3NodeFsDataProvider extends NodeFsDataProvider {
         this.s3Client = s3Client;
         this.s3BucketName = s3BucketName;
         this.s3DirMetadataCompleter = s3DirMetadataCompleter;
-        this.nodeNameEncoder = nodeNameEncoder;
+        this.nodeNameEncoder = InterningNodeNameEncoder.of(nodeNameEncoder);
     }
     
 	// --------------------------------------------------------------------------------------------